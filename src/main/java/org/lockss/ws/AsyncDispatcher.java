@@ -0,0 +1,301 @@
+/*
+
+Copyright (c) 2000-2023 Board of Trustees of Leland Stanford Jr. University,
+all rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+package org.lockss.ws;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.apache.cxf.continuations.Continuation;
+import org.apache.cxf.continuations.ContinuationProvider;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.PhaseInterceptorChain;
+import org.lockss.config.Configuration;
+import org.lockss.log.L4JLogger;
+import org.lockss.spring.base.BaseSpringApiServiceImpl;
+import org.lockss.spring.base.LockssConfigurableService;
+import org.lockss.ws.entities.LockssWebServicesFault;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs long forwarded REST calls of SOAP operations while the SOAP request is suspended, so that
+ * no servlet container thread is held while waiting for the REST service.
+ *
+ * <p>The SOAP request is suspended with a CXF continuation and the REST call is made by a thread of
+ * a pool separate from the container's. When the call finishes the request is resumed, CXF invokes
+ * the operation again and the result of the call is returned. Where continuations are not
+ * available, or when disabled, the call is made by the thread handling the SOAP request.
+ */
+@Component
+public class AsyncDispatcher extends BaseSpringApiServiceImpl
+    implements LockssConfigurableService, MeterBinder {
+
+  // Config params
+
+  public static final String PREFIX = BaseServiceImpl.PREFIX + "async.";
+
+  /** If true, long forwarded REST calls are made while the SOAP request is suspended. */
+  public static final String PARAM_ENABLED = PREFIX + "enabled";
+  public static final boolean DEFAULT_ENABLED = true;
+
+  /**
+   * Number of threads making the REST calls of suspended SOAP requests. Ignored when virtual
+   * threads are used.
+   */
+  public static final String PARAM_THREADS = PREFIX + "threads";
+  public static final int DEFAULT_THREADS = 64;
+
+  private static final L4JLogger log = L4JLogger.getLogger();
+
+  private final ExecutorService executor;
+
+  // The pool of platform threads, or null if each call is made in a new virtual thread.
+  private final ThreadPoolExecutor pool;
+
+  // The number of SOAP requests currently suspended.
+  private final AtomicInteger suspended = new AtomicInteger();
+
+  private volatile boolean enabled = DEFAULT_ENABLED;
+
+  public AsyncDispatcher() {
+    this(false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param virtualThreads A boolean indicating whether each REST call is made in a new virtual
+   *                       thread, if the Java runtime provides them. The number of calls in
+   *                       progress is then bounded only by the bulkheads of the REST services.
+   */
+  @Autowired
+  public AsyncDispatcher(@Value("${" + SoapThreads.VIRTUAL_THREADS_KEY + ":false}")
+                         boolean virtualThreads) {
+    ExecutorService virtual =
+        virtualThreads ? SoapThreads.newVirtualThreadPerTaskExecutor("SoapAsync") : null;
+
+    if (virtual != null) {
+      pool = null;
+      executor = virtual;
+    } else {
+      pool = new ThreadPoolExecutor(DEFAULT_THREADS, DEFAULT_THREADS, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<>(), SoapThreads.newThreadFactory("SoapAsync", false));
+      pool.allowCoreThreadTimeOut(true);
+      executor = pool;
+    }
+  }
+
+  /**
+   * Constructor with the executor that makes the REST calls.
+   *
+   * @param executor An ExecutorService that makes the REST calls.
+   */
+  AsyncDispatcher(ExecutorService executor) {
+    this.pool = null;
+    this.executor = executor;
+  }
+
+  /**
+   * Makes a forwarded REST call on behalf of the current SOAP request, suspending the request
+   * while the call is in progress if possible.
+   *
+   * <p>The first time this is invoked for a SOAP request that can be suspended, the call is started
+   * in another thread, the request is suspended and <code>null</code> is returned; the SOAP
+   * operation must return that value right away. When the request is resumed, CXF invokes the
+   * operation again, and then this returns the result of the call.
+   *
+   * @param context A SoapRequestContext with the context of the SOAP request.
+   * @param timeout A long with the maximum time in milliseconds that the request is suspended.
+   * @param call    A {@code Callable<R>} with the REST call.
+   * @return an R with the result of the call, or <code>null</code> if the request was suspended.
+   * @throws LockssWebServicesFault if the call fails or times out.
+   */
+  public <R> R dispatch(SoapRequestContext context, long timeout, Callable<R> call)
+      throws LockssWebServicesFault {
+    Continuation continuation = getContinuation();
+
+    if (continuation == null) {
+      try {
+        return context.call(call);
+      } catch (LockssWebServicesFault lwsf) {
+        throw lwsf;
+      } catch (Exception e) {
+        throw new LockssWebServicesFault(e);
+      }
+    }
+
+    synchronized (continuation) {
+      if (continuation.isNew()) {
+        // The call resumes the request once its outcome is set, so that the outcome is there when
+        // the operation is invoked again. That cannot happen before the request is suspended
+        // below, as the continuation is locked until then. A call abandoned because the request
+        // timed out does not resume it.
+        FutureTask<R> task = new FutureTask<>(() -> context.call(call)) {
+          @Override
+          protected void done() {
+            if (!isCancelled()) {
+              synchronized (continuation) {
+                continuation.resume();
+              }
+            }
+          }
+        };
+
+        try {
+          executor.execute(task);
+        } catch (RejectedExecutionException ree) {
+          throw new LockssWebServicesFault(ree);
+        }
+
+        continuation.setObject(task);
+        continuation.suspend(timeout);
+        suspended.incrementAndGet();
+        log.debug2("Suspended request with timeout = {}", timeout);
+        return null;
+      }
+
+      suspended.decrementAndGet();
+
+      @SuppressWarnings("unchecked")
+      Future<R> task = (Future<R>) continuation.getObject();
+
+      if (!task.isDone()) {
+        task.cancel(true);
+        throw new LockssWebServicesFault("Timed out after " + timeout + " ms");
+      }
+
+      try {
+        return task.get();
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        throw new LockssWebServicesFault(ie);
+      } catch (ExecutionException ee) {
+        Throwable cause = ee.getCause();
+
+        if (cause instanceof LockssWebServicesFault) {
+          throw (LockssWebServicesFault) cause;
+        }
+
+        throw new LockssWebServicesFault(cause);
+      }
+    }
+  }
+
+  /**
+   * Provides the continuation of the current SOAP request, if it can be suspended.
+   *
+   * @return a Continuation, or <code>null</code> if the request cannot be suspended.
+   */
+  private Continuation getContinuation() {
+    if (!enabled || executor.isShutdown()) {
+      return null;
+    }
+
+    Message message = getCurrentMessage();
+
+    if (message == null) {
+      return null;
+    }
+
+    ContinuationProvider provider =
+        (ContinuationProvider) message.get(ContinuationProvider.class.getName());
+
+    return provider == null ? null : provider.getContinuation();
+  }
+
+  /**
+   * Provides the CXF message being processed by the current thread.
+   *
+   * @return a Message, or <code>null</code> if the thread is not processing a message.
+   */
+  Message getCurrentMessage() {
+    return PhaseInterceptorChain.getCurrentMessage();
+  }
+
+  /**
+   * Provides the number of SOAP requests currently suspended.
+   *
+   * @return an int with the number of suspended requests.
+   */
+  public int getSuspendedCount() {
+    return suspended.get();
+  }
+
+  /**
+   * Provides the number of REST calls of suspended SOAP requests waiting for a thread.
+   *
+   * @return an int with the number of waiting calls.
+   */
+  public int getQueuedCount() {
+    return pool == null ? 0 : pool.getQueue().size();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("soap.async.suspended", suspended, AtomicInteger::get)
+        .description("SOAP requests suspended while waiting for a REST service")
+        .register(registry);
+    Gauge.builder("soap.async.queued", this, AsyncDispatcher::getQueuedCount)
+        .description("REST calls of suspended SOAP requests waiting for a thread")
+        .register(registry);
+  }
+
+  @Override
+  public void setConfig(Configuration newConfig,
+                        Configuration prevConfig,
+                        Configuration.Differences changedKeys) {
+    if (changedKeys.contains(PREFIX)) {
+      enabled = newConfig.getBoolean(PARAM_ENABLED, DEFAULT_ENABLED);
+      int threads = Math.max(1, newConfig.getInt(PARAM_THREADS, DEFAULT_THREADS));
+
+      if (pool != null) {
+        if (threads >= pool.getMaximumPoolSize()) {
+          pool.setMaximumPoolSize(threads);
+          pool.setCorePoolSize(threads);
+        } else {
+          pool.setCorePoolSize(threads);
+          pool.setMaximumPoolSize(threads);
+        }
+      }
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+}
@@ -27,6 +27,9 @@ in this Software without prior written authorization from Stanford University.
 */
 package org.lockss.ws;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.apache.commons.io.input.CountingInputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.cxf.helpers.CastUtils;
 import org.apache.cxf.message.Message;
@@ -45,10 +48,25 @@ import org.lockss.util.auth.AuthUtil;
 import org.lockss.util.rest.RestUtil;
 import org.lockss.util.rest.SpringHeaderUtil;
 import org.lockss.util.rest.exception.LockssRestException;
+import org.lockss.util.rest.exception.LockssRestHttpException;
 import org.lockss.util.rest.multipart.MultipartConnector;
 import org.lockss.util.rest.multipart.MultipartResponse;
+import org.lockss.ws.entities.LockssWebServicesFault;
+import org.lockss.ws.rest.ArtifactExistenceCache;
+import org.lockss.ws.rest.JsonReaderCache;
+import org.lockss.ws.rest.RepositoryClientCache;
+import org.lockss.ws.rest.RestBulkheads;
+import org.lockss.ws.rest.RestCallMetrics;
+import org.lockss.ws.rest.RestCircuitBreakers;
+import org.lockss.ws.rest.RestServices;
+import org.lockss.ws.rest.RestTimeouts;
+import org.lockss.ws.rest.ServiceBusyException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.*;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.ResponseExtractor;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestClientResponseException;
 import org.springframework.web.client.RestTemplate;
 
 import javax.mail.MessagingException;
@@ -56,8 +74,11 @@ import jakarta.servlet.http.HttpServletRequest;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URI;
-import java.net.URL;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiFunction;
+import java.util.function.LongConsumer;
 
 /** Base class for the various SOAP web service implementations. */
 public class BaseServiceImpl
@@ -86,6 +107,33 @@ public class BaseServiceImpl
 
   @Autowired protected RestTemplate restTemplate;
 
+  // Shared decoder of the JSON responses of the REST services.
+  @Autowired protected JsonReaderCache jsonReaders;
+
+  // Repository clients reused across requests with the same credentials.
+  @Autowired protected RepositoryClientCache repositoryClients;
+
+  // Recent results of looking up artifacts in the repository.
+  @Autowired protected ArtifactExistenceCache artifactExistence;
+
+  // Concurrent processing of the items of batch operations.
+  @Autowired protected BatchExecutor batchExecutor;
+
+  // Timeouts of the calls made to each REST service by each SOAP operation.
+  @Autowired protected RestTimeouts restTimeouts;
+
+  // Limits of the calls in progress to each REST service.
+  @Autowired protected RestBulkheads restBulkheads;
+
+  // Breakers of the calls to failing REST services.
+  @Autowired protected RestCircuitBreakers circuitBreakers;
+
+  // Measurements of the calls made to the REST services.
+  @Autowired protected RestCallMetrics restCallMetrics;
+
+  // Forwarded REST calls made while the SOAP request is suspended.
+  @Autowired protected AsyncDispatcher asyncDispatcher;
+
   // Timeouts.
   protected long connectionTimeout = DEFAULT_CONNECTION_TIMEOUT;
   protected long readTimeout = DEFAULT_READ_TIMEOUT;
@@ -126,6 +174,30 @@ public class BaseServiceImpl
     return readTimeout;
   }
 
+  /**
+   * Provides the connection timeout in milliseconds of the calls made to a REST service on behalf
+   * of the current SOAP operation.
+   *
+   * @param sd A ServiceDescr with the REST service.
+   * @return a Long with the connection timeout in milliseconds.
+   */
+  protected Long getConnectionTimeout(ServiceDescr sd) {
+    return restTimeouts.getConnectTimeout(sd, RestCallMetrics.getCurrentOperation(),
+        getConnectionTimeout());
+  }
+
+  /**
+   * Provides the read timeout in milliseconds of the calls made to a REST service on behalf of the
+   * current SOAP operation.
+   *
+   * @param sd A ServiceDescr with the REST service.
+   * @return a Long with the read timeout in milliseconds.
+   */
+  protected Long getReadTimeout(ServiceDescr sd) {
+    return restTimeouts.getReadTimeout(sd, RestCallMetrics.getCurrentOperation(),
+        getReadTimeout());
+  }
+
   protected HttpHeaders getAuthHeaders() {
     HttpHeaders hdrs = new HttpHeaders();
     String auth = getSoapRequestAuthorizationHeader();
@@ -147,6 +219,13 @@ public class BaseServiceImpl
   protected static String getSoapRequestAuthorizationHeader() {
     log.debug2("Invoked.");
 
+    // Check whether this thread works on behalf of a SOAP request handled elsewhere.
+    SoapRequestContext context = SoapRequestContext.getCurrent();
+
+    if (context != null) {
+      return context.getAuthorizationHeader();
+    }
+
     String authHeaderValue = null;
 
     // Get the headers from the SOAP request.
@@ -178,6 +257,13 @@ public class BaseServiceImpl
    * @return a String with the requestor IP.
    */
   protected static String getRequestorIpAddress() {
+    // Check whether this thread works on behalf of a SOAP request handled elsewhere.
+    SoapRequestContext context = SoapRequestContext.getCurrent();
+
+    if (context != null) {
+      return context.getRequestorIpAddress();
+    }
+
     // Get the message from the SOAP request.
     Message message = PhaseInterceptorChain.getCurrentMessage();
     HttpServletRequest request =
@@ -187,6 +273,116 @@ public class BaseServiceImpl
     return srcIp;
   }
 
+  /**
+   * Provides the context of the current SOAP request, to be used when forwarding it from other
+   * threads.
+   *
+   * @return a SoapRequestContext with the context of the current SOAP request.
+   */
+  protected static SoapRequestContext getSoapRequestContext() {
+    SoapRequestContext context = SoapRequestContext.getCurrent();
+
+    if (context != null) {
+      return context;
+    }
+
+    return new SoapRequestContext(getSoapRequestAuthorizationHeader(), getRequestorIpAddress(),
+        RestCallMetrics.getCurrentOperation());
+  }
+
+  /**
+   * Processes the items of a batch operation concurrently, on behalf of the current SOAP request.
+   *
+   * @param sd    A ServiceDescr with the REST service used to process the items.
+   * @param items A {@code List<I>} with the items.
+   * @param task  A {@code BatchExecutor.ItemTask<I, R>} with the processing of each item.
+   * @return a {@code List<R>} with the results, in the order of the items.
+   * @throws LockssWebServicesFault if the processing of any item fails.
+   */
+  protected <I, R> List<R> mapConcurrently(ServiceDescr sd, List<I> items,
+                                           BatchExecutor.ItemTask<I, R> task)
+      throws LockssWebServicesFault {
+    return mapConcurrently(sd, 0, items, task);
+  }
+
+  /**
+   * Processes the items of a batch operation concurrently, on behalf of the current SOAP request,
+   * with no more than a given number of them in progress at once.
+   *
+   * @param sd            A ServiceDescr with the REST service used to process the items.
+   * @param maxConcurrent An int with the maximum number of items in progress at once, in addition
+   *                      to the limit of the service. Zero means no limit.
+   * @param items         A {@code List<I>} with the items.
+   * @param task          A {@code BatchExecutor.ItemTask<I, R>} with the processing of each item.
+   * @return a {@code List<R>} with the results, in the order of the items.
+   * @throws LockssWebServicesFault if the processing of any item fails.
+   */
+  protected <I, R> List<R> mapConcurrently(ServiceDescr sd, int maxConcurrent, List<I> items,
+                                           BatchExecutor.ItemTask<I, R> task)
+      throws LockssWebServicesFault {
+    SoapRequestContext context = getSoapRequestContext();
+    return batchExecutor.map(sd, maxConcurrent, items,
+        item -> context.call(() -> task.apply(item)));
+  }
+
+  /**
+   * Processes the items of a batch operation concurrently, on behalf of the current SOAP request,
+   * reporting the failure of any item in its own result.
+   *
+   * <p>Other items may already have been processed when one of them fails, so a failure is not
+   * allowed to hide their results. Only if every item fails, so that nothing has been done, is the
+   * operation failed.
+   *
+   * @param sd      A ServiceDescr with the REST service used to process the items.
+   * @param items   A {@code List<I>} with the items.
+   * @param task    A {@code BatchExecutor.ItemTask<I, R>} with the processing of each item.
+   * @param failure A {@code BiFunction<I, Exception, R>} that provides the result of an item whose
+   *                processing failed.
+   * @return a {@code List<R>} with the results, in the order of the items.
+   * @throws LockssWebServicesFault if the processing of every item fails.
+   */
+  protected <I, R> List<R> mapConcurrently(ServiceDescr sd, List<I> items,
+                                           BatchExecutor.ItemTask<I, R> task,
+                                           BiFunction<I, Exception, R> failure)
+      throws LockssWebServicesFault {
+    // The failures of the items, in the order in which they happened.
+    Queue<Exception> failures = new ConcurrentLinkedQueue<>();
+
+    List<R> results = mapConcurrently(sd, items, item -> {
+      try {
+        return task.apply(item);
+      } catch (Exception e) {
+        log.debug("Batch item {} failed", item, e);
+        failures.add(e);
+        return failure.apply(item, e);
+      }
+    });
+
+    if (!items.isEmpty() && failures.size() == items.size()) {
+      Exception first = failures.peek();
+      throw first instanceof LockssWebServicesFault
+          ? (LockssWebServicesFault) first : new LockssWebServicesFault(first);
+    }
+
+    return results;
+  }
+
+  /**
+   * Makes a long forwarded REST call on behalf of the current SOAP request without holding the
+   * servlet container thread while waiting for it, if possible.
+   *
+   * <p>The SOAP operation must return right away whatever this returns, which is
+   * <code>null</code> when the request has been suspended. See {@link AsyncDispatcher}.
+   *
+   * @param timeout A long with the maximum time in milliseconds to wait for the call.
+   * @param call    A {@code Callable<R>} with the REST call.
+   * @return an R with the result of the call, or <code>null</code> if the request was suspended.
+   * @throws LockssWebServicesFault if the call fails or times out.
+   */
+  protected <R> R callSuspended(long timeout, Callable<R> call) throws LockssWebServicesFault {
+    return asyncDispatcher.dispatch(getSoapRequestContext(), timeout, call);
+  }
+
   /**
    * Provides access to the REST Repository service.
    *
@@ -198,8 +394,8 @@ public class BaseServiceImpl
     log.trace("credentials = [{}, ****]", credentials[0]);
 
     try {
-      return new RestLockssRepository(new URL(getServiceEndpoint(ServiceDescr.SVC_REPO)),
-          restTemplate, credentials[0], credentials[1]);
+      return repositoryClients.get(getServiceEndpoint(ServiceDescr.SVC_REPO), credentials[0],
+          credentials[1], restTemplate);
     } catch (IOException e) {
       throw new IllegalStateException("Could not create REST LOCKSS Repository client");
     }
@@ -322,13 +518,167 @@ public class BaseServiceImpl
 
     // Make the REST call.
     log.trace("Calling RestUtil.callRestService");
-    return RestUtil.callRestService(
-        restTemplate,
-        uri,
-        httpMethod,
-        new HttpEntity<>(body, requestHeaders),
-        String.class,
-        exceptionMessage);
+    String previousTemplate = RestCallMetrics.setPathTemplate(uriString);
+
+    try {
+      return RestUtil.callRestService(
+          restTemplate,
+          uri,
+          httpMethod,
+          new HttpEntity<>(body, requestHeaders),
+          String.class,
+          exceptionMessage);
+    } finally {
+      RestCallMetrics.setPathTemplate(previousTemplate);
+    }
+  }
+
+  /**
+   * Makes a call to a REST service endpoint that returns a JSON array, decoding the array
+   * elements as the response body is read instead of first holding the whole body as text.
+   *
+   * @param serviceUrl A String with the URL of the service.
+   * @param endPointPath A String with the URI path to the endpoint.
+   * @param uriVariables A Map<String, String> with any variables to be interpolated in the URI.
+   * @param queryParams A Map<String, String> with any query parameters.
+   * @param httpMethod An HttpMethod with HTTP method used to make the call to the REST service.
+   * @param body A T with the contents of the body to be included with the request, if any.
+   * @param elementType A Class<E> with the type of the elements of the array.
+   * @param exceptionMessage A String with the message to be returned with any exception.
+   * @return a List<E> with the decoded elements of the array.
+   * @throws LockssRestException if any problems arise in the call to the REST service.
+   */
+  protected <T, E> List<E> callRestServiceEndpointForList(
+      String serviceUrl,
+      String endPointPath,
+      Map<String, String> uriVariables,
+      Map<String, String> queryParams,
+      HttpMethod httpMethod,
+      T body,
+      Class<E> elementType,
+      String exceptionMessage)
+      throws LockssRestException {
+    return callRestServiceEndpointForList(serviceUrl, endPointPath, uriVariables, queryParams,
+        httpMethod, body, elementType, exceptionMessage, null);
+  }
+
+  /**
+   * Makes a call to a REST service endpoint that returns a JSON array, decoding the array
+   * elements as the response body is read, and reports the number of bytes of the body.
+   *
+   * @param serviceUrl A String with the URL of the service.
+   * @param endPointPath A String with the URI path to the endpoint.
+   * @param uriVariables A Map<String, String> with any variables to be interpolated in the URI.
+   * @param queryParams A Map<String, String> with any query parameters.
+   * @param httpMethod An HttpMethod with HTTP method used to make the call to the REST service.
+   * @param body A T with the contents of the body to be included with the request, if any.
+   * @param elementType A Class<E> with the type of the elements of the array.
+   * @param exceptionMessage A String with the message to be returned with any exception.
+   * @param responseSize A LongConsumer to be given the number of bytes of the response body, or
+   *     <code>null</code>.
+   * @return a List<E> with the decoded elements of the array.
+   * @throws LockssRestException if any problems arise in the call to the REST service.
+   */
+  protected <T, E> List<E> callRestServiceEndpointForList(
+      String serviceUrl,
+      String endPointPath,
+      Map<String, String> uriVariables,
+      Map<String, String> queryParams,
+      HttpMethod httpMethod,
+      T body,
+      Class<E> elementType,
+      String exceptionMessage,
+      LongConsumer responseSize)
+      throws LockssRestException {
+    log.debug2("serviceUrl = {}", serviceUrl);
+    log.debug2("endPointPath = {}", endPointPath);
+    log.debug2("uriVariables = {}", uriVariables);
+    log.debug2("queryParams = {}", queryParams);
+    log.debug2("httpMethod = {}", httpMethod);
+    log.debug2("body = {}", body);
+    log.debug2("elementType = {}", elementType);
+
+    URI uri = RestUtil.getRestUri(serviceUrl + endPointPath, uriVariables, queryParams);
+    log.trace("uri = {}", uri);
+
+    HttpHeaders requestHeaders = new HttpHeaders();
+    requestHeaders.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+    SpringHeaderUtil.addHeaders(getAuthHeaders(), requestHeaders, true);
+    log.trace("requestHeaders = {}", requestHeaders);
+
+    ObjectReader reader = jsonReaders.forType(elementType);
+
+    ResponseExtractor<List<E>> extractor = response -> {
+      HttpStatusCode statusCode = response.getStatusCode();
+      log.trace("statusCode = {}", statusCode);
+
+      if (!statusCode.is2xxSuccessful()) {
+        throw newHttpException(exceptionMessage, statusCode, null);
+      }
+
+      // Decode the elements one at a time from the response stream.
+      List<E> result = new ArrayList<>();
+      CountingInputStream in = new CountingInputStream(response.getBody());
+
+      try (MappingIterator<E> iterator = reader.readValues(in)) {
+        while (iterator.hasNextValue()) {
+          result.add(iterator.nextValue());
+        }
+      }
+
+      if (responseSize != null) {
+        responseSize.accept(in.getByteCount());
+      }
+
+      return result;
+    };
+
+    // Make the REST call.
+    String previousTemplate = RestCallMetrics.setPathTemplate(serviceUrl + endPointPath);
+
+    try {
+      return restTemplate.execute(uri, httpMethod,
+          restTemplate.httpEntityCallback(new HttpEntity<>(body, requestHeaders)), extractor);
+    } catch (ResourceAccessException e) {
+      // The RestTemplate wraps the exception thrown by the extractor for an unsuccessful status.
+      if (e.getCause() instanceof LockssRestHttpException) {
+        log.error(exceptionMessage, e.getCause());
+        throw (LockssRestHttpException) e.getCause();
+      }
+
+      log.error(exceptionMessage, e);
+      throw new LockssRestException(exceptionMessage, e);
+    } catch (RestClientResponseException e) {
+      log.error(exceptionMessage, e);
+      throw newHttpException(exceptionMessage, e.getStatusCode(), e);
+    } catch (RestClientException e) {
+      log.error(exceptionMessage, e);
+      throw new LockssRestException(exceptionMessage, e);
+    } finally {
+      RestCallMetrics.setPathTemplate(previousTemplate);
+    }
+  }
+
+  /**
+   * Provides the exception reporting an unsuccessful response of a REST service.
+   *
+   * @param message    A String with the message of the exception.
+   * @param statusCode An HttpStatusCode with the status of the response.
+   * @param cause      A Throwable with the cause of the exception, if any.
+   * @return a LockssRestHttpException with the status of the response.
+   */
+  protected static LockssRestHttpException newHttpException(String message,
+                                                            HttpStatusCode statusCode,
+                                                            Throwable cause) {
+    LockssRestHttpException lrhe = cause == null
+        ? new LockssRestHttpException(message) : new LockssRestHttpException(message, cause);
+    HttpStatus status = HttpStatus.resolve(statusCode.value());
+
+    if (status != null) {
+      lrhe.setHttpStatus(status);
+    }
+
+    return lrhe;
   }
 
   /**
@@ -372,10 +722,49 @@ public class BaseServiceImpl
 
     log.trace("requestHeaders = {}", requestHeaders);
 
-    // Make the REST call.
-    log.trace("Calling MultipartConnector.requestGet");
-    return new MultipartConnector(uri, requestHeaders)
-        .request(httpMethod, body, getConnectionTimeout().intValue(), getReadTimeout().intValue());
+    // The REST call does not go through the RestTemplate, so it is guarded, limited, measured
+    // and given the timeouts of its service here instead, as the decorated template would.
+    ServiceDescr sd = RestServices.findService(getRunningLockssDaemon(), uri.toString());
+    log.trace("sd = {}", sd);
+
+    int connectTimeout = getConnectionTimeout(sd).intValue();
+    int readTimeout = getReadTimeout(sd).intValue();
+    log.trace("connectTimeout = {}, readTimeout = {}", connectTimeout, readTimeout);
+
+    String previousTemplate = RestCallMetrics.setPathTemplate(serviceUrl + endPointPath);
+    String status = RestCallMetrics.IO_ERROR;
+    long start = System.nanoTime();
+
+    try {
+      // Calls to a failing service are rejected before waiting for room in its bulkhead.
+      circuitBreakers.enter(sd);
+      RestBulkheads.Permit permit;
+
+      try {
+        permit = restBulkheads.enter(uri.toString());
+      } catch (ServiceBusyException sbe) {
+        circuitBreakers.abandon(sd);
+        throw sbe;
+      }
+
+      log.trace("Calling MultipartConnector.request");
+
+      try (permit) {
+        MultipartResponse response = new MultipartConnector(uri, requestHeaders)
+            .request(httpMethod, body, connectTimeout, readTimeout);
+
+        int statusCode = response.getStatusCode().value();
+        status = String.valueOf(statusCode);
+        circuitBreakers.record(sd, !RestCircuitBreakers.isUnavailable(statusCode));
+        return response;
+      } catch (IOException | MessagingException | RuntimeException e) {
+        circuitBreakers.record(sd, false);
+        throw e;
+      }
+    } finally {
+      restCallMetrics.record(uri, httpMethod, status, start);
+      RestCallMetrics.setPathTemplate(previousTemplate);
+    }
   }
 
   // TODO: Remove once StrinGutil has been moved from lockss-core to
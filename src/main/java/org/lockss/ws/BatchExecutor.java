@@ -0,0 +1,310 @@
+/*
+
+Copyright (c) 2000-2023 Board of Trustees of Leland Stanford Jr. University,
+all rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+package org.lockss.ws;
+
+import jakarta.annotation.PreDestroy;
+import org.lockss.app.ServiceDescr;
+import org.lockss.config.Configuration;
+import org.lockss.log.L4JLogger;
+import org.lockss.spring.base.BaseSpringApiServiceImpl;
+import org.lockss.spring.base.LockssConfigurableService;
+import org.lockss.ws.entities.LockssWebServicesFault;
+import org.lockss.ws.rest.RestConnectionPool;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the items of batch SOAP operations concurrently, in a bounded pool of threads shared by all
+ * the operations.
+ *
+ * <p>The number of items of all the batches being processed at once against any one REST service
+ * is limited separately for each service. Threads submitting items beyond that limit wait until
+ * earlier items finish.
+ */
+@Component
+public class BatchExecutor extends BaseSpringApiServiceImpl
+    implements LockssConfigurableService {
+
+  // Config params
+
+  public static final String PREFIX = BaseServiceImpl.PREFIX + "batch.";
+
+  /**
+   * Number of threads processing batch items. Zero disables concurrent processing, so that the
+   * items are processed one at a time by the thread handling the SOAP request. Other values are
+   * ignored when virtual threads are used.
+   */
+  public static final String PARAM_THREADS = PREFIX + "threads";
+  public static final int DEFAULT_THREADS = 32;
+
+  /**
+   * Maximum number of batch items being processed at once against any one REST service. Can be
+   * overridden for individual services with
+   * <code>org.lockss.soap.batch.&lt;svc&gt;.maxConcurrent</code>, where <code>&lt;svc&gt;</code>
+   * is the service abbreviation.
+   */
+  public static final String PARAM_MAX_CONCURRENT = PREFIX + "maxConcurrent";
+  public static final int DEFAULT_MAX_CONCURRENT = 8;
+
+  /** Suffix of the per-service concurrency limit parameters. */
+  public static final String SUFFIX_MAX_CONCURRENT = ".maxConcurrent";
+
+  /**
+   * The processing of one batch item.
+   *
+   * @param <I> the type of the items.
+   * @param <R> the type of the results.
+   */
+  @FunctionalInterface
+  public interface ItemTask<I, R> {
+    R apply(I item) throws Exception;
+  }
+
+  private static final L4JLogger log = L4JLogger.getLogger();
+
+  private final ExecutorService executor;
+
+  // The pool of platform threads, or null if each item is processed in a new virtual thread.
+  private final ThreadPoolExecutor pool;
+
+  // The concurrency limit of each service.
+  private final Map<ServiceDescr, Semaphore> limits = new ConcurrentHashMap<>();
+
+  private volatile int maxConcurrent = DEFAULT_MAX_CONCURRENT;
+  private volatile boolean serial = false;
+
+  public BatchExecutor() {
+    this(false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param virtualThreads A boolean indicating whether each batch item is processed in a new
+   *                       virtual thread, if the Java runtime provides them. The number of items
+   *                       in progress is then bounded only by the concurrency limits.
+   */
+  @Autowired
+  public BatchExecutor(@Value("${" + SoapThreads.VIRTUAL_THREADS_KEY + ":false}")
+                       boolean virtualThreads) {
+    ExecutorService virtual =
+        virtualThreads ? SoapThreads.newVirtualThreadPerTaskExecutor("SoapBatch") : null;
+
+    if (virtual != null) {
+      pool = null;
+      executor = virtual;
+    } else {
+      pool = new ThreadPoolExecutor(DEFAULT_THREADS, DEFAULT_THREADS, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<>(), SoapThreads.newThreadFactory("SoapBatch", false));
+      pool.allowCoreThreadTimeOut(true);
+      executor = pool;
+    }
+  }
+
+  /**
+   * Processes the items of a batch, concurrently if possible.
+   *
+   * <p>The results are returned in the order of the items. If the processing of any item fails,
+   * the failure of the first such item in the batch is thrown, after any items not yet started are
+   * abandoned.
+   *
+   * @param sd    A ServiceDescr with the REST service used to process the items.
+   * @param items A {@code List<I>} with the items.
+   * @param task  An {@code ItemTask<I, R>} with the processing of each item.
+   * @return a {@code List<R>} with the results, in the order of the items.
+   * @throws LockssWebServicesFault if the processing of any item fails.
+   */
+  public <I, R> List<R> map(ServiceDescr sd, List<I> items, ItemTask<I, R> task)
+      throws LockssWebServicesFault {
+    return map(sd, 0, items, task);
+  }
+
+  /**
+   * Processes the items of a batch, concurrently if possible, with no more than a given number of
+   * them in progress at once.
+   *
+   * @param sd            A ServiceDescr with the REST service used to process the items.
+   * @param maxConcurrent An int with the maximum number of items of this batch in progress at
+   *                      once, in addition to the limit of the service. Zero means no limit.
+   * @param items         A {@code List<I>} with the items.
+   * @param task          An {@code ItemTask<I, R>} with the processing of each item.
+   * @return a {@code List<R>} with the results, in the order of the items.
+   * @throws LockssWebServicesFault if the processing of any item fails.
+   * @see #map(ServiceDescr, List, ItemTask)
+   */
+  public <I, R> List<R> map(ServiceDescr sd, int maxConcurrent, List<I> items,
+                            ItemTask<I, R> task) throws LockssWebServicesFault {
+    log.debug2("sd = {}, maxConcurrent = {}, items.size() = {}", sd, maxConcurrent,
+        items.size());
+
+    List<R> results = new ArrayList<>(items.size());
+
+    // Nothing to gain from handing a single item to another thread.
+    if (items.size() <= 1 || serial || executor.isShutdown()) {
+      for (I item : items) {
+        results.add(run(task, item));
+      }
+
+      return results;
+    }
+
+    Semaphore limit = getLimit(sd);
+    Semaphore batchLimit = maxConcurrent > 0 ? new Semaphore(maxConcurrent) : null;
+    List<Future<R>> futures = new ArrayList<>(items.size());
+    AtomicBoolean abandoned = new AtomicBoolean();
+
+    try {
+      for (I item : items) {
+        if (batchLimit != null) {
+          batchLimit.acquire();
+        }
+
+        try {
+          limit.acquire();
+        } catch (InterruptedException ie) {
+          if (batchLimit != null) {
+            batchLimit.release();
+          }
+
+          throw ie;
+        }
+
+        Runnable release = () -> {
+          limit.release();
+
+          if (batchLimit != null) {
+            batchLimit.release();
+          }
+        };
+
+        try {
+          futures.add(executor.submit(() -> {
+            try {
+              // Items not started when the batch fails are skipped.
+              return abandoned.get() ? null : task.apply(item);
+            } finally {
+              release.run();
+            }
+          }));
+        } catch (RejectedExecutionException ree) {
+          release.run();
+          throw new LockssWebServicesFault(ree);
+        }
+      }
+
+      for (Future<R> future : futures) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new LockssWebServicesFault(ie);
+    } catch (ExecutionException ee) {
+      Throwable cause = ee.getCause();
+      log.debug("Batch item failed", cause);
+
+      if (cause instanceof LockssWebServicesFault) {
+        throw (LockssWebServicesFault) cause;
+      }
+
+      throw new LockssWebServicesFault(cause);
+    } finally {
+      abandoned.set(true);
+    }
+
+    return results;
+  }
+
+  /**
+   * Processes one item in the current thread.
+   *
+   * @param task An {@code ItemTask<I, R>} with the processing of the item.
+   * @param item An I with the item.
+   * @return an R with the result.
+   * @throws LockssWebServicesFault if the processing of the item fails.
+   */
+  private static <I, R> R run(ItemTask<I, R> task, I item) throws LockssWebServicesFault {
+    try {
+      return task.apply(item);
+    } catch (LockssWebServicesFault lwsf) {
+      throw lwsf;
+    } catch (Exception e) {
+      throw new LockssWebServicesFault(e);
+    }
+  }
+
+  private Semaphore getLimit(ServiceDescr sd) {
+    return limits.computeIfAbsent(sd, k -> new Semaphore(maxConcurrent));
+  }
+
+  @Override
+  public void setConfig(Configuration newConfig,
+                        Configuration prevConfig,
+                        Configuration.Differences changedKeys) {
+    if (changedKeys.contains(PREFIX)) {
+      int threads = newConfig.getInt(PARAM_THREADS, DEFAULT_THREADS);
+
+      if (threads > 0 && pool != null) {
+        if (threads >= pool.getMaximumPoolSize()) {
+          pool.setMaximumPoolSize(threads);
+          pool.setCorePoolSize(threads);
+        } else {
+          pool.setCorePoolSize(threads);
+          pool.setMaximumPoolSize(threads);
+        }
+      }
+
+      serial = threads <= 0;
+      maxConcurrent = Math.max(1, newConfig.getInt(PARAM_MAX_CONCURRENT, DEFAULT_MAX_CONCURRENT));
+
+      // Batches in progress keep releasing the permits of the previous limits
+      limits.clear();
+
+      for (ServiceDescr sd : RestConnectionPool.FORWARDED_SERVICES) {
+        int limit = newConfig.getInt(PREFIX + sd.getAbbrev() + SUFFIX_MAX_CONCURRENT,
+            maxConcurrent);
+        limits.put(sd, new Semaphore(Math.max(1, limit)));
+      }
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+}
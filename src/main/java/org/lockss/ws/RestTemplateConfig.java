@@ -3,13 +3,22 @@ package org.lockss.ws;
 import org.apache.commons.io.FileUtils;
 import org.lockss.util.Constants;
 import org.lockss.util.rest.RestUtil;
+import org.lockss.ws.rest.RestBulkheads;
+import org.lockss.ws.rest.RestCallMetrics;
+import org.lockss.ws.rest.RestCircuitBreakers;
+import org.lockss.ws.rest.RestConnectionPool;
+import org.lockss.ws.rest.RestTimeouts;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
 import org.springframework.web.client.RestTemplate;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Configures and provides a {@link RestTemplate} bean for use within the SOAP Service's
@@ -17,13 +26,24 @@ import java.io.File;
  * various service implementations through the base class {@link BaseServiceImpl}. It is
  * used to forward SOAP calls to external REST services.
  *
- * {@link RestTemplate} is thread-safe.
+ * {@link RestTemplate} is thread-safe. Unless disabled, its connections come from the
+ * {@link RestConnectionPool}.
  */
 @Configuration
 public class RestTemplateConfig {
 
   @Autowired protected Environment env;
 
+  @Autowired protected RestConnectionPool connectionPool;
+
+  @Autowired protected RestCallMetrics restCallMetrics;
+
+  @Autowired protected RestBulkheads restBulkheads;
+
+  @Autowired protected RestCircuitBreakers circuitBreakers;
+
+  @Autowired protected RestTimeouts restTimeouts;
+
   /**
    * Provides the customized template used by Spring for synchronous client-side HTTP access.
    *
@@ -31,8 +51,37 @@ public class RestTemplateConfig {
    */
   @Bean
   protected RestTemplate restTemplate() {
-    return RestUtil.getRestTemplate(getConnectionTimeout(), getReadTimeout(),
-        getSizeThreshold(), getTmpDir());
+    RestTemplate restTemplate = RestUtil.getRestTemplate(getConnectionTimeout(),
+        getReadTimeout(), getSizeThreshold(), getTmpDir());
+
+    decorateRequestFactory(restTemplate);
+
+    return restTemplate;
+  }
+
+  /**
+   * Guards, limits and measures the REST calls made with a template, including those rejected by
+   * the breakers or the limits. Calls to a failing service are rejected before waiting for room in
+   * its bulkhead.
+   * <p>
+   * The interceptors of the template, if any, are set aside while its request factory is obtained,
+   * so that the factory is not already wrapped by them, and are then put back around the decorated
+   * factory.
+   *
+   * @param restTemplate A RestTemplate whose request factory is decorated.
+   */
+  void decorateRequestFactory(RestTemplate restTemplate) {
+    List<ClientHttpRequestInterceptor> interceptors =
+        new ArrayList<>(restTemplate.getInterceptors());
+    restTemplate.getInterceptors().clear();
+
+    ClientHttpRequestFactory factory = isConnectionPoolEnabled()
+        ? connectionPool.getRequestFactory(getConnectionTimeout(), getReadTimeout(), restTimeouts)
+        : restTemplate.getRequestFactory();
+
+    restTemplate.setRequestFactory(restCallMetrics.decorate(circuitBreakers.decorate(
+        restBulkheads.decorate(factory))));
+    restTemplate.setInterceptors(interceptors);
   }
 
   /** The configuration key for the connection timeout. */
@@ -47,6 +96,9 @@ public class RestTemplateConfig {
    /** Key for path to temporary directory */
    public static final String TMP_DIR_KEY = "tmp.dir";
 
+  /** The configuration key for enabling the pooling of connections. */
+  public static final String CONNECTION_POOL_ENABLED_KEY = "connection.pool.enabled";
+
   // Default timeouts.
   private final long defaultConnectTimeout = 10 * Constants.SECOND;
   private final long defaultReadTimeout = 120 * Constants.SECOND;
@@ -76,6 +128,10 @@ public class RestTemplateConfig {
     return env.getProperty(SIZE_THRESHOLD_KEY, Integer.class, DEFAULT_SIZE_THRESHOLD);
   }
 
+  protected boolean isConnectionPoolEnabled() {
+    return env.getProperty(CONNECTION_POOL_ENABLED_KEY, Boolean.class, true);
+  }
+
   protected File getTmpDir() {
     String val = env.getProperty(TMP_DIR_KEY, String.class);
     return (val == null) ? null : new File(val);
@@ -0,0 +1,114 @@
+/*
+
+Copyright (c) 2000-2023 Board of Trustees of Leland Stanford Jr. University,
+all rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+package org.lockss.ws;
+
+import java.util.concurrent.Callable;
+
+/**
+ * The parts of a SOAP request needed to forward it to the REST services from a thread other than
+ * the one handling the request, where the CXF message is not available.
+ */
+public final class SoapRequestContext {
+  private static final ThreadLocal<SoapRequestContext> current = new ThreadLocal<>();
+
+  private final String authorizationHeader;
+  private final String requestorIpAddress;
+  private final String operation;
+
+  /**
+   * Constructor.
+   *
+   * @param authorizationHeader A String with the Authorization header of the SOAP request.
+   * @param requestorIpAddress  A String with the IP address of the requestor.
+   */
+  public SoapRequestContext(String authorizationHeader, String requestorIpAddress) {
+    this(authorizationHeader, requestorIpAddress, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param authorizationHeader A String with the Authorization header of the SOAP request.
+   * @param requestorIpAddress  A String with the IP address of the requestor.
+   * @param operation           A String with the name of the SOAP operation, if known.
+   */
+  public SoapRequestContext(String authorizationHeader, String requestorIpAddress,
+                            String operation) {
+    this.authorizationHeader = authorizationHeader;
+    this.requestorIpAddress = requestorIpAddress;
+    this.operation = operation;
+  }
+
+  /**
+   * Provides the context of the SOAP request on whose behalf the current thread is working, if it
+   * is not the thread handling the request.
+   *
+   * @return a SoapRequestContext, or <code>null</code> if there is none.
+   */
+  public static SoapRequestContext getCurrent() {
+    return current.get();
+  }
+
+  public String getAuthorizationHeader() {
+    return authorizationHeader;
+  }
+
+  public String getRequestorIpAddress() {
+    return requestorIpAddress;
+  }
+
+  public String getOperation() {
+    return operation;
+  }
+
+  /**
+   * Runs a task in the current thread on behalf of the SOAP request of this context.
+   *
+   * @param task A {@code Callable<T>} with the task to be run.
+   * @return a T with the result of the task.
+   * @throws Exception if the task throws it.
+   */
+  public <T> T call(Callable<T> task) throws Exception {
+    SoapRequestContext previous = current.get();
+    current.set(this);
+
+    try {
+      return task.call();
+    } finally {
+      if (previous == null) {
+        current.remove();
+      } else {
+        current.set(previous);
+      }
+    }
+  }
+}
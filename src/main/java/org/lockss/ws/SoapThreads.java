@@ -0,0 +1,140 @@
+/*
+
+Copyright (c) 2000-2023 Board of Trustees of Leland Stanford Jr. University,
+all rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+package org.lockss.ws;
+
+import org.lockss.log.L4JLogger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creation of the threads used to handle SOAP requests and to make the REST calls that forward
+ * them.
+ *
+ * <p>When virtual threads are requested and the Java runtime provides them, blocking on REST
+ * calls costs little, as a blocked virtual thread does not hold a platform thread. Otherwise,
+ * platform daemon threads are used. Virtual threads are looked up reflectively, so that this
+ * compiles for, and runs on, runtimes that lack them.
+ */
+public final class SoapThreads {
+  /** The Spring property that enables the use of virtual threads. */
+  public static final String VIRTUAL_THREADS_KEY = "soap.threads.virtual";
+
+  private static final L4JLogger log = L4JLogger.getLogger();
+
+  // Thread.ofVirtual(), if available.
+  private static final Method ofVirtual;
+
+  // Executors.newThreadPerTaskExecutor(ThreadFactory), if available.
+  private static final Method newThreadPerTaskExecutor;
+
+  static {
+    Method virtual = null;
+    Method perTask = null;
+
+    try {
+      virtual = Thread.class.getMethod("ofVirtual");
+      perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+    } catch (NoSuchMethodException nsme) {
+      // Not available in this runtime.
+    }
+
+    ofVirtual = virtual;
+    newThreadPerTaskExecutor = perTask;
+  }
+
+  private SoapThreads() {
+  }
+
+  /**
+   * Provides an indication of whether the Java runtime provides virtual threads.
+   *
+   * @return a boolean with the indication.
+   */
+  public static boolean isVirtualSupported() {
+    return ofVirtual != null && newThreadPerTaskExecutor != null;
+  }
+
+  /**
+   * Provides a factory of threads with names made of a prefix and a sequence number.
+   *
+   * @param prefix  A String with the prefix of the thread names.
+   * @param virtual A boolean indicating whether virtual threads are wanted. If the runtime does
+   *                not provide them, platform daemon threads are created instead.
+   * @return a ThreadFactory with the factory.
+   */
+  public static ThreadFactory newThreadFactory(String prefix, boolean virtual) {
+    if (virtual && isVirtualSupported()) {
+      try {
+        Object builder = ofVirtual.invoke(null);
+        Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+        builder = builderClass.getMethod("name", String.class, long.class)
+            .invoke(builder, prefix + "-", 1L);
+        return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+      } catch (ReflectiveOperationException roe) {
+        log.warn("Cannot create virtual threads; using platform threads", roe);
+      }
+    }
+
+    AtomicInteger count = new AtomicInteger();
+
+    return r -> {
+      Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  /**
+   * Provides an executor that runs each task in a new virtual thread.
+   *
+   * @param prefix A String with the prefix of the thread names.
+   * @return an ExecutorService with the executor, or <code>null</code> if the runtime does not
+   *     provide virtual threads.
+   */
+  public static ExecutorService newVirtualThreadPerTaskExecutor(String prefix) {
+    if (!isVirtualSupported()) {
+      return null;
+    }
+
+    try {
+      return (ExecutorService) newThreadPerTaskExecutor.invoke(null,
+          newThreadFactory(prefix, true));
+    } catch (ReflectiveOperationException roe) {
+      log.warn("Cannot create virtual threads", roe);
+      return null;
+    }
+  }
+}
@@ -0,0 +1,76 @@
+/*
+
+Copyright (c) 2000-2023 Board of Trustees of Leland Stanford Jr. University,
+all rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+package org.lockss.ws;
+
+import org.apache.coyote.ProtocolHandler;
+import org.lockss.log.L4JLogger;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Handling of the SOAP requests in virtual threads, when enabled with the
+ * {@value SoapThreads#VIRTUAL_THREADS_KEY} property and provided by the Java runtime.
+ *
+ * <p>The REST calls that forward a SOAP request are made by the thread handling the request, so
+ * their blocking I/O also happens in a virtual thread.
+ */
+@Configuration
+@ConditionalOnProperty(name = SoapThreads.VIRTUAL_THREADS_KEY, havingValue = "true")
+public class VirtualThreadConfig {
+  private static final L4JLogger log = L4JLogger.getLogger();
+
+  /**
+   * Provides the customizer that replaces the request handling thread pool of the container with
+   * an executor that runs each request in a new virtual thread.
+   *
+   * @return a {@code TomcatProtocolHandlerCustomizer<ProtocolHandler>} with the customizer.
+   */
+  @Bean
+  public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer() {
+    return protocolHandler -> {
+      ExecutorService executor = SoapThreads.newVirtualThreadPerTaskExecutor("SoapRequest");
+
+      if (executor == null) {
+        log.warn("Virtual threads are not available in this Java runtime;"
+            + " using the default request handling thread pool");
+        return;
+      }
+
+      log.info("Handling SOAP requests in virtual threads");
+      protocolHandler.setExecutor(executor);
+    };
+  }
+}
@@ -27,19 +27,19 @@ in this Software without prior written authorization from Stanford University.
 */
 package org.lockss.ws.content;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.lockss.app.ServiceDescr;
+import org.lockss.config.Configuration;
 import org.lockss.log.L4JLogger;
 import org.lockss.ws.BaseServiceImpl;
 import org.lockss.ws.entities.ContentConfigurationResult;
 import org.lockss.ws.entities.LockssWebServicesFault;
 import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /** The Content Configuration SOAP web service implementation. */
 @Service
@@ -47,6 +47,24 @@ public class ContentConfigurationServiceImpl extends BaseServiceImpl
     implements ContentConfigurationService {
   private static final L4JLogger log = L4JLogger.getLogger();
 
+  // Config params
+
+  public static final String PREFIX = BaseServiceImpl.PREFIX + "contentConfiguration.";
+
+  /**
+   * Maximum number of archival unit identifiers sent to the configuration service in one request.
+   * Longer lists are split into chunks of this size. Zero disables the splitting.
+   */
+  public static final String PARAM_CHUNK_SIZE = PREFIX + "chunkSize";
+  public static final int DEFAULT_CHUNK_SIZE = 200;
+
+  /** Maximum number of chunks of one list sent to the configuration service at once. */
+  public static final String PARAM_MAX_CONCURRENT_CHUNKS = PREFIX + "maxConcurrentChunks";
+  public static final int DEFAULT_MAX_CONCURRENT_CHUNKS = 4;
+
+  private int chunkSize = DEFAULT_CHUNK_SIZE;
+  private int maxConcurrentChunks = DEFAULT_MAX_CONCURRENT_CHUNKS;
+
   /**
    * Configures the archival unit defined by its identifier.
    *
@@ -80,33 +98,11 @@ public class ContentConfigurationServiceImpl extends BaseServiceImpl
       throws LockssWebServicesFault {
     log.debug2("auIds = {}", auIds);
 
-    try {
-      // Make the REST call.
-      ResponseEntity<String> response =
-              callRestServiceEndpoint(getServiceEndpoint(ServiceDescr.SVC_CONFIG),
-              "/ws/aus/add",
-              null,
-              null,
-              HttpMethod.POST,
-              auIds,
-              "Can't add AUs");
-
-      // Get the response body.
-      try {
-        ObjectMapper mapper = new ObjectMapper();
-        List<ContentConfigurationResult> result =
-            mapper.readValue(
-                response.getBody(), new TypeReference<List<ContentConfigurationResult>>() {});
-
-        log.debug2("result = " + result);
-        return result;
-      } catch (Exception e) {
-        log.error("Cannot get body of response", e);
-        throw e;
-      }
-    } catch (Exception e) {
-      throw new LockssWebServicesFault(e);
-    }
+    List<ContentConfigurationResult> result =
+        callAusEndpoint("/ws/aus/add", HttpMethod.POST, auIds, "Can't add AUs");
+
+    log.debug2("result = {}", result);
+    return result;
   }
 
   /**
@@ -142,34 +138,20 @@ public class ContentConfigurationServiceImpl extends BaseServiceImpl
       throws LockssWebServicesFault {
     log.debug2("auIds = {}", auIds);
 
+    List<ContentConfigurationResult> result;
+
     try {
-      // Make the REST call.
-      ResponseEntity<String> response =
-          callRestServiceEndpoint(
-              getServiceEndpoint(ServiceDescr.SVC_CONFIG),
-              "/ws/aus/delete",
-              null,
-              null,
-              HttpMethod.DELETE,
-              auIds,
-              "Can't delete AUs");
-
-      // Get the response body.
-      try {
-        ObjectMapper mapper = new ObjectMapper();
-        List<ContentConfigurationResult> result =
-            mapper.readValue(
-                response.getBody(), new TypeReference<List<ContentConfigurationResult>>() {});
-
-        log.debug2("result = " + result);
-        return result;
-      } catch (Exception e) {
-        log.error("Cannot get body of response", e);
-        throw e;
+      result = callAusEndpoint("/ws/aus/delete", HttpMethod.DELETE, auIds, "Can't delete AUs");
+    } finally {
+      // Recent lookups of artifacts in the AUs may no longer be accurate, even if the deletion
+      // failed or only some of the AUs were deleted.
+      for (String auId : auIds) {
+        artifactExistence.invalidateAu(repoNamespace, auId);
       }
-    } catch (Exception e) {
-      throw new LockssWebServicesFault(e);
     }
+
+    log.debug2("result = {}", result);
+    return result;
   }
 
   /**
@@ -205,34 +187,11 @@ public class ContentConfigurationServiceImpl extends BaseServiceImpl
       throws LockssWebServicesFault {
     log.debug2("auIds = {}", auIds);
 
-    try {
-      // Make the REST call.
-      ResponseEntity<String> response =
-          callRestServiceEndpoint(
-              getServiceEndpoint(ServiceDescr.SVC_CONFIG),
-              "/ws/aus/reactivate",
-              null,
-              null,
-              HttpMethod.PUT,
-              auIds,
-              "Can't reactivate AUs");
-
-      // Get the response body.
-      try {
-        ObjectMapper mapper = new ObjectMapper();
-        List<ContentConfigurationResult> result =
-            mapper.readValue(
-                response.getBody(), new TypeReference<List<ContentConfigurationResult>>() {});
-
-        log.debug2("result = " + result);
-        return result;
-      } catch (Exception e) {
-        log.error("Cannot get body of response", e);
-        throw e;
-      }
-    } catch (Exception e) {
-      throw new LockssWebServicesFault(e);
-    }
+    List<ContentConfigurationResult> result =
+        callAusEndpoint("/ws/aus/reactivate", HttpMethod.PUT, auIds, "Can't reactivate AUs");
+
+    log.debug2("result = {}", result);
+    return result;
   }
 
   /**
@@ -268,33 +227,139 @@ public class ContentConfigurationServiceImpl extends BaseServiceImpl
       throws LockssWebServicesFault {
     log.debug2("auIds = {}", auIds);
 
+    List<ContentConfigurationResult> result =
+        callAusEndpoint("/ws/aus/deactivate", HttpMethod.PUT, auIds, "Can't deactivate AUs");
+
+    log.debug2("result = {}", result);
+    return result;
+  }
+
+  /**
+   * Sends a list of archival unit identifiers to a configuration service endpoint, split in chunks
+   * that are sent concurrently if the list is long.
+   *
+   * <p>The chunks are processed independently by the configuration service, so the failure of one
+   * chunk is reported as a failed result for each of its archival units, alongside the results of
+   * the chunks that succeeded. Only if every chunk fails is the failure thrown.
+   *
+   * @param endPointPath     A String with the URI path to the endpoint.
+   * @param httpMethod       An HttpMethod with HTTP method used to make the call.
+   * @param auIds            A {@code List<String>} with the identifiers (auids) of the archival
+   *                         units.
+   * @param exceptionMessage A String with the message to be returned with any exception.
+   * @return a {@code List<ContentConfigurationResult>} with the results, in the order of the
+   *     identifiers.
+   * @throws LockssWebServicesFault if there are problems.
+   */
+  private List<ContentConfigurationResult> callAusEndpoint(
+      String endPointPath, HttpMethod httpMethod, List<String> auIds, String exceptionMessage)
+      throws LockssWebServicesFault {
+    int size = chunkSize;
+
+    if (size <= 0 || auIds.size() <= size) {
+      return callAusEndpointOnce(endPointPath, httpMethod, auIds, exceptionMessage);
+    }
+
+    List<List<String>> chunks = new ArrayList<>();
+
+    for (int from = 0; from < auIds.size(); from += size) {
+      chunks.add(auIds.subList(from, Math.min(auIds.size(), from + size)));
+    }
+
+    log.debug2("auIds.size() = {}, chunks.size() = {}", auIds.size(), chunks.size());
+
+    // The failures of the chunks, in the order in which they happened.
+    Queue<LockssWebServicesFault> failures = new ConcurrentLinkedQueue<>();
+
+    // Send the chunks concurrently.
+    List<List<ContentConfigurationResult>> chunkResults =
+        mapConcurrently(ServiceDescr.SVC_CONFIG, maxConcurrentChunks, chunks, chunk -> {
+          try {
+            return callAusEndpointOnce(endPointPath, httpMethod, chunk, exceptionMessage);
+          } catch (LockssWebServicesFault lwsf) {
+            log.warn("{} in chunk of {} AUs", exceptionMessage, chunk.size(), lwsf);
+            failures.add(lwsf);
+            return getFailedResults(chunk, lwsf.getMessage());
+          }
+        });
+
+    // Nothing has been done if every chunk failed.
+    if (failures.size() == chunks.size()) {
+      throw failures.peek();
+    }
+
+    List<ContentConfigurationResult> result = new ArrayList<>(auIds.size());
+
+    for (List<ContentConfigurationResult> chunkResult : chunkResults) {
+      result.addAll(chunkResult);
+    }
+
+    return result;
+  }
+
+  /**
+   * Sends a list of archival unit identifiers to a configuration service endpoint in one request.
+   *
+   * @param endPointPath     A String with the URI path to the endpoint.
+   * @param httpMethod       An HttpMethod with HTTP method used to make the call.
+   * @param auIds            A {@code List<String>} with the identifiers (auids) of the archival
+   *                         units.
+   * @param exceptionMessage A String with the message to be returned with any exception.
+   * @return a {@code List<ContentConfigurationResult>} with the results.
+   * @throws LockssWebServicesFault if there are problems.
+   */
+  private List<ContentConfigurationResult> callAusEndpointOnce(
+      String endPointPath, HttpMethod httpMethod, List<String> auIds, String exceptionMessage)
+      throws LockssWebServicesFault {
     try {
-      // Make the REST call.
-      ResponseEntity<String> response =
-          callRestServiceEndpoint(
-              getServiceEndpoint(ServiceDescr.SVC_CONFIG),
-              "/ws/aus/deactivate",
-              null,
-              null,
-              HttpMethod.PUT,
-              auIds,
-              "Can't deactivate AUs");
-
-      // Get the response body.
-      try {
-        ObjectMapper mapper = new ObjectMapper();
-        List<ContentConfigurationResult> result =
-            mapper.readValue(
-                response.getBody(), new TypeReference<List<ContentConfigurationResult>>() {});
-
-        log.debug2("result = " + result);
-        return result;
-      } catch (Exception e) {
-        log.error("Cannot get body of response", e);
-        throw e;
-      }
+      // Make the REST call, decoding the results as they are received.
+      return callRestServiceEndpointForList(
+          getServiceEndpoint(ServiceDescr.SVC_CONFIG),
+          endPointPath,
+          null,
+          null,
+          httpMethod,
+          auIds,
+          ContentConfigurationResult.class,
+          exceptionMessage);
     } catch (Exception e) {
       throw new LockssWebServicesFault(e);
     }
   }
+
+  /**
+   * Provides the results of archival units that could not be processed.
+   *
+   * @param auIds   A {@code List<String>} with the identifiers (auids) of the archival units.
+   * @param message A String with the reason of the failure.
+   * @return a {@code List<ContentConfigurationResult>} with a failed result for each archival
+   *     unit, in the order of the identifiers.
+   */
+  private static List<ContentConfigurationResult> getFailedResults(List<String> auIds,
+                                                                   String message) {
+    List<ContentConfigurationResult> results = new ArrayList<>(auIds.size());
+
+    for (String auId : auIds) {
+      ContentConfigurationResult result = new ContentConfigurationResult();
+      result.setId(auId);
+      result.setIsSuccess(false);
+      result.setMessage(message);
+      results.add(result);
+    }
+
+    return results;
+  }
+
+  @Override
+  public void setConfig(Configuration newConfig,
+                        Configuration prevConfig,
+                        Configuration.Differences changedKeys) {
+    super.setConfig(newConfig, prevConfig, changedKeys);
+
+    if (changedKeys.contains(PREFIX)) {
+      chunkSize = newConfig.getInt(PARAM_CHUNK_SIZE, DEFAULT_CHUNK_SIZE);
+      maxConcurrentChunks =
+          newConfig.getInt(PARAM_MAX_CONCURRENT_CHUNKS, DEFAULT_MAX_CONCURRENT_CHUNKS);
+    }
+  }
 }
@@ -52,6 +52,34 @@ public interface ContentService {
       @WebParam(name = "url") String url, @WebParam(name = "auId") String auId)
       throws LockssWebServicesFault;
 
+  /**
+   * Provides a page of the versions of a URL in an Archival Unit.
+   *
+   * @param url A String with the URL.
+   * @param auId A String with the identifier (auid) of the archival unit.
+   * @param offset An Integer with the number of matching versions to skip, or null for none.
+   * @param limit An Integer with the maximum number of versions to return, or null for the
+   *     configured maximum.
+   * @param collectedFrom A Long with the earliest collection date of the versions to return, or
+   *     null for no lower bound.
+   * @param collectedTo A Long with the latest collection date of the versions to return, or null
+   *     for no upper bound.
+   * @param minimal A Boolean indicating whether to populate only the version and size of each
+   *     result.
+   * @return a {@code List<FileWsResult>} with the results.
+   * @throws LockssWebServicesFault if there are problems.
+   */
+  @WebMethod
+  List<FileWsResult> getVersionsPage(
+      @WebParam(name = "url") String url,
+      @WebParam(name = "auId") String auId,
+      @WebParam(name = "offset") Integer offset,
+      @WebParam(name = "limit") Integer limit,
+      @WebParam(name = "collectedFrom") Long collectedFrom,
+      @WebParam(name = "collectedTo") Long collectedTo,
+      @WebParam(name = "minimal") Boolean minimal)
+      throws LockssWebServicesFault;
+
   /**
    * Provides an indication of whether the content defined by a URL and Archival Unit is cached.
    *
@@ -108,4 +136,88 @@ public interface ContentService {
       @WebParam(name = "auId") String auId,
       @WebParam(name = "version") Integer version)
       throws LockssWebServicesFault;
+
+  /**
+   * Provides a byte range of the content defined by a URL and Archival Unit.
+   *
+   * @param url A String with the URL.
+   * @param auId A String with the identifier (auid) of the archival unit.
+   * @param offset A Long with the offset of the first byte of the range.
+   * @param length A Long with the maximum number of bytes in the range, or null for the rest of
+   *     the content.
+   * @return a ContentResult with the result of the operation.
+   * @throws LockssWebServicesFault if there are problems.
+   */
+  @WebMethod
+  ContentResult fetchFileRange(
+      @WebParam(name = "url") String url,
+      @WebParam(name = "auId") String auId,
+      @WebParam(name = "offset") Long offset,
+      @WebParam(name = "length") Long length)
+      throws LockssWebServicesFault;
+
+  /**
+   * Provides a byte range of the content defined by a URL, an Archival Unit and a version.
+   *
+   * @param url A String with the URL.
+   * @param auId A String with the identifier (auid) of the archival unit.
+   * @param version An Integer with the requested version of the content.
+   * @param offset A Long with the offset of the first byte of the range.
+   * @param length A Long with the maximum number of bytes in the range, or null for the rest of
+   *     the content.
+   * @return a ContentResult with the result of the operation.
+   * @throws LockssWebServicesFault if there are problems.
+   */
+  @WebMethod
+  ContentResult fetchVersionedFileRange(
+      @WebParam(name = "url") String url,
+      @WebParam(name = "auId") String auId,
+      @WebParam(name = "version") Integer version,
+      @WebParam(name = "offset") Long offset,
+      @WebParam(name = "length") Long length)
+      throws LockssWebServicesFault;
+
+  /**
+   * Provides the properties of the content defined by a URL and Archival Unit, without the
+   * content itself.
+   *
+   * @param url A String with the URL.
+   * @param auId A String with the identifier (auid) of the archival unit.
+   * @return a ContentResult with the properties and no data handler.
+   * @throws LockssWebServicesFault if there are problems.
+   */
+  @WebMethod
+  ContentResult fetchFileProperties(
+      @WebParam(name = "url") String url, @WebParam(name = "auId") String auId)
+      throws LockssWebServicesFault;
+
+  /**
+   * Provides the properties of the content defined by a URL, an Archival Unit and a version,
+   * without the content itself.
+   *
+   * @param url A String with the URL.
+   * @param auId A String with the identifier (auid) of the archival unit.
+   * @param version An Integer with the requested version of the content.
+   * @return a ContentResult with the properties and no data handler.
+   * @throws LockssWebServicesFault if there are problems.
+   */
+  @WebMethod
+  ContentResult fetchVersionedFileProperties(
+      @WebParam(name = "url") String url,
+      @WebParam(name = "auId") String auId,
+      @WebParam(name = "version") Integer version)
+      throws LockssWebServicesFault;
+
+  /**
+   * Provides indications of whether the content defined by each of a list of URLs, Archival Units
+   * and optional versions is cached.
+   *
+   * @param queries A {@code List<UrlCachedQuery>} with the URLs, Archival Units and versions. A
+   *     null version refers to the latest version.
+   * @return a {@code List<Boolean>} with the indications, in the order of the queries.
+   * @throws LockssWebServicesFault if there are problems.
+   */
+  @WebMethod
+  List<Boolean> areUrlsCached(@WebParam(name = "queries") List<UrlCachedQuery> queries)
+      throws LockssWebServicesFault;
 }
@@ -28,8 +28,17 @@ in this Software without prior written authorization from Stanford University.
 package org.lockss.ws.content;
 
 import jakarta.activation.DataHandler;
+import jakarta.xml.ws.soap.MTOM;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.cxf.jaxrs.ext.multipart.InputStreamDataSource;
+import org.lockss.app.ServiceDescr;
+import org.lockss.config.Configuration;
+import org.lockss.util.rest.RestUtil;
+import org.lockss.util.rest.SpringHeaderUtil;
+import org.lockss.util.rest.exception.LockssRestException;
 import org.lockss.util.rest.repo.LockssRepository;
+import org.lockss.util.rest.repo.RestLockssRepository;
 import org.lockss.util.rest.repo.model.Artifact;
 import org.lockss.util.rest.repo.model.ArtifactData;
 import org.lockss.log.L4JLogger;
@@ -37,18 +46,39 @@ import org.lockss.ws.BaseServiceImpl;
 import org.lockss.ws.entities.ContentResult;
 import org.lockss.ws.entities.FileWsResult;
 import org.lockss.ws.entities.LockssWebServicesFault;
-import org.springframework.http.HttpHeaders;
+import org.lockss.ws.rest.RestCallMetrics;
+import org.springframework.http.*;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Properties;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.*;
 
 /** The Content SOAP web service implementation. */
+@MTOM
 @Service
 public class ContentServiceImpl extends BaseServiceImpl implements ContentService {
   private static final L4JLogger log = L4JLogger.getLogger();
 
+  public static final String PREFIX = BaseServiceImpl.PREFIX + "content.";
+
+  /**
+   * Maximum number of URLs of one archival unit looked up by one task of an areUrlsCached batch.
+   */
+  public static final String PARAM_URL_CACHED_CHUNK_SIZE = PREFIX + "urlCachedChunkSize";
+  public static final int DEFAULT_URL_CACHED_CHUNK_SIZE = 100;
+
+  /** Maximum number of versions returned by getVersionsPage. */
+  public static final String PARAM_VERSIONS_MAX_PAGE_SIZE = PREFIX + "versionsMaxPageSize";
+  public static final int DEFAULT_VERSIONS_MAX_PAGE_SIZE = 1000;
+
+  private int urlCachedChunkSize = DEFAULT_URL_CACHED_CHUNK_SIZE;
+  private int versionsMaxPageSize = DEFAULT_VERSIONS_MAX_PAGE_SIZE;
+
   /**
    * Provides a list of the versions of a URL in an Archival Unit.
    *
@@ -88,6 +118,102 @@ public class ContentServiceImpl extends BaseServiceImpl implements ContentServic
     }
   }
 
+  /**
+   * Provides a page of the versions of a URL in an Archival Unit.
+   * <p>
+   * The versions are read lazily from the repository, which is no longer queried once the page is
+   * full.
+   *
+   * @param url A String with the URL.
+   * @param auId A String with the identifier (auid) of the archival unit.
+   * @param offset An Integer with the number of matching versions to skip, or null for none.
+   * @param limit An Integer with the maximum number of versions to return, or null for the
+   *     configured maximum.
+   * @param collectedFrom A Long with the earliest collection date of the versions to return, or
+   *     null for no lower bound.
+   * @param collectedTo A Long with the latest collection date of the versions to return, or null
+   *     for no upper bound.
+   * @param minimal A Boolean indicating whether to populate only the version and size of each
+   *     result.
+   * @return a {@code List<FileWsResult>} with the results.
+   * @throws LockssWebServicesFault if there are problems.
+   */
+  @Override
+  public List<FileWsResult> getVersionsPage(String url, String auId, Integer offset,
+                                            Integer limit, Long collectedFrom, Long collectedTo,
+                                            Boolean minimal)
+      throws LockssWebServicesFault {
+    log.debug2("url = {}", url);
+    log.debug2("auId = {}", auId);
+    log.debug2("offset = {}", offset);
+    log.debug2("limit = {}", limit);
+    log.debug2("collectedFrom = {}", collectedFrom);
+    log.debug2("collectedTo = {}", collectedTo);
+    log.debug2("minimal = {}", minimal);
+
+    try {
+      if (offset != null && offset < 0) {
+        throw new IllegalArgumentException("Invalid negative offset: " + offset);
+      }
+
+      if (limit != null && limit <= 0) {
+        throw new IllegalArgumentException("Invalid non-positive limit: " + limit);
+      }
+
+      int toSkip = offset == null ? 0 : offset;
+      int pageSize = limit == null ? versionsMaxPageSize : Math.min(limit, versionsMaxPageSize);
+      boolean isMinimal = Boolean.TRUE.equals(minimal);
+
+      List<FileWsResult> result = new ArrayList<>(Math.min(pageSize, 100));
+
+      if (pageSize <= 0) {
+        log.debug2("result = {}", result);
+        return result;
+      }
+
+      // Loop through the artifacts in the response from the REST service, stopping as soon as the
+      // page is full so that no further pages are requested.
+      for (Artifact artifact :
+          getRestLockssRepository()
+              .getArtifactsAllVersions(repoNamespace, auId, url)) {
+        log.trace("artifact = {}", artifact);
+
+        long collectionDate = artifact.getCollectionDate();
+
+        if ((collectedFrom != null && collectionDate < collectedFrom)
+            || (collectedTo != null && collectionDate > collectedTo)) {
+          continue;
+        }
+
+        if (toSkip > 0) {
+          toSkip--;
+          continue;
+        }
+
+        // Create the result data for this artifact.
+        FileWsResult fileWsResult = new FileWsResult();
+        fileWsResult.setVersion(artifact.getVersion());
+        fileWsResult.setSize(artifact.getContentLength());
+
+        if (!isMinimal) {
+          fileWsResult.setUrl(artifact.getUri());
+          fileWsResult.setCollectionDate(collectionDate);
+        }
+
+        result.add(fileWsResult);
+
+        if (result.size() >= pageSize) {
+          break;
+        }
+      }
+
+      log.debug2("result = {}", result);
+      return result;
+    } catch (Exception e) {
+      throw new LockssWebServicesFault(e);
+    }
+  }
+
   /**
    * Provides an indication of whether the content defined by a URL and Archival Unit is cached.
    *
@@ -103,8 +229,7 @@ public class ContentServiceImpl extends BaseServiceImpl implements ContentServic
 
     try {
       boolean result =
-        getRestLockssRepository().getArtifact(repoNamespace, auId, url)
-              != null;
+          findArtifact(getRestLockssRepository(), auId, url, null) != null;
       log.debug2("result = {}", result);
       return result;
     } catch (Exception e) {
@@ -131,10 +256,7 @@ public class ContentServiceImpl extends BaseServiceImpl implements ContentServic
 
     try {
       boolean result =
-          getRestLockssRepository()
-                  .getArtifactVersion(
-                      repoNamespace, auId, url, version, false)
-              != null;
+          findArtifact(getRestLockssRepository(), auId, url, version) != null;
       log.debug2("result = {}", result);
       return result;
     } catch (Exception e) {
@@ -142,6 +264,103 @@ public class ContentServiceImpl extends BaseServiceImpl implements ContentServic
     }
   }
 
+  /**
+   * Provides indications of whether the content defined by each of a list of URLs, Archival Units
+   * and optional versions is cached.
+   * <p>
+   * The queries are grouped by Archival Unit and each group is split into chunks that are looked
+   * up concurrently, each with a single repository client.
+   *
+   * @param queries A {@code List<UrlCachedQuery>} with the URLs, Archival Units and versions. A
+   *     null version refers to the latest version.
+   * @return a {@code List<Boolean>} with the indications, in the order of the queries.
+   * @throws LockssWebServicesFault if there are problems.
+   */
+  @Override
+  public List<Boolean> areUrlsCached(List<UrlCachedQuery> queries)
+      throws LockssWebServicesFault {
+    log.debug2("queries = {}", queries);
+
+    if (queries == null) {
+      throw new LockssWebServicesFault(new IllegalArgumentException("Missing required queries"));
+    }
+
+    // Group the positions of the queries by Archival Unit.
+    Map<String, List<Integer>> positionsByAu = new LinkedHashMap<>();
+
+    for (int i = 0; i < queries.size(); i++) {
+      UrlCachedQuery query = queries.get(i);
+
+      if (query == null || query.getAuId() == null || query.getAuId().isEmpty()) {
+        throw new LockssWebServicesFault(new IllegalArgumentException(
+            "Missing required Archival Unit identifier (auId) in query " + i));
+      }
+
+      if (query.getUrl() == null || query.getUrl().isEmpty()) {
+        throw new LockssWebServicesFault(
+            new IllegalArgumentException("Missing required URL in query " + i));
+      }
+
+      positionsByAu.computeIfAbsent(query.getAuId(), k -> new ArrayList<>()).add(i);
+    }
+
+    // Split each group into chunks.
+    int size = urlCachedChunkSize > 0 ? urlCachedChunkSize : Integer.MAX_VALUE;
+    List<List<Integer>> chunks = new ArrayList<>();
+
+    for (List<Integer> positions : positionsByAu.values()) {
+      for (int from = 0; from < positions.size(); from += size) {
+        chunks.add(positions.subList(from, (int) Math.min(positions.size(), (long) from + size)));
+      }
+    }
+
+    log.trace("positionsByAu.size() = {}, chunks.size() = {}", positionsByAu.size(),
+        chunks.size());
+
+    List<List<Boolean>> chunkResults =
+        mapConcurrently(ServiceDescr.SVC_REPO, chunks, chunk -> {
+          RestLockssRepository repository = getRestLockssRepository();
+          List<Boolean> chunkResult = new ArrayList<>(chunk.size());
+
+          for (Integer position : chunk) {
+            chunkResult.add(isUrlCached(repository, queries.get(position)));
+          }
+
+          return chunkResult;
+        });
+
+    // Put the results back in the order of the queries.
+    Boolean[] result = new Boolean[queries.size()];
+
+    for (int i = 0; i < chunks.size(); i++) {
+      List<Integer> chunk = chunks.get(i);
+      List<Boolean> chunkResult = chunkResults.get(i);
+
+      for (int j = 0; j < chunk.size(); j++) {
+        result[chunk.get(j)] = chunkResult.get(j);
+      }
+    }
+
+    log.debug2("result = {}", Arrays.asList(result));
+    return Arrays.asList(result);
+  }
+
+  /**
+   * Provides an indication of whether the content defined by a query is cached.
+   *
+   * @param repository the RestLockssRepository used to look up the content.
+   * @param query A UrlCachedQuery with the URL, Archival Unit and optional version.
+   * @return a boolean with the indication.
+   * @throws Exception if there are problems.
+   */
+  private boolean isUrlCached(RestLockssRepository repository, UrlCachedQuery query)
+      throws Exception {
+    Artifact artifact =
+        findArtifact(repository, query.getAuId(), query.getUrl(), query.getVersion());
+    log.trace("artifact = {}", artifact);
+    return artifact != null;
+  }
+
   /**
    * Provides the content defined by a URL and Archival Unit.
    *
@@ -165,12 +384,12 @@ public class ContentServiceImpl extends BaseServiceImpl implements ContentServic
 
       ContentResult result = new ContentResult();
 
-      Artifact artifact =
-          getRestLockssRepository().getArtifact(repoNamespace, auId, url);
+      RestLockssRepository repository = getRestLockssRepository();
+      Artifact artifact = findArtifact(repository, auId, url, null);
       log.trace("artifact = {}", artifact);
 
       if (artifact != null) {
-        result = getContentResultFromArtifact(artifact);
+        result = getContentResultFromArtifact(repository, artifact);
       }
 
       log.debug2("result = {}", result);
@@ -210,13 +429,113 @@ public class ContentServiceImpl extends BaseServiceImpl implements ContentServic
 
       ContentResult result = new ContentResult();
 
-      Artifact artifact =
-          getRestLockssRepository()
-              .getArtifactVersion(repoNamespace, auId, url, version, false);
+      RestLockssRepository repository = getRestLockssRepository();
+      Artifact artifact = findArtifact(repository, auId, url, version);
+      log.trace("artifact = {}", artifact);
+
+      if (artifact != null) {
+        result = getContentResultFromArtifact(repository, artifact);
+      }
+
+      log.debug2("result = {}", result);
+      return result;
+    } catch (Exception e) {
+      throw new LockssWebServicesFault(e);
+    }
+  }
+
+  /**
+   * Provides a byte range of the content defined by a URL and Archival Unit.
+   *
+   * @param url A String with the URL.
+   * @param auId A String with the identifier (auid) of the archival unit.
+   * @param offset A Long with the offset of the first byte of the range.
+   * @param length A Long with the maximum number of bytes in the range, or null for the rest of
+   *     the content.
+   * @return a ContentResult with the result of the operation.
+   * @throws LockssWebServicesFault if there are problems.
+   */
+  @Override
+  public ContentResult fetchFileRange(String url, String auId, Long offset, Long length)
+      throws LockssWebServicesFault {
+    log.debug2("url = {}", url);
+    log.debug2("auId = {}", auId);
+    log.debug2("offset = {}", offset);
+    log.debug2("length = {}", length);
+
+    try {
+      if (auId == null || auId.isEmpty()) {
+        throw new IllegalArgumentException("Missing required Archival Unit " + "identifier (auId)");
+      }
+
+      if (url == null || url.isEmpty()) {
+        throw new IllegalArgumentException("Missing required URL");
+      }
+
+      validateRange(offset, length);
+
+      ContentResult result = new ContentResult();
+
+      RestLockssRepository repository = getRestLockssRepository();
+      Artifact artifact = findArtifact(repository, auId, url, null);
+      log.trace("artifact = {}", artifact);
+
+      if (artifact != null) {
+        result = getContentResultFromArtifactRange(repository, artifact, offset, length);
+      }
+
+      log.debug2("result = {}", result);
+      return result;
+    } catch (Exception e) {
+      throw new LockssWebServicesFault(e);
+    }
+  }
+
+  /**
+   * Provides a byte range of the content defined by a URL, an Archival Unit and a version.
+   *
+   * @param url A String with the URL.
+   * @param auId A String with the identifier (auid) of the archival unit.
+   * @param version An Integer with the requested version of the content.
+   * @param offset A Long with the offset of the first byte of the range.
+   * @param length A Long with the maximum number of bytes in the range, or null for the rest of
+   *     the content.
+   * @return a ContentResult with the result of the operation.
+   * @throws LockssWebServicesFault if there are problems.
+   */
+  @Override
+  public ContentResult fetchVersionedFileRange(String url, String auId, Integer version,
+                                               Long offset, Long length)
+      throws LockssWebServicesFault {
+    log.debug2("url = {}", url);
+    log.debug2("auId = {}", auId);
+    log.debug2("version = {}", version);
+    log.debug2("offset = {}", offset);
+    log.debug2("length = {}", length);
+
+    try {
+      if (auId == null || auId.isEmpty()) {
+        throw new IllegalArgumentException("Missing required Archival Unit " + "identifier (auId)");
+      }
+
+      if (url == null || url.isEmpty()) {
+        throw new IllegalArgumentException("Missing required URL");
+      }
+
+      if (version == null) {
+        throw new IllegalArgumentException("Missing required version");
+      }
+
+      validateRange(offset, length);
+
+      ContentResult result = new ContentResult();
+
+      RestLockssRepository repository = getRestLockssRepository();
+      Artifact artifact = findArtifact(repository, auId, url, version);
       log.trace("artifact = {}", artifact);
 
       if (artifact != null) {
-        result = getContentResultFromArtifact(artifact);
+        result = getContentResultFromArtifactRange(repository, artifact, offset, length);
       }
 
       log.debug2("result = {}", result);
@@ -226,44 +545,419 @@ public class ContentServiceImpl extends BaseServiceImpl implements ContentServic
     }
   }
 
+  /**
+   * Provides the properties of the content defined by a URL and Archival Unit, without the
+   * content itself.
+   *
+   * @param url A String with the URL.
+   * @param auId A String with the identifier (auid) of the archival unit.
+   * @return a ContentResult with the properties and no data handler.
+   * @throws LockssWebServicesFault if there are problems.
+   */
+  @Override
+  public ContentResult fetchFileProperties(String url, String auId)
+      throws LockssWebServicesFault {
+    log.debug2("url = {}", url);
+    log.debug2("auId = {}", auId);
+
+    try {
+      if (auId == null || auId.isEmpty()) {
+        throw new IllegalArgumentException("Missing required Archival Unit " + "identifier (auId)");
+      }
+
+      if (url == null || url.isEmpty()) {
+        throw new IllegalArgumentException("Missing required URL");
+      }
+
+      ContentResult result = new ContentResult();
+
+      RestLockssRepository repository = getRestLockssRepository();
+      Artifact artifact = findArtifact(repository, auId, url, null);
+      log.trace("artifact = {}", artifact);
+
+      if (artifact != null) {
+        result = getPropertiesResultFromArtifact(repository, artifact);
+      }
+
+      log.debug2("result = {}", result);
+      return result;
+    } catch (Exception e) {
+      throw new LockssWebServicesFault(e);
+    }
+  }
+
+  /**
+   * Provides the properties of the content defined by a URL, an Archival Unit and a version,
+   * without the content itself.
+   *
+   * @param url A String with the URL.
+   * @param auId A String with the identifier (auid) of the archival unit.
+   * @param version An Integer with the requested version of the content.
+   * @return a ContentResult with the properties and no data handler.
+   * @throws LockssWebServicesFault if there are problems.
+   */
+  @Override
+  public ContentResult fetchVersionedFileProperties(String url, String auId, Integer version)
+      throws LockssWebServicesFault {
+    log.debug2("url = {}", url);
+    log.debug2("auId = {}", auId);
+    log.debug2("version = {}", version);
+
+    try {
+      if (auId == null || auId.isEmpty()) {
+        throw new IllegalArgumentException("Missing required Archival Unit " + "identifier (auId)");
+      }
+
+      if (url == null || url.isEmpty()) {
+        throw new IllegalArgumentException("Missing required URL");
+      }
+
+      if (version == null) {
+        throw new IllegalArgumentException("Missing required version");
+      }
+
+      ContentResult result = new ContentResult();
+
+      RestLockssRepository repository = getRestLockssRepository();
+      Artifact artifact = findArtifact(repository, auId, url, version);
+      log.trace("artifact = {}", artifact);
+
+      if (artifact != null) {
+        result = getPropertiesResultFromArtifact(repository, artifact);
+      }
+
+      log.debug2("result = {}", result);
+      return result;
+    } catch (Exception e) {
+      throw new LockssWebServicesFault(e);
+    }
+  }
+
+  /**
+   * Provides the committed artifact of a URL in an Archival Unit, using recent lookups made with
+   * the same credentials if possible.
+   *
+   * @param repository the RestLockssRepository used to look up the artifact.
+   * @param auId A String with the identifier (auid) of the archival unit.
+   * @param url A String with the URL.
+   * @param version An Integer with the version, or null for the latest version.
+   * @return the Artifact, or null if there is none.
+   * @throws IOException if there are problems looking up the artifact.
+   */
+  private Artifact findArtifact(RestLockssRepository repository, String auId, String url,
+                                Integer version) throws IOException {
+    return artifactExistence.get(repoNamespace, auId, url, version,
+        getSoapRequestAuthorizationHeader(), () -> version == null
+            ? repository.getArtifact(repoNamespace, auId, url)
+            : repository.getArtifactVersion(repoNamespace, auId, url, version, false));
+  }
+
+  /**
+   * Validates the parameters of a byte range request.
+   *
+   * @param offset A Long with the offset of the first byte of the range.
+   * @param length A Long with the maximum number of bytes in the range, or null.
+   */
+  private static void validateRange(Long offset, Long length) {
+    if (offset == null) {
+      throw new IllegalArgumentException("Missing required offset");
+    }
+
+    if (offset < 0) {
+      throw new IllegalArgumentException("Invalid negative offset: " + offset);
+    }
+
+    if (length != null && length <= 0) {
+      throw new IllegalArgumentException("Invalid non-positive length: " + length);
+    }
+  }
+
   /**
    * Provides the SOAP service operation result for a given Artifact.
+   * <p>
+   * The payload is read from the repository as the attachment is written, so no part of it is
+   * held in memory or in a temporary file. It is opened only once the rest of the result has been
+   * built, and closed if anything fails before the result is returned.
    *
+   * @param repository the RestLockssRepository from which the Artifact was obtained.
    * @param artifact the Artifact that is the data source.
    * @return a ContentResult with the SOAP service operation result.
    * @throws Exception if there are problems.
    */
-  private ContentResult getContentResultFromArtifact(Artifact artifact) throws Exception {
+  private ContentResult getContentResultFromArtifact(RestLockssRepository repository,
+                                                     Artifact artifact) throws Exception {
     ContentResult result = new ContentResult();
 
+    // Only the headers are needed from the full artifact data.
     ArtifactData artifactData =
-        getRestLockssRepository().getArtifactData(artifact, LockssRepository.IncludeContent.ALWAYS);
+        repository.getArtifactData(artifact, LockssRepository.IncludeContent.NEVER);
 
     if (artifactData != null) {
       HttpHeaders headers = artifactData.getHttpHeaders();
 
       String contentType = headers.getFirst(HttpHeaders.CONTENT_TYPE);
 
-      result.setDataHandler(
-          new DataHandler(
-              new InputStreamDataSource(
-                  artifactData.getInputStream(), contentType, artifact.getUri())));
+      result.setProperties(getPropertiesFromHeaders(headers));
 
-      Properties props = new Properties();
+      setPayload(result, openArtifactPayload(artifact), contentType, artifact.getUri());
+    }
 
-      for (String key : artifactData.getHttpHeaders().keySet()) {
-        // TODO: Replace with StringUtil method once StringUtil has been
-        // moved from the lockss-core project to the lockss-util project.
-        String value =
-            separatedString(artifactData.getHttpHeaders().get(key), "", ",", "", new StringBuilder())
-                .toString();
-        props.setProperty(key, value);
-      }
+    log.debug2("result = {}", result);
+    return result;
+  }
+
+  /**
+   * Provides the SOAP service operation result with only the properties of a given Artifact.
+   * <p>
+   * The repository is asked for the artifact headers only, so no content stream is opened.
+   *
+   * @param repository the RestLockssRepository from which the Artifact was obtained.
+   * @param artifact the Artifact that is the data source.
+   * @return a ContentResult with the properties and no data handler.
+   * @throws Exception if there are problems.
+   */
+  private ContentResult getPropertiesResultFromArtifact(RestLockssRepository repository,
+                                                        Artifact artifact) throws Exception {
+    ContentResult result = new ContentResult();
+
+    ArtifactData artifactData =
+        repository.getArtifactData(artifact, LockssRepository.IncludeContent.NEVER);
+
+    if (artifactData != null) {
+      result.setProperties(getPropertiesFromHeaders(artifactData.getHttpHeaders()));
+    }
+
+    log.debug2("result = {}", result);
+    return result;
+  }
+
+  /**
+   * Provides the SOAP service operation result for a byte range of a given Artifact.
+   * <p>
+   * The range is forwarded to the repository as an HTTP Range request on the artifact payload,
+   * so that only the requested slice crosses the wire. If the repository ignores the Range header
+   * and returns the full payload, the slice is cut out of it as it is read. Either way the slice
+   * is streamed to the attachment without being buffered.
+   *
+   * @param repository the RestLockssRepository from which the Artifact was obtained.
+   * @param artifact the Artifact that is the data source.
+   * @param offset A long with the offset of the first byte of the range.
+   * @param length A Long with the maximum number of bytes in the range, or null for the rest of
+   *     the content.
+   * @return a ContentResult with the SOAP service operation result.
+   * @throws Exception if there are problems.
+   */
+  private ContentResult getContentResultFromArtifactRange(RestLockssRepository repository,
+                                                          Artifact artifact,
+                                                          long offset,
+                                                          Long length) throws Exception {
+    ContentResult result = new ContentResult();
+
+    long totalLength = artifact.getContentLength();
+    log.trace("totalLength = {}", totalLength);
+
+    if (offset >= totalLength) {
+      throw new IllegalArgumentException("Requested range not satisfiable: offset " + offset
+          + " is beyond content length " + totalLength);
+    }
+
+    // The last byte of the range, inclusive. The length is compared with the remaining content
+    // rather than added to the offset, which could overflow.
+    long last = length == null || length >= totalLength - offset
+        ? totalLength - 1 : offset + length - 1;
+    long count = last - offset + 1;
+    log.trace("last = {}, count = {}", last, count);
+
+    // Only the headers are needed from the full artifact data.
+    ArtifactData artifactData =
+        repository.getArtifactData(artifact, LockssRepository.IncludeContent.NEVER);
+
+    if (artifactData != null) {
+      HttpHeaders headers = artifactData.getHttpHeaders();
+
+      String contentType = headers.getFirst(HttpHeaders.CONTENT_TYPE);
+
+      Properties props = getPropertiesFromHeaders(headers);
+      props.setProperty(HttpHeaders.CONTENT_RANGE,
+          "bytes " + offset + "-" + last + "/" + totalLength);
+      props.setProperty(HttpHeaders.CONTENT_LENGTH, String.valueOf(count));
 
       result.setProperties(props);
+
+      setPayload(result, openArtifactPayload(artifact, offset, count), contentType,
+          artifact.getUri());
     }
 
     log.debug2("result = {}", result);
     return result;
   }
+
+  /**
+   * Attaches an open payload to an otherwise complete SOAP service operation result.
+   * <p>
+   * The payload holds a pooled connection to the repository until it is closed, so it is closed
+   * here if the result can't be completed.
+   *
+   * @param result the ContentResult to which the payload is attached.
+   * @param payload an InputStream with the payload.
+   * @param contentType a String with the content type of the payload.
+   * @param name a String with the name of the payload.
+   * @throws Exception if there are problems.
+   */
+  private void setPayload(ContentResult result, InputStream payload, String contentType,
+                          String name) throws Exception {
+    try {
+      result.setDataHandler(
+          new DataHandler(new InputStreamDataSource(payload, contentType, name)));
+    } catch (Exception | Error e) {
+      IOUtils.closeQuietly(payload);
+      throw e;
+    }
+  }
+
+  /**
+   * Opens the payload of an Artifact in the repository service.
+   * <p>
+   * A RestTemplate closes the response once its extractor returns, so the request is made with
+   * the request factory of the template instead. The response, and the connection to the
+   * repository, stay open until the returned stream is closed.
+   *
+   * @param artifact the Artifact whose payload is requested.
+   * @return an InputStream with the payload, which must be closed.
+   * @throws IOException if there are problems making the REST call.
+   */
+  private InputStream openArtifactPayload(Artifact artifact) throws IOException {
+    return openArtifactPayload(artifact, -1, -1);
+  }
+
+  /**
+   * Opens a byte range of the payload of an Artifact in the repository service.
+   * <p>
+   * If the repository ignores the Range header and returns the full payload, the bytes before the
+   * range are read and discarded.
+   *
+   * @param artifact the Artifact whose payload is requested.
+   * @param offset A long with the offset of the first byte of the range, or a negative number
+   *     for the whole payload.
+   * @param count A long with the number of bytes in the range.
+   * @return an InputStream with the bytes in the range, which must be closed.
+   * @throws IOException if there are problems making the REST call.
+   */
+  private InputStream openArtifactPayload(Artifact artifact, long offset, long count)
+      throws IOException {
+    Map<String, String> uriVariables = new HashMap<>();
+    uriVariables.put("uuid", artifact.getIdentifier());
+
+    Map<String, String> queryParams = new HashMap<>();
+    queryParams.put("namespace", artifact.getNamespace());
+
+    String uriString = getServiceEndpoint(ServiceDescr.SVC_REPO) + "/artifacts/{uuid}/payload";
+    URI uri = RestUtil.getRestUri(uriString, uriVariables, queryParams);
+    log.trace("uri = {}", uri);
+
+    String exceptionMessage = "Cannot fetch payload of artifact " + artifact.getIdentifier();
+    String previousTemplate = RestCallMetrics.setPathTemplate(uriString);
+    ClientHttpResponse response = null;
+
+    try {
+      ClientHttpRequest request =
+          restTemplate.getRequestFactory().createRequest(uri, HttpMethod.GET);
+      request.getHeaders().setAccept(
+          Collections.singletonList(MediaType.APPLICATION_OCTET_STREAM));
+      if (offset >= 0) {
+        request.getHeaders().setRange(
+            Collections.singletonList(HttpRange.createByteRange(offset, offset + count - 1)));
+      }
+      SpringHeaderUtil.addHeaders(getAuthHeaders(), request.getHeaders(), true);
+      log.trace("requestHeaders = {}", request.getHeaders());
+
+      response = request.execute();
+      HttpStatusCode statusCode = response.getStatusCode();
+      log.trace("statusCode = {}", statusCode);
+
+      if (!statusCode.is2xxSuccessful()) {
+        throw newHttpException(exceptionMessage, statusCode, null);
+      }
+
+      InputStream in = new ResponseInputStream(response);
+
+      if (offset < 0) {
+        return in;
+      }
+
+      if (statusCode.value() != HttpStatus.PARTIAL_CONTENT.value()) {
+        // The repository ignored the range: skip to the start of the slice.
+        log.warn("Repository ignored the range request for artifact {}: downloading and"
+            + " discarding {} bytes before the range", artifact.getIdentifier(), offset);
+        IOUtils.skipFully(in, offset);
+      }
+
+      return new BoundedInputStream(in, count);
+    } catch (IOException | RuntimeException e) {
+      log.error(exceptionMessage, e);
+
+      if (response != null) {
+        response.close();
+      }
+
+      throw e instanceof LockssRestException
+          ? (LockssRestException) e : new LockssRestException(exceptionMessage, e);
+    } finally {
+      RestCallMetrics.setPathTemplate(previousTemplate);
+    }
+  }
+
+  /**
+   * Provides the SOAP result properties corresponding to the HTTP headers of an Artifact.
+   *
+   * @param headers the HttpHeaders of the Artifact.
+   * @return a Properties with the SOAP result properties.
+   */
+  private Properties getPropertiesFromHeaders(HttpHeaders headers) {
+    Properties props = new Properties();
+
+    for (String key : headers.keySet()) {
+      // TODO: Replace with StringUtil method once StringUtil has been
+      // moved from the lockss-core project to the lockss-util project.
+      String value =
+          separatedString(headers.get(key), "", ",", "", new StringBuilder())
+              .toString();
+      props.setProperty(key, value);
+    }
+
+    return props;
+  }
+
+  @Override
+  public void setConfig(Configuration newConfig,
+                        Configuration prevConfig,
+                        Configuration.Differences changedKeys) {
+    super.setConfig(newConfig, prevConfig, changedKeys);
+
+    if (changedKeys.contains(PREFIX)) {
+      urlCachedChunkSize =
+          newConfig.getInt(PARAM_URL_CACHED_CHUNK_SIZE, DEFAULT_URL_CACHED_CHUNK_SIZE);
+      versionsMaxPageSize =
+          newConfig.getInt(PARAM_VERSIONS_MAX_PAGE_SIZE, DEFAULT_VERSIONS_MAX_PAGE_SIZE);
+    }
+  }
+
+  /** The body of a REST response, which closes the response when closed. */
+  private static class ResponseInputStream extends FilterInputStream {
+    private final ClientHttpResponse response;
+
+    ResponseInputStream(ClientHttpResponse response) throws IOException {
+      super(response.getBody());
+      this.response = response;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        super.close();
+      } finally {
+        response.close();
+      }
+    }
+  }
 }
@@ -0,0 +1,94 @@
+/*
+
+Copyright (c) 2000-2023 Board of Trustees of Leland Stanford Jr. University,
+all rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+package org.lockss.ws.content;
+
+/**
+ * A URL, Archival Unit and optional version whose cached status is queried in a batch.
+ */
+public class UrlCachedQuery {
+  private String url;
+  private String auId;
+  private Integer version;
+
+  public UrlCachedQuery() {
+  }
+
+  public UrlCachedQuery(String url, String auId, Integer version) {
+    this.url = url;
+    this.auId = auId;
+    this.version = version;
+  }
+
+  /**
+   * Provides the URL.
+   *
+   * @return a String with the URL.
+   */
+  public String getUrl() {
+    return url;
+  }
+
+  public void setUrl(String url) {
+    this.url = url;
+  }
+
+  /**
+   * Provides the identifier of the archival unit.
+   *
+   * @return a String with the identifier (auid) of the archival unit.
+   */
+  public String getAuId() {
+    return auId;
+  }
+
+  public void setAuId(String auId) {
+    this.auId = auId;
+  }
+
+  /**
+   * Provides the version of the content.
+   *
+   * @return an Integer with the version, or <code>null</code> for the latest version.
+   */
+  public Integer getVersion() {
+    return version;
+  }
+
+  public void setVersion(Integer version) {
+    this.version = version;
+  }
+
+  @Override
+  public String toString() {
+    return "[UrlCachedQuery url=" + url + ", auId=" + auId + ", version=" + version + "]";
+  }
+}
@@ -47,7 +47,6 @@ import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -102,19 +101,18 @@ public class AuControlServiceImpl extends BaseServiceImpl implements AuControlSe
    *
    * @param auIds A {@code List<String>} with the identifiers (auids) of the archival units.
    * @return a {@code List<CheckSubstanceResult>} with the results of the operation.
-   * @throws LockssWebServicesFault if there are problems.
+   * @throws LockssWebServicesFault if the operation fails for every archival unit.
    */
   @Override
   public List<CheckSubstanceResult> checkSubstanceByIdList(List<String> auIds)
       throws LockssWebServicesFault {
     log.debug2("auIds = {}", auIds);
 
-    List<CheckSubstanceResult> results = new ArrayList<>(auIds.size());
-
-    // Loop through all the Archival Unit identifiers.
-    for (String auId : auIds) {
-      results.add(checkSubstanceById(auId));
-    }
+    // Perform the requests for all the Archival Unit identifiers concurrently, reporting the
+    // failure of any of them in its result, as others may already have been performed.
+    List<CheckSubstanceResult> results = mapConcurrently(ServiceDescr.SVC_CONFIG, auIds,
+        auId -> checkSubstanceById(auId),
+        (auId, e) -> new CheckSubstanceResult(auId, null, null, e.getMessage()));
 
     log.debug2("results = {}", results);
     return results;
@@ -172,20 +170,18 @@ public class AuControlServiceImpl extends BaseServiceImpl implements AuControlSe
    * @param force A boolean with <code>true</code> if the request is to be made even in the presence
    *     of some anomalies, <code>false</code> otherwise.
    * @return a {@code List<RequestCrawlResult>} with the results of the operation.
-   * @throws LockssWebServicesFault if there are problems.
+   * @throws LockssWebServicesFault if the operation fails for every archival unit.
    */
   @Override
   public List<RequestCrawlResult> requestCrawlByIdList(
       List<String> auIds, Integer priority, boolean force) throws LockssWebServicesFault {
     log.debug2("auIds = {}, priority = {}, force = {}", auIds, priority, force);
 
-    List<RequestCrawlResult> results = new ArrayList<>(auIds.size());
-
-    // Loop through all the Archival Unit identifiers.
-    for (String auId : auIds) {
-      // Perform the request.
-      results.add(requestCrawlById(auId, priority, force));
-    }
+    // Perform the requests for all the Archival Unit identifiers concurrently, reporting the
+    // failure of any of them in its result, as others may already have been performed.
+    List<RequestCrawlResult> results = mapConcurrently(ServiceDescr.SVC_CRAWLER, auIds,
+        auId -> requestCrawlById(auId, priority, force),
+        (auId, e) -> new RequestCrawlResult(auId, false, null, e.getMessage()));
 
     log.debug2("results = {}", results);
     return results;
@@ -253,7 +249,7 @@ public class AuControlServiceImpl extends BaseServiceImpl implements AuControlSe
    * @param force A boolean with <code>true</code> if the request is to be made even in the presence
    *     of some anomalies, <code>false</code> otherwise.
    * @return a {@code List<RequestDeepCrawlResult>} with the results of the operation.
-   * @throws LockssWebServicesFault if there are problems.
+   * @throws LockssWebServicesFault if the operation fails for every archival unit.
    */
   @Override
   public List<RequestDeepCrawlResult> requestDeepCrawlByIdList(
@@ -266,13 +262,11 @@ public class AuControlServiceImpl extends BaseServiceImpl implements AuControlSe
         priority,
         force);
 
-    List<RequestDeepCrawlResult> results = new ArrayList<>(auIds.size());
-
-    // Loop through all the Archival Unit identifiers.
-    for (String auId : auIds) {
-      // Perform the request.
-      results.add(requestDeepCrawlById(auId, refetchDepth, priority, force));
-    }
+    // Perform the requests for all the Archival Unit identifiers concurrently, reporting the
+    // failure of any of them in its result, as others may already have been performed.
+    List<RequestDeepCrawlResult> results = mapConcurrently(ServiceDescr.SVC_CRAWLER, auIds,
+        auId -> requestDeepCrawlById(auId, refetchDepth, priority, force),
+        (auId, e) -> new RequestDeepCrawlResult(auId, refetchDepth, false, null, e.getMessage()));
 
     log.debug2("results = {}", results);
     return results;
@@ -346,20 +340,18 @@ public class AuControlServiceImpl extends BaseServiceImpl implements AuControlSe
    *
    * @param auIds A {@code List<String>} with the identifiers (auids) of the archival units.
    * @return a {@code List<RequestPollResult>} with the results of the operation.
-   * @throws LockssWebServicesFault if there are problems.
+   * @throws LockssWebServicesFault if the operation fails for every archival unit.
    */
   @Override
   public List<RequestAuControlResult> requestPollByIdList(List<String> auIds)
       throws LockssWebServicesFault {
     log.debug2("auIds = {}", auIds);
 
-    List<RequestAuControlResult> results = new ArrayList<>(auIds.size());
-
-    // Loop through all the Archival Unit identifiers.
-    for (String auId : auIds) {
-      // Perform the request.
-      results.add(requestPollById(auId));
-    }
+    // Perform the requests for all the Archival Unit identifiers concurrently, reporting the
+    // failure of any of them in its result, as others may already have been performed.
+    List<RequestAuControlResult> results = mapConcurrently(ServiceDescr.SVC_POLLER, auIds,
+        auId -> requestPollById(auId),
+        (auId, e) -> new RequestAuControlResult(auId, false, e.getMessage()));
 
     log.debug2("results = {}", results);
     return results;
@@ -426,20 +418,18 @@ public class AuControlServiceImpl extends BaseServiceImpl implements AuControlSe
    * @param force A boolean with <code>true</code> if the request is to be made even in the presence
    *     of some anomalies, <code>false</code> otherwise.
    * @return a List<RequestAuControlResult> with the results of the operation.
-   * @throws LockssWebServicesFault if there are problems.
+   * @throws LockssWebServicesFault if the operation fails for every archival unit.
    */
   @Override
   public List<RequestAuControlResult> requestMdIndexingByIdList(List<String> auIds, boolean force)
       throws LockssWebServicesFault {
     log.debug2("auIds = {}, force = {}", auIds, force);
 
-    List<RequestAuControlResult> results = new ArrayList<>(auIds.size());
-
-    // Loop through all the Archival Unit identifiers.
-    for (String auId : auIds) {
-      // Perform the request.
-      results.add(requestMdIndexingById(auId, force));
-    }
+    // Perform the requests for all the Archival Unit identifiers concurrently, reporting the
+    // failure of any of them in its result, as others may already have been performed.
+    List<RequestAuControlResult> results = mapConcurrently(ServiceDescr.SVC_MDX, auIds,
+        auId -> requestMdIndexingById(auId, force),
+        (auId, e) -> new RequestAuControlResult(auId, false, e.getMessage()));
 
     log.debug2("results = {}", results);
     return results;
@@ -478,20 +468,18 @@ public class AuControlServiceImpl extends BaseServiceImpl implements AuControlSe
    *
    * @param auIds A List<String> with the identifiers (auids) of the archival units.
    * @return a List<RequestAuControlResult> with the results of the operation.
-   * @throws LockssWebServicesFault if there are problems.
+   * @throws LockssWebServicesFault if the operation fails for every archival unit.
    */
   @Override
   public List<RequestAuControlResult> disableMdIndexingByIdList(List<String> auIds)
       throws LockssWebServicesFault {
     log.debug2("auIds = {}", auIds);
 
-    List<RequestAuControlResult> results = new ArrayList<>(auIds.size());
-
-    // Loop through all the Archival Unit identifiers.
-    for (String auId : auIds) {
-      // Perform the request.
-      results.add(disableMdIndexingById(auId));
-    }
+    // Perform the requests for all the Archival Unit identifiers concurrently, reporting the
+    // failure of any of them in its result, as others may already have been performed.
+    List<RequestAuControlResult> results = mapConcurrently(ServiceDescr.SVC_CONFIG, auIds,
+        auId -> disableMdIndexingById(auId),
+        (auId, e) -> new RequestAuControlResult(auId, false, e.getMessage()));
 
     log.debug2("results = {}", results);
     return results;
@@ -531,20 +519,18 @@ public class AuControlServiceImpl extends BaseServiceImpl implements AuControlSe
    *
    * @param auIds A List<String> with the identifiers (auids) of the archival units.
    * @return a List<RequestAuControlResult> with the results of the operation.
-   * @throws LockssWebServicesFault if there are problems.
+   * @throws LockssWebServicesFault if the operation fails for every archival unit.
    */
   @Override
   public List<RequestAuControlResult> enableMdIndexingByIdList(List<String> auIds)
       throws LockssWebServicesFault {
     log.debug2("auIds = {}", auIds);
 
-    List<RequestAuControlResult> results = new ArrayList<>(auIds.size());
-
-    // Loop through all the Archival Unit identifiers.
-    for (String auId : auIds) {
-      // Perform the request.
-      results.add(enableMdIndexingById(auId));
-    }
+    // Perform the requests for all the Archival Unit identifiers concurrently, reporting the
+    // failure of any of them in its result, as others may already have been performed.
+    List<RequestAuControlResult> results = mapConcurrently(ServiceDescr.SVC_CONFIG, auIds,
+        auId -> enableMdIndexingById(auId),
+        (auId, e) -> new RequestAuControlResult(auId, false, e.getMessage()));
 
     log.debug2("results = {}", results);
     return results;
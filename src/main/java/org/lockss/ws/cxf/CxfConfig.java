@@ -31,6 +31,7 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 package org.lockss.ws.cxf;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.cxf.Bus;
 import org.apache.cxf.bus.spring.SpringBus;
 import org.apache.cxf.transport.servlet.CXFServlet;
@@ -38,6 +39,8 @@ import org.springframework.boot.web.servlet.ServletRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.Collections;
+
 /** Integration of the CXF infrastructure with Spring. */
 @Configuration
 public class CxfConfig {
@@ -55,11 +58,16 @@ public class CxfConfig {
   /**
    * Provides the Spring-flavored CXF Bus for adding interceptors, if needed.
    *
+   * @param meterRegistry A MeterRegistry where the metrics of the SOAP operations are recorded.
    * @return a SpringBus newly created.
    */
   @Bean(name = Bus.DEFAULT_BUS_ID)
-  public SpringBus springBus() {
+  public SpringBus springBus(MeterRegistry meterRegistry) {
     SpringBus springBus = new SpringBus();
+
+    // Metrics of the operations of every endpoint.
+    springBus.setFeatures(Collections.singletonList(new LockssMetricsFeature(meterRegistry)));
+
     return springBus;
   }
 }
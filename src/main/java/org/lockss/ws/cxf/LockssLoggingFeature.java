@@ -37,10 +37,23 @@ import org.apache.cxf.annotations.Provider.Type;
 import org.apache.cxf.common.injection.NoJSR250Annotations;
 import org.apache.cxf.ext.logging.LoggingInInterceptor;
 import org.apache.cxf.ext.logging.LoggingOutInterceptor;
+import org.apache.cxf.ext.logging.WireTapIn;
+import org.apache.cxf.ext.logging.event.EventType;
 import org.apache.cxf.ext.logging.event.LogEventSender;
 import org.apache.cxf.ext.logging.event.PrettyLoggingFilter;
+import org.apache.cxf.endpoint.Endpoint;
 import org.apache.cxf.feature.AbstractFeature;
+import org.apache.cxf.interceptor.Interceptor;
+import org.apache.cxf.interceptor.InterceptorChain;
 import org.apache.cxf.interceptor.InterceptorProvider;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class is used to control message-on-the-wire logging at log level TRACE instead of the
@@ -55,15 +68,31 @@ import org.apache.cxf.interceptor.InterceptorProvider;
  * </jaxws:endpoint>
  * ]]>
  * </pre>
+ *
+ * <p>The payload-capturing interceptors are removed from the interceptor chain of each exchange
+ * whose message logger is not enabled for TRACE, so that payloads are not cached in memory or temp
+ * files only to be discarded. The loggers are checked for every exchange, so changes to their
+ * levels take effect immediately. With a sample rate of N greater than 1, only 1 in N exchanges is
+ * logged.
  */
 @NoJSR250Annotations
 @Provider(value = Type.Feature)
 public class LockssLoggingFeature extends AbstractFeature {
+  private static final String SAMPLED_KEY = LockssLoggingFeature.class.getName() + ".sampled";
+
   private final LoggingInInterceptor in;
   private final LoggingOutInterceptor out;
   private final PrettyLoggingFilter inPrettyFilter;
   private final PrettyLoggingFilter outPrettyFilter;
 
+  private final LoggingGate inGate = new LoggingGate(Phase.RECEIVE, EventType.REQ_IN);
+  private final LoggingGate outGate = new LoggingGate(Phase.SETUP, EventType.RESP_OUT);
+  private final LoggingGate outFaultGate = new LoggingGate(Phase.SETUP, EventType.FAULT_OUT);
+
+  // The number of exchanges seen, for sampling.
+  private final AtomicLong exchangeCount = new AtomicLong();
+  private volatile int sampleRate = 1;
+
   /** Default constructor. */
   public LockssLoggingFeature() {
     LogEventSender sender = new LockssSlf4jVerboseEventSender();
@@ -76,13 +105,26 @@ public class LockssLoggingFeature extends AbstractFeature {
 
   @Override
   protected void initializeProvider(InterceptorProvider provider, Bus bus) {
+    provider.getInInterceptors().add(inGate);
     provider.getInInterceptors().add(in);
+    provider.getInFaultInterceptors().add(inGate);
     provider.getInFaultInterceptors().add(in);
 
+    provider.getOutInterceptors().add(outGate);
     provider.getOutInterceptors().add(out);
+    provider.getOutFaultInterceptors().add(outFaultGate);
     provider.getOutFaultInterceptors().add(out);
   }
 
+  /**
+   * Log only 1 in N exchanges?
+   *
+   * @param sampleRate the N in 1 in N; defaults to 1, logging every exchange
+   */
+  public void setSampleRate(int sampleRate) {
+    this.sampleRate = sampleRate;
+  }
+
   public void setLimit(int limit) {
     in.setLimit(limit);
     out.setLimit(limit);
@@ -134,4 +176,73 @@ public class LockssLoggingFeature extends AbstractFeature {
   public void setVerbose(boolean verbose) {
     setSender(verbose ? new LockssSlf4jVerboseEventSender() : new LockssSlf4jEventSender());
   }
+
+  /**
+   * Provides an indication of whether a message is to be logged.
+   *
+   * @param message A Message with the message.
+   * @param type    An EventType with the type of log event of the message.
+   * @return a boolean with <code>true</code> if the message is to be logged.
+   */
+  private boolean isLogged(Message message, EventType type) {
+    Exchange exchange = message.getExchange();
+
+    // The sampling decision applies to all the messages of the exchange.
+    Boolean sampled = (Boolean) exchange.get(SAMPLED_KEY);
+
+    if (sampled == null) {
+      int rate = sampleRate;
+      sampled = rate <= 1 || exchangeCount.getAndIncrement() % rate == 0;
+      exchange.put(SAMPLED_KEY, sampled);
+    }
+
+    if (!sampled) {
+      return false;
+    }
+
+    // The logger used by LockssSlf4jEventSender for this message.
+    Endpoint endpoint = exchange.getEndpoint();
+
+    if (endpoint == null || endpoint.getEndpointInfo().getInterface() == null) {
+      return true;
+    }
+
+    String portTypeName = endpoint.getEndpointInfo().getInterface().getName().getLocalPart();
+    return LockssSlf4jEventSender.getLogger(portTypeName, type).isTraceEnabled();
+  }
+
+  /** Removes the logging interceptors from the chain of the messages that are not logged. */
+  private class LoggingGate extends AbstractPhaseInterceptor<Message> {
+    private final EventType type;
+
+    LoggingGate(String phase, EventType type) {
+      super(type.name() + "Gate", phase);
+      this.type = type;
+
+      if (Phase.RECEIVE.equals(phase)) {
+        // Before the payload is cached.
+        addBefore(WireTapIn.class.getName());
+      }
+    }
+
+    @Override
+    public void handleMessage(Message message) {
+      if (isLogged(message, type)) {
+        return;
+      }
+
+      InterceptorChain chain = message.getInterceptorChain();
+      List<Interceptor<? extends Message>> toRemove = new ArrayList<>();
+
+      for (Interceptor<? extends Message> interceptor : chain) {
+        if (interceptor == in || interceptor == out || interceptor instanceof WireTapIn) {
+          toRemove.add(interceptor);
+        }
+      }
+
+      for (Interceptor<? extends Message> interceptor : toRemove) {
+        chain.remove(interceptor);
+      }
+    }
+  }
 }
@@ -0,0 +1,259 @@
+/*
+
+Copyright (c) 2000-2023 Board of Trustees of Leland Stanford Jr. University,
+all rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+package org.lockss.ws.cxf;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.cxf.Bus;
+import org.apache.cxf.annotations.Provider;
+import org.apache.cxf.annotations.Provider.Type;
+import org.apache.cxf.common.injection.NoJSR250Annotations;
+import org.apache.cxf.feature.AbstractFeature;
+import org.apache.cxf.interceptor.InterceptorProvider;
+import org.apache.cxf.interceptor.MessageSenderInterceptor.MessageSenderEndingInterceptor;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+import org.apache.cxf.service.model.BindingOperationInfo;
+import org.lockss.log.L4JLogger;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records the latency, in-flight count, faults and payload sizes of the SOAP operations, tagged by
+ * service and operation, in a Micrometer registry. It is installed on the CXF bus, so it applies
+ * to every endpoint.
+ */
+@NoJSR250Annotations
+@Provider(value = Type.Feature)
+public class LockssMetricsFeature extends AbstractFeature {
+  private static final L4JLogger log = L4JLogger.getLogger();
+
+  // Exchange keys.
+  private static final String START_KEY = LockssMetricsFeature.class.getName() + ".start";
+  private static final String REQUEST_COUNTER_KEY =
+      LockssMetricsFeature.class.getName() + ".requestCounter";
+  private static final String RESPONSE_COUNTER_KEY =
+      LockssMetricsFeature.class.getName() + ".responseCounter";
+
+  private static final String UNKNOWN = "unknown";
+
+  private final MeterRegistry registry;
+  private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+  private final StartInterceptor start = new StartInterceptor();
+  private final ResponseSizeInterceptor responseSize = new ResponseSizeInterceptor();
+  private final EndInterceptor end = new EndInterceptor(false);
+  private final EndInterceptor endFault = new EndInterceptor(true);
+
+  /**
+   * Constructor.
+   *
+   * @param registry A MeterRegistry where the metrics are recorded.
+   */
+  public LockssMetricsFeature(MeterRegistry registry) {
+    this.registry = registry;
+  }
+
+  @Override
+  protected void initializeProvider(InterceptorProvider provider, Bus bus) {
+    provider.getInInterceptors().add(start);
+
+    provider.getOutInterceptors().add(responseSize);
+    provider.getOutInterceptors().add(end);
+
+    provider.getOutFaultInterceptors().add(responseSize);
+    provider.getOutFaultInterceptors().add(endFault);
+  }
+
+  /**
+   * Provides the name of the service of an exchange.
+   *
+   * @param exchange An Exchange with the message exchange.
+   * @return a String with the service name.
+   */
+  private static String getServiceName(Exchange exchange) {
+    return exchange.getService() != null
+        ? exchange.getService().getName().getLocalPart() : UNKNOWN;
+  }
+
+  /**
+   * Provides the name of the operation of an exchange.
+   *
+   * @param exchange An Exchange with the message exchange.
+   * @return a String with the operation name.
+   */
+  private static String getOperationName(Exchange exchange) {
+    BindingOperationInfo boi = exchange.getBindingOperationInfo();
+    return boi != null ? boi.getName().getLocalPart() : UNKNOWN;
+  }
+
+  private AtomicInteger getInFlight(String service) {
+    return inFlight.computeIfAbsent(service, s -> {
+      AtomicInteger count = new AtomicInteger();
+      Gauge.builder("soap.operation.in.flight", count, AtomicInteger::get)
+          .tag("service", s)
+          .description("SOAP requests being processed")
+          .register(registry);
+      return count;
+    });
+  }
+
+  /** Starts the measurement of a request, as soon as it is received. */
+  private class StartInterceptor extends AbstractPhaseInterceptor<Message> {
+    StartInterceptor() {
+      super(Phase.RECEIVE);
+    }
+
+    @Override
+    public void handleMessage(Message message) {
+      // WSDL and other GET requests are not SOAP operations.
+      if ("GET".equals(message.get(Message.HTTP_REQUEST_METHOD))) {
+        return;
+      }
+
+      Exchange exchange = message.getExchange();
+      exchange.put(START_KEY, System.nanoTime());
+      getInFlight(getServiceName(exchange)).incrementAndGet();
+
+      InputStream in = message.getContent(InputStream.class);
+
+      if (in != null) {
+        CountingInputStream counter = new CountingInputStream(in);
+        message.setContent(InputStream.class, counter);
+        exchange.put(REQUEST_COUNTER_KEY, counter);
+      }
+    }
+  }
+
+  /** Counts the bytes of the response as they are written. */
+  private static class ResponseSizeInterceptor extends AbstractPhaseInterceptor<Message> {
+    ResponseSizeInterceptor() {
+      super(Phase.PRE_STREAM);
+    }
+
+    @Override
+    public void handleMessage(Message message) {
+      OutputStream out = message.getContent(OutputStream.class);
+
+      if (out != null && message.getExchange().get(RESPONSE_COUNTER_KEY) == null) {
+        CountingOutputStream counter = new CountingOutputStream(out);
+        message.setContent(OutputStream.class, counter);
+        message.getExchange().put(RESPONSE_COUNTER_KEY, counter);
+      }
+    }
+  }
+
+  /** Completes the measurement of a request, once its response has been sent. */
+  private class EndInterceptor extends AbstractPhaseInterceptor<Message> {
+    private final boolean isFault;
+
+    EndInterceptor(boolean isFault) {
+      super(Phase.PREPARE_SEND_ENDING);
+      addAfter(MessageSenderEndingInterceptor.class.getName());
+      this.isFault = isFault;
+    }
+
+    @Override
+    public void handleMessage(Message message) {
+      Exchange exchange = message.getExchange();
+
+      // Record each exchange once, even if both the out and out fault chains reach this point.
+      Long startNanos = (Long) exchange.remove(START_KEY);
+
+      if (startNanos == null) {
+        return;
+      }
+
+      String service = getServiceName(exchange);
+      String operation = getOperationName(exchange);
+      getInFlight(service).decrementAndGet();
+
+      Timer.builder("soap.operation.duration")
+          .tag("service", service)
+          .tag("operation", operation)
+          .tag("outcome", isFault ? "fault" : "success")
+          .description("SOAP operation latency, from request receipt to response sent")
+          .publishPercentileHistogram()
+          .register(registry)
+          .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+
+      if (isFault) {
+        Counter.builder("soap.operation.faults")
+            .tag("service", service)
+            .tag("operation", operation)
+            .description("SOAP operations that returned a fault")
+            .register(registry)
+            .increment();
+      }
+
+      CountingInputStream requestCounter =
+          (CountingInputStream) exchange.remove(REQUEST_COUNTER_KEY);
+
+      if (requestCounter != null) {
+        DistributionSummary.builder("soap.operation.request.size")
+            .tag("service", service)
+            .tag("operation", operation)
+            .baseUnit("bytes")
+            .description("SOAP request payload size")
+            .register(registry)
+            .record(requestCounter.getByteCount());
+      }
+
+      CountingOutputStream responseCounter =
+          (CountingOutputStream) exchange.remove(RESPONSE_COUNTER_KEY);
+
+      if (responseCounter != null) {
+        DistributionSummary.builder("soap.operation.response.size")
+            .tag("service", service)
+            .tag("operation", operation)
+            .baseUnit("bytes")
+            .description("SOAP response payload size")
+            .register(registry)
+            .record(responseCounter.getByteCount());
+      }
+
+      log.trace("Recorded {}.{}", service, operation);
+    }
+  }
+}
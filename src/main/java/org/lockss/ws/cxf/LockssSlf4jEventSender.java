@@ -31,6 +31,7 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 package org.lockss.ws.cxf;
 
+import org.apache.cxf.ext.logging.event.EventType;
 import org.apache.cxf.ext.logging.event.LogEvent;
 import org.apache.cxf.ext.logging.event.LogEventSender;
 import org.slf4j.Logger;
@@ -39,49 +40,95 @@ import org.slf4j.MDC;
 import org.slf4j.MarkerFactory;
 
 import javax.xml.namespace.QName;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Implementation of org.apache.cxf.ext.logging.slf4j.Slf4jEventSender for logging at level TRACE
  * instead of level INFO.
  */
 public class LockssSlf4jEventSender implements LogEventSender {
+  // The most MDC entries put for one event.
+  private static final int MAX_MDC_KEYS = 12;
+
+  private static final EventType[] EVENT_TYPES = EventType.values();
+
+  // The loggers of each port type, indexed by event type ordinal.
+  private static final Map<String, Logger[]> loggers = new ConcurrentHashMap<>();
+
   /** It is called by the Logging interceptor to send the fully populated message to be logged. */
   @Override
   public void send(LogEvent event) {
-    String cat =
-        "org.apache.cxf.services." + event.getPortTypeName().getLocalPart() + "." + event.getType();
-    Logger log = LoggerFactory.getLogger(cat);
-    Set<String> keys = new HashSet<>();
+    Logger log = getLogger(event.getPortTypeName().getLocalPart(), event.getType());
+
+    // Don't build the MDC entries of a message that won't be logged.
+    if (!log.isTraceEnabled()) {
+      return;
+    }
+
+    String[] keys = new String[MAX_MDC_KEYS];
+    int count = 0;
 
     try {
-      put(keys, "Type", event.getType().toString());
-      put(keys, "Address", event.getAddress());
-      put(keys, "HttpMethod", event.getHttpMethod());
-      put(keys, "Content-Type", event.getContentType());
-      put(keys, "ResponseCode", event.getResponseCode());
-      put(keys, "ExchangeId", event.getExchangeId());
-      put(keys, "MessageId", event.getMessageId());
+      count = put(keys, count, "Type", event.getType().toString());
+      count = put(keys, count, "Address", event.getAddress());
+      count = put(keys, count, "HttpMethod", event.getHttpMethod());
+      count = put(keys, count, "Content-Type", event.getContentType());
+      count = put(keys, count, "ResponseCode", event.getResponseCode());
+      count = put(keys, count, "ExchangeId", event.getExchangeId());
+      count = put(keys, count, "MessageId", event.getMessageId());
       if (event.getServiceName() != null) {
-        put(keys, "ServiceName", localPart(event.getServiceName()));
-        put(keys, "PortName", localPart(event.getPortName()));
-        put(keys, "PortTypeName", localPart(event.getPortTypeName()));
+        count = put(keys, count, "ServiceName", localPart(event.getServiceName()));
+        count = put(keys, count, "PortName", localPart(event.getPortName()));
+        count = put(keys, count, "PortTypeName", localPart(event.getPortTypeName()));
       }
       if (event.getFullContentFile() != null) {
-        put(keys, "FullContentFile", event.getFullContentFile().getAbsolutePath());
+        count = put(keys, count, "FullContentFile", event.getFullContentFile().getAbsolutePath());
       }
-      put(keys, "Headers", event.getHeaders().toString());
+      count = put(keys, count, "Headers", event.getHeaders().toString());
       log.trace(
           MarkerFactory.getMarker(event.getServiceName() != null ? "SOAP" : "REST"),
           getLogMessage(event));
     } finally {
-      for (String key : keys) {
-        MDC.remove(key);
+      for (int i = 0; i < count; i++) {
+        MDC.remove(keys[i]);
       }
     }
   }
 
+  /**
+   * Provides the name of the logger used for the events of a port type.
+   *
+   * @param portTypeName A String with the local name of the port type.
+   * @param type         An EventType with the type of the event.
+   * @return a String with the logger name.
+   */
+  static String getCategory(String portTypeName, EventType type) {
+    return "org.apache.cxf.services." + portTypeName + "." + type;
+  }
+
+  /**
+   * Provides the logger used for the events of a port type, without building its name once it has
+   * been looked up.
+   *
+   * @param portTypeName A String with the local name of the port type.
+   * @param type         An EventType with the type of the event.
+   * @return a Logger for the events.
+   */
+  static Logger getLogger(String portTypeName, EventType type) {
+    Logger[] byType = loggers.computeIfAbsent(portTypeName, ptn -> {
+      Logger[] result = new Logger[EVENT_TYPES.length];
+
+      for (EventType et : EVENT_TYPES) {
+        result[et.ordinal()] = LoggerFactory.getLogger(getCategory(ptn, et));
+      }
+
+      return result;
+    });
+
+    return byType[type.ordinal()];
+  }
+
   private String localPart(QName name) {
     return name == null ? null : name.getLocalPart();
   }
@@ -90,10 +137,13 @@ public class LockssSlf4jEventSender implements LogEventSender {
     return event.getPayload();
   }
 
-  private void put(Set<String> keys, String key, String value) {
-    if (value != null) {
-      MDC.put(key, value);
-      keys.add(key);
+  private int put(String[] keys, int count, String key, String value) {
+    if (value == null) {
+      return count;
     }
+
+    MDC.put(key, value);
+    keys[count] = key;
+    return count + 1;
   }
 }
@@ -112,7 +112,8 @@ public class ExportServiceImpl extends BaseServiceImpl implements ExportService
       MultipartResponse response =
           new MultipartConnector(uri, requestHeaders)
               .setRestTemplate(restTemplate)
-              .requestGet(getConnectionTimeout().intValue(), getReadTimeout().intValue());
+              .requestGet(getConnectionTimeout(ServiceDescr.SVC_POLLER).intValue(),
+                  getReadTimeout(ServiceDescr.SVC_POLLER).intValue());
 
       HttpStatusCode statusCode = response.getStatusCode();
       HttpStatus status = HttpStatus.valueOf(statusCode.value());
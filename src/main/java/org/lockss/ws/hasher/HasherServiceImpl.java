@@ -29,7 +29,6 @@ package org.lockss.ws.hasher;
 
 import org.lockss.app.ServiceDescr;
 import org.lockss.log.L4JLogger;
-import org.lockss.util.Constants;
 import org.lockss.util.rest.poller.RestPollerClient;
 import org.lockss.ws.BaseServiceImpl;
 import org.lockss.ws.entities.HasherWsAsynchronousResult;
@@ -56,20 +55,20 @@ public class HasherServiceImpl extends BaseServiceImpl implements HasherService
   public HasherWsResult hash(HasherWsParams wsParams) throws LockssWebServicesFault {
     log.debug2("wsParams = {}", wsParams);
 
-    try {
+    // The hash may take very long, so the SOAP request is suspended while waiting for it.
+    return callSuspended(getReadTimeout(ServiceDescr.SVC_POLLER), () -> {
       // Make the REST call to perform the hash.
       HasherWsResult result =
           new RestPollerClient(getServiceEndpoint(ServiceDescr.SVC_POLLER))
               .addRequestHeaders(getAuthHeaders())
-              .setTimeouts(10 * Constants.SECOND, Constants.DAY)
+              .setTimeouts(getConnectionTimeout(ServiceDescr.SVC_POLLER),
+                  getReadTimeout(ServiceDescr.SVC_POLLER))
               .setRestTemplate(restTemplate)
               .hash(wsParams);
 
       log.debug2("result = {}", result);
       return result;
-    } catch (Exception e) {
-      throw new LockssWebServicesFault(e);
-    }
+    });
   }
 
   /**
@@ -28,7 +28,6 @@ in this Software without prior written authorization from Stanford University.
 package org.lockss.ws.importer;
 
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.activation.DataHandler;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -80,6 +79,10 @@ public class ImportServiceImpl extends BaseServiceImpl implements ImportService
 
   private static final String BASIC_AUTH_KEY = "BasicAuthorization";
 
+  // Type of the REST service response with the checksum algorithms.
+  private static final TypeReference<List<String>> STRING_LIST_TYPE =
+      new TypeReference<List<String>>() {};
+
   /**
    * Imports a pulled file into an archival unit.
    *
@@ -223,9 +226,7 @@ public class ImportServiceImpl extends BaseServiceImpl implements ImportService
 
       // Get the response body.
       try {
-        ObjectMapper mapper = new ObjectMapper();
-        List<String> list =
-            mapper.readValue(response.getBody(), new TypeReference<List<String>>() {});
+        List<String> list = jsonReaders.forType(STRING_LIST_TYPE).readValue(response.getBody());
         log.trace("list = {}", list);
 
         String[] result = list.toArray(new String[0]);
@@ -355,10 +356,14 @@ public class ImportServiceImpl extends BaseServiceImpl implements ImportService
     HttpResponseStatusAndHeaders response =
         new MultipartConnector(uri, requestHeaders, parts)
             .setRestTemplate(restTemplate)
-            .requestPut(getConnectionTimeout().intValue(), getReadTimeout().intValue());
+            .requestPut(getConnectionTimeout(ServiceDescr.SVC_POLLER).intValue(),
+                getReadTimeout(ServiceDescr.SVC_POLLER).intValue());
 
     log.trace("response = {}", response);
 
+    // Recent lookups of the target URL may no longer be accurate.
+    artifactExistence.invalidateUrl(repoNamespace, targetUrl);
+
     // Prepare the result to be returned.
     boolean isSuccess = response.getStatusCode() == HttpStatus.OK.value();
     log.trace("isSuccess = {}", isSuccess);
@@ -0,0 +1,398 @@
+/*
+
+Copyright (c) 2000-2023 Board of Trustees of Leland Stanford Jr. University,
+all rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+package org.lockss.ws.rest;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.lockss.app.LockssApp;
+import org.lockss.config.Configuration;
+import org.lockss.log.L4JLogger;
+import org.lockss.spring.base.BaseSpringApiServiceImpl;
+import org.lockss.spring.base.LockssConfigurableService;
+import org.lockss.util.Constants;
+import org.lockss.util.rest.repo.model.Artifact;
+import org.lockss.util.time.TimeBase;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of the results of looking up an artifact in the repository service, keyed by
+ * namespace, archival unit, URL, version (or latest version) and the Authorization header of the
+ * requestor, so that a lookup made with one set of credentials is never returned to another.
+ *
+ * <p>Both found artifacts and, optionally, absent ones are cached, each with its own short time to
+ * live. Entries are invalidated when content is imported or archival units are deleted through
+ * this service, and the whole cache is invalidated when the service bindings change. Changes made
+ * to the repository by other clients are only seen once the entries expire.
+ */
+@Component
+public class ArtifactExistenceCache extends BaseSpringApiServiceImpl
+    implements LockssConfigurableService, MeterBinder {
+
+  // Config params
+
+  public static final String PREFIX = "org.lockss.soap.artifactExistenceCache.";
+
+  /** Maximum number of cached lookups. Zero disables the cache. */
+  public static final String PARAM_MAX_SIZE = PREFIX + "maxSize";
+  public static final int DEFAULT_MAX_SIZE = 10000;
+
+  /** Lookups that found an artifact are discarded this long after they were made. */
+  public static final String PARAM_TTL = PREFIX + "ttl";
+  public static final long DEFAULT_TTL = 30 * Constants.SECOND;
+
+  /**
+   * Lookups that found no artifact are discarded this long after they were made. Zero disables
+   * negative caching.
+   */
+  public static final String PARAM_NEGATIVE_TTL = PREFIX + "negativeTtl";
+  public static final long DEFAULT_NEGATIVE_TTL = 5 * Constants.SECOND;
+
+  // Rough per-entry overhead, in bytes, of the map entry, key, value and artifact objects.
+  private static final long ENTRY_OVERHEAD = 400;
+
+  private static final L4JLogger log = L4JLogger.getLogger();
+
+  /** The lookup made on a cache miss. */
+  @FunctionalInterface
+  public interface Loader {
+    Artifact load() throws IOException;
+  }
+
+  // Least recently used entries first.
+  private final LinkedHashMap<Key, Entry> cache = new LinkedHashMap<>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+      if (size() > maxSize) {
+        unindex(eldest.getKey());
+        return true;
+      }
+
+      return false;
+    }
+  };
+
+  // The keys of the cached lookups of each archival unit, so that they can be discarded together.
+  private final Map<AuKey, Set<Key>> keysByAu = new HashMap<>();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  // Incremented when any lookups are invalidated, so that lookups made earlier are not cached.
+  private long generation = 0;
+
+  private int maxSize = DEFAULT_MAX_SIZE;
+  private long ttl = DEFAULT_TTL;
+  private long negativeTtl = DEFAULT_NEGATIVE_TTL;
+
+  /**
+   * Provides the artifact found by a lookup, making the lookup if it is not cached.
+   *
+   * @param namespace A String with the namespace.
+   * @param auId      A String with the identifier (auid) of the archival unit.
+   * @param url       A String with the URL.
+   * @param version   An Integer with the version, or <code>null</code> for the latest version.
+   * @param authorization A String with the Authorization header of the requestor, if any.
+   * @param loader    A Loader that makes the lookup on a cache miss.
+   * @return the Artifact found, or <code>null</code> if there is none.
+   * @throws IOException if the lookup fails.
+   */
+  public Artifact get(String namespace, String auId, String url, Integer version,
+                      String authorization, Loader loader) throws IOException {
+    Key key = new Key(namespace, auId, url, version, authorization);
+    long startGeneration;
+
+    synchronized (this) {
+      Entry entry = cache.get(key);
+
+      if (entry != null) {
+        long entryTtl = entry.artifact != null ? ttl : negativeTtl;
+
+        if (TimeBase.msSince(entry.created) < entryTtl) {
+          hits.incrementAndGet();
+          return entry.artifact;
+        }
+
+        log.trace("Expired lookup of {}", key);
+        cache.remove(key);
+        unindex(key);
+      }
+
+      startGeneration = generation;
+    }
+
+    misses.incrementAndGet();
+    Artifact artifact = loader.load();
+
+    synchronized (this) {
+      // A lookup that started before an invalidation may have seen what has since changed.
+      if (maxSize > 0 && (artifact != null || negativeTtl > 0)
+          && startGeneration == generation) {
+        keysByAu.computeIfAbsent(key.auKey, k -> new HashSet<>()).add(key);
+        cache.put(key, new Entry(artifact, TimeBase.nowMs()));
+      }
+    }
+
+    return artifact;
+  }
+
+  /**
+   * Discards the cached lookups of all the versions of a URL in any archival unit.
+   *
+   * @param namespace A String with the namespace.
+   * @param url       A String with the URL.
+   */
+  public synchronized void invalidateUrl(String namespace, String url) {
+    log.debug2("Invalidating {} in {}", url, namespace);
+    generation++;
+    cache.keySet().removeIf(key -> {
+      if (Objects.equals(namespace, key.auKey.namespace) && Objects.equals(url, key.url)) {
+        unindex(key);
+        return true;
+      }
+
+      return false;
+    });
+  }
+
+  /**
+   * Discards the cached lookups of all the URLs of an archival unit, made with any credentials.
+   *
+   * @param namespace A String with the namespace.
+   * @param auId      A String with the identifier (auid) of the archival unit.
+   */
+  public synchronized void invalidateAu(String namespace, String auId) {
+    log.debug2("Invalidating {} in {}", auId, namespace);
+    generation++;
+    Set<Key> keys = keysByAu.remove(new AuKey(namespace, auId));
+
+    if (keys != null) {
+      for (Key key : keys) {
+        cache.remove(key);
+      }
+    }
+  }
+
+  /** Discards all the cached lookups. */
+  public synchronized void clear() {
+    log.debug2("Clearing {} cached artifact lookups", cache.size());
+    cache.clear();
+    keysByAu.clear();
+    generation++;
+  }
+
+  // Removes a key from the index of the keys of its archival unit.
+  private void unindex(Key key) {
+    Set<Key> keys = keysByAu.get(key.auKey);
+
+    if (keys != null) {
+      keys.remove(key);
+
+      if (keys.isEmpty()) {
+        keysByAu.remove(key.auKey);
+      }
+    }
+  }
+
+  /**
+   * Provides the number of cached lookups.
+   *
+   * @return an int with the number of cached lookups.
+   */
+  public synchronized int size() {
+    return cache.size();
+  }
+
+  /**
+   * Provides an estimate of the memory used by the cached lookups.
+   *
+   * @return a long with the estimated number of bytes.
+   */
+  public synchronized long estimatedMemory() {
+    long bytes = 0;
+
+    for (Key key : cache.keySet()) {
+      bytes += ENTRY_OVERHEAD + 2L * (length(key.auKey.namespace) + length(key.auKey.auId)
+          + length(key.url) + length(key.authorization));
+    }
+
+    return bytes;
+  }
+
+  /**
+   * Provides the fraction of lookups that were satisfied from the cache.
+   *
+   * @return a double with the hit ratio, or zero if there have been no lookups.
+   */
+  public double hitRatio() {
+    long h = hits.get();
+    long total = h + misses.get();
+    return total == 0 ? 0.0 : (double) h / total;
+  }
+
+  private static int length(String s) {
+    return s == null ? 0 : s.length();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    FunctionCounter.builder("soap.artifact.existence.cache.requests", hits, AtomicLong::get)
+        .tag("result", "hit")
+        .description("Artifact lookups satisfied from the cache")
+        .register(registry);
+    FunctionCounter.builder("soap.artifact.existence.cache.requests", misses, AtomicLong::get)
+        .tag("result", "miss")
+        .description("Artifact lookups forwarded to the repository service")
+        .register(registry);
+    Gauge.builder("soap.artifact.existence.cache.hit.ratio", this,
+            ArtifactExistenceCache::hitRatio)
+        .description("Fraction of artifact lookups satisfied from the cache")
+        .register(registry);
+    Gauge.builder("soap.artifact.existence.cache.size", this, ArtifactExistenceCache::size)
+        .description("Cached artifact lookups")
+        .register(registry);
+    Gauge.builder("soap.artifact.existence.cache.memory", this,
+            ArtifactExistenceCache::estimatedMemory)
+        .baseUnit("bytes")
+        .description("Estimated memory used by the cached artifact lookups")
+        .register(registry);
+  }
+
+  @Override
+  public synchronized void setConfig(Configuration newConfig,
+                                     Configuration prevConfig,
+                                     Configuration.Differences changedKeys) {
+    if (changedKeys.contains(PREFIX)) {
+      maxSize = newConfig.getInt(PARAM_MAX_SIZE, DEFAULT_MAX_SIZE);
+      ttl = newConfig.getTimeInterval(PARAM_TTL, DEFAULT_TTL);
+      negativeTtl = newConfig.getTimeInterval(PARAM_NEGATIVE_TTL, DEFAULT_NEGATIVE_TTL);
+      clear();
+    }
+
+    // Cached lookups may refer to a repository that is no longer bound
+    if (changedKeys.contains(LockssApp.PARAM_SERVICE_BINDINGS)) {
+      clear();
+    }
+  }
+
+  private static final class AuKey {
+    private final String namespace;
+    private final String auId;
+
+    private AuKey(String namespace, String auId) {
+      this.namespace = namespace;
+      this.auId = auId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+
+      if (!(o instanceof AuKey)) {
+        return false;
+      }
+
+      AuKey other = (AuKey) o;
+      return Objects.equals(namespace, other.namespace) && Objects.equals(auId, other.auId);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(namespace, auId);
+    }
+  }
+
+  private static final class Key {
+    private final AuKey auKey;
+    private final String url;
+    private final Integer version;
+    private final String authorization;
+
+    private Key(String namespace, String auId, String url, Integer version,
+                String authorization) {
+      this.auKey = new AuKey(namespace, auId);
+      this.url = url;
+      this.version = version;
+      this.authorization = authorization;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+
+      if (!(o instanceof Key)) {
+        return false;
+      }
+
+      Key other = (Key) o;
+      return auKey.equals(other.auKey) && Objects.equals(url, other.url)
+          && Objects.equals(version, other.version)
+          && Objects.equals(authorization, other.authorization);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(auKey, url, version, authorization);
+    }
+
+    // The Authorization header is deliberately left out.
+    @Override
+    public String toString() {
+      return "[Key namespace=" + auKey.namespace + ", auId=" + auKey.auId + ", url=" + url
+          + ", version=" + version + "]";
+    }
+  }
+
+  private static final class Entry {
+    private final Artifact artifact;
+    private final long created;
+
+    private Entry(Artifact artifact, long created) {
+      this.artifact = artifact;
+      this.created = created;
+    }
+  }
+}
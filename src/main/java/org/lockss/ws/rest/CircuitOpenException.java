@@ -0,0 +1,65 @@
+/*
+
+Copyright (c) 2000-2023 Board of Trustees of Leland Stanford Jr. University,
+all rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+package org.lockss.ws.rest;
+
+import org.lockss.app.ServiceDescr;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a call to a REST service is not made because the service has been failing recently.
+ */
+public class CircuitOpenException extends IOException {
+  private static final long serialVersionUID = 1L;
+
+  private final ServiceDescr serviceDescr;
+
+  /**
+   * Constructor.
+   *
+   * @param serviceDescr A ServiceDescr with the failing service.
+   * @param message      A String with the detail message.
+   */
+  public CircuitOpenException(ServiceDescr serviceDescr, String message) {
+    super(message);
+    this.serviceDescr = serviceDescr;
+  }
+
+  /**
+   * Provides the failing service.
+   *
+   * @return a ServiceDescr with the failing service.
+   */
+  public ServiceDescr getServiceDescr() {
+    return serviceDescr;
+  }
+}
@@ -0,0 +1,93 @@
+/*
+
+Copyright (c) 2000-2023 Board of Trustees of Leland Stanford Jr. University,
+all rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+package org.lockss.ws.rest;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shared Jackson {@link ObjectMapper} used to decode the JSON responses of the REST services,
+ * with a cache of the {@link ObjectReader}s for each target type.
+ *
+ * <p>Both {@link ObjectMapper} and {@link ObjectReader} are thread-safe once configured, and
+ * reusing them keeps the serializer and deserializer caches warm across calls.
+ */
+@Component
+public class JsonReaderCache {
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final Map<JavaType, ObjectReader> readers = new ConcurrentHashMap<>();
+
+  /**
+   * Provides the shared mapper.
+   *
+   * @return the shared ObjectMapper.
+   */
+  public ObjectMapper getMapper() {
+    return mapper;
+  }
+
+  /**
+   * Provides the reader of a generic type.
+   *
+   * @param type A {@code TypeReference<?>} with the type to be read.
+   * @return an ObjectReader for the type.
+   */
+  public ObjectReader forType(TypeReference<?> type) {
+    return forType(mapper.getTypeFactory().constructType(type));
+  }
+
+  /**
+   * Provides the reader of a class.
+   *
+   * @param type A {@code Class<?>} with the class to be read.
+   * @return an ObjectReader for the class.
+   */
+  public ObjectReader forType(Class<?> type) {
+    return forType(mapper.getTypeFactory().constructType(type));
+  }
+
+  /**
+   * Provides the reader of a type, creating it if it is not cached yet.
+   *
+   * @param type A JavaType with the type to be read.
+   * @return an ObjectReader for the type.
+   */
+  public ObjectReader forType(JavaType type) {
+    return readers.computeIfAbsent(type, mapper::readerFor);
+  }
+}
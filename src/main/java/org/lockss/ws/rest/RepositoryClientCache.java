@@ -0,0 +1,236 @@
+/*
+
+Copyright (c) 2000-2023 Board of Trustees of Leland Stanford Jr. University,
+all rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+package org.lockss.ws.rest;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.lockss.app.LockssApp;
+import org.lockss.config.Configuration;
+import org.lockss.log.L4JLogger;
+import org.lockss.spring.base.BaseSpringApiServiceImpl;
+import org.lockss.spring.base.LockssConfigurableService;
+import org.lockss.util.Constants;
+import org.lockss.util.rest.repo.RestLockssRepository;
+import org.lockss.util.time.TimeBase;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of the {@link RestLockssRepository} clients used to forward SOAP calls to the
+ * repository service, keyed by repository endpoint and credentials.
+ *
+ * <p>Entries expire after a configurable time and the whole cache is invalidated when the service
+ * bindings change.
+ */
+@Component
+public class RepositoryClientCache extends BaseSpringApiServiceImpl
+    implements LockssConfigurableService, MeterBinder {
+
+  // Config params
+
+  public static final String PREFIX = "org.lockss.soap.repositoryClientCache.";
+
+  /** Maximum number of cached repository clients. Zero disables the cache. */
+  public static final String PARAM_MAX_SIZE = PREFIX + "maxSize";
+  public static final int DEFAULT_MAX_SIZE = 100;
+
+  /** Cached repository clients are discarded this long after they were created. */
+  public static final String PARAM_TTL = PREFIX + "ttl";
+  public static final long DEFAULT_TTL = 10 * Constants.MINUTE;
+
+  private static final L4JLogger log = L4JLogger.getLogger();
+
+  // Least recently used entries first.
+  private final LinkedHashMap<Key, Entry> cache = new LinkedHashMap<>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+      return size() > maxSize;
+    }
+  };
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private volatile Timer constructionTimer;
+
+  private int maxSize = DEFAULT_MAX_SIZE;
+  private long ttl = DEFAULT_TTL;
+
+  /**
+   * Provides a repository client for an endpoint and credentials, creating it if necessary.
+   *
+   * @param endpoint     A String with the URL of the repository service.
+   * @param user         A String with the name of the user.
+   * @param password     A String with the password of the user.
+   * @param restTemplate A RestTemplate used by a newly created client.
+   * @return a RestLockssRepository for the endpoint and credentials.
+   * @throws IOException if the client can't be created.
+   */
+  public RestLockssRepository get(String endpoint, String user, String password,
+                                  RestTemplate restTemplate) throws IOException {
+    Key key = new Key(endpoint, user, password);
+
+    synchronized (this) {
+      Entry entry = cache.get(key);
+
+      if (entry != null) {
+        if (TimeBase.msSince(entry.created) < ttl) {
+          hits.incrementAndGet();
+          return entry.repository;
+        }
+
+        log.trace("Expired repository client for {}", endpoint);
+        cache.remove(key);
+      }
+    }
+
+    misses.incrementAndGet();
+
+    long start = System.nanoTime();
+    RestLockssRepository repository =
+        new RestLockssRepository(new URL(endpoint), restTemplate, user, password);
+    Timer timer = constructionTimer;
+
+    if (timer != null) {
+      timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    synchronized (this) {
+      if (maxSize > 0) {
+        cache.put(key, new Entry(repository, TimeBase.nowMs()));
+      }
+    }
+
+    return repository;
+  }
+
+  /** Discards all the cached repository clients. */
+  public synchronized void clear() {
+    log.debug2("Clearing {} cached repository clients", cache.size());
+    cache.clear();
+  }
+
+  /**
+   * Provides the number of cached repository clients.
+   *
+   * @return an int with the number of cached clients.
+   */
+  public synchronized int size() {
+    return cache.size();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    FunctionCounter.builder("soap.repository.client.cache.requests", hits, AtomicLong::get)
+        .tag("result", "hit")
+        .description("Repository client lookups satisfied from the cache")
+        .register(registry);
+    FunctionCounter.builder("soap.repository.client.cache.requests", misses, AtomicLong::get)
+        .tag("result", "miss")
+        .description("Repository client lookups that created a new client")
+        .register(registry);
+    Gauge.builder("soap.repository.client.cache.size", this, RepositoryClientCache::size)
+        .description("Cached repository clients")
+        .register(registry);
+    constructionTimer = Timer.builder("soap.repository.client.construction")
+        .description("Time spent creating repository clients")
+        .register(registry);
+  }
+
+  @Override
+  public synchronized void setConfig(Configuration newConfig,
+                                     Configuration prevConfig,
+                                     Configuration.Differences changedKeys) {
+    if (changedKeys.contains(PREFIX)) {
+      maxSize = newConfig.getInt(PARAM_MAX_SIZE, DEFAULT_MAX_SIZE);
+      ttl = newConfig.getTimeInterval(PARAM_TTL, DEFAULT_TTL);
+      clear();
+    }
+
+    // Cached clients may point to a repository that is no longer bound
+    if (changedKeys.contains(LockssApp.PARAM_SERVICE_BINDINGS)) {
+      clear();
+    }
+  }
+
+  private static final class Key {
+    private final String endpoint;
+    private final String user;
+    private final String password;
+
+    private Key(String endpoint, String user, String password) {
+      this.endpoint = endpoint;
+      this.user = user;
+      this.password = password;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+
+      if (!(o instanceof Key)) {
+        return false;
+      }
+
+      Key other = (Key) o;
+      return Objects.equals(endpoint, other.endpoint) && Objects.equals(user, other.user)
+          && Objects.equals(password, other.password);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(endpoint, user, password);
+    }
+  }
+
+  private static final class Entry {
+    private final RestLockssRepository repository;
+    private final long created;
+
+    private Entry(RestLockssRepository repository, long created) {
+      this.repository = repository;
+      this.created = created;
+    }
+  }
+}
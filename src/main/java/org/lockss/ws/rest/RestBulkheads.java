@@ -0,0 +1,413 @@
+/*
+
+Copyright (c) 2000-2023 Board of Trustees of Leland Stanford Jr. University,
+all rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+package org.lockss.ws.rest;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.lockss.app.ServiceDescr;
+import org.lockss.config.Configuration;
+import org.lockss.log.L4JLogger;
+import org.lockss.spring.base.BaseSpringApiServiceImpl;
+import org.lockss.spring.base.LockssConfigurableService;
+import org.lockss.util.Constants;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of calls in progress to each REST service, so that a slow or wedged service
+ * cannot take up every thread of the SOAP service and block the operations forwarded to the
+ * other services.
+ *
+ * <p>Calls beyond the limit of a service wait for a limited time, and only while few enough other
+ * calls are already waiting; otherwise they are rejected right away with a
+ * {@link ServiceBusyException}. A call counts against the limit until its response is closed.
+ */
+@Component
+public class RestBulkheads extends BaseSpringApiServiceImpl
+    implements LockssConfigurableService, MeterBinder {
+
+  // Config params
+
+  public static final String PREFIX = "org.lockss.soap.bulkhead.";
+
+  /**
+   * Maximum number of calls in progress to any one REST service. Can be overridden for individual
+   * services with <code>org.lockss.soap.bulkhead.&lt;svc&gt;.maxConcurrent</code>, where
+   * <code>&lt;svc&gt;</code> is the service abbreviation. Zero disables the limit.
+   */
+  public static final String PARAM_MAX_CONCURRENT = PREFIX + "maxConcurrent";
+  public static final int DEFAULT_MAX_CONCURRENT = 40;
+
+  /**
+   * Maximum number of calls waiting for any one REST service when its limit has been reached. Can
+   * be overridden for individual services with
+   * <code>org.lockss.soap.bulkhead.&lt;svc&gt;.maxQueued</code>.
+   */
+  public static final String PARAM_MAX_QUEUED = PREFIX + "maxQueued";
+  public static final int DEFAULT_MAX_QUEUED = 20;
+
+  /** Maximum time that a call waits for a REST service whose limit has been reached. */
+  public static final String PARAM_MAX_WAIT = PREFIX + "maxWait";
+  public static final long DEFAULT_MAX_WAIT = 5 * Constants.SECOND;
+
+  /** Suffix of the per-service concurrency limit parameters. */
+  public static final String SUFFIX_MAX_CONCURRENT = ".maxConcurrent";
+
+  /** Suffix of the per-service queue length parameters. */
+  public static final String SUFFIX_MAX_QUEUED = ".maxQueued";
+
+  private static final L4JLogger log = L4JLogger.getLogger();
+
+  // Whether the calls made by the current thread are exempt from the limits.
+  private static final ThreadLocal<Boolean> exempt = new ThreadLocal<>();
+
+  // The bulkhead of each service.
+  private final Map<ServiceDescr, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+  // Counts kept across reconfigurations.
+  private final Map<ServiceDescr, AtomicInteger> active = new ConcurrentHashMap<>();
+  private final Map<ServiceDescr, AtomicInteger> queued = new ConcurrentHashMap<>();
+  private final Map<ServiceDescr, AtomicLong> rejected = new ConcurrentHashMap<>();
+
+  private volatile long maxWait = DEFAULT_MAX_WAIT;
+
+  public RestBulkheads() {
+    for (ServiceDescr sd : RestConnectionPool.FORWARDED_SERVICES) {
+      active.put(sd, new AtomicInteger());
+      queued.put(sd, new AtomicInteger());
+      rejected.put(sd, new AtomicLong());
+      bulkheads.put(sd, new Bulkhead(sd, DEFAULT_MAX_CONCURRENT, DEFAULT_MAX_QUEUED));
+    }
+  }
+
+  /**
+   * Exempts the calls made next by the current thread from the limits, or ends the exemption.
+   * Meant for calls, such as readiness checks, that must not wait behind regular traffic.
+   *
+   * @param isExempt A boolean indicating whether the calls are exempt.
+   * @return a boolean with the previous exemption, to be restored afterwards.
+   */
+  public static boolean setExempt(boolean isExempt) {
+    boolean previous = Boolean.TRUE.equals(exempt.get());
+
+    if (isExempt) {
+      exempt.set(Boolean.TRUE);
+    } else {
+      exempt.remove();
+    }
+
+    return previous;
+  }
+
+  /**
+   * Provides a request factory whose requests are subject to the limit of their target service.
+   *
+   * @param delegate A ClientHttpRequestFactory that creates the actual requests.
+   * @return a ClientHttpRequestFactory that limits the requests created by the delegate.
+   */
+  public ClientHttpRequestFactory decorate(ClientHttpRequestFactory delegate) {
+    return (uri, httpMethod) -> new LimitedRequest(delegate.createRequest(uri, httpMethod));
+  }
+
+  /**
+   * Waits for room for a call to a REST service, if the URI belongs to one.
+   *
+   * @param uri A String with the URI of the call.
+   * @return a Permit to be closed when the call ends.
+   * @throws ServiceBusyException if the call is rejected.
+   */
+  public Permit enter(String uri) throws ServiceBusyException {
+    if (Boolean.TRUE.equals(exempt.get())) {
+      return Permit.NONE;
+    }
+
+    ServiceDescr sd = RestServices.findService(getRunningLockssDaemon(), uri);
+    return sd == null ? Permit.NONE : enter(sd);
+  }
+
+  /**
+   * Waits for room for a call to a REST service.
+   *
+   * @param sd A ServiceDescr with the service.
+   * @return a Permit to be closed when the call ends.
+   * @throws ServiceBusyException if the call is rejected.
+   */
+  Permit enter(ServiceDescr sd) throws ServiceBusyException {
+    Bulkhead bulkhead = bulkheads.get(sd);
+    return bulkhead == null ? Permit.NONE : bulkhead.enter();
+  }
+
+  /**
+   * Provides the number of calls in progress to a REST service.
+   *
+   * @param sd A ServiceDescr with the service.
+   * @return an int with the number of calls in progress.
+   */
+  public int getActiveCount(ServiceDescr sd) {
+    AtomicInteger count = active.get(sd);
+    return count == null ? 0 : count.get();
+  }
+
+  /**
+   * Provides the number of calls to a REST service rejected because it was too busy.
+   *
+   * @param sd A ServiceDescr with the service.
+   * @return a long with the number of rejected calls.
+   */
+  public long getRejectedCount(ServiceDescr sd) {
+    AtomicLong count = rejected.get(sd);
+    return count == null ? 0 : count.get();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    for (ServiceDescr sd : RestConnectionPool.FORWARDED_SERVICES) {
+      Gauge.builder("soap.rest.bulkhead.active", active.get(sd), AtomicInteger::get)
+          .tag("service", sd.getAbbrev())
+          .description("REST calls in progress")
+          .register(registry);
+      Gauge.builder("soap.rest.bulkhead.queued", queued.get(sd), AtomicInteger::get)
+          .tag("service", sd.getAbbrev())
+          .description("REST calls waiting for the service to be less busy")
+          .register(registry);
+      FunctionCounter.builder("soap.rest.bulkhead.rejected", rejected.get(sd), AtomicLong::get)
+          .tag("service", sd.getAbbrev())
+          .description("REST calls rejected because the service was too busy")
+          .register(registry);
+    }
+  }
+
+  @Override
+  public void setConfig(Configuration newConfig,
+                        Configuration prevConfig,
+                        Configuration.Differences changedKeys) {
+    if (changedKeys.contains(PREFIX)) {
+      maxWait = newConfig.getTimeInterval(PARAM_MAX_WAIT, DEFAULT_MAX_WAIT);
+      int maxConcurrent = newConfig.getInt(PARAM_MAX_CONCURRENT, DEFAULT_MAX_CONCURRENT);
+      int maxQueued = newConfig.getInt(PARAM_MAX_QUEUED, DEFAULT_MAX_QUEUED);
+
+      // Calls in progress keep releasing the permits of the previous bulkheads
+      for (ServiceDescr sd : RestConnectionPool.FORWARDED_SERVICES) {
+        bulkheads.put(sd, new Bulkhead(sd,
+            newConfig.getInt(PREFIX + sd.getAbbrev() + SUFFIX_MAX_CONCURRENT, maxConcurrent),
+            newConfig.getInt(PREFIX + sd.getAbbrev() + SUFFIX_MAX_QUEUED, maxQueued)));
+      }
+    }
+  }
+
+  /** The room taken by a call to a REST service, given back when closed. */
+  public interface Permit extends AutoCloseable {
+    /** A permit for a call that is not limited. */
+    Permit NONE = () -> {};
+
+    @Override
+    void close();
+  }
+
+  /** The concurrency limit and queue of one REST service. */
+  private class Bulkhead {
+    private final ServiceDescr sd;
+    private final Semaphore permits;
+    private final int maxQueued;
+
+    Bulkhead(ServiceDescr sd, int maxConcurrent, int maxQueued) {
+      this.sd = sd;
+      this.permits = maxConcurrent > 0 ? new Semaphore(maxConcurrent) : null;
+      this.maxQueued = Math.max(0, maxQueued);
+    }
+
+    Permit enter() throws ServiceBusyException {
+      if (permits == null) {
+        return Permit.NONE;
+      }
+
+      if (!permits.tryAcquire() && !await()) {
+        rejected.get(sd).incrementAndGet();
+        log.debug("Rejected call to busy service {}", sd);
+        throw new ServiceBusyException(sd, "Too many calls in progress to the "
+            + sd.getAbbrev() + " REST service; try again later");
+      }
+
+      AtomicInteger count = active.get(sd);
+      count.incrementAndGet();
+      AtomicInteger released = new AtomicInteger();
+
+      return () -> {
+        // Closing more than once must not give back more room
+        if (released.getAndIncrement() == 0) {
+          count.decrementAndGet();
+          permits.release();
+        }
+      };
+    }
+
+    /**
+     * Waits for a permit, if not too many other calls are already waiting.
+     *
+     * @return a boolean with <code>true</code> if a permit was obtained.
+     */
+    private boolean await() {
+      AtomicInteger waiting = queued.get(sd);
+
+      if (maxWait <= 0) {
+        return false;
+      }
+
+      if (waiting.incrementAndGet() > maxQueued) {
+        waiting.decrementAndGet();
+        return false;
+      }
+
+      try {
+        return permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        return false;
+      } finally {
+        waiting.decrementAndGet();
+      }
+    }
+  }
+
+  /** A REST request that takes room in the bulkhead of its service until the response is closed. */
+  private class LimitedRequest implements ClientHttpRequest, StreamingHttpOutputMessage {
+    private final ClientHttpRequest delegate;
+
+    LimitedRequest(ClientHttpRequest delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public HttpMethod getMethod() {
+      return delegate.getMethod();
+    }
+
+    @Override
+    public URI getURI() {
+      return delegate.getURI();
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      return delegate.getHeaders();
+    }
+
+    @Override
+    public OutputStream getBody() throws IOException {
+      return delegate.getBody();
+    }
+
+    @Override
+    public void setBody(Body body) {
+      if (delegate instanceof StreamingHttpOutputMessage) {
+        ((StreamingHttpOutputMessage) delegate).setBody(body);
+      } else {
+        try {
+          body.writeTo(getBody());
+        } catch (IOException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    }
+
+    @Override
+    public ClientHttpResponse execute() throws IOException {
+      Permit permit = enter(getURI().toString());
+
+      try {
+        return new LimitedResponse(delegate.execute(), permit);
+      } catch (IOException | RuntimeException e) {
+        permit.close();
+        throw e;
+      }
+    }
+  }
+
+  /** The response of a limited REST request, which gives back its room when closed. */
+  private static class LimitedResponse implements ClientHttpResponse {
+    private final ClientHttpResponse delegate;
+    private final Permit permit;
+
+    LimitedResponse(ClientHttpResponse delegate, Permit permit) {
+      this.delegate = delegate;
+      this.permit = permit;
+    }
+
+    @Override
+    public HttpStatusCode getStatusCode() throws IOException {
+      return delegate.getStatusCode();
+    }
+
+    @Override
+    public String getStatusText() throws IOException {
+      return delegate.getStatusText();
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      return delegate.getHeaders();
+    }
+
+    @Override
+    public InputStream getBody() throws IOException {
+      return delegate.getBody();
+    }
+
+    @Override
+    public void close() {
+      try {
+        delegate.close();
+      } finally {
+        permit.close();
+      }
+    }
+  }
+}
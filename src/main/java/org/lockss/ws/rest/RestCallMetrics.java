@@ -0,0 +1,435 @@
+/*
+
+Copyright (c) 2000-2023 Board of Trustees of Leland Stanford Jr. University,
+all rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+package org.lockss.ws.rest;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.PhaseInterceptorChain;
+import org.apache.cxf.service.model.BindingOperationInfo;
+import org.lockss.app.ServiceDescr;
+import org.lockss.log.L4JLogger;
+import org.lockss.spring.base.BaseSpringApiServiceImpl;
+import org.lockss.ws.SoapRequestContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Records the latency, status code and bytes sent and received of the calls made to the REST
+ * services through the {@link org.springframework.web.client.RestTemplate}, tagged by target
+ * service, endpoint path template and originating SOAP operation.
+ *
+ * <p>The calls are measured by decorating the request factory rather than with a
+ * {@link org.springframework.http.client.ClientHttpRequestInterceptor}, which would make the
+ * template buffer every request body in memory. A call is measured until its response is closed,
+ * so the time spent reading the response body is included.
+ */
+@Component
+public class RestCallMetrics extends BaseSpringApiServiceImpl implements MeterBinder {
+  private static final L4JLogger log = L4JLogger.getLogger();
+
+  private static final String UNKNOWN = "unknown";
+  private static final String NONE = "none";
+
+  /** The status recorded for calls that received no response. */
+  public static final String IO_ERROR = "IO_ERROR";
+
+  // Path segments that are identifiers rather than part of the endpoint path.
+  private static final Pattern ID_SEGMENT = Pattern.compile(
+      ".*%.*|\\d+|[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
+  // The path template of the REST call about to be made by the current thread, if known.
+  private static final ThreadLocal<String> pathTemplate = new ThreadLocal<>();
+
+  private volatile MeterRegistry registry;
+
+  // Timeouts that may be derived from the latency of recent calls.
+  @Autowired(required = false) protected RestTimeouts restTimeouts;
+
+  /**
+   * Sets the URI template of the REST calls made next by the current thread, so that they are
+   * tagged with it instead of a path derived from their expanded URI.
+   *
+   * @param template A String with the URI template, or <code>null</code> to clear it.
+   * @return a String with the previous URI template, to be restored afterwards.
+   */
+  public static String setPathTemplate(String template) {
+    String previous = pathTemplate.get();
+
+    if (template == null) {
+      pathTemplate.remove();
+    } else {
+      pathTemplate.set(template);
+    }
+
+    return previous;
+  }
+
+  /**
+   * Provides the name of the SOAP operation on whose behalf the current thread is working.
+   *
+   * @return a String with the name of the operation, or <code>null</code> if it is not known.
+   */
+  public static String getCurrentOperation() {
+    SoapRequestContext context = SoapRequestContext.getCurrent();
+
+    if (context != null) {
+      return context.getOperation();
+    }
+
+    Message message = PhaseInterceptorChain.getCurrentMessage();
+
+    if (message == null) {
+      return null;
+    }
+
+    Exchange exchange = message.getExchange();
+    BindingOperationInfo boi = exchange == null ? null : exchange.getBindingOperationInfo();
+    return boi == null ? null : boi.getName().getLocalPart();
+  }
+
+  /**
+   * Provides a request factory whose requests are measured.
+   *
+   * @param delegate A ClientHttpRequestFactory that creates the actual requests.
+   * @return a ClientHttpRequestFactory that measures the requests created by the delegate.
+   */
+  public ClientHttpRequestFactory decorate(ClientHttpRequestFactory delegate) {
+    return (uri, httpMethod) -> new MeteredRequest(delegate.createRequest(uri, httpMethod));
+  }
+
+  /**
+   * Records the measurements of a REST call that is not made through a decorated request factory,
+   * other than the numbers of bytes sent and received.
+   *
+   * @param uri    A URI with the expanded URI of the call.
+   * @param method An HttpMethod with the method of the call.
+   * @param status A String with the response status code, or the kind of failure.
+   * @param start  A long with the start time of the call, from {@link System#nanoTime()}.
+   */
+  public void record(URI uri, HttpMethod method, String status, long start) {
+    String op = getCurrentOperation();
+    record(uri, method, getPathTemplate(uri), status, op == null ? NONE : op, start, -1, -1);
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    this.registry = registry;
+  }
+
+  /**
+   * Records the measurements of a call.
+   *
+   * @param uri           A URI with the expanded URI of the call.
+   * @param httpMethod    An HttpMethod with the method of the call.
+   * @param path          A String with the path template of the call.
+   * @param status        A String with the response status code, or the kind of failure.
+   * @param operation     A String with the SOAP operation making the call.
+   * @param start         A long with the start time of the call, in nanoseconds.
+   * @param requestBytes  A long with the number of bytes sent, or a negative number if unknown.
+   * @param responseBytes A long with the number of bytes received, or a negative number if
+   *                      unknown.
+   */
+  private void record(URI uri, HttpMethod httpMethod, String path, String status,
+                      String operation, long start, long requestBytes, long responseBytes) {
+    long nanos = System.nanoTime() - start;
+    ServiceDescr sd = findService(uri.toString());
+    String service = sd == null ? UNKNOWN : sd.getAbbrev();
+    String method = httpMethod.name();
+
+    log.debug2("{} {} {} ({}) -> {} in {} ms for {}", method, service, path, uri, status,
+        TimeUnit.NANOSECONDS.toMillis(nanos), operation);
+
+    if (restTimeouts != null && !IO_ERROR.equals(status) && !NONE.equals(operation)) {
+      restTimeouts.recordLatency(sd, operation, TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    MeterRegistry reg = registry;
+
+    if (reg == null) {
+      return;
+    }
+
+    Timer.builder("soap.rest.call.duration")
+        .tag("service", service)
+        .tag("method", method)
+        .tag("path", path)
+        .tag("status", status)
+        .tag("operation", operation)
+        .description("Latency of the REST calls forwarded by the SOAP service")
+        .register(reg)
+        .record(nanos, TimeUnit.NANOSECONDS);
+
+    if (requestBytes >= 0) {
+      DistributionSummary.builder("soap.rest.call.request.size")
+          .tag("service", service)
+          .tag("path", path)
+          .tag("operation", operation)
+          .baseUnit("bytes")
+          .description("Bytes sent in the REST calls forwarded by the SOAP service")
+          .register(reg)
+          .record(requestBytes);
+    }
+
+    if (responseBytes >= 0) {
+      DistributionSummary.builder("soap.rest.call.response.size")
+          .tag("service", service)
+          .tag("path", path)
+          .tag("operation", operation)
+          .baseUnit("bytes")
+          .description("Bytes received in the REST calls forwarded by the SOAP service")
+          .register(reg)
+          .record(responseBytes);
+    }
+  }
+
+  private String getRestStem(ServiceDescr sd) {
+    return RestServices.getRestStem(getRunningLockssDaemon(), sd);
+  }
+
+  private ServiceDescr findService(String uri) {
+    return RestServices.findService(getRunningLockssDaemon(), uri);
+  }
+
+  /**
+   * Provides the endpoint path template of a REST call.
+   *
+   * @param uri A URI with the expanded URI of the call.
+   * @return a String with the path template.
+   */
+  String getPathTemplate(URI uri) {
+    String template = pathTemplate.get();
+
+    if (template != null) {
+      // Drop the query and the service part of the template.
+      int queryStart = template.indexOf('?');
+
+      if (queryStart >= 0) {
+        template = template.substring(0, queryStart);
+      }
+
+      ServiceDescr sd = findService(template);
+
+      if (sd != null) {
+        return template.substring(getRestStem(sd).length());
+      }
+
+      int schemeEnd = template.indexOf("://");
+
+      if (schemeEnd >= 0) {
+        int pathStart = template.indexOf('/', schemeEnd + 3);
+        return pathStart >= 0 ? template.substring(pathStart) : "/";
+      }
+
+      return template;
+    }
+
+    // Replace the identifiers in the expanded path with placeholders.
+    String path = uri.getRawPath();
+
+    if (path == null || path.isEmpty()) {
+      return "/";
+    }
+
+    StringBuilder sb = new StringBuilder();
+
+    for (String segment : path.substring(1).split("/", -1)) {
+      sb.append('/').append(ID_SEGMENT.matcher(segment).matches() ? "{id}" : segment);
+    }
+
+    return sb.toString();
+  }
+
+  /** A REST request that is measured until its response is closed. */
+  private class MeteredRequest implements ClientHttpRequest, StreamingHttpOutputMessage {
+    private final ClientHttpRequest delegate;
+    private final String operation;
+    private CountingOutputStream requestCounter;
+
+    MeteredRequest(ClientHttpRequest delegate) {
+      this.delegate = delegate;
+      String op = getCurrentOperation();
+      this.operation = op == null ? NONE : op;
+    }
+
+    @Override
+    public HttpMethod getMethod() {
+      return delegate.getMethod();
+    }
+
+    @Override
+    public URI getURI() {
+      return delegate.getURI();
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      return delegate.getHeaders();
+    }
+
+    @Override
+    public OutputStream getBody() throws IOException {
+      if (requestCounter == null) {
+        requestCounter = new CountingOutputStream(delegate.getBody());
+      }
+
+      return requestCounter;
+    }
+
+    @Override
+    public void setBody(Body body) {
+      if (delegate instanceof StreamingHttpOutputMessage) {
+        ((StreamingHttpOutputMessage) delegate).setBody(out -> {
+          requestCounter = new CountingOutputStream(out);
+          body.writeTo(requestCounter);
+        });
+      } else {
+        try {
+          body.writeTo(getBody());
+        } catch (IOException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    }
+
+    @Override
+    public ClientHttpResponse execute() throws IOException {
+      // The path template must be read on the thread making the call.
+      String path = getPathTemplate(getURI());
+      long start = System.nanoTime();
+
+      try {
+        return new MeteredResponse(delegate.execute(), this, path, start);
+      } catch (IOException | RuntimeException e) {
+        record(path, IO_ERROR, start, 0);
+        throw e;
+      }
+    }
+
+    private long getRequestBytes() {
+      return requestCounter == null ? 0 : requestCounter.getByteCount();
+    }
+
+    /**
+     * Records the measurements of this call.
+     *
+     * @param path          A String with the path template of the call.
+     * @param status        A String with the response status code, or the kind of failure.
+     * @param start         A long with the start time of the call, in nanoseconds.
+     * @param responseBytes A long with the number of bytes received.
+     */
+    private void record(String path, String status, long start, long responseBytes) {
+      RestCallMetrics.this.record(getURI(), getMethod(), path, status, operation, start,
+          getRequestBytes(), responseBytes);
+    }
+  }
+
+  /** The response of a measured REST request, whose measurement ends when it is closed. */
+  private static class MeteredResponse implements ClientHttpResponse {
+    private final ClientHttpResponse delegate;
+    private final MeteredRequest request;
+    private final String path;
+    private final long start;
+    private CountingInputStream responseCounter;
+    private boolean closed = false;
+
+    MeteredResponse(ClientHttpResponse delegate, MeteredRequest request, String path,
+                    long start) {
+      this.delegate = delegate;
+      this.request = request;
+      this.path = path;
+      this.start = start;
+    }
+
+    @Override
+    public HttpStatusCode getStatusCode() throws IOException {
+      return delegate.getStatusCode();
+    }
+
+    @Override
+    public String getStatusText() throws IOException {
+      return delegate.getStatusText();
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      return delegate.getHeaders();
+    }
+
+    @Override
+    public InputStream getBody() throws IOException {
+      if (responseCounter == null) {
+        responseCounter = new CountingInputStream(delegate.getBody());
+      }
+
+      return responseCounter;
+    }
+
+    @Override
+    public void close() {
+      if (!closed) {
+        closed = true;
+        String status;
+
+        try {
+          status = String.valueOf(delegate.getStatusCode().value());
+        } catch (IOException e) {
+          status = IO_ERROR;
+        }
+
+        request.record(path, status, start,
+            responseCounter == null ? 0 : responseCounter.getByteCount());
+      }
+
+      delegate.close();
+    }
+  }
+}
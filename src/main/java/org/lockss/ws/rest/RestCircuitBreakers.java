@@ -0,0 +1,455 @@
+/*
+
+Copyright (c) 2000-2023 Board of Trustees of Leland Stanford Jr. University,
+all rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+package org.lockss.ws.rest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.lockss.app.ServiceDescr;
+import org.lockss.config.Configuration;
+import org.lockss.log.L4JLogger;
+import org.lockss.spring.base.BaseSpringApiServiceImpl;
+import org.lockss.spring.base.LockssConfigurableService;
+import org.lockss.util.Constants;
+import org.lockss.util.time.TimeBase;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stops forwarding calls to a REST service that has been failing, so that SOAP requests fail
+ * right away instead of each waiting for the connection or read timeout while the service is
+ * down or restarting.
+ *
+ * <p>The breaker of each service is closed while the service works. It opens when, among the
+ * latest calls, the fraction that failed reaches a threshold. While open, calls are rejected with
+ * a {@link CircuitOpenException}. After a while it becomes half-open and lets a few trial calls
+ * through: if they all succeed it closes again, and if any fails it opens again.
+ *
+ * <p>Calls fail when no response is received, or when the response status indicates that the
+ * service is unavailable (502, 503 or 504).
+ */
+@Component
+public class RestCircuitBreakers extends BaseSpringApiServiceImpl
+    implements LockssConfigurableService, MeterBinder {
+
+  // Config params
+
+  public static final String PREFIX = "org.lockss.soap.circuitBreaker.";
+
+  /** If false, calls are always forwarded. */
+  public static final String PARAM_ENABLED = PREFIX + "enabled";
+  public static final boolean DEFAULT_ENABLED = true;
+
+  /** Number of latest calls to a service whose outcomes are considered. */
+  public static final String PARAM_WINDOW_SIZE = PREFIX + "windowSize";
+  public static final int DEFAULT_WINDOW_SIZE = 20;
+
+  /** Minimum number of calls considered before the breaker can open. */
+  public static final String PARAM_MIN_CALLS = PREFIX + "minCalls";
+  public static final int DEFAULT_MIN_CALLS = 10;
+
+  /** Percentage of failed calls among those considered at which the breaker opens. */
+  public static final String PARAM_FAILURE_RATE = PREFIX + "failureRate";
+  public static final int DEFAULT_FAILURE_RATE = 50;
+
+  /** Time that the breaker stays open before letting trial calls through. */
+  public static final String PARAM_OPEN_DURATION = PREFIX + "openDuration";
+  public static final long DEFAULT_OPEN_DURATION = 30 * Constants.SECOND;
+
+  /** Number of trial calls that must succeed in the half-open state to close the breaker. */
+  public static final String PARAM_HALF_OPEN_CALLS = PREFIX + "halfOpenCalls";
+  public static final int DEFAULT_HALF_OPEN_CALLS = 3;
+
+  /** The states of a breaker. */
+  public enum State {
+    /** Calls are forwarded. */
+    CLOSED,
+    /** A few trial calls are forwarded. */
+    HALF_OPEN,
+    /** Calls are rejected. */
+    OPEN
+  }
+
+  private static final L4JLogger log = L4JLogger.getLogger();
+
+  // The breaker of each service.
+  private final Map<ServiceDescr, Breaker> breakers = new ConcurrentHashMap<>();
+
+  // The number of calls rejected by the breaker of each service.
+  private final Map<ServiceDescr, AtomicLong> rejected = new ConcurrentHashMap<>();
+
+  private volatile boolean enabled = DEFAULT_ENABLED;
+  private volatile int windowSize = DEFAULT_WINDOW_SIZE;
+  private volatile int minCalls = DEFAULT_MIN_CALLS;
+  private volatile int failureRate = DEFAULT_FAILURE_RATE;
+  private volatile long openDuration = DEFAULT_OPEN_DURATION;
+  private volatile int halfOpenCalls = DEFAULT_HALF_OPEN_CALLS;
+
+  private volatile MeterRegistry registry;
+
+  public RestCircuitBreakers() {
+    for (ServiceDescr sd : RestConnectionPool.FORWARDED_SERVICES) {
+      breakers.put(sd, new Breaker(sd));
+      rejected.put(sd, new AtomicLong());
+    }
+  }
+
+  /**
+   * Provides a request factory whose requests are not made while the breaker of their target
+   * service is open.
+   *
+   * @param delegate A ClientHttpRequestFactory that creates the actual requests.
+   * @return a ClientHttpRequestFactory that guards the requests created by the delegate.
+   */
+  public ClientHttpRequestFactory decorate(ClientHttpRequestFactory delegate) {
+    return (uri, httpMethod) -> new GuardedRequest(delegate.createRequest(uri, httpMethod));
+  }
+
+  /**
+   * Provides the state of the breaker of a REST service.
+   *
+   * @param sd A ServiceDescr with the service.
+   * @return a State with the state of the breaker.
+   */
+  public State getState(ServiceDescr sd) {
+    Breaker breaker = breakers.get(sd);
+    return breaker == null || !enabled ? State.CLOSED : breaker.getState();
+  }
+
+  /**
+   * Provides an indication of whether calls to a REST service are currently being rejected.
+   *
+   * @param sd A ServiceDescr with the service.
+   * @return a boolean with the indication.
+   */
+  public boolean isOpen(ServiceDescr sd) {
+    return getState(sd) == State.OPEN;
+  }
+
+  /**
+   * Checks whether a call to a REST service may be made now.
+   *
+   * @param sd A ServiceDescr with the service, or <code>null</code> if the call is not made to
+   *           a REST service.
+   * @throws CircuitOpenException if the call may not be made.
+   */
+  public void enter(ServiceDescr sd) throws CircuitOpenException {
+    Breaker breaker = sd == null ? null : breakers.get(sd);
+
+    if (breaker != null && enabled && !breaker.tryEnter()) {
+      rejected.get(sd).incrementAndGet();
+      throw new CircuitOpenException(sd, "The " + sd.getAbbrev()
+          + " REST service has been failing; not calling it until it recovers");
+    }
+  }
+
+  /**
+   * Records the outcome of a call to a REST service.
+   *
+   * @param sd      A ServiceDescr with the service, or <code>null</code> if the call was not made
+   *                to a REST service.
+   * @param success A boolean indicating whether the call succeeded.
+   */
+  public void record(ServiceDescr sd, boolean success) {
+    Breaker breaker = sd == null ? null : breakers.get(sd);
+
+    if (breaker != null && enabled) {
+      breaker.record(success);
+    }
+  }
+
+  /**
+   * Records that a call to a REST service allowed by its breaker was not made after all.
+   *
+   * @param sd A ServiceDescr with the service, or <code>null</code> if the call was not to be made
+   *           to a REST service.
+   */
+  public void abandon(ServiceDescr sd) {
+    Breaker breaker = sd == null ? null : breakers.get(sd);
+
+    if (breaker != null && enabled) {
+      breaker.abandon();
+    }
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    this.registry = registry;
+
+    for (ServiceDescr sd : RestConnectionPool.FORWARDED_SERVICES) {
+      Gauge.builder("soap.rest.circuit.state", this, b -> b.getState(sd).ordinal())
+          .tag("service", sd.getAbbrev())
+          .description("State of the circuit breaker: 0 closed, 1 half-open, 2 open")
+          .register(registry);
+      FunctionCounter.builder("soap.rest.circuit.rejected", rejected.get(sd), AtomicLong::get)
+          .tag("service", sd.getAbbrev())
+          .description("REST calls not made because the circuit breaker was open")
+          .register(registry);
+    }
+  }
+
+  @Override
+  public void setConfig(Configuration newConfig,
+                        Configuration prevConfig,
+                        Configuration.Differences changedKeys) {
+    if (changedKeys.contains(PREFIX)) {
+      enabled = newConfig.getBoolean(PARAM_ENABLED, DEFAULT_ENABLED);
+      windowSize = Math.max(1, newConfig.getInt(PARAM_WINDOW_SIZE, DEFAULT_WINDOW_SIZE));
+      minCalls = Math.min(windowSize,
+          Math.max(1, newConfig.getInt(PARAM_MIN_CALLS, DEFAULT_MIN_CALLS)));
+      failureRate = newConfig.getInt(PARAM_FAILURE_RATE, DEFAULT_FAILURE_RATE);
+      openDuration = newConfig.getTimeInterval(PARAM_OPEN_DURATION, DEFAULT_OPEN_DURATION);
+      halfOpenCalls = Math.max(1, newConfig.getInt(PARAM_HALF_OPEN_CALLS,
+          DEFAULT_HALF_OPEN_CALLS));
+
+      // The breakers start over with the new settings
+      for (ServiceDescr sd : RestConnectionPool.FORWARDED_SERVICES) {
+        breakers.put(sd, new Breaker(sd));
+      }
+    }
+  }
+
+  /**
+   * Provides an indication of whether a response status means that the service is unavailable.
+   *
+   * @param status An int with the response status code.
+   * @return a boolean with the indication.
+   */
+  public static boolean isUnavailable(int status) {
+    return status == 502 || status == 503 || status == 504;
+  }
+
+  /** The breaker of one REST service. */
+  private class Breaker {
+    private final ServiceDescr sd;
+
+    // The outcomes of the latest calls, as a ring.
+    private final boolean[] failures = new boolean[windowSize];
+    private int next = 0;
+    private int count = 0;
+    private int failureCount = 0;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int trialsStarted;
+    private int trialsSucceeded;
+
+    Breaker(ServiceDescr sd) {
+      this.sd = sd;
+    }
+
+    synchronized State getState() {
+      if (state == State.OPEN && TimeBase.msSince(openedAt) >= openDuration) {
+        transition(State.HALF_OPEN);
+      }
+
+      return state;
+    }
+
+    synchronized boolean tryEnter() {
+      switch (getState()) {
+        case CLOSED:
+          return true;
+        case HALF_OPEN:
+          if (trialsStarted < halfOpenCalls) {
+            trialsStarted++;
+            return true;
+          }
+
+          return false;
+        default:
+          return false;
+      }
+    }
+
+    synchronized void abandon() {
+      if (state == State.HALF_OPEN && trialsStarted > 0) {
+        trialsStarted--;
+      }
+    }
+
+    synchronized void record(boolean success) {
+      switch (state) {
+        case HALF_OPEN:
+          if (!success) {
+            transition(State.OPEN);
+          } else if (++trialsSucceeded >= halfOpenCalls) {
+            transition(State.CLOSED);
+          }
+
+          break;
+        case CLOSED:
+          if (count == failures.length) {
+            failureCount -= failures[next] ? 1 : 0;
+          } else {
+            count++;
+          }
+
+          failures[next] = !success;
+          failureCount += success ? 0 : 1;
+          next = (next + 1) % failures.length;
+
+          if (count >= minCalls && failureCount * 100 >= failureRate * count) {
+            transition(State.OPEN);
+          }
+
+          break;
+        default:
+          // Calls started before the breaker opened.
+          break;
+      }
+    }
+
+    private void transition(State newState) {
+      log.info("Circuit breaker of the {} REST service changed from {} to {}", sd.getAbbrev(),
+          state, newState);
+
+      MeterRegistry reg = registry;
+
+      if (reg != null) {
+        Counter.builder("soap.rest.circuit.transitions")
+            .tag("service", sd.getAbbrev())
+            .tag("from", state.name())
+            .tag("to", newState.name())
+            .description("Changes of state of the circuit breakers")
+            .register(reg)
+            .increment();
+      }
+
+      state = newState;
+
+      switch (newState) {
+        case OPEN:
+          openedAt = TimeBase.nowMs();
+          break;
+        case HALF_OPEN:
+          trialsStarted = 0;
+          trialsSucceeded = 0;
+          break;
+        default:
+          next = 0;
+          count = 0;
+          failureCount = 0;
+          break;
+      }
+    }
+  }
+
+  /** A REST request that is not made while the breaker of its service is open. */
+  private class GuardedRequest implements ClientHttpRequest, StreamingHttpOutputMessage {
+    private final ClientHttpRequest delegate;
+
+    GuardedRequest(ClientHttpRequest delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public HttpMethod getMethod() {
+      return delegate.getMethod();
+    }
+
+    @Override
+    public URI getURI() {
+      return delegate.getURI();
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      return delegate.getHeaders();
+    }
+
+    @Override
+    public OutputStream getBody() throws IOException {
+      return delegate.getBody();
+    }
+
+    @Override
+    public void setBody(Body body) {
+      if (delegate instanceof StreamingHttpOutputMessage) {
+        ((StreamingHttpOutputMessage) delegate).setBody(body);
+      } else {
+        try {
+          body.writeTo(getBody());
+        } catch (IOException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    }
+
+    @Override
+    public ClientHttpResponse execute() throws IOException {
+      ServiceDescr sd = RestServices.findService(getRunningLockssDaemon(), getURI().toString());
+
+      if (sd == null) {
+        return delegate.execute();
+      }
+
+      enter(sd);
+      ClientHttpResponse response;
+
+      try {
+        response = delegate.execute();
+      } catch (ServiceBusyException sbe) {
+        // Rejected before reaching the service.
+        abandon(sd);
+        throw sbe;
+      } catch (IOException | RuntimeException e) {
+        record(sd, false);
+        throw e;
+      }
+
+      try {
+        record(sd, !isUnavailable(response.getStatusCode().value()));
+      } catch (IOException e) {
+        record(sd, false);
+        response.close();
+        throw e;
+      }
+
+      return response;
+    }
+  }
+}
@@ -0,0 +1,452 @@
+/*
+
+Copyright (c) 2000-2023 Board of Trustees of Leland Stanford Jr. University,
+all rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+package org.lockss.ws.rest;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.apache.hc.client5.http.HttpRequestRetryStrategy;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.RouteInfo;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.DefaultHttpRequestRetryStrategy;
+import org.apache.hc.client5.http.impl.IdleConnectionEvictor;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.lockss.app.ServiceDescr;
+import org.lockss.config.Configuration;
+import org.lockss.log.L4JLogger;
+import org.lockss.spring.base.BaseSpringApiServiceImpl;
+import org.lockss.spring.base.LockssConfigurableService;
+import org.lockss.util.Constants;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+
+/**
+ * Pool of persistent (HTTP/1.1 keep-alive) connections used by the {@link
+ * org.springframework.web.client.RestTemplate} that forwards SOAP calls to the REST services.
+ *
+ * <p>Each bound REST service is a separate route of the pool, with its own connection limit. The
+ * leased, pending and available connection counts of each route are published as gauges.
+ *
+ * <p>Requests are not retried by default, so that a struggling service does not receive more load
+ * than the SOAP clients generate and the circuit breakers see every failure. Idempotent requests
+ * that fail with an I/O error can be retried a configurable number of times. Requests are never
+ * retried because of the status of their response.
+ */
+@Component
+public class RestConnectionPool extends BaseSpringApiServiceImpl
+    implements LockssConfigurableService, MeterBinder {
+
+  // Config params
+
+  public static final String PREFIX = "org.lockss.soap.connectionPool.";
+
+  /** Maximum number of connections in the pool, across all the services. */
+  public static final String PARAM_MAX_TOTAL = PREFIX + "maxTotal";
+  public static final int DEFAULT_MAX_TOTAL = 200;
+
+  /**
+   * Maximum number of connections to any one service. Can be overridden for individual services
+   * with <code>org.lockss.soap.connectionPool.&lt;svc&gt;.maxPerRoute</code>, where
+   * <code>&lt;svc&gt;</code> is the service abbreviation (<code>cfg</code>, <code>repo</code>,
+   * <code>poller</code>, <code>crawler</code>, <code>mdx</code> or <code>mdq</code>).
+   */
+  public static final String PARAM_MAX_PER_ROUTE = PREFIX + "maxPerRoute";
+  public static final int DEFAULT_MAX_PER_ROUTE = 20;
+
+  /** Suffix of the per-service connection limit parameters. */
+  public static final String SUFFIX_MAX_PER_ROUTE = ".maxPerRoute";
+
+  /** Idle connections are closed after this long. */
+  public static final String PARAM_IDLE_TIMEOUT = PREFIX + "idleTimeout";
+  public static final long DEFAULT_IDLE_TIMEOUT = 30 * Constants.SECOND;
+
+  /** Pooled connections idle longer than this are checked before being reused. */
+  public static final String PARAM_VALIDATE_AFTER_INACTIVITY =
+      PREFIX + "validateAfterInactivity";
+  public static final long DEFAULT_VALIDATE_AFTER_INACTIVITY = 2 * Constants.SECOND;
+
+  /** How long to wait for a connection to become available in the pool. */
+  public static final String PARAM_LEASE_TIMEOUT = PREFIX + "leaseTimeout";
+  public static final long DEFAULT_LEASE_TIMEOUT = 30 * Constants.SECOND;
+
+  /**
+   * Number of times an idempotent request that failed with an I/O error is retried. Zero disables
+   * the retries.
+   */
+  public static final String PARAM_MAX_RETRIES = PREFIX + "maxRetries";
+  public static final int DEFAULT_MAX_RETRIES = 0;
+
+  /** The REST services to which SOAP calls are forwarded. */
+  public static final List<ServiceDescr> FORWARDED_SERVICES =
+      List.of(ServiceDescr.SVC_CONFIG, ServiceDescr.SVC_REPO, ServiceDescr.SVC_POLLER,
+          ServiceDescr.SVC_CRAWLER, ServiceDescr.SVC_MDX, ServiceDescr.SVC_MDQ);
+
+  private static final L4JLogger log = L4JLogger.getLogger();
+
+  private final PoolingHttpClientConnectionManager connectionManager =
+      new PoolingHttpClientConnectionManager();
+
+  // The pool route of each bound service.
+  private final Map<ServiceDescr, HttpRoute> routes = new ConcurrentHashMap<>();
+
+  // The number of requests retried by the HTTP client, per service.
+  private final Map<ServiceDescr, AtomicLong> retries = new HashMap<>();
+
+  private CloseableHttpClient httpClient;
+  private IdleConnectionEvictor evictor;
+
+  private long connectTimeout = 10 * Constants.SECOND;
+  private long readTimeout = 120 * Constants.SECOND;
+  private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+  private long validateAfterInactivity = DEFAULT_VALIDATE_AFTER_INACTIVITY;
+  private long leaseTimeout = DEFAULT_LEASE_TIMEOUT;
+
+  // Decides which requests that failed with an I/O error are retried.
+  private volatile HttpRequestRetryStrategy ioRetryStrategy =
+      newIoRetryStrategy(DEFAULT_MAX_RETRIES);
+
+  public RestConnectionPool() {
+    for (ServiceDescr sd : FORWARDED_SERVICES) {
+      retries.put(sd, new AtomicLong());
+    }
+
+    connectionManager.setMaxTotal(DEFAULT_MAX_TOTAL);
+    connectionManager.setDefaultMaxPerRoute(DEFAULT_MAX_PER_ROUTE);
+    updateConnectionConfig();
+    startEvictor();
+  }
+
+  /**
+   * Provides a request factory that obtains its connections from this pool, with timeouts that
+   * may depend on the service called and the SOAP operation making the call.
+   *
+   * @param connectTimeout A long with the default connection timeout in milliseconds.
+   * @param readTimeout    A long with the default read timeout in milliseconds.
+   * @param timeouts       A RestTimeouts with the timeouts of each call, or <code>null</code> to
+   *                       use the defaults for every call.
+   * @return a ClientHttpRequestFactory backed by this pool.
+   */
+  public synchronized ClientHttpRequestFactory getRequestFactory(long connectTimeout,
+                                                                 long readTimeout,
+                                                                 RestTimeouts timeouts) {
+    this.connectTimeout = connectTimeout;
+    this.readTimeout = readTimeout;
+    updateConnectionConfig();
+
+    if (httpClient == null) {
+      httpClient = HttpClients.custom()
+          .setConnectionManager(connectionManager)
+          .setDefaultRequestConfig(RequestConfig.custom()
+              .setConnectionRequestTimeout(Timeout.ofMilliseconds(leaseTimeout))
+              .build())
+          // The forwarded requests carry the credentials of different SOAP clients
+          .disableCookieManagement()
+          .setRetryStrategy(new CountingRetryStrategy())
+          .build();
+    }
+
+    HttpComponentsClientHttpRequestFactory factory =
+        new HttpComponentsClientHttpRequestFactory(httpClient);
+    // Stream request bodies (e.g., imported content) instead of buffering them in memory
+    factory.setBufferRequestBody(false);
+
+    if (timeouts != null) {
+      factory.setHttpContextFactory((httpMethod, uri) -> createHttpContext(timeouts, uri));
+    }
+
+    return factory;
+  }
+
+  /**
+   * Provides the context of a request, with the timeouts of the call.
+   *
+   * @param timeouts A RestTimeouts with the timeouts of each call.
+   * @param uri      A URI with the URI of the call.
+   * @return an HttpContext with the context of the request.
+   */
+  private HttpContext createHttpContext(RestTimeouts timeouts, URI uri) {
+    ServiceDescr sd = RestServices.findService(getRunningLockssDaemon(), uri.toString());
+    String operation = RestCallMetrics.getCurrentOperation();
+
+    HttpClientContext context = HttpClientContext.create();
+    context.setRequestConfig(RequestConfig.custom()
+        .setConnectionRequestTimeout(Timeout.ofMilliseconds(leaseTimeout))
+        .setConnectTimeout(Timeout.ofMilliseconds(
+            timeouts.getConnectTimeout(sd, operation, connectTimeout)))
+        .setResponseTimeout(Timeout.ofMilliseconds(
+            timeouts.getReadTimeout(sd, operation, readTimeout)))
+        .build());
+    return context;
+  }
+
+  /**
+   * Provides the current statistics of the pool route of each bound service.
+   *
+   * @return a {@code Map<ServiceDescr, PoolStats>} with the statistics of each route.
+   */
+  public Map<ServiceDescr, PoolStats> getRouteStats() {
+    Map<ServiceDescr, PoolStats> result = new LinkedHashMap<>();
+
+    for (Map.Entry<ServiceDescr, HttpRoute> entry : routes.entrySet()) {
+      result.put(entry.getKey(), connectionManager.getStats(entry.getValue()));
+    }
+
+    return result;
+  }
+
+  /**
+   * Provides the current statistics of the whole pool.
+   *
+   * @return a PoolStats with the statistics of the pool.
+   */
+  public PoolStats getTotalStats() {
+    return connectionManager.getTotalStats();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("soap.rest.pool.max", connectionManager,
+            cm -> cm.getTotalStats().getMax())
+        .description("Maximum number of pooled REST connections")
+        .register(registry);
+
+    for (ServiceDescr sd : FORWARDED_SERVICES) {
+      registerRouteGauge(registry, sd, "leased", "REST connections in use", PoolStats::getLeased);
+      registerRouteGauge(registry, sd, "pending", "Requests waiting for a REST connection",
+          PoolStats::getPending);
+      registerRouteGauge(registry, sd, "available", "Idle pooled REST connections",
+          PoolStats::getAvailable);
+      FunctionCounter.builder("soap.rest.retries", retries.get(sd), AtomicLong::get)
+          .tag("service", sd.getAbbrev())
+          .description("REST requests retried by the HTTP client")
+          .register(registry);
+    }
+  }
+
+  /**
+   * Provides the number of requests to a service retried by the HTTP client.
+   *
+   * @param sd A ServiceDescr with the service.
+   * @return a long with the number of retries.
+   */
+  public long getRetryCount(ServiceDescr sd) {
+    AtomicLong count = retries.get(sd);
+    return count == null ? 0 : count.get();
+  }
+
+  private void registerRouteGauge(MeterRegistry registry, ServiceDescr sd, String name,
+                                  String description, ToIntFunction<PoolStats> stat) {
+    Gauge.builder("soap.rest.pool." + name, this, pool -> {
+          HttpRoute route = pool.routes.get(sd);
+          return route == null ? 0 : stat.applyAsInt(pool.connectionManager.getStats(route));
+        })
+        .tag("service", sd.getAbbrev())
+        .description(description)
+        .register(registry);
+  }
+
+  @Override
+  public synchronized void setConfig(Configuration newConfig,
+                                     Configuration prevConfig,
+                                     Configuration.Differences changedKeys) {
+    if (changedKeys.contains(PREFIX)) {
+      connectionManager.setMaxTotal(newConfig.getInt(PARAM_MAX_TOTAL, DEFAULT_MAX_TOTAL));
+      connectionManager.setDefaultMaxPerRoute(
+          newConfig.getInt(PARAM_MAX_PER_ROUTE, DEFAULT_MAX_PER_ROUTE));
+
+      validateAfterInactivity = newConfig.getTimeInterval(PARAM_VALIDATE_AFTER_INACTIVITY,
+          DEFAULT_VALIDATE_AFTER_INACTIVITY);
+      leaseTimeout = newConfig.getTimeInterval(PARAM_LEASE_TIMEOUT, DEFAULT_LEASE_TIMEOUT);
+      updateConnectionConfig();
+
+      ioRetryStrategy = newIoRetryStrategy(
+          Math.max(0, newConfig.getInt(PARAM_MAX_RETRIES, DEFAULT_MAX_RETRIES)));
+
+      long newIdleTimeout = newConfig.getTimeInterval(PARAM_IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT);
+
+      if (newIdleTimeout != idleTimeout) {
+        idleTimeout = newIdleTimeout;
+        stopEvictor();
+        startEvictor();
+      }
+    }
+
+    // The service bindings may have changed too
+    updateRoutes(newConfig);
+  }
+
+  /**
+   * Maps each bound service to its pool route and applies its connection limit.
+   *
+   * @param config The current Configuration.
+   */
+  private void updateRoutes(Configuration config) {
+    int defaultMaxPerRoute = config.getInt(PARAM_MAX_PER_ROUTE, DEFAULT_MAX_PER_ROUTE);
+
+    for (ServiceDescr sd : FORWARDED_SERVICES) {
+      String restStem = getRestStem(sd);
+
+      if (restStem == null) {
+        routes.remove(sd);
+        continue;
+      }
+
+      try {
+        HttpRoute route = new HttpRoute(HttpHost.create(new URI(restStem)));
+        int maxPerRoute = config.getInt(PREFIX + sd.getAbbrev() + SUFFIX_MAX_PER_ROUTE,
+            defaultMaxPerRoute);
+
+        connectionManager.setMaxPerRoute(route, maxPerRoute);
+        routes.put(sd, route);
+        log.debug2("route = {}, maxPerRoute = {}", route, maxPerRoute);
+      } catch (Exception e) {
+        log.warn("Can't set up connection pool route for {}", sd, e);
+      }
+    }
+  }
+
+  /**
+   * Provides the REST stem of a bound service.
+   *
+   * @param sd A ServiceDescr with the service.
+   * @return a String with the REST stem, or <code>null</code> if the service is not bound.
+   */
+  String getRestStem(ServiceDescr sd) {
+    return RestServices.getRestStem(getRunningLockssDaemon(), sd);
+  }
+
+  private static HttpRequestRetryStrategy newIoRetryStrategy(int maxRetries) {
+    return new DefaultHttpRequestRetryStrategy(maxRetries, TimeValue.ZERO_MILLISECONDS);
+  }
+
+  private void updateConnectionConfig() {
+    connectionManager.setDefaultConnectionConfig(ConnectionConfig.custom()
+        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeout))
+        .setSocketTimeout(Timeout.ofMilliseconds(readTimeout))
+        .setValidateAfterInactivity(TimeValue.ofMilliseconds(validateAfterInactivity))
+        .build());
+  }
+
+  private void startEvictor() {
+    if (idleTimeout <= 0) {
+      return;
+    }
+
+    TimeValue maxIdle = TimeValue.ofMilliseconds(idleTimeout);
+    evictor = new IdleConnectionEvictor(connectionManager, maxIdle, maxIdle);
+    evictor.start();
+  }
+
+  private void stopEvictor() {
+    if (evictor != null) {
+      evictor.shutdown();
+      evictor = null;
+    }
+  }
+
+  @PreDestroy
+  public synchronized void shutdown() {
+    stopEvictor();
+
+    try {
+      if (httpClient != null) {
+        httpClient.close();
+      }
+
+      connectionManager.close();
+    } catch (IOException e) {
+      log.warn("Error closing the REST connection pool", e);
+    }
+  }
+
+  /**
+   * The retry strategy of the HTTP client, which retries idempotent requests that failed with an
+   * I/O error up to the configured number of times, never retries requests because of their
+   * response, and counts the retries of each service.
+   */
+  private class CountingRetryStrategy implements HttpRequestRetryStrategy {
+    @Override
+    public boolean retryRequest(HttpRequest request, IOException exception, int execCount,
+                                HttpContext context) {
+      return count(ioRetryStrategy.retryRequest(request, exception, execCount, context), context);
+    }
+
+    @Override
+    public boolean retryRequest(HttpResponse response, int execCount, HttpContext context) {
+      // Failure responses are left to the caller and the circuit breakers.
+      return false;
+    }
+
+    @Override
+    public TimeValue getRetryInterval(HttpResponse response, int execCount,
+                                      HttpContext context) {
+      return TimeValue.ZERO_MILLISECONDS;
+    }
+
+    private boolean count(boolean retry, HttpContext context) {
+      if (retry) {
+        RouteInfo route = HttpClientContext.adapt(context).getHttpRoute();
+
+        for (Map.Entry<ServiceDescr, HttpRoute> entry : routes.entrySet()) {
+          if (route != null && entry.getValue().getTargetHost().equals(route.getTargetHost())) {
+            retries.get(entry.getKey()).incrementAndGet();
+            log.debug2("Retrying request to {}", entry.getKey());
+          }
+        }
+      }
+
+      return retry;
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/*
+
+Copyright (c) 2000-2023 Board of Trustees of Leland Stanford Jr. University,
+all rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+package org.lockss.ws.rest;
+
+import org.lockss.app.LockssDaemon;
+import org.lockss.app.ServiceBinding;
+import org.lockss.app.ServiceDescr;
+
+/** Mapping of the URIs of forwarded REST calls to the services they are made to. */
+public final class RestServices {
+  private RestServices() {
+  }
+
+  /**
+   * Provides the REST stem of a bound service.
+   *
+   * @param daemon A LockssDaemon with the running daemon, if any.
+   * @param sd     A ServiceDescr with the service.
+   * @return a String with the REST stem, or <code>null</code> if the service is not bound.
+   */
+  public static String getRestStem(LockssDaemon daemon, ServiceDescr sd) {
+    ServiceBinding binding = daemon == null ? null : daemon.getServiceBinding(sd);
+    return binding == null ? null : binding.getRestStem();
+  }
+
+  /**
+   * Provides the REST service to which a URI belongs.
+   *
+   * @param daemon A LockssDaemon with the running daemon, if any.
+   * @param uri    A String with the URI.
+   * @return a ServiceDescr with the service whose REST stem prefixes the URI, or
+   *     <code>null</code> if there is none.
+   */
+  public static ServiceDescr findService(LockssDaemon daemon, String uri) {
+    for (ServiceDescr sd : RestConnectionPool.FORWARDED_SERVICES) {
+      String stem = getRestStem(daemon, sd);
+
+      if (stem != null && uri.startsWith(stem)) {
+        return sd;
+      }
+    }
+
+    return null;
+  }
+}
@@ -0,0 +1,296 @@
+/*
+
+Copyright (c) 2000-2023 Board of Trustees of Leland Stanford Jr. University,
+all rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+package org.lockss.ws.rest;
+
+import org.lockss.app.ServiceDescr;
+import org.lockss.config.Configuration;
+import org.lockss.log.L4JLogger;
+import org.lockss.spring.base.BaseSpringApiServiceImpl;
+import org.lockss.spring.base.LockssConfigurableService;
+import org.lockss.util.Constants;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Provides the connection and read timeouts of the calls made to the REST services, which can be
+ * set for each service and for each SOAP operation on whose behalf the calls are made.
+ *
+ * <p>A timeout of an operation, set with
+ * <code>org.lockss.soap.timeout.op.&lt;operation&gt;.connect</code> or <code>.read</code>, takes
+ * precedence over one of the service, set with
+ * <code>org.lockss.soap.timeout.&lt;svc&gt;.connect</code> or <code>.read</code>, where
+ * <code>&lt;svc&gt;</code> is the service abbreviation. Without either, the timeout supplied by
+ * the caller is used.
+ *
+ * <p>Optionally, the read timeout of the operations that have none of their own is derived from
+ * the latency of their recent calls to each service, so that calls that usually take little time
+ * fail early when the service stalls. A derived timeout never exceeds the one that would be used
+ * otherwise.
+ */
+@Component
+public class RestTimeouts extends BaseSpringApiServiceImpl implements LockssConfigurableService {
+
+  // Config params
+
+  public static final String PREFIX = "org.lockss.soap.timeout.";
+
+  /** Prefix of the per-operation timeout parameters. */
+  public static final String OPERATION_PREFIX = PREFIX + "op.";
+
+  /** Suffix of the connection timeout parameters. */
+  public static final String SUFFIX_CONNECT = ".connect";
+
+  /** Suffix of the read timeout parameters. */
+  public static final String SUFFIX_READ = ".read";
+
+  /** If true, read timeouts are derived from the latency of recent calls. */
+  public static final String PARAM_ADAPTIVE = PREFIX + "adaptive";
+  public static final boolean DEFAULT_ADAPTIVE = false;
+
+  /** Latency percentile from which read timeouts are derived. */
+  public static final String PARAM_ADAPTIVE_PERCENTILE = PREFIX + "adaptive.percentile";
+  public static final int DEFAULT_ADAPTIVE_PERCENTILE = 99;
+
+  /** Derived read timeouts are this percentage of the latency percentile. */
+  public static final String PARAM_ADAPTIVE_FACTOR = PREFIX + "adaptive.factor";
+  public static final int DEFAULT_ADAPTIVE_FACTOR = 400;
+
+  /** Derived read timeouts are never shorter than this. */
+  public static final String PARAM_ADAPTIVE_MIN = PREFIX + "adaptive.min";
+  public static final long DEFAULT_ADAPTIVE_MIN = 2 * Constants.SECOND;
+
+  /** Number of recent calls needed to derive a read timeout. */
+  public static final String PARAM_ADAPTIVE_MIN_SAMPLES = PREFIX + "adaptive.minSamples";
+  public static final int DEFAULT_ADAPTIVE_MIN_SAMPLES = 100;
+
+  /**
+   * Read timeouts of operations known to take very long, used unless configured otherwise. The
+   * synchronous hash of an AU can take hours.
+   */
+  static final Map<String, Long> DEFAULT_OPERATION_READ_TIMEOUTS = Map.of("hash", Constants.DAY);
+
+  // The number of recent latencies kept for each service and operation.
+  private static final int LATENCY_WINDOW = 200;
+
+  private static final long UNSET = -1;
+
+  private static final L4JLogger log = L4JLogger.getLogger();
+
+  private volatile Configuration config;
+
+  // Timeouts of the operations used unless configured otherwise, by operation.
+  private final Map<String, Long> operationConnectDefaults = new ConcurrentHashMap<>();
+  private final Map<String, Long> operationReadDefaults =
+      new ConcurrentHashMap<>(DEFAULT_OPERATION_READ_TIMEOUTS);
+
+  // Timeouts already looked up in the configuration, by parameter name.
+  private final Map<String, Long> configured = new ConcurrentHashMap<>();
+
+  // Recent latencies, by service and operation.
+  private final Map<String, Latencies> latencies = new ConcurrentHashMap<>();
+
+  private volatile boolean adaptive = DEFAULT_ADAPTIVE;
+  private volatile int adaptivePercentile = DEFAULT_ADAPTIVE_PERCENTILE;
+  private volatile int adaptiveFactor = DEFAULT_ADAPTIVE_FACTOR;
+  private volatile long adaptiveMin = DEFAULT_ADAPTIVE_MIN;
+  private volatile int adaptiveMinSamples = DEFAULT_ADAPTIVE_MIN_SAMPLES;
+
+  /**
+   * Provides the connection timeout of a call.
+   *
+   * @param sd        A ServiceDescr with the service called, or <code>null</code> if unknown.
+   * @param operation A String with the SOAP operation making the call, or <code>null</code> if
+   *                  unknown.
+   * @param dflt      A long with the timeout in milliseconds to use if none is configured.
+   * @return a long with the timeout in milliseconds.
+   */
+  public long getConnectTimeout(ServiceDescr sd, String operation, long dflt) {
+    long timeout = operation == null ? UNSET
+        : getConfigured(OPERATION_PREFIX + operation + SUFFIX_CONNECT,
+            operationConnectDefaults.getOrDefault(operation, UNSET));
+
+    if (timeout == UNSET) {
+      timeout = getConfigured(sd == null ? null
+          : PREFIX + sd.getAbbrev() + SUFFIX_CONNECT, dflt);
+    }
+
+    return timeout;
+  }
+
+  /**
+   * Provides the read timeout of a call.
+   *
+   * @param sd        A ServiceDescr with the service called, or <code>null</code> if unknown.
+   * @param operation A String with the SOAP operation making the call, or <code>null</code> if
+   *                  unknown.
+   * @param dflt      A long with the timeout in milliseconds to use if none is configured.
+   * @return a long with the timeout in milliseconds.
+   */
+  public long getReadTimeout(ServiceDescr sd, String operation, long dflt) {
+    if (operation != null) {
+      long timeout = getConfigured(OPERATION_PREFIX + operation + SUFFIX_READ,
+          operationReadDefaults.getOrDefault(operation, UNSET));
+
+      if (timeout != UNSET) {
+        return timeout;
+      }
+    }
+
+    long timeout = getConfigured(sd == null ? null : PREFIX + sd.getAbbrev() + SUFFIX_READ, dflt);
+
+    if (adaptive && sd != null && operation != null) {
+      Latencies recent = latencies.get(getLatencyKey(sd, operation));
+      long percentile = recent == null ? UNSET
+          : recent.getPercentile(adaptivePercentile, adaptiveMinSamples);
+
+      if (percentile != UNSET) {
+        long derived = Math.max(adaptiveMin, percentile * adaptiveFactor / 100);
+        log.trace("sd = {}, operation = {}, derived = {}", sd, operation, derived);
+        timeout = timeout > 0 ? Math.min(timeout, derived) : derived;
+      }
+    }
+
+    return timeout;
+  }
+
+  /**
+   * Sets the timeouts of the calls made on behalf of an operation, used unless configured
+   * otherwise.
+   *
+   * @param operation      A String with the name of the operation.
+   * @param connectTimeout A long with the connection timeout in milliseconds.
+   * @param readTimeout    A long with the read timeout in milliseconds.
+   */
+  public void setOperationDefaults(String operation, long connectTimeout, long readTimeout) {
+    operationConnectDefaults.put(operation, connectTimeout);
+    operationReadDefaults.put(operation, readTimeout);
+  }
+
+  /**
+   * Records the latency of a call that got a response.
+   *
+   * @param sd        A ServiceDescr with the service called.
+   * @param operation A String with the SOAP operation that made the call.
+   * @param millis    A long with the latency in milliseconds.
+   */
+  public void recordLatency(ServiceDescr sd, String operation, long millis) {
+    if (adaptive && sd != null && operation != null) {
+      latencies.computeIfAbsent(getLatencyKey(sd, operation), k -> new Latencies())
+          .add(millis);
+    }
+  }
+
+  private static String getLatencyKey(ServiceDescr sd, String operation) {
+    return sd.getAbbrev() + "/" + operation;
+  }
+
+  /**
+   * Provides a configured timeout.
+   *
+   * @param param A String with the name of the parameter, or <code>null</code>.
+   * @param dflt  A long with the timeout to use if the parameter is not set.
+   * @return a long with the timeout in milliseconds.
+   */
+  private long getConfigured(String param, long dflt) {
+    Configuration current = config;
+
+    if (param == null || current == null) {
+      return dflt;
+    }
+
+    long timeout = configured.computeIfAbsent(param, k -> current.getTimeInterval(k, UNSET));
+    return timeout == UNSET ? dflt : timeout;
+  }
+
+  @Override
+  public void setConfig(Configuration newConfig,
+                        Configuration prevConfig,
+                        Configuration.Differences changedKeys) {
+    config = newConfig;
+
+    if (changedKeys.contains(PREFIX)) {
+      configured.clear();
+
+      adaptive = newConfig.getBoolean(PARAM_ADAPTIVE, DEFAULT_ADAPTIVE);
+      adaptivePercentile = Math.min(100, Math.max(1,
+          newConfig.getInt(PARAM_ADAPTIVE_PERCENTILE, DEFAULT_ADAPTIVE_PERCENTILE)));
+      adaptiveFactor = Math.max(100,
+          newConfig.getInt(PARAM_ADAPTIVE_FACTOR, DEFAULT_ADAPTIVE_FACTOR));
+      adaptiveMin = newConfig.getTimeInterval(PARAM_ADAPTIVE_MIN, DEFAULT_ADAPTIVE_MIN);
+      adaptiveMinSamples = Math.min(LATENCY_WINDOW, Math.max(1,
+          newConfig.getInt(PARAM_ADAPTIVE_MIN_SAMPLES, DEFAULT_ADAPTIVE_MIN_SAMPLES)));
+
+      if (!adaptive) {
+        latencies.clear();
+      }
+    }
+  }
+
+  /** The latencies of the recent calls of an operation to a service. */
+  private static class Latencies {
+    private final long[] window = new long[LATENCY_WINDOW];
+    private int next = 0;
+    private int count = 0;
+
+    // The percentile last computed, recomputed after some new samples.
+    private int cachedPercentile = -1;
+    private long cachedValue = UNSET;
+    private int samplesSinceComputed = 0;
+
+    synchronized void add(long millis) {
+      window[next] = millis;
+      next = (next + 1) % window.length;
+      count = Math.min(count + 1, window.length);
+      samplesSinceComputed++;
+    }
+
+    synchronized long getPercentile(int percentile, int minSamples) {
+      if (count < minSamples) {
+        return UNSET;
+      }
+
+      if (percentile != cachedPercentile || samplesSinceComputed >= LATENCY_WINDOW / 10) {
+        long[] sorted = Arrays.copyOf(window, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        cachedValue = sorted[Math.max(0, index)];
+        cachedPercentile = percentile;
+        samplesSinceComputed = 0;
+      }
+
+      return cachedValue;
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/*
+
+Copyright (c) 2000-2023 Board of Trustees of Leland Stanford Jr. University,
+all rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+package org.lockss.ws.status;
+
+import org.lockss.util.rest.repo.model.Artifact;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+/**
+ * Newline-delimited URLs of a sequence of artifacts, read from the artifacts as they are obtained
+ * from the repository, so that only one URL at a time is held in memory.
+ */
+class ArtifactUrlsInputStream extends InputStream {
+  private final Iterator<Artifact> artifacts;
+  private byte[] line = new byte[0];
+  private int position = 0;
+
+  /**
+   * Constructor.
+   *
+   * @param artifacts An {@code Iterator<Artifact>} with the artifacts.
+   */
+  ArtifactUrlsInputStream(Iterator<Artifact> artifacts) {
+    this.artifacts = artifacts;
+  }
+
+  @Override
+  public int read() {
+    if (!fill()) {
+      return -1;
+    }
+
+    return line[position++] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) {
+    if (len == 0) {
+      return 0;
+    }
+
+    int count = 0;
+
+    while (count < len && fill()) {
+      int n = Math.min(len - count, line.length - position);
+      System.arraycopy(line, position, b, off + count, n);
+      position += n;
+      count += n;
+    }
+
+    return count == 0 ? -1 : count;
+  }
+
+  /**
+   * Makes sure that there are bytes left to read in the current line, moving to the next artifact
+   * if necessary.
+   *
+   * @return a boolean with <code>false</code> if there are no more bytes to read.
+   */
+  private boolean fill() {
+    while (position >= line.length) {
+      if (!artifacts.hasNext()) {
+        return false;
+      }
+
+      line = (artifacts.next().getUri() + "\n").getBytes(StandardCharsets.UTF_8);
+      position = 0;
+    }
+
+    return true;
+  }
+}
@@ -0,0 +1,62 @@
+/*
+
+Copyright (c) 2000-2023 Board of Trustees of Leland Stanford Jr. University,
+all rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+package org.lockss.ws.status;
+
+import org.lockss.ws.entities.DataHandlerWrapper;
+import org.lockss.ws.entities.LockssWebServicesFault;
+
+import jakarta.jws.WebMethod;
+import jakarta.jws.WebParam;
+import jakarta.jws.WebService;
+
+/**
+ * The AU URLs SOAP web service interface.
+ *
+ * <p>Its responses are MTOM packages, so it is kept apart from {@link DaemonStatusService}, whose
+ * responses are plain SOAP messages.
+ */
+@WebService
+public interface AuUrlsService {
+  /**
+   * Provides the URLs in an archival unit as an attachment with one URL per line.
+   *
+   * @param auId A String with the identifier of the archival unit.
+   * @param url A String with the URL prefix of the URLs to be provided, or <code>NULL</code> if
+   *     all the URLS are to be provided.
+   * @return a DataHandlerWrapper with the attachment.
+   * @throws LockssWebServicesFault if there are problems.
+   */
+  @WebMethod
+  DataHandlerWrapper getAuUrlsAttachment(
+      @WebParam(name = "auId") String auId, @WebParam(name = "url") String url)
+      throws LockssWebServicesFault;
+}
@@ -0,0 +1,91 @@
+/*
+
+Copyright (c) 2000-2023 Board of Trustees of Leland Stanford Jr. University,
+all rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+package org.lockss.ws.status;
+
+import org.apache.cxf.jaxrs.ext.multipart.InputStreamDataSource;
+import org.lockss.log.L4JLogger;
+import org.lockss.util.rest.repo.model.Artifact;
+import org.lockss.ws.BaseServiceImpl;
+import org.lockss.ws.entities.DataHandlerWrapper;
+import org.lockss.ws.entities.LockssWebServicesFault;
+import org.springframework.stereotype.Service;
+
+import jakarta.activation.DataHandler;
+import jakarta.xml.ws.soap.MTOM;
+
+/** The AU URLs SOAP web service implementation. */
+@MTOM
+@Service
+public class AuUrlsServiceImpl extends BaseServiceImpl implements AuUrlsService {
+  private static final L4JLogger log = L4JLogger.getLogger();
+
+  /**
+   * Provides the URLs in an archival unit as an attachment with one URL per line.
+   *
+   * <p>The URLs are written to the attachment as they are obtained from the repository, page by
+   * page, so the size of the archival unit does not affect the memory used.
+   *
+   * @param auId A String with the identifier of the archival unit.
+   * @param url A String with the URL prefix of the URLs to be provided, or <code>NULL</code> if
+   *     all the URLS are to be provided.
+   * @return a DataHandlerWrapper with the attachment.
+   * @throws LockssWebServicesFault if there are problems.
+   */
+  @Override
+  public DataHandlerWrapper getAuUrlsAttachment(String auId, String url)
+      throws LockssWebServicesFault {
+    log.debug2("auId = {}", auId);
+    log.debug2("url = {}", url);
+
+    try {
+      String prefixUrl = url == null ? "" : url;
+      log.trace("prefixUrl = {}", prefixUrl);
+
+      // The artifacts are fetched when the attachment is written.
+      Iterable<Artifact> artifacts =
+          getRestLockssRepository().getArtifactsWithPrefix(repoNamespace, auId, prefixUrl);
+
+      DataHandler dataHandler = new DataHandler(new InputStreamDataSource(
+          new ArtifactUrlsInputStream(artifacts.iterator()), "text/plain; charset=UTF-8",
+          "urls.txt"));
+
+      DataHandlerWrapper result = new DataHandlerWrapper();
+      result.setDataHandler(dataHandler);
+      result.setName("urls.txt");
+
+      log.debug2("result = {}", result);
+      return result;
+    } catch (Exception e) {
+      throw new LockssWebServicesFault(e);
+    }
+  }
+}
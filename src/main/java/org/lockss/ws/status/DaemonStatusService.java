@@ -224,4 +224,25 @@ public interface DaemonStatusService {
   @WebMethod
   List<String> getAuUrls(@WebParam(name = "auId") String auId, @WebParam(name = "url") String url)
       throws LockssWebServicesFault;
+
+  /**
+   * Provides a page of the URLs in an archival unit.
+   *
+   * @param auId A String with the identifier of the archival unit.
+   * @param url A String with the URL prefix of the URLs to be provided, or <code>NULL</code> if
+   *     all the URLS are to be provided.
+   * @param limit An Integer with the maximum number of URLs in the page, or <code>NULL</code> for
+   *     the largest page allowed.
+   * @param continuationToken A String with the continuation token of the previous page, or
+   *     <code>NULL</code> for the first page.
+   * @return an AuUrlsPage with the results.
+   * @throws LockssWebServicesFault if there are problems.
+   */
+  @WebMethod
+  AuUrlsPage getAuUrlsPage(
+      @WebParam(name = "auId") String auId,
+      @WebParam(name = "url") String url,
+      @WebParam(name = "limit") Integer limit,
+      @WebParam(name = "continuationToken") String continuationToken)
+      throws LockssWebServicesFault;
 }
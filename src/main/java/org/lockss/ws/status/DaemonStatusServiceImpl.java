@@ -28,15 +28,15 @@ in this Software without prior written authorization from Stanford University.
 package org.lockss.ws.status;
 
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.lockss.app.ServiceDescr;
+import org.lockss.config.Configuration;
 import org.lockss.util.rest.repo.model.Artifact;
+import org.lockss.util.rest.repo.model.ArtifactPageInfo;
 import org.lockss.log.L4JLogger;
-import org.lockss.util.rest.exception.LockssRestException;
 import org.lockss.util.rest.poller.RestPollerClient;
-import org.lockss.util.rest.status.RestStatusClient;
 import org.lockss.ws.BaseServiceImpl;
 import org.lockss.ws.entities.*;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
@@ -48,6 +48,25 @@ import java.util.*;
 public class DaemonStatusServiceImpl extends BaseServiceImpl implements DaemonStatusService {
   private static final L4JLogger log = L4JLogger.getLogger();
 
+  // Config params
+
+  public static final String AU_URLS_PREFIX = PREFIX + "auUrls.";
+
+  /** Maximum number of URLs in a page returned by getAuUrlsPage. */
+  public static final String PARAM_MAX_AU_URLS_PAGE_SIZE = AU_URLS_PREFIX + "maxPageSize";
+  public static final int DEFAULT_MAX_AU_URLS_PAGE_SIZE = 10000;
+
+  private int maxAuUrlsPageSize = DEFAULT_MAX_AU_URLS_PAGE_SIZE;
+
+  // Types of the REST service responses.
+  private static final TypeReference<List<PluginWsResult>> PLUGIN_RESULTS_TYPE =
+      new TypeReference<List<PluginWsResult>>() {};
+
+  @Autowired private ServiceReadinessProbe readinessProbe;
+
+  // Recent results of the queries of the title database and the plugins.
+  @Autowired private QueryResultCache queryResults;
+
   /**
    * Provides an indication of whether the daemon is ready.
    *
@@ -59,62 +78,8 @@ public class DaemonStatusServiceImpl extends BaseServiceImpl implements DaemonSt
     log.debug2("Invoked.");
 
     try {
-      boolean result = true;
-
-      // Check the repository service.
-      String url = getServiceEndpoint(ServiceDescr.SVC_REPO);
-
-      if (url != null) {
-        result = isServiceReady(url);
-
-        if (!result) {
-          log.debug2("result = {}", result);
-          return result;
-        }
-      }
-
-      // Check the configuration service.
-      url = getServiceEndpoint(ServiceDescr.SVC_CONFIG);
-
-      if (url != null) {
-        result = isServiceReady(url);
-
-        if (!result) {
-          log.debug2("result = {}", result);
-          return result;
-        }
-      }
-
-      // Check the poller service.
-      url = getServiceEndpoint(ServiceDescr.SVC_POLLER);
-
-      if (url != null) {
-        result = isServiceReady(url);
-
-        if (!result) {
-          log.debug2("result = {}", result);
-          return result;
-        }
-      }
-
-      // Check the metadata extractor service.
-      url = getServiceEndpoint(ServiceDescr.SVC_MDX);
-
-      if (url != null) {
-        result = isServiceReady(url);
-
-        if (!result) {
-          log.debug2("result = {}", result);
-          return result;
-        }
-      }
-
-      // Check the metadata service.
-      url = getServiceEndpoint(ServiceDescr.SVC_MDQ);
-
-      if (url != null) {
-        result = isServiceReady(url);
-      }
+      // Probe the services concurrently.
+      boolean result = readinessProbe.isReady();
 
       log.debug2("result = {}", result);
       return result;
@@ -123,29 +88,6 @@ public class DaemonStatusServiceImpl extends BaseServiceImpl implements DaemonSt
     }
   }
 
-  /**
-   * Provides an indication of whether a REST service is ready.
-   *
-   * @param serviceUrl A String with the URL of the service.
-   * @return a boolean with the indication.
-   */
-  private boolean isServiceReady(String serviceUrl) {
-    log.debug2("serviceUrl = {}", serviceUrl);
-    boolean isReady = false;
-
-    try {
-      isReady = new RestStatusClient(serviceUrl)
-          .setRestTemplate(restTemplate)
-          .getStatus()
-          .isReady();
-    } catch (LockssRestException lre) {
-      log.debug("Ignored exception caught getting status of " + serviceUrl, lre);
-    }
-
-    log.debug2("isReady = {}", isReady);
-    return isReady;
-  }
-
   /**
    * Provides a list of the identifier/name pairs of the archival units in the system.
    *
@@ -208,10 +150,9 @@ public class DaemonStatusServiceImpl extends BaseServiceImpl implements DaemonSt
 
       // Get the response body.
       try {
-        ObjectMapper mapper = new ObjectMapper();
-        AuStatus result = mapper.readValue(response.getBody(), AuStatus.class);
+        AuStatus result = jsonReaders.forType(AuStatus.class).readValue(response.getBody());
 
-        log.debug2("result = " + result);
+        log.debug2("result = {}", result);
         return result;
       } catch (Exception e) {
         log.error("Cannot get body of response", e);
@@ -240,29 +181,33 @@ public class DaemonStatusServiceImpl extends BaseServiceImpl implements DaemonSt
       queryParams.put("pluginQuery", pluginQuery);
       log.trace("queryParams = {}", queryParams);
 
-      // Make the REST call.
-      ResponseEntity<String> response =
-          callRestServiceEndpoint(
-              getServiceEndpoint(ServiceDescr.SVC_CONFIG),
-              "/ws/plugins",
-              null,
-              queryParams,
-              HttpMethod.GET,
-              (Void) null,
-              "Can't query plugins");
-
-      // Get the response body.
-      try {
-        ObjectMapper mapper = new ObjectMapper();
-        List<PluginWsResult> result =
-            mapper.readValue(response.getBody(), new TypeReference<List<PluginWsResult>>() {});
+      // Make the REST call, unless the results are cached.
+      List<PluginWsResult> result = queryResults.get("plugins", pluginQuery,
+          getSoapRequestAuthorizationHeader(), responseSize -> {
+            ResponseEntity<String> response =
+                callRestServiceEndpoint(
+                    getServiceEndpoint(ServiceDescr.SVC_CONFIG),
+                    "/ws/plugins",
+                    null,
+                    queryParams,
+                    HttpMethod.GET,
+                    (Void) null,
+                    "Can't query plugins");
+
+            // Get the response body.
+            String responseBody = response.getBody();
+            responseSize.accept(responseBody == null ? 0 : responseBody.length());
+
+            try {
+              return jsonReaders.forType(PLUGIN_RESULTS_TYPE).readValue(responseBody);
+            } catch (Exception e) {
+              log.error("Cannot get body of response", e);
+              throw e;
+            }
+          });
 
-        log.debug2("result = " + result);
-        return result;
-      } catch (Exception e) {
-        log.error("Cannot get body of response", e);
-        throw e;
-      }
+      log.debug2("result = {}", result);
+      return result;
     } catch (Exception e) {
       throw new LockssWebServicesFault(e);
     }
@@ -286,29 +231,20 @@ public class DaemonStatusServiceImpl extends BaseServiceImpl implements DaemonSt
       queryParams.put("auQuery", auQuery);
       log.trace("queryParams = {}", queryParams);
 
-      // Make the REST call.
-      ResponseEntity<String> response =
-          callRestServiceEndpoint(
+      // Make the REST call, decoding the results as they are received.
+      List<AuWsResult> result =
+          callRestServiceEndpointForList(
               getServiceEndpoint(ServiceDescr.SVC_CONFIG),
               "/ws/auqueries",
               null,
               queryParams,
               HttpMethod.GET,
               (Void) null,
+              AuWsResult.class,
               "Can't query AUs");
 
-      // Get the response body.
-      try {
-        ObjectMapper mapper = new ObjectMapper();
-        List<AuWsResult> result =
-            mapper.readValue(response.getBody(), new TypeReference<List<AuWsResult>>() {});
-
-        log.debug2("result = " + result);
-        return result;
-      } catch (Exception e) {
-        log.error("Cannot get body of response", e);
-        throw e;
-      }
+      log.debug2("result = {}", result);
+      return result;
     } catch (Exception e) {
       throw new LockssWebServicesFault(e);
     }
@@ -500,11 +436,10 @@ public class DaemonStatusServiceImpl extends BaseServiceImpl implements DaemonSt
 
       // Get the response body.
       try {
-        ObjectMapper mapper = new ObjectMapper();
         PlatformConfigurationWsResult result =
-            mapper.readValue(response.getBody(), PlatformConfigurationWsResult.class);
+            jsonReaders.forType(PlatformConfigurationWsResult.class).readValue(response.getBody());
 
-        log.debug2("result = " + result);
+        log.debug2("result = {}", result);
         return result;
       } catch (Exception e) {
         log.error("Cannot get body of response", e);
@@ -535,30 +470,23 @@ public class DaemonStatusServiceImpl extends BaseServiceImpl implements DaemonSt
       queryParams.put("tdbPublisherQuery", tdbPublisherQuery);
       log.trace("queryParams = {}", queryParams);
 
-      // Make the REST call.
-      ResponseEntity<String> response =
-          callRestServiceEndpoint(
-              getServiceEndpoint(ServiceDescr.SVC_CONFIG),
-              "/ws/tdbpublishers",
-              null,
-              queryParams,
-              HttpMethod.GET,
-              (Void) null,
-              "Can't query TDB publishers");
-
-      // Get the response body.
-      try {
-        ObjectMapper mapper = new ObjectMapper();
-        List<TdbPublisherWsResult> result =
-            mapper.readValue(
-                response.getBody(), new TypeReference<List<TdbPublisherWsResult>>() {});
+      // Make the REST call, decoding the results as they are received, unless the results are
+      // cached.
+      List<TdbPublisherWsResult> result = queryResults.get("tdbPublishers", tdbPublisherQuery,
+          getSoapRequestAuthorizationHeader(), responseSize ->
+              callRestServiceEndpointForList(
+                  getServiceEndpoint(ServiceDescr.SVC_CONFIG),
+                  "/ws/tdbpublishers",
+                  null,
+                  queryParams,
+                  HttpMethod.GET,
+                  (Void) null,
+                  TdbPublisherWsResult.class,
+                  "Can't query TDB publishers",
+                  responseSize));
 
-        log.debug2("result = " + result);
-        return result;
-      } catch (Exception e) {
-        log.error("Cannot get body of response", e);
-        throw e;
-      }
+      log.debug2("result = {}", result);
+      return result;
     } catch (Exception e) {
       throw new LockssWebServicesFault(e);
     }
@@ -582,29 +510,23 @@ public class DaemonStatusServiceImpl extends BaseServiceImpl implements DaemonSt
       queryParams.put("tdbTitleQuery", tdbTitleQuery);
       log.trace("queryParams = {}", queryParams);
 
-      // Make the REST call.
-      ResponseEntity<String> response =
-          callRestServiceEndpoint(
-              getServiceEndpoint(ServiceDescr.SVC_CONFIG),
-              "/ws/tdbtitles",
-              null,
-              queryParams,
-              HttpMethod.GET,
-              (Void) null,
-              "Can't query TDB titles");
-
-      // Get the response body.
-      try {
-        ObjectMapper mapper = new ObjectMapper();
-        List<TdbTitleWsResult> result =
-            mapper.readValue(response.getBody(), new TypeReference<List<TdbTitleWsResult>>() {});
+      // Make the REST call, decoding the results as they are received, unless the results are
+      // cached.
+      List<TdbTitleWsResult> result = queryResults.get("tdbTitles", tdbTitleQuery,
+          getSoapRequestAuthorizationHeader(), responseSize ->
+              callRestServiceEndpointForList(
+                  getServiceEndpoint(ServiceDescr.SVC_CONFIG),
+                  "/ws/tdbtitles",
+                  null,
+                  queryParams,
+                  HttpMethod.GET,
+                  (Void) null,
+                  TdbTitleWsResult.class,
+                  "Can't query TDB titles",
+                  responseSize));
 
-        log.debug2("result = " + result);
-        return result;
-      } catch (Exception e) {
-        log.error("Cannot get body of response", e);
-        throw e;
-      }
+      log.debug2("result = {}", result);
+      return result;
     } catch (Exception e) {
       throw new LockssWebServicesFault(e);
     }
@@ -629,29 +551,23 @@ public class DaemonStatusServiceImpl extends BaseServiceImpl implements DaemonSt
       queryParams.put("tdbAuQuery", tdbAuQuery);
       log.trace("queryParams = {}", queryParams);
 
-      // Make the REST call.
-      ResponseEntity<String> response =
-          callRestServiceEndpoint(
-              getServiceEndpoint(ServiceDescr.SVC_CONFIG),
-              "/ws/tdbaus",
-              null,
-              queryParams,
-              HttpMethod.GET,
-              (Void) null,
-              "Can't query TDB AUs");
-
-      // Get the response body.
-      try {
-        ObjectMapper mapper = new ObjectMapper();
-        List<TdbAuWsResult> result =
-            mapper.readValue(response.getBody(), new TypeReference<List<TdbAuWsResult>>() {});
+      // Make the REST call, decoding the results as they are received, unless the results are
+      // cached.
+      List<TdbAuWsResult> result = queryResults.get("tdbAus", tdbAuQuery,
+          getSoapRequestAuthorizationHeader(), responseSize ->
+              callRestServiceEndpointForList(
+                  getServiceEndpoint(ServiceDescr.SVC_CONFIG),
+                  "/ws/tdbaus",
+                  null,
+                  queryParams,
+                  HttpMethod.GET,
+                  (Void) null,
+                  TdbAuWsResult.class,
+                  "Can't query TDB AUs",
+                  responseSize));
 
-        log.debug2("result = " + result);
-        return result;
-      } catch (Exception e) {
-        log.error("Cannot get body of response", e);
-        throw e;
-      }
+      log.debug2("result = {}", result);
+      return result;
     } catch (Exception e) {
       throw new LockssWebServicesFault(e);
     }
@@ -692,4 +608,100 @@ public class DaemonStatusServiceImpl extends BaseServiceImpl implements DaemonSt
       throw new LockssWebServicesFault(e);
     }
   }
+
+  /**
+   * Provides a page of the URLs in an archival unit.
+   *
+   * @param auId A String with the identifier of the archival unit.
+   * @param url A String with the URL prefix of the URLs to be provided, or <code>NULL</code> if
+   *     all the URLS are to be provided.
+   * @param limit An Integer with the maximum number of URLs in the page, or <code>NULL</code> for
+   *     the largest page allowed.
+   * @param continuationToken A String with the continuation token of the previous page, or
+   *     <code>NULL</code> for the first page.
+   * @return an AuUrlsPage with the results.
+   * @throws LockssWebServicesFault if there are problems.
+   */
+  @Override
+  public AuUrlsPage getAuUrlsPage(String auId, String url, Integer limit,
+      String continuationToken) throws LockssWebServicesFault {
+    log.debug2("auId = {}", auId);
+    log.debug2("url = {}", url);
+    log.debug2("limit = {}", limit);
+    log.debug2("continuationToken = {}", continuationToken);
+
+    try {
+      int pageSize = maxAuUrlsPageSize;
+
+      if (limit != null && limit > 0 && limit < pageSize) {
+        pageSize = limit;
+      }
+
+      // Prepare the URI path variables.
+      Map<String, String> uriVariables = new HashMap<>(1);
+      uriVariables.put("auId", auId);
+      log.trace("uriVariables = {}", uriVariables);
+
+      // Prepare the query parameters.
+      Map<String, String> queryParams = new HashMap<>(4);
+      queryParams.put("urlPrefix", url == null ? "" : url);
+      queryParams.put("limit", String.valueOf(pageSize));
+
+      if (repoNamespace != null && !repoNamespace.isEmpty()) {
+        queryParams.put("namespace", repoNamespace);
+      }
+
+      if (continuationToken != null && !continuationToken.isEmpty()) {
+        queryParams.put("continuationToken", continuationToken);
+      }
+
+      log.trace("queryParams = {}", queryParams);
+
+      // Make the REST call.
+      ResponseEntity<String> response =
+          callRestServiceEndpoint(
+              getServiceEndpoint(ServiceDescr.SVC_REPO),
+              "/aus/{auId}/artifacts",
+              uriVariables,
+              queryParams,
+              HttpMethod.GET,
+              (Void) null,
+              "Can't get AU URLs");
+
+      ArtifactPageInfo artifactPage =
+          jsonReaders.forType(ArtifactPageInfo.class).readValue(response.getBody());
+
+      List<String> urls = new ArrayList<>();
+
+      if (artifactPage.getArtifacts() != null) {
+        for (Artifact artifact : artifactPage.getArtifacts()) {
+          urls.add(artifact.getUri());
+        }
+      }
+
+      AuUrlsPage result = new AuUrlsPage();
+      result.setUrls(urls);
+
+      if (artifactPage.getPageInfo() != null) {
+        result.setContinuationToken(artifactPage.getPageInfo().getContinuationToken());
+      }
+
+      log.debug2("result = {}", result);
+      return result;
+    } catch (Exception e) {
+      throw new LockssWebServicesFault(e);
+    }
+  }
+
+  @Override
+  public void setConfig(Configuration newConfig,
+                        Configuration prevConfig,
+                        Configuration.Differences changedKeys) {
+    super.setConfig(newConfig, prevConfig, changedKeys);
+
+    if (changedKeys.contains(AU_URLS_PREFIX)) {
+      maxAuUrlsPageSize =
+          newConfig.getInt(PARAM_MAX_AU_URLS_PAGE_SIZE, DEFAULT_MAX_AU_URLS_PAGE_SIZE);
+    }
+  }
 }
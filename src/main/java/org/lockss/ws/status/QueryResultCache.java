@@ -0,0 +1,404 @@
+/*
+
+Copyright (c) 2000-2023 Board of Trustees of Leland Stanford Jr. University,
+all rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+package org.lockss.ws.status;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.lockss.config.Configuration;
+import org.lockss.log.L4JLogger;
+import org.lockss.spring.base.BaseSpringApiServiceImpl;
+import org.lockss.spring.base.LockssConfigurableService;
+import org.lockss.util.Constants;
+import org.lockss.util.time.TimeBase;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Bounded cache of the results of the SQL-like queries of the title database and the plugins,
+ * keyed by kind of query, query text with its whitespace normalized, and the credentials of the
+ * requestor.
+ *
+ * <p>These results only change when the configuration is reloaded, so all of them are discarded
+ * whenever the configuration changes, and each is discarded after a time to live in any case.
+ * Concurrent requests for a result not cached share a single call to the REST service. The
+ * cached result lists are shared by the requests, and must not be modified.
+ */
+@Component
+public class QueryResultCache extends BaseSpringApiServiceImpl
+    implements LockssConfigurableService, MeterBinder {
+
+  // Config params
+
+  public static final String PREFIX = "org.lockss.soap.queryResultCache.";
+
+  /** Maximum number of cached results. Zero disables the cache. */
+  public static final String PARAM_MAX_SIZE = PREFIX + "maxSize";
+  public static final int DEFAULT_MAX_SIZE = 100;
+
+  /** Maximum estimated memory used by the cached results, in bytes. */
+  public static final String PARAM_MAX_BYTES = PREFIX + "maxBytes";
+  public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+  /** Results are discarded this long after they were obtained. */
+  public static final String PARAM_TTL = PREFIX + "ttl";
+  public static final long DEFAULT_TTL = 10 * Constants.MINUTE;
+
+  // Rough per-entry overhead, in bytes, of the map entry, key and value objects.
+  private static final long ENTRY_OVERHEAD = 200;
+
+  private static final L4JLogger log = L4JLogger.getLogger();
+
+  /**
+   * The query made on a cache miss.
+   *
+   * @param <T> the type of the results.
+   */
+  @FunctionalInterface
+  public interface Loader<T> {
+    /**
+     * Makes the query.
+     *
+     * @param responseSize A LongConsumer to be given the number of bytes of the response from which
+     *                     the results were decoded. Results whose size is not given are not
+     *                     cached.
+     * @return a {@code List<T>} with the results.
+     * @throws Exception if the query fails.
+     */
+    List<T> load(LongConsumer responseSize) throws Exception;
+  }
+
+  // Least recently used entries first.
+  private final LinkedHashMap<Key, Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+  // The queries being made, shared by the requests for the same result.
+  private final Map<Key, CompletableFuture<List<?>>> loading = new HashMap<>();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  private long bytes = 0;
+
+  // Incremented when the cache is cleared, so that queries made earlier are not cached.
+  private long generation = 0;
+
+  private int maxSize = DEFAULT_MAX_SIZE;
+  private long maxBytes = DEFAULT_MAX_BYTES;
+  private long ttl = DEFAULT_TTL;
+
+  /**
+   * Provides the results of a query, making the query if they are not cached.
+   *
+   * @param kind          A String with the kind of query.
+   * @param query         A String with the text of the query.
+   * @param authorization A String with the Authorization header of the requestor, if any.
+   * @param loader        A {@code Loader<T>} that makes the query on a cache miss.
+   * @return a {@code List<T>} with the results, which must not be modified.
+   * @throws Exception if the query fails.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> List<T> get(String kind, String query, String authorization, Loader<T> loader)
+      throws Exception {
+    Key key = new Key(kind, normalize(query), authorization);
+    CompletableFuture<List<?>> pending;
+    long startGeneration;
+
+    synchronized (this) {
+      Entry entry = cache.get(key);
+
+      if (entry != null) {
+        if (TimeBase.msSince(entry.created) < ttl) {
+          hits.incrementAndGet();
+          return (List<T>) entry.result;
+        }
+
+        log.trace("Expired results of {}", key);
+        remove(key);
+      }
+
+      pending = loading.get(key);
+
+      if (pending != null) {
+        hits.incrementAndGet();
+      } else {
+        loading.put(key, new CompletableFuture<>());
+      }
+
+      startGeneration = generation;
+    }
+
+    if (pending != null) {
+      try {
+        return (List<T>) pending.get();
+      } catch (ExecutionException ee) {
+        Throwable cause = ee.getCause();
+        throw cause instanceof Exception ? (Exception) cause : ee;
+      }
+    }
+
+    misses.incrementAndGet();
+    List<T> result = null;
+    Throwable failure = null;
+
+    try {
+      AtomicLong responseSize = new AtomicLong(-1);
+      result = loader.load(responseSize::set);
+      long resultBytes = estimateBytes(key, responseSize.get());
+
+      synchronized (this) {
+        if (maxSize > 0 && startGeneration == generation && resultBytes <= maxBytes) {
+          cache.put(key, new Entry(result, resultBytes, TimeBase.nowMs()));
+          bytes += resultBytes;
+          evict();
+        }
+      }
+
+      return result;
+    } catch (Throwable t) {
+      failure = t;
+      throw t;
+    } finally {
+      // The requests waiting for these results must never be left waiting, whatever happened.
+      CompletableFuture<List<?>> future = finishLoading(key);
+
+      if (failure == null) {
+        future.complete(result);
+      } else {
+        future.completeExceptionally(failure);
+      }
+    }
+  }
+
+  /** Discards all the cached results. */
+  public synchronized void clear() {
+    log.debug2("Clearing {} cached query results", cache.size());
+    cache.clear();
+    bytes = 0;
+    generation++;
+  }
+
+  /**
+   * Provides the number of cached results.
+   *
+   * @return an int with the number of cached results.
+   */
+  public synchronized int size() {
+    return cache.size();
+  }
+
+  /**
+   * Provides an estimate of the memory used by the cached results.
+   *
+   * @return a long with the estimated number of bytes.
+   */
+  public synchronized long estimatedMemory() {
+    return bytes;
+  }
+
+  /**
+   * Provides the text of a query with each run of whitespace outside quoted literals replaced by
+   * a single space, and without leading or trailing whitespace.
+   *
+   * @param query A String with the text of the query.
+   * @return a String with the normalized text.
+   */
+  static String normalize(String query) {
+    if (query == null) {
+      return null;
+    }
+
+    StringBuilder sb = new StringBuilder(query.length());
+    char quote = 0;
+    boolean space = false;
+
+    for (int i = 0; i < query.length(); i++) {
+      char c = query.charAt(i);
+
+      if (quote == 0 && Character.isWhitespace(c)) {
+        space = sb.length() > 0;
+        continue;
+      }
+
+      if (space) {
+        sb.append(' ');
+        space = false;
+      }
+
+      if (quote == 0 && (c == '\'' || c == '"')) {
+        quote = c;
+      } else if (c == quote) {
+        quote = 0;
+      }
+
+      sb.append(c);
+    }
+
+    return sb.toString();
+  }
+
+  private synchronized CompletableFuture<List<?>> finishLoading(Key key) {
+    return loading.remove(key);
+  }
+
+  /**
+   * Provides an estimate of the memory used by a cached result.
+   *
+   * @param key          A Key with the key of the result.
+   * @param responseSize A long with the number of bytes of the response from which the result
+   *                     was decoded, or a negative number if unknown.
+   * @return a long with the estimated number of bytes, or <code>Long.MAX_VALUE</code> if the
+   *     result cannot be measured.
+   */
+  private long estimateBytes(Key key, long responseSize) {
+    if (responseSize < 0) {
+      log.debug("Cannot measure the results of {}", key);
+      return Long.MAX_VALUE;
+    }
+
+    // The decoded objects take about as many characters as their JSON text.
+    return ENTRY_OVERHEAD + 2L * (responseSize + length(key.kind) + length(key.query)
+        + length(key.authorization));
+  }
+
+  private static int length(String s) {
+    return s == null ? 0 : s.length();
+  }
+
+  private void remove(Key key) {
+    Entry entry = cache.remove(key);
+
+    if (entry != null) {
+      bytes -= entry.bytes;
+    }
+  }
+
+  /** Discards the least recently used results until the cache is within its bounds. */
+  private void evict() {
+    Iterator<Map.Entry<Key, Entry>> iter = cache.entrySet().iterator();
+
+    while ((cache.size() > maxSize || bytes > maxBytes) && iter.hasNext()) {
+      Map.Entry<Key, Entry> eldest = iter.next();
+      log.trace("Evicting results of {}", eldest.getKey());
+      bytes -= eldest.getValue().bytes;
+      iter.remove();
+    }
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    FunctionCounter.builder("soap.query.cache.requests", hits, AtomicLong::get)
+        .tag("result", "hit")
+        .description("Queries satisfied from the cache")
+        .register(registry);
+    FunctionCounter.builder("soap.query.cache.requests", misses, AtomicLong::get)
+        .tag("result", "miss")
+        .description("Queries forwarded to the configuration service")
+        .register(registry);
+    Gauge.builder("soap.query.cache.size", this, QueryResultCache::size)
+        .description("Cached query results")
+        .register(registry);
+    Gauge.builder("soap.query.cache.memory", this, QueryResultCache::estimatedMemory)
+        .baseUnit("bytes")
+        .description("Estimated memory used by the cached query results")
+        .register(registry);
+  }
+
+  @Override
+  public synchronized void setConfig(Configuration newConfig,
+                                     Configuration prevConfig,
+                                     Configuration.Differences changedKeys) {
+    if (changedKeys.contains(PREFIX)) {
+      maxSize = newConfig.getInt(PARAM_MAX_SIZE, DEFAULT_MAX_SIZE);
+      maxBytes = newConfig.getLong(PARAM_MAX_BYTES, DEFAULT_MAX_BYTES);
+      ttl = newConfig.getTimeInterval(PARAM_TTL, DEFAULT_TTL);
+    }
+
+    // The title database and the plugins may have changed with the configuration
+    clear();
+  }
+
+  private static final class Key {
+    private final String kind;
+    private final String query;
+    private final String authorization;
+
+    private Key(String kind, String query, String authorization) {
+      this.kind = kind;
+      this.query = query;
+      this.authorization = authorization;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+
+      if (!(o instanceof Key)) {
+        return false;
+      }
+
+      Key other = (Key) o;
+      return Objects.equals(kind, other.kind) && Objects.equals(query, other.query)
+          && Objects.equals(authorization, other.authorization);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(kind, query, authorization);
+    }
+
+    @Override
+    public String toString() {
+      // The credentials are left out.
+      return "[Key kind=" + kind + ", query=" + query + "]";
+    }
+  }
+
+  private static final class Entry {
+    private final List<?> result;
+    private final long bytes;
+    private final long created;
+
+    private Entry(List<?> result, long bytes, long created) {
+      this.result = result;
+      this.bytes = bytes;
+      this.created = created;
+    }
+  }
+}
@@ -0,0 +1,73 @@
+/*
+
+Copyright (c) 2000-2023 Board of Trustees of Leland Stanford Jr. University,
+all rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+package org.lockss.ws.status;
+
+import org.lockss.app.ServiceDescr;
+import org.lockss.ws.status.ServiceReadinessProbe.ServiceReadiness;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Publishes the readiness of the REST services as a Spring Boot health indicator, when enabled
+ * with the {@value #HEALTH_ENABLED_KEY} property.
+ *
+ * <p>While enabled, the health of the SOAP service is reported as down whenever any of the REST
+ * services is not ready.
+ */
+@Component
+@ConditionalOnProperty(name = ServiceReadinessHealthIndicator.HEALTH_ENABLED_KEY,
+    havingValue = "true")
+public class ServiceReadinessHealthIndicator implements HealthIndicator {
+
+  /** The configuration key for enabling the health indicator. */
+  public static final String HEALTH_ENABLED_KEY = "soap.readiness.health.enabled";
+
+  @Autowired private ServiceReadinessProbe readinessProbe;
+
+  @Override
+  public Health health() {
+    Map<ServiceDescr, ServiceReadiness> readiness = readinessProbe.getReadiness();
+    Health.Builder builder =
+        ServiceReadinessProbe.isReady(readiness) ? Health.up() : Health.down();
+
+    for (Map.Entry<ServiceDescr, ServiceReadiness> entry : readiness.entrySet()) {
+      builder.withDetail(entry.getKey().getAbbrev(), entry.getValue());
+    }
+
+    return builder.build();
+  }
+}
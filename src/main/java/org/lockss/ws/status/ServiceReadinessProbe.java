@@ -0,0 +1,559 @@
+/*
+
+Copyright (c) 2000-2023 Board of Trustees of Leland Stanford Jr. University,
+all rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+package org.lockss.ws.status;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.lockss.app.LockssDaemon;
+import org.lockss.app.ServiceBinding;
+import org.lockss.app.ServiceDescr;
+import org.lockss.config.Configuration;
+import org.lockss.log.L4JLogger;
+import org.lockss.spring.base.BaseSpringApiServiceImpl;
+import org.lockss.spring.base.LockssConfigurableService;
+import org.lockss.util.Constants;
+import org.lockss.util.rest.exception.LockssRestException;
+import org.lockss.util.rest.status.RestStatusClient;
+import org.lockss.util.time.TimeBase;
+import org.lockss.ws.SoapRequestContext;
+import org.lockss.ws.rest.RestBulkheads;
+import org.lockss.ws.rest.RestCircuitBreakers;
+import org.lockss.ws.rest.RestTimeouts;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks concurrently whether the REST services on which the daemon depends are ready.
+ *
+ * <p>Each probe is given a deadline, and so is each check as a whole. A probe of a service that is
+ * still in progress when another check starts is shared by both checks, so a stalled service ties
+ * up at most one thread.
+ *
+ * <p>The result of the last check is kept as a snapshot that is refreshed in the background, so
+ * that most readiness requests are answered from memory. Once all the services have been found to
+ * be ready, the daemon is reported as ready until a background check finds otherwise.
+ *
+ * <p>Services whose circuit breaker is open are reported as not ready without being probed.
+ *
+ * <p>The REST calls of the probes are made on behalf of the {@value #PROBE_OPERATION} operation,
+ * whose timeouts default to the probe timeout, so that a stalled service does not hold the probe
+ * thread much longer than the probe deadline.
+ */
+@Component
+public class ServiceReadinessProbe extends BaseSpringApiServiceImpl
+    implements LockssConfigurableService {
+
+  // Config params
+
+  public static final String PREFIX = "org.lockss.soap.readiness.";
+
+  /** Services that don't respond to a readiness probe in this long are considered not ready. */
+  public static final String PARAM_PROBE_TIMEOUT = PREFIX + "probeTimeout";
+  public static final long DEFAULT_PROBE_TIMEOUT = 5 * Constants.SECOND;
+
+  /** Maximum time spent checking the readiness of all the services. */
+  public static final String PARAM_TIMEOUT = PREFIX + "timeout";
+  public static final long DEFAULT_TIMEOUT = 10 * Constants.SECOND;
+
+  /**
+   * Interval between background checks of the readiness of the services. Zero disables the
+   * readiness snapshot, so that the services are probed on every request.
+   */
+  public static final String PARAM_REFRESH_INTERVAL = PREFIX + "refreshInterval";
+  public static final long DEFAULT_REFRESH_INTERVAL = 10 * Constants.SECOND;
+
+  /**
+   * A readiness snapshot that reports some service not to be ready is used only for this long.
+   * After that the services are probed again by the request.
+   */
+  public static final String PARAM_MAX_STALENESS = PREFIX + "maxStaleness";
+  public static final long DEFAULT_MAX_STALENESS = 30 * Constants.SECOND;
+
+  /** The services whose readiness determines the readiness of the daemon, in probing order. */
+  public static final List<ServiceDescr> PROBED_SERVICES =
+      List.of(ServiceDescr.SVC_REPO, ServiceDescr.SVC_CONFIG, ServiceDescr.SVC_POLLER,
+          ServiceDescr.SVC_MDX, ServiceDescr.SVC_MDQ);
+
+  /** The operation on whose behalf the REST calls of the probes are made. */
+  public static final String PROBE_OPERATION = "readinessProbe";
+
+  /** Readiness of a service. */
+  public enum ServiceReadiness {
+    /** The service reported that it is ready. */
+    READY,
+    /** The service reported that it is not ready, or could not be reached. */
+    NOT_READY,
+    /** The service did not respond before the deadline. */
+    TIMED_OUT,
+    /** The check ended before the service responded, because another service is not ready. */
+    UNKNOWN
+  }
+
+  private static final L4JLogger log = L4JLogger.getLogger();
+
+  @Autowired protected RestTemplate restTemplate;
+
+  // Services whose circuit breaker is open are not ready, without probing them.
+  @Autowired protected RestCircuitBreakers circuitBreakers;
+
+  // The timeouts of the REST calls of the probes.
+  @Autowired protected RestTimeouts restTimeouts;
+
+  // The probes in progress.
+  private final Map<ServiceDescr, Probe> inFlight = new ConcurrentHashMap<>();
+
+  private final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "ReadinessProbe-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  private final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ReadinessRefresh");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  private volatile long probeTimeout = DEFAULT_PROBE_TIMEOUT;
+  private volatile long timeout = DEFAULT_TIMEOUT;
+  private volatile long refreshInterval = DEFAULT_REFRESH_INTERVAL;
+  private volatile long maxStaleness = DEFAULT_MAX_STALENESS;
+
+  // The result of the last check, if any.
+  private volatile Snapshot snapshot;
+
+  // The background refresh, once started.
+  private ScheduledFuture<?> refreshTask;
+
+  /** Sets the default timeouts of the REST calls of the probes. */
+  @PostConstruct
+  public void init() {
+    restTimeouts.setOperationDefaults(PROBE_OPERATION, probeTimeout, probeTimeout);
+  }
+
+  /**
+   * Provides an indication of whether all the bound services are ready.
+   *
+   * <p>The answer comes from the readiness snapshot when it reports that all the services are
+   * ready, or when it is recent enough. Otherwise the services are probed, returning as soon as
+   * any of them is found not to be ready.
+   *
+   * @return a boolean with the indication.
+   */
+  public boolean isReady() {
+    if (isAnyCircuitOpen()) {
+      return false;
+    }
+
+    if (refreshInterval <= 0) {
+      return isReady(checkServices(true));
+    }
+
+    startRefresh();
+    Snapshot current = snapshot;
+
+    if (current != null
+        && (current.ready || TimeBase.msSince(current.time) <= maxStaleness)) {
+      log.trace("Using readiness snapshot from {}", current.time);
+      return current.ready;
+    }
+
+    return updateSnapshot(checkServices(true)).ready;
+  }
+
+  /**
+   * Provides the per-service readiness breakdown from the readiness snapshot, probing the services
+   * if there is no recent enough snapshot.
+   *
+   * @return a {@code Map<ServiceDescr, ServiceReadiness>} with the readiness of each bound
+   *     service, in probing order.
+   */
+  public Map<ServiceDescr, ServiceReadiness> getReadiness() {
+    Snapshot current = snapshot;
+
+    if (refreshInterval > 0 && current != null
+        && TimeBase.msSince(current.time) <= maxStaleness) {
+      return current.readiness;
+    }
+
+    return updateSnapshot(checkServices(false)).readiness;
+  }
+
+  /**
+   * Provides an indication of whether all the services in a readiness breakdown are ready.
+   *
+   * @param readiness A {@code Map<ServiceDescr, ServiceReadiness>} with the readiness breakdown.
+   * @return a boolean with the indication.
+   */
+  public static boolean isReady(Map<ServiceDescr, ServiceReadiness> readiness) {
+    for (ServiceReadiness serviceReadiness : readiness.values()) {
+      if (serviceReadiness != ServiceReadiness.READY) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Provides an indication of whether the circuit breaker of any bound service is open.
+   *
+   * @return a boolean with the indication.
+   */
+  private boolean isAnyCircuitOpen() {
+    for (ServiceDescr sd : PROBED_SERVICES) {
+      if (circuitBreakers.isOpen(sd) && getServiceUrl(sd) != null) {
+        log.debug("Circuit breaker of {} is open", sd);
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Checks concurrently the readiness of the bound services.
+   *
+   * @param stopOnNotReady A boolean indicating whether to return as soon as a service is found
+   *                       not to be ready, leaving the services still being probed as
+   *                       {@link ServiceReadiness#UNKNOWN}.
+   * @return a {@code Map<ServiceDescr, ServiceReadiness>} with the readiness of each bound
+   *     service, in probing order.
+   */
+  public Map<ServiceDescr, ServiceReadiness> checkServices(boolean stopOnNotReady) {
+    log.debug2("stopOnNotReady = {}", stopOnNotReady);
+
+    long now = TimeBase.nowMs();
+    long checkDeadline = now + timeout;
+
+    Map<ServiceDescr, ServiceReadiness> result = new LinkedHashMap<>();
+    Map<ServiceDescr, Probe> pending = new LinkedHashMap<>();
+    BlockingQueue<ServiceDescr> completed = new LinkedBlockingQueue<>();
+
+    // Start, or join, the probes of all the bound services.
+    for (ServiceDescr sd : PROBED_SERVICES) {
+      String url = getServiceUrl(sd);
+
+      if (url == null) {
+        continue;
+      }
+
+      if (circuitBreakers.isOpen(sd)) {
+        log.debug("Circuit breaker of {} is open", sd);
+        result.put(sd, ServiceReadiness.NOT_READY);
+
+        if (stopOnNotReady) {
+          return result;
+        }
+
+        continue;
+      }
+
+      Probe probe = startProbe(sd, url);
+      result.put(sd, ServiceReadiness.UNKNOWN);
+      pending.put(sd, probe);
+      probe.future.whenComplete((ready, t) -> completed.add(sd));
+    }
+
+    // Collect the results as they arrive.
+    while (!pending.isEmpty()) {
+      long deadline = checkDeadline;
+
+      for (Probe probe : pending.values()) {
+        deadline = Math.min(deadline, probe.start + probeTimeout);
+      }
+
+      ServiceDescr sd = null;
+
+      try {
+        long wait = deadline - TimeBase.nowMs();
+
+        if (wait > 0) {
+          sd = completed.poll(wait, TimeUnit.MILLISECONDS);
+        } else {
+          sd = completed.poll();
+        }
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+
+      if (sd != null) {
+        Probe probe = pending.remove(sd);
+        ServiceReadiness readiness = !probe.future.isCompletedExceptionally()
+            && probe.future.join() ? ServiceReadiness.READY : ServiceReadiness.NOT_READY;
+        result.put(sd, readiness);
+
+        if (readiness != ServiceReadiness.READY && stopOnNotReady) {
+          break;
+        }
+
+        continue;
+      }
+
+      // Some deadline has passed.
+      now = TimeBase.nowMs();
+      boolean timedOut = false;
+
+      for (Iterator<Map.Entry<ServiceDescr, Probe>> iter = pending.entrySet().iterator();
+          iter.hasNext(); ) {
+        Map.Entry<ServiceDescr, Probe> entry = iter.next();
+
+        if (now >= checkDeadline || now >= entry.getValue().start + probeTimeout) {
+          log.debug("Timed out probing the readiness of {}", entry.getKey());
+          result.put(entry.getKey(), ServiceReadiness.TIMED_OUT);
+          iter.remove();
+          timedOut = true;
+        }
+      }
+
+      if (timedOut && stopOnNotReady) {
+        break;
+      }
+    }
+
+    log.debug2("result = {}", result);
+    return result;
+  }
+
+  /**
+   * Waits for the probes in progress to finish. Used in testing.
+   *
+   * @param timeout A long with the maximum time to wait, in milliseconds.
+   * @return a boolean with <code>true</code> if no probes are in progress.
+   */
+  public boolean awaitProbes(long timeout) throws InterruptedException {
+    long deadline = TimeBase.nowMs() + timeout;
+
+    while (!inFlight.isEmpty()) {
+      if (TimeBase.nowMs() >= deadline) {
+        return false;
+      }
+
+      Thread.sleep(10);
+    }
+
+    return true;
+  }
+
+  /**
+   * Records the result of a check as the readiness snapshot.
+   *
+   * @param readiness A {@code Map<ServiceDescr, ServiceReadiness>} with the result of the check.
+   * @return the new Snapshot.
+   */
+  private Snapshot updateSnapshot(Map<ServiceDescr, ServiceReadiness> readiness) {
+    Snapshot newSnapshot = new Snapshot(Collections.unmodifiableMap(readiness),
+        TimeBase.nowMs());
+    Snapshot previous = snapshot;
+
+    if (previous != null && previous.ready != newSnapshot.ready) {
+      log.info("Daemon readiness changed to {}: {}", newSnapshot.ready, readiness);
+    }
+
+    snapshot = newSnapshot;
+    return newSnapshot;
+  }
+
+  /** Starts the background refresh of the readiness snapshot, unless already started. */
+  private synchronized void startRefresh() {
+    if (refreshTask != null || refreshInterval <= 0) {
+      return;
+    }
+
+    log.debug2("refreshInterval = {}", refreshInterval);
+
+    refreshTask = scheduler.scheduleWithFixedDelay(() -> {
+      try {
+        updateSnapshot(checkServices(false));
+      } catch (Exception e) {
+        log.warn("Error refreshing the readiness of the services", e);
+      }
+    }, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+  }
+
+  /** Stops the background refresh of the readiness snapshot, if started. */
+  private synchronized void stopRefresh() {
+    if (refreshTask != null) {
+      refreshTask.cancel(false);
+      refreshTask = null;
+    }
+  }
+
+  /**
+   * Provides the probe of a service, starting it unless one is already in progress.
+   *
+   * @param sd  A ServiceDescr with the service.
+   * @param url A String with the URL of the service.
+   * @return a Probe of the service.
+   */
+  private Probe startProbe(ServiceDescr sd, String url) {
+    Probe probe = inFlight.get(sd);
+
+    if (probe != null) {
+      log.trace("Joining probe of {} in progress", sd);
+      return probe;
+    }
+
+    Probe newProbe = new Probe(TimeBase.nowMs());
+    probe = inFlight.putIfAbsent(sd, newProbe);
+
+    if (probe != null) {
+      return probe;
+    }
+
+    try {
+      executor.execute(() -> {
+        try {
+          newProbe.future.complete(new SoapRequestContext(null, null, PROBE_OPERATION)
+              .call(() -> isServiceReady(url)));
+        } catch (Throwable t) {
+          newProbe.future.completeExceptionally(t);
+        } finally {
+          inFlight.remove(sd, newProbe);
+        }
+      });
+    } catch (RejectedExecutionException ree) {
+      inFlight.remove(sd, newProbe);
+      newProbe.future.complete(Boolean.FALSE);
+    }
+
+    return newProbe;
+  }
+
+  /**
+   * Provides an indication of whether a REST service is ready.
+   *
+   * @param serviceUrl A String with the URL of the service.
+   * @return a boolean with the indication.
+   */
+  private boolean isServiceReady(String serviceUrl) {
+    log.debug2("serviceUrl = {}", serviceUrl);
+    boolean isReady = false;
+
+    // A busy service is not necessarily unready, so the check does not wait behind other calls.
+    boolean wasExempt = RestBulkheads.setExempt(true);
+
+    try {
+      isReady = new RestStatusClient(serviceUrl)
+          .setRestTemplate(restTemplate)
+          .getStatus()
+          .isReady();
+    } catch (LockssRestException lre) {
+      log.debug("Ignored exception caught getting status of " + serviceUrl, lre);
+    } finally {
+      RestBulkheads.setExempt(wasExempt);
+    }
+
+    log.debug2("isReady = {}", isReady);
+    return isReady;
+  }
+
+  /**
+   * Provides the URL of a bound service.
+   *
+   * @param sd A ServiceDescr with the service.
+   * @return a String with the URL of the service, or <code>null</code> if it is not bound.
+   */
+  private String getServiceUrl(ServiceDescr sd) {
+    LockssDaemon daemon = getRunningLockssDaemon();
+
+    if (daemon == null) {
+      throw new IllegalStateException("No running LockssDaemon, can't access service bindings");
+    }
+
+    ServiceBinding binding = daemon.getServiceBinding(sd);
+    return binding == null ? null : binding.getRestStem();
+  }
+
+  @Override
+  public void setConfig(Configuration newConfig,
+                        Configuration prevConfig,
+                        Configuration.Differences changedKeys) {
+    if (changedKeys.contains(PREFIX)) {
+      probeTimeout = newConfig.getTimeInterval(PARAM_PROBE_TIMEOUT, DEFAULT_PROBE_TIMEOUT);
+      restTimeouts.setOperationDefaults(PROBE_OPERATION, probeTimeout, probeTimeout);
+      timeout = newConfig.getTimeInterval(PARAM_TIMEOUT, DEFAULT_TIMEOUT);
+      maxStaleness = newConfig.getTimeInterval(PARAM_MAX_STALENESS, DEFAULT_MAX_STALENESS);
+
+      long newRefreshInterval =
+          newConfig.getTimeInterval(PARAM_REFRESH_INTERVAL, DEFAULT_REFRESH_INTERVAL);
+
+      if (newRefreshInterval != refreshInterval) {
+        refreshInterval = newRefreshInterval;
+        snapshot = null;
+
+        // Restarted with the new interval by the next request
+        stopRefresh();
+      }
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    stopRefresh();
+    scheduler.shutdownNow();
+    executor.shutdownNow();
+  }
+
+  private static final class Snapshot {
+    private final Map<ServiceDescr, ServiceReadiness> readiness;
+    private final boolean ready;
+    private final long time;
+
+    private Snapshot(Map<ServiceDescr, ServiceReadiness> readiness, long time) {
+      this.readiness = readiness;
+      this.ready = isReady(readiness);
+      this.time = time;
+    }
+  }
+
+  private static final class Probe {
+    private final long start;
+    private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+    private Probe(long start) {
+      this.start = start;
+    }
+  }
+}
@@ -0,0 +1,338 @@
+/*
+
+Copyright (c) 2000-2023, Board of Trustees of Leland Stanford Jr. University
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice,
+this list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation
+and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package org.lockss.ws;
+
+import org.apache.cxf.continuations.Continuation;
+import org.apache.cxf.continuations.ContinuationProvider;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lockss.test.LockssTestCase4;
+import org.lockss.util.Constants;
+import org.lockss.ws.entities.LockssWebServicesFault;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/** Test class for org.lockss.ws.AsyncDispatcher. */
+public class TestAsyncDispatcher extends LockssTestCase4 {
+  private AsyncDispatcher dispatcher;
+
+  // The CXF message of the SOAP request being handled, if any.
+  private volatile Message message;
+
+  @Before
+  public void setUpDispatcher() {
+    dispatcher = new TestableDispatcher();
+  }
+
+  @After
+  public void tearDownDispatcher() {
+    dispatcher.shutdown();
+  }
+
+  @Test
+  public void testWithoutContinuation() throws Exception {
+    SoapRequestContext context = new SoapRequestContext("Basic abc", "1.2.3.4", "hash");
+
+    // Outside of a CXF invocation the call is made in the current thread, on behalf of the request
+    Thread caller = Thread.currentThread();
+    String result = dispatcher.dispatch(context, Constants.SECOND, () -> {
+      assertSame(caller, Thread.currentThread());
+      assertSame(context, SoapRequestContext.getCurrent());
+      return "done";
+    });
+
+    assertEquals("done", result);
+    assertNull(SoapRequestContext.getCurrent());
+    assertEquals(0, dispatcher.getSuspendedCount());
+  }
+
+  @Test
+  public void testFailure() throws Exception {
+    SoapRequestContext context = new SoapRequestContext(null, "1.2.3.4");
+
+    try {
+      dispatcher.dispatch(context, Constants.SECOND, () -> {
+        throw new IOException("Failed");
+      });
+      fail("Should have thrown LockssWebServicesFault");
+    } catch (LockssWebServicesFault lwsf) {
+      assertTrue(lwsf.getCause() instanceof IOException);
+    }
+
+    LockssWebServicesFault fault = new LockssWebServicesFault("Fault");
+
+    try {
+      dispatcher.dispatch(context, Constants.SECOND, () -> {
+        throw fault;
+      });
+      fail("Should have thrown LockssWebServicesFault");
+    } catch (LockssWebServicesFault lwsf) {
+      assertSame(fault, lwsf);
+    }
+  }
+
+  @Test
+  public void testSuspendAndResume() throws Exception {
+    StubContinuation continuation = useContinuation();
+    SoapRequestContext context = new SoapRequestContext("Basic abc", "1.2.3.4", "hash");
+
+    Thread caller = Thread.currentThread();
+    AtomicReference<Thread> callThread = new AtomicReference<>();
+    AtomicReference<SoapRequestContext> callContext = new AtomicReference<>();
+    CountDownLatch proceed = new CountDownLatch(1);
+
+    Callable<String> call = () -> {
+      callThread.set(Thread.currentThread());
+      callContext.set(SoapRequestContext.getCurrent());
+      proceed.await();
+      return "done";
+    };
+
+    // First invocation: the call is started in another thread and the request is suspended
+    assertNull(dispatcher.dispatch(context, Constants.MINUTE, call));
+    assertEquals(Constants.MINUTE, continuation.suspendTimeout);
+    assertEquals(1, dispatcher.getSuspendedCount());
+    assertFalse(continuation.resumed);
+
+    // The request is resumed when the call finishes
+    proceed.countDown();
+    assertTrue(continuation.resumedLatch.await(TIMEOUT_SHOULDNT, TimeUnit.MILLISECONDS));
+
+    // Second invocation, made by CXF once resumed: the result of the call is returned
+    assertEquals("done", dispatcher.dispatch(context, Constants.MINUTE, call));
+    assertEquals(0, dispatcher.getSuspendedCount());
+
+    assertNotSame(caller, callThread.get());
+    assertSame(context, callContext.get());
+  }
+
+  @Test
+  public void testSuspendedFailure() throws Exception {
+    StubContinuation continuation = useContinuation();
+    SoapRequestContext context = new SoapRequestContext(null, "1.2.3.4");
+    Callable<String> call = () -> {
+      throw new IOException("Failed");
+    };
+
+    assertNull(dispatcher.dispatch(context, Constants.MINUTE, call));
+    assertTrue(continuation.resumedLatch.await(TIMEOUT_SHOULDNT, TimeUnit.MILLISECONDS));
+
+    try {
+      dispatcher.dispatch(context, Constants.MINUTE, call);
+      fail("Should have thrown LockssWebServicesFault");
+    } catch (LockssWebServicesFault lwsf) {
+      assertTrue(lwsf.getCause() instanceof IOException);
+    }
+
+    assertEquals(0, dispatcher.getSuspendedCount());
+  }
+
+  @Test
+  public void testTimeout() throws Exception {
+    StubContinuation continuation = useContinuation();
+    SoapRequestContext context = new SoapRequestContext(null, "1.2.3.4");
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch interrupted = new CountDownLatch(1);
+
+    Callable<String> call = () -> {
+      started.countDown();
+
+      try {
+        Thread.sleep(Constants.MINUTE);
+      } catch (InterruptedException e) {
+        interrupted.countDown();
+        throw e;
+      }
+
+      return "late";
+    };
+
+    assertNull(dispatcher.dispatch(context, 100, call));
+    assertTrue(started.await(TIMEOUT_SHOULDNT, TimeUnit.MILLISECONDS));
+
+    // CXF invokes the operation again when the suspension times out, before the call finishes
+    try {
+      dispatcher.dispatch(context, 100, call);
+      fail("Should have thrown LockssWebServicesFault");
+    } catch (LockssWebServicesFault lwsf) {
+      assertEquals("Timed out after 100 ms", lwsf.getMessage());
+    }
+
+    // The call is abandoned, without resuming the request again
+    assertTrue(interrupted.await(TIMEOUT_SHOULDNT, TimeUnit.MILLISECONDS));
+    assertEquals(0, dispatcher.getSuspendedCount());
+    assertFalse(continuation.resumed);
+  }
+
+  @Test
+  public void testRejected() throws Exception {
+    // An executor whose only thread is busy and that queues nothing
+    ThreadPoolExecutor busy =
+        new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new SynchronousQueue<>());
+    CountDownLatch release = new CountDownLatch(1);
+
+    busy.execute(() -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        // Shutting down
+      }
+    });
+
+    AsyncDispatcher busyDispatcher = new TestableDispatcher(busy);
+    StubContinuation continuation = useContinuation();
+
+    try {
+      busyDispatcher.dispatch(new SoapRequestContext(null, "1.2.3.4"), Constants.MINUTE,
+          () -> "never");
+      fail("Should have thrown LockssWebServicesFault");
+    } catch (LockssWebServicesFault lwsf) {
+      assertTrue(lwsf.getCause() instanceof RejectedExecutionException);
+    } finally {
+      release.countDown();
+      busyDispatcher.shutdown();
+    }
+
+    // The request is not suspended
+    assertTrue(continuation.isNew);
+    assertEquals(-1, continuation.suspendTimeout);
+    assertEquals(0, busyDispatcher.getSuspendedCount());
+  }
+
+  /**
+   * Makes the SOAP requests handled by the dispatcher suspendable, with a new continuation.
+   *
+   * @return the StubContinuation of the requests.
+   */
+  private StubContinuation useContinuation() {
+    StubContinuation continuation = new StubContinuation();
+    Continuation proxy = (Continuation) Proxy.newProxyInstance(
+        getClass().getClassLoader(), new Class<?>[] {Continuation.class}, continuation);
+
+    ContinuationProvider provider = (ContinuationProvider) Proxy.newProxyInstance(
+        getClass().getClassLoader(), new Class<?>[] {ContinuationProvider.class},
+        (p, method, args) -> method.getName().equals("getContinuation") ? proxy : null);
+
+    Message msg = new MessageImpl();
+    msg.put(ContinuationProvider.class.getName(), provider);
+    message = msg;
+
+    return continuation;
+  }
+
+  /** A dispatcher handling the SOAP request of the test, if any. */
+  private class TestableDispatcher extends AsyncDispatcher {
+    TestableDispatcher() {
+      super();
+    }
+
+    TestableDispatcher(ExecutorService executor) {
+      super(executor);
+    }
+
+    @Override
+    Message getCurrentMessage() {
+      return message;
+    }
+  }
+
+  /**
+   * A continuation that records how it is used. As with CXF's, it is no longer new once suspended,
+   * and CXF invokes the operation again after it is resumed or its suspension times out.
+   */
+  private static class StubContinuation implements InvocationHandler {
+    private final CountDownLatch resumedLatch = new CountDownLatch(1);
+    private volatile boolean isNew = true;
+    private volatile boolean pending = false;
+    private volatile boolean resumed = false;
+    private volatile long suspendTimeout = -1;
+    private volatile Object object;
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+      switch (method.getName()) {
+        case "suspend":
+          suspendTimeout = (Long) args[0];
+          isNew = false;
+          pending = true;
+          return true;
+        case "resume":
+          resumed = true;
+          pending = false;
+          resumedLatch.countDown();
+          return null;
+        case "reset":
+          isNew = true;
+          pending = false;
+          resumed = false;
+          return null;
+        case "isNew":
+          return isNew;
+        case "isPending":
+          return pending;
+        case "isResumed":
+          return resumed;
+        case "isTimeout":
+          return false;
+        case "isReadyForWrite":
+          return true;
+        case "getObject":
+          return object;
+        case "setObject":
+          object = args[0];
+          return null;
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "equals":
+          return proxy == args[0];
+        case "toString":
+          return "StubContinuation";
+        default:
+          throw new UnsupportedOperationException(method.getName());
+      }
+    }
+  }
+}
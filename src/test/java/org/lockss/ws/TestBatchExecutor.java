@@ -0,0 +1,173 @@
+/*
+
+Copyright (c) 2000-2023, Board of Trustees of Leland Stanford Jr. University
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice,
+this list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation
+and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package org.lockss.ws;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lockss.app.ServiceDescr;
+import org.lockss.config.ConfigManager;
+import org.lockss.config.Configuration;
+import org.lockss.test.ConfigurationUtil;
+import org.lockss.test.LockssTestCase4;
+import org.lockss.ws.entities.LockssWebServicesFault;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Test class for org.lockss.ws.BatchExecutor. */
+public class TestBatchExecutor extends LockssTestCase4 {
+  private BatchExecutor executor;
+
+  @Before
+  public void setUpExecutor() {
+    executor = new BatchExecutor();
+  }
+
+  @After
+  public void tearDownExecutor() {
+    executor.shutdown();
+  }
+
+  @Test
+  public void testOrder() throws Exception {
+    List<Integer> items = new ArrayList<>();
+
+    for (int i = 0; i < 100; i++) {
+      items.add(i);
+    }
+
+    // Later items finish first
+    List<String> results = executor.map(ServiceDescr.SVC_CRAWLER, items, item -> {
+      Thread.sleep((100 - item) % 7);
+      return "r" + item;
+    });
+
+    assertEquals(items.size(), results.size());
+
+    for (int i = 0; i < items.size(); i++) {
+      assertEquals("r" + i, results.get(i));
+    }
+  }
+
+  @Test
+  public void testConcurrencyLimit() throws Exception {
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    List<Integer> items = new ArrayList<>();
+
+    for (int i = 0; i < 50; i++) {
+      items.add(i);
+    }
+
+    executor.map(ServiceDescr.SVC_POLLER, items, item -> {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      Thread.sleep(5);
+      running.decrementAndGet();
+      return item;
+    });
+
+    assertTrue(maxRunning.get() > 1);
+    assertTrue(maxRunning.get() <= BatchExecutor.DEFAULT_MAX_CONCURRENT);
+  }
+
+  @Test
+  public void testFirstFailure() throws Exception {
+    List<Integer> items = List.of(0, 1, 2, 3, 4, 5);
+
+    try {
+      executor.map(ServiceDescr.SVC_CONFIG, items, item -> {
+        if (item == 2) {
+          Thread.sleep(50);
+          throw new LockssWebServicesFault("Failed 2");
+        }
+
+        if (item == 4) {
+          throw new IllegalStateException("Failed 4");
+        }
+
+        return item;
+      });
+      fail("Should have thrown LockssWebServicesFault");
+    } catch (LockssWebServicesFault lwsf) {
+      assertEquals("Failed 2", lwsf.getMessage());
+    }
+
+    try {
+      executor.map(ServiceDescr.SVC_CONFIG, List.of(0), item -> {
+        throw new IllegalStateException("Failed 0");
+      });
+      fail("Should have thrown LockssWebServicesFault");
+    } catch (LockssWebServicesFault lwsf) {
+      assertTrue(lwsf.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  @Test
+  public void testVirtualThreadsNotPooled() throws Exception {
+    if (!SoapThreads.isVirtualSupported()) {
+      return;
+    }
+
+    BatchExecutor virtual = new BatchExecutor(true);
+
+    try {
+      int count = BatchExecutor.DEFAULT_THREADS * 2;
+      Configuration config = ConfigurationUtil.fromArgs(BatchExecutor.PARAM_MAX_CONCURRENT,
+          String.valueOf(count));
+      virtual.setConfig(config, ConfigManager.EMPTY_CONFIGURATION,
+          config.differences(ConfigManager.EMPTY_CONFIGURATION));
+
+      List<Integer> items = new ArrayList<>();
+
+      for (int i = 0; i < count; i++) {
+        items.add(i);
+      }
+
+      // Every item waits for all the others to start, which a pool of DEFAULT_THREADS would not
+      // allow
+      CountDownLatch started = new CountDownLatch(count);
+
+      List<Boolean> results = virtual.map(ServiceDescr.SVC_POLLER, items, item -> {
+        started.countDown();
+        return started.await(TIMEOUT_SHOULDNT, TimeUnit.MILLISECONDS);
+      });
+
+      assertFalse(results.contains(false));
+    } finally {
+      virtual.shutdown();
+    }
+  }
+}
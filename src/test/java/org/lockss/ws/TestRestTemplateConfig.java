@@ -0,0 +1,208 @@
+/*
+
+Copyright (c) 2000-2023, Board of Trustees of Leland Stanford Jr. University
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice,
+this list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation
+and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package org.lockss.ws;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.lockss.app.LockssApp;
+import org.lockss.app.ServiceDescr;
+import org.lockss.test.ConfigurationUtil;
+import org.lockss.ws.rest.RestBulkheads;
+import org.lockss.ws.rest.RestCallMetrics;
+import org.lockss.ws.rest.RestCircuitBreakers;
+import org.lockss.ws.rest.RestConnectionPool;
+import org.lockss.ws.rest.RestTimeouts;
+import org.lockss.ws.status.DaemonStatusService;
+import org.lockss.ws.test.BaseSoapTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpMethod;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Test class for org.lockss.ws.RestTemplateConfig, making real REST calls to a local server
+ * through the decorated request factory.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(
+    classes = {SoapApplication.class},
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {"security.basic.enabled=false"})
+public class TestRestTemplateConfig extends BaseSoapTest {
+  private static final String TARGET_NAMESPACE = "http://status.ws.lockss.org/";
+  private static final String SERVICE_NAME = "DaemonStatusServiceImplService";
+  private static final String ENDPOINT_NAME = "DaemonStatusService";
+
+  @Autowired private Environment env;
+  @Autowired private RestConnectionPool connectionPool;
+  @Autowired private RestCallMetrics restCallMetrics;
+  @Autowired private RestBulkheads restBulkheads;
+  @Autowired private RestCircuitBreakers circuitBreakers;
+  @Autowired private RestTimeouts restTimeouts;
+  @Autowired private MeterRegistry meterRegistry;
+
+  private HttpServer server;
+  private String repoEndpoint;
+  private final AtomicInteger calls = new AtomicInteger();
+  private final AtomicReference<String> intercepted = new AtomicReference<>();
+
+  @Before
+  public void init() throws Exception {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/chain/ok", exchange -> {
+      calls.incrementAndGet();
+      intercepted.set(exchange.getRequestHeaders().getFirst("X-Intercepted"));
+      byte[] body = "hello".getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, body.length);
+
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.createContext("/chain/unavailable", exchange -> {
+      calls.incrementAndGet();
+      exchange.sendResponseHeaders(503, -1);
+      exchange.close();
+    });
+    server.start();
+    repoEndpoint = "http://localhost:" + server.getAddress().getPort();
+
+    setUpProxyAndCommonTestEnv(TARGET_NAMESPACE, ENDPOINT_NAME, SERVICE_NAME,
+        DaemonStatusService.class);
+  }
+
+  @After
+  public void tearDownServer() throws Exception {
+    // Start the breakers over with the default settings
+    ConfigurationUtil.addFromArgs(RestCircuitBreakers.PARAM_WINDOW_SIZE,
+        String.valueOf(RestCircuitBreakers.DEFAULT_WINDOW_SIZE));
+    ConfigurationUtil.addFromArgs(RestCircuitBreakers.PARAM_MIN_CALLS,
+        String.valueOf(RestCircuitBreakers.DEFAULT_MIN_CALLS));
+    server.stop(0);
+  }
+
+  /** The repository service is bound to the local server. */
+  @Override
+  protected void initBindings() {
+    ConfigurationUtil.addFromArgs(LockssApp.PARAM_SERVICE_BINDINGS,
+        "cfg=localhost:1;repo=localhost:" + server.getAddress().getPort());
+  }
+
+  /**
+   * Provides a template whose request factory is decorated as in the application, with an
+   * interceptor like those added by some templates.
+   */
+  private RestTemplate getDecoratedRestTemplate() {
+    RestTemplateConfig config = new RestTemplateConfig();
+    config.env = env;
+    config.connectionPool = connectionPool;
+    config.restCallMetrics = restCallMetrics;
+    config.restBulkheads = restBulkheads;
+    config.circuitBreakers = circuitBreakers;
+    config.restTimeouts = restTimeouts;
+
+    RestTemplate template = new RestTemplate();
+    template.getInterceptors().add((request, body, execution) -> {
+      request.getHeaders().add("X-Intercepted", "true");
+      return execution.execute(request, body);
+    });
+
+    config.decorateRequestFactory(template);
+    return template;
+  }
+
+  private long getCallCount(String status) {
+    Timer timer = meterRegistry.find("soap.rest.call.duration")
+        .tag("service", ServiceDescr.SVC_REPO.getAbbrev())
+        .tag("path", "/chain/{name}")
+        .tag("status", status)
+        .timer();
+    return timer == null ? 0 : timer.count();
+  }
+
+  /** A call goes through the interceptors, the metrics and the bulkhead of its service. */
+  @Test
+  public void testCallIsDecorated() throws Exception {
+    RestTemplate template = getDecoratedRestTemplate();
+    long before = getCallCount("200");
+
+    String previous = RestCallMetrics.setPathTemplate(repoEndpoint + "/chain/{name}");
+
+    try {
+      // The bulkhead holds room for the call while its response is open
+      int active = template.execute(new URI(repoEndpoint + "/chain/ok"), HttpMethod.GET, null,
+          response -> restBulkheads.getActiveCount(ServiceDescr.SVC_REPO));
+      assertEquals(1, active);
+    } finally {
+      RestCallMetrics.setPathTemplate(previous);
+    }
+
+    assertEquals(0, restBulkheads.getActiveCount(ServiceDescr.SVC_REPO));
+    assertEquals("true", intercepted.get());
+    assertEquals(before + 1, getCallCount("200"));
+  }
+
+  /** Calls are no longer made once the breaker of their service opens. */
+  @Test
+  public void testBreakerOpens() throws Exception {
+    ConfigurationUtil.addFromArgs(RestCircuitBreakers.PARAM_WINDOW_SIZE, "2");
+    ConfigurationUtil.addFromArgs(RestCircuitBreakers.PARAM_MIN_CALLS, "2");
+
+    RestTemplate template = getDecoratedRestTemplate();
+    URI uri = new URI(repoEndpoint + "/chain/unavailable");
+
+    for (int i = 0; i < 2; i++) {
+      assertThrows(RestClientException.class, () -> template.getForObject(uri, String.class));
+    }
+
+    assertTrue(circuitBreakers.isOpen(ServiceDescr.SVC_REPO));
+    assertThrows(ResourceAccessException.class, () -> template.getForObject(uri, String.class));
+    assertEquals(2, calls.get());
+  }
+}
@@ -0,0 +1,74 @@
+/*
+
+Copyright (c) 2000-2023, Board of Trustees of Leland Stanford Jr. University
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice,
+this list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation
+and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package org.lockss.ws;
+
+import org.junit.Test;
+import org.lockss.test.LockssTestCase4;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/** Test class for org.lockss.ws.SoapThreads. */
+public class TestSoapThreads extends LockssTestCase4 {
+  @Test
+  public void testPlatformThreads() {
+    ThreadFactory factory = SoapThreads.newThreadFactory("Test", false);
+
+    Thread first = factory.newThread(() -> {});
+    Thread second = factory.newThread(() -> {});
+
+    assertEquals("Test-1", first.getName());
+    assertEquals("Test-2", second.getName());
+    assertTrue(first.isDaemon());
+  }
+
+  @Test
+  public void testVirtualThreads() throws Exception {
+    ExecutorService executor = SoapThreads.newVirtualThreadPerTaskExecutor("Test");
+
+    if (!SoapThreads.isVirtualSupported()) {
+      assertNull(executor);
+
+      // Platform threads are created instead
+      assertEquals("Test-1", SoapThreads.newThreadFactory("Test", true)
+          .newThread(() -> {}).getName());
+      return;
+    }
+
+    try {
+      assertEquals("Test-1",
+          executor.submit(() -> Thread.currentThread().getName()).get());
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
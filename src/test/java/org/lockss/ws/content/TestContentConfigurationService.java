@@ -36,8 +36,11 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.lockss.app.ServiceDescr;
 import org.lockss.log.L4JLogger;
+import org.lockss.test.ConfigurationUtil;
 import org.lockss.util.ListUtil;
 import org.lockss.util.rest.RestResponseErrorBody;
+import org.lockss.util.rest.repo.model.Artifact;
+import org.lockss.ws.BaseServiceImpl;
 import org.lockss.ws.SoapApplication;
 import org.lockss.ws.entities.ContentConfigurationResult;
 import org.lockss.ws.entities.LockssWebServicesFault;
@@ -51,6 +54,7 @@ import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.client.ExpectedCount;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.*;
@@ -81,6 +85,12 @@ public class TestContentConfigurationService extends BaseSoapTest {
                                        ContentConfigurationService.class);
   }
 
+  /** The chunks of long lists are sent concurrently. */
+  @Override
+  protected boolean isExpectOrderIgnored() {
+    return true;
+  }
+
   /**
    * Test for {@link ContentConfigurationService#addAuById(String)}.
    */
@@ -369,6 +379,123 @@ public class TestContentConfigurationService extends BaseSoapTest {
     }
   }
 
+  /**
+   * Test for {@link ContentConfigurationService#addAusByIdList(java.util.List)} with a list longer
+   * than the chunk size.
+   */
+  @Test
+  public void testAddAusByIdListChunked() throws Exception {
+    URI restEndpoint = new URI(getServiceEndpoint(ServiceDescr.SVC_CONFIG) + "/ws/aus/add");
+    ConfigurationUtil.addFromArgs(ContentConfigurationServiceImpl.PARAM_CHUNK_SIZE, "2");
+
+    try {
+      List<String> auids = ListUtil.list("auid1", "auid2", "auid3", "auid4", "auid5");
+      List<ContentConfigurationResult> expected = new ArrayList<>();
+
+      for (String auid : auids) {
+        ContentConfigurationResult result = new ContentConfigurationResult();
+        result.setId(auid);
+        result.setIsSuccess(!auid.equals("auid4"));
+        expected.add(result);
+      }
+
+      // One REST call per chunk
+      for (int from = 0; from < auids.size(); from += 2) {
+        int to = Math.min(auids.size(), from + 2);
+
+        mockRestServer
+            .expect(ExpectedCount.once(), requestTo(restEndpoint))
+            .andExpect(method(HttpMethod.POST))
+            .andExpect(header("Authorization", BASIC_AUTH_HASH))
+            .andExpect(content().string(mapper.writeValueAsString(auids.subList(from, to))))
+            .andRespond(withStatus(HttpStatus.OK)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(mapper.writeValueAsString(expected.subList(from, to))));
+      }
+
+      // Make the call through SOAP
+      List<ContentConfigurationResult> results = proxy.addAusByIdList(auids);
+
+      assertEquals(expected.size(), results.size());
+
+      for (int i = 0; i < expected.size(); i++) {
+        assertEqualsContentConfigurationResult(expected.get(i), results.get(i));
+      }
+
+      mockRestServer.verify();
+      mockRestServer.reset();
+    } finally {
+      ConfigurationUtil.addFromArgs(ContentConfigurationServiceImpl.PARAM_CHUNK_SIZE,
+          Integer.toString(ContentConfigurationServiceImpl.DEFAULT_CHUNK_SIZE));
+    }
+  }
+
+  /**
+   * Test for {@link ContentConfigurationService#addAusByIdList(java.util.List)} with a list longer
+   * than the chunk size, when one of the chunks fails.
+   */
+  @Test
+  public void testAddAusByIdListChunkFailure() throws Exception {
+    URI restEndpoint = new URI(getServiceEndpoint(ServiceDescr.SVC_CONFIG) + "/ws/aus/add");
+    ConfigurationUtil.addFromArgs(ContentConfigurationServiceImpl.PARAM_CHUNK_SIZE, "2");
+
+    try {
+      List<String> auids =
+          ListUtil.list("auid1", "auid2", "auid3", "auid4", "auid5", "auid6");
+      List<ContentConfigurationResult> expected = new ArrayList<>();
+
+      for (String auid : auids) {
+        ContentConfigurationResult result = new ContentConfigurationResult();
+        result.setId(auid);
+        result.setIsSuccess(true);
+        expected.add(result);
+      }
+
+      // The second of the three chunks fails
+      for (int from = 0; from < auids.size(); from += 2) {
+        int to = from + 2;
+
+        mockRestServer
+            .expect(ExpectedCount.once(), requestTo(restEndpoint))
+            .andExpect(method(HttpMethod.POST))
+            .andExpect(header("Authorization", BASIC_AUTH_HASH))
+            .andExpect(content().string(mapper.writeValueAsString(auids.subList(from, to))))
+            .andRespond(from == 2
+                ? withStatus(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(mapper.writeValueAsString(blankError))
+                : withStatus(HttpStatus.OK)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(mapper.writeValueAsString(expected.subList(from, to))));
+      }
+
+      // Make the call through SOAP
+      List<ContentConfigurationResult> results = proxy.addAusByIdList(auids);
+
+      assertEquals(auids.size(), results.size());
+
+      // The results of the chunks that succeeded are kept
+      assertEqualsContentConfigurationResult(expected.get(0), results.get(0));
+      assertEqualsContentConfigurationResult(expected.get(1), results.get(1));
+      assertEqualsContentConfigurationResult(expected.get(4), results.get(4));
+      assertEqualsContentConfigurationResult(expected.get(5), results.get(5));
+
+      // The AUs of the failed chunk are reported as failed
+      for (int i = 2; i < 4; i++) {
+        ContentConfigurationResult result = results.get(i);
+        assertEquals(auids.get(i), result.getId());
+        assertFalse(result.getIsSuccess());
+        assertNotNull(result.getMessage());
+      }
+
+      mockRestServer.verify();
+      mockRestServer.reset();
+    } finally {
+      ConfigurationUtil.addFromArgs(ContentConfigurationServiceImpl.PARAM_CHUNK_SIZE,
+          Integer.toString(ContentConfigurationServiceImpl.DEFAULT_CHUNK_SIZE));
+    }
+  }
+
   /**
    * Asserts two {@link ContentConfigurationResult} are the same.
    */
@@ -577,11 +704,19 @@ public class TestContentConfigurationService extends BaseSoapTest {
               .contentType(MediaType.APPLICATION_JSON)
               .body(mapper.writeValueAsString(blankError)));
 
+      // A recent lookup of an artifact in one of the AUs
+      artifactExistence.get(BaseServiceImpl.DEFAULT_REPO_NAMESPACE, "auid1", "url1", null, null,
+          () -> new Artifact());
+      assertEquals(1, artifactExistence.size());
+
       // Make the call through SOAP
       assertThrows(LockssWebServicesFault.class,
           () -> proxy.deleteAusByIdList(auids),
           "500 Internal Server Error");
 
+      // The lookup is discarded even though the deletion failed
+      assertEquals(0, artifactExistence.size());
+
       mockRestServer.verify();
       mockRestServer.reset();
     }
@@ -47,6 +47,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.lockss.app.ServiceDescr;
 import org.lockss.log.L4JLogger;
+import org.lockss.test.ConfigurationUtil;
 import org.lockss.util.ListUtil;
 import org.lockss.util.rest.repo.LockssRepository;
 import org.lockss.util.rest.repo.RestLockssRepository;
@@ -60,11 +61,13 @@ import org.lockss.ws.entities.FileWsResult;
 import org.lockss.ws.entities.LockssWebServicesFault;
 import org.lockss.ws.test.BaseSoapTest;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.*;
 import org.springframework.http.converter.ResourceHttpMessageConverter;
 import org.springframework.mock.http.MockHttpOutputMessage;
+import org.springframework.mock.http.client.MockClientHttpResponse;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.client.ExpectedCount;
@@ -74,13 +77,22 @@ import org.springframework.web.util.UriComponentsBuilder;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.*;
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
@@ -103,6 +115,9 @@ public class TestContentService extends BaseSoapTest {
 
   private ContentService proxy;
 
+  @LocalServerPort
+  private int port;
+
   @Before
   public void init() throws Exception {
     proxy = setUpProxyAndCommonTestEnv(TARGET_NAMESPACE,
@@ -212,6 +227,120 @@ public class TestContentService extends BaseSoapTest {
     }
   }
 
+  /**
+   * Test for
+   * {@link ContentService#getVersionsPage(String, String, Integer, Integer, Long, Long, Boolean)}.
+   */
+  @Test
+  public void testGetVersionsPage() throws Exception {
+    String namespace = "lockss";
+    String auid = "testAuid";
+    String url = "testUrl";
+
+    URI auArtifactsEndpoint =
+      new URI(getServiceEndpoint(ServiceDescr.SVC_REPO) + "/aus/" + auid + "/artifacts");
+
+    URI allUrlVersionsEndpoint_p1 = UriComponentsBuilder.fromUri(auArtifactsEndpoint)
+        .queryParam("url", url)
+        .queryParam("version", "all")
+        .build()
+        .toUri();
+
+    URI allUrlVersionsEndpoint_p2 = UriComponentsBuilder.fromUri(auArtifactsEndpoint)
+        .queryParam("url", url)
+        .queryParam("version", "all")
+        .queryParam("continuationToken", "ABC")
+        .build()
+        .toUri();
+
+    List<Artifact> artifacts = new ArrayList<>();
+
+    for (int version = 3; version > 0; version--) {
+      Artifact artifact = new Artifact();
+      artifact.setNamespace(namespace);
+      artifact.setAuid(auid);
+      artifact.setUri(url);
+      artifact.setVersion(version);
+      artifact.setContentLength(1000 + version);
+      artifact.setCollectionDate(version * 100);
+      artifact.setCommitted(true);
+      artifact.setStorageUrl("file://test.warc?offset=0&length=1234");
+      artifacts.add(artifact);
+    }
+
+    PageInfo pageInfo_p1 = new PageInfo();
+    pageInfo_p1.setTotalCount(3);
+    pageInfo_p1.setResultsPerPage(2);
+    pageInfo_p1.setCurLink(allUrlVersionsEndpoint_p1.toString());
+    pageInfo_p1.setContinuationToken("ABC");
+    pageInfo_p1.setNextLink(allUrlVersionsEndpoint_p2.toString());
+
+    ArtifactPageInfo artifactPageInfo_p1 = new ArtifactPageInfo();
+    artifactPageInfo_p1.setPageInfo(pageInfo_p1);
+    artifactPageInfo_p1.setArtifacts(artifacts.subList(0, 2));
+
+    PageInfo pageInfo_p2 = new PageInfo();
+    pageInfo_p2.setTotalCount(3);
+    pageInfo_p2.setResultsPerPage(2);
+    pageInfo_p2.setCurLink(allUrlVersionsEndpoint_p2.toString());
+
+    ArtifactPageInfo artifactPageInfo_p2 = new ArtifactPageInfo();
+    artifactPageInfo_p2.setPageInfo(pageInfo_p2);
+    artifactPageInfo_p2.setArtifacts(artifacts.subList(2, 3));
+
+    //// A full first page doesn't request the second one
+    {
+      mockRestServer
+          .expect(ExpectedCount.once(), requestTo(allUrlVersionsEndpoint_p1))
+          .andExpect(method(HttpMethod.GET))
+          .andExpect(header("Authorization", BASIC_AUTH_HASH))
+          .andRespond(withStatus(HttpStatus.OK)
+              .contentType(MediaType.APPLICATION_JSON)
+              .body(mapper.writeValueAsString(artifactPageInfo_p1)));
+
+      List<FileWsResult> results =
+          proxy.getVersionsPage(url, auid, 1, 1, null, null, false);
+
+      assertEquals(1, results.size());
+      assertEquals(artifacts.get(1), results.get(0));
+
+      mockRestServer.verify();
+      mockRestServer.reset();
+    }
+
+    //// Collection date window, minimal results
+    {
+      mockRestServer
+          .expect(ExpectedCount.once(), requestTo(allUrlVersionsEndpoint_p1))
+          .andExpect(method(HttpMethod.GET))
+          .andExpect(header("Authorization", BASIC_AUTH_HASH))
+          .andRespond(withStatus(HttpStatus.OK)
+              .contentType(MediaType.APPLICATION_JSON)
+              .body(mapper.writeValueAsString(artifactPageInfo_p1)));
+
+      mockRestServer
+          .expect(ExpectedCount.once(), requestTo(allUrlVersionsEndpoint_p2))
+          .andExpect(method(HttpMethod.GET))
+          .andExpect(header("Authorization", BASIC_AUTH_HASH))
+          .andRespond(withStatus(HttpStatus.OK)
+              .contentType(MediaType.APPLICATION_JSON)
+              .body(mapper.writeValueAsString(artifactPageInfo_p2)));
+
+      List<FileWsResult> results =
+          proxy.getVersionsPage(url, auid, null, null, 50L, 200L, true);
+
+      assertEquals(2, results.size());
+      assertEquals(2, (int) results.get(0).getVersion());
+      assertEquals(1002L, (long) results.get(0).getSize());
+      assertNull(results.get(0).getUrl());
+      assertNull(results.get(0).getCollectionDate());
+      assertEquals(1, (int) results.get(1).getVersion());
+
+      mockRestServer.verify();
+      mockRestServer.reset();
+    }
+  }
+
   /**
    * Asserts that an {@link Artifact} matches a {@link FileWsResult} derived from it.
    */
@@ -338,6 +467,82 @@ public class TestContentService extends BaseSoapTest {
     }
   }
 
+  /**
+   * Test for {@link ContentService#areUrlsCached(List)}.
+   */
+  @Test
+  public void testAreUrlsCached() throws Exception {
+    // The lookups of the batch are made concurrently
+    ignoreExpectOrder();
+
+    assertThrows(LockssWebServicesFault.class,
+        () -> proxy.areUrlsCached(ListUtil.list(new UrlCachedQuery("testUrl", null, null))),
+        "Missing required Archival Unit identifier (auId) in query 0");
+
+    // Look up each URL in its own chunk
+    ConfigurationUtil.addFromArgs(ContentServiceImpl.PARAM_URL_CACHED_CHUNK_SIZE, "1");
+
+    List<UrlCachedQuery> queries = ListUtil.list(
+        new UrlCachedQuery("testUrl1", "testAuid1", null),
+        new UrlCachedQuery("testUrl2", "testAuid2", 5),
+        new UrlCachedQuery("testUrl3", "testAuid1", null));
+
+    expectUrlCachedLookup("testAuid1", "testUrl1", "latest", true);
+    expectUrlCachedLookup("testAuid2", "testUrl2", "5", false);
+    expectUrlCachedLookup("testAuid1", "testUrl3", "latest", true);
+
+    assertEquals(ListUtil.list(true, false, true), proxy.areUrlsCached(queries));
+
+    mockRestServer.verify();
+    mockRestServer.reset();
+  }
+
+  /**
+   * Mocks the REST call that looks up a version of a URL in an Archival Unit.
+   */
+  private void expectUrlCachedLookup(String auid, String url, String version, boolean cached)
+      throws Exception {
+    URI query = UriComponentsBuilder
+        .fromUri(new URI(getServiceEndpoint(ServiceDescr.SVC_REPO) + "/aus/" + auid
+            + "/artifacts"))
+        .queryParam("url", url)
+        .queryParam("version", version)
+        .build()
+        .toUri();
+
+    List<Artifact> artifacts = new ArrayList<>();
+
+    if (cached) {
+      Artifact artifact = new Artifact();
+      artifact.setNamespace("lockss");
+      artifact.setAuid(auid);
+      artifact.setUri(url);
+      artifact.setVersion(1);
+      artifact.setContentLength(1234);
+      artifact.setCollectionDate(1);
+      artifact.setCommitted(true);
+      artifact.setStorageUrl("file://test.warc?offset=0&length=1234");
+      artifacts.add(artifact);
+    }
+
+    PageInfo pageInfo = new PageInfo();
+    pageInfo.setTotalCount(artifacts.size());
+    pageInfo.setResultsPerPage(1);
+    pageInfo.setCurLink(query.toString());
+
+    ArtifactPageInfo artifactPageInfo = new ArtifactPageInfo();
+    artifactPageInfo.setPageInfo(pageInfo);
+    artifactPageInfo.setArtifacts(artifacts);
+
+    mockRestServer
+        .expect(ExpectedCount.once(), requestTo(query))
+        .andExpect(method(HttpMethod.GET))
+        .andExpect(header("Authorization", BASIC_AUTH_HASH))
+        .andRespond(withStatus(HttpStatus.OK)
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(mapper.writeValueAsString(artifactPageInfo)));
+  }
+
   /**
    * Test for {@link ContentService#fetchFile(String, String)}.
    */
@@ -358,99 +563,32 @@ public class TestContentService extends BaseSoapTest {
     }
 
     {
-      String namespace = "lockss";
       String auid = "testAuid";
       String url = "testUrl";
       String artifactId = "testArtifactId";
 
       // REST getArtifacts endpoint
-      URI getArtifactsURL =
-        new URI(getServiceEndpoint(ServiceDescr.SVC_REPO) + "/aus/" + auid + "/artifacts");
-
-      URI getArtifactsQuery = UriComponentsBuilder.fromUri(getArtifactsURL)
+      URI getArtifactsQuery = UriComponentsBuilder
+          .fromUri(new URI(getServiceEndpoint(ServiceDescr.SVC_REPO) + "/aus/" + auid
+              + "/artifacts"))
           .queryParam("url", url)
           .queryParam("version", "latest")
           .build()
           .toUri();
 
-      // Mock return object from REST getArtifacts call
-      Artifact artifact =
-          new Artifact(artifactId, namespace, auid, url, 1, true,
-              "file:///test.warc?offset=0&length=2014", 1024L, "digest");
-
-//      artifact.setNamespace(namespace);
-//      artifact.setAuid(auid);
-//      artifact.setUri(url);
-//      artifact.setVersion(1);
-//      artifact.setContentLength(1024);
-      artifact.setCollectionDate(1);
-//      artifact.setCommitted(true);
-//      artifact.setStorageUrl("file:///test.warc?offset=0&length=1024");
-
-      PageInfo pageInfo = new PageInfo();
-      pageInfo.setTotalCount(1);
-      pageInfo.setResultsPerPage(1);
-      pageInfo.setCurLink(getArtifactsQuery.toString());
-
-      ArtifactPageInfo artifactsPage = new ArtifactPageInfo();
-      artifactsPage.setPageInfo(pageInfo);
-      artifactsPage.setArtifacts(ListUtil.list(artifact));
-
-      // Mock REST call for Artifact
-      mockRestServer
-          .expect(ExpectedCount.once(), requestTo(getArtifactsQuery))
-          .andExpect(method(HttpMethod.GET))
-          .andExpect(header("Authorization", BASIC_AUTH_HASH))
-          .andRespond(withStatus(HttpStatus.OK)
-              .contentType(MediaType.APPLICATION_JSON)
-              .body(mapper.writeValueAsString(artifactsPage)));
-
-      // REST getArtifactData() endpoint
-      URI getArtifactDataURL = endpointOfGetArtifactData(artifactId);
-
-      URI getArtifactDataQuery = UriComponentsBuilder.fromUri(getArtifactDataURL)
-          .queryParam("includeContent", "ALWAYS")
-          .queryParam("namespace", namespace)
-          .build()
-          .toUri();
-
       byte[] data = "hello world".getBytes(StandardCharsets.UTF_8);
 
-      HttpHeaders props = new HttpHeaders();
-      props.set("test", "xyzzy");
-
-      ArtifactData artifactData = new ArtifactData(
-          artifact.getIdentifier(),
-          props,
-          new ByteArrayInputStream(data),
-          new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), 200, "OK"),
-          new URI(artifact.getStorageUrl()));
-
-      artifactData.setContentLength(data.length);
-      artifactData.setContentDigest("testDigest");
+      // Mock REST calls for the Artifact and its headers
+      expectArtifactAndHeaders(getArtifactsQuery, artifactId, auid, url, 1, data);
 
-      ResourceHttpMessageConverter converter = new ResourceHttpMessageConverter();
-      MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
-      InputStreamResource resource = new InputStreamResource(
-          ArtifactDataUtil.getHttpResponseStreamFromArtifactData(artifactData));
-      converter.write(resource, APPLICATION_HTTP_RESPONSE, outputMessage);
-
-      HttpHeaders outputHeaders = outputMessage.getHeaders();
-      outputHeaders.set(ArtifactConstants.ARTIFACT_DATA_TYPE, "response");
-      outputHeaders.set(ArtifactConstants.INCLUDES_CONTENT, "true");
-
-//      // Set Content-Length of REST response body
-//      outputHeaders.setContentLength(responseBody.length());
-
-      // Mock REST call for ArtifactData
+      // Mock REST call for the payload, which is requested separately
       mockRestServer
-          .expect(ExpectedCount.once(), requestTo(getArtifactDataQuery))
+          .expect(ExpectedCount.once(), requestTo(endpointOfGetArtifactPayload(artifactId)))
           .andExpect(method(HttpMethod.GET))
-          .andExpect(header("Accept", APPLICATION_HTTP_RESPONSE_VALUE + ", application/json"))
           .andExpect(header("Authorization", BASIC_AUTH_HASH))
           .andRespond(withStatus(HttpStatus.OK)
-              .headers(outputMessage.getHeaders())
-              .body(outputMessage.getBody().toString()));
+              .contentType(MediaType.APPLICATION_OCTET_STREAM)
+              .body(data));
 
       ContentResult contentResult = proxy.fetchFile(url, auid);
 
@@ -458,10 +596,8 @@ public class TestContentService extends BaseSoapTest {
       Properties actualProps = contentResult.getProperties();
       actualProps.remove("Content-Type");
       assertNotNull(actualProps);
-      assertIterableEquals(props.keySet(), actualProps.keySet());
-
-      for (String key : props.keySet())
-        assertEquals(props.getFirst(key), actualProps.getProperty(key));
+      assertIterableEquals(ListUtil.list("test"), actualProps.keySet());
+      assertEquals("xyzzy", actualProps.getProperty("test"));
 
       // Assert content result data
       DataHandler dh = contentResult.getDataHandler();
@@ -474,6 +610,91 @@ public class TestContentService extends BaseSoapTest {
     }
   }
 
+  /**
+   * Test for {@link ContentService#fetchFile(String, String)} streaming the content to the client
+   * as it is read from the repository, rather than collecting it first.
+   */
+  @Test
+  public void testFetchFileStreamed() throws Exception {
+    long size = 16L * 1024 * 1024;
+    long pauseAt = 1024 * 1024;
+    String auid = "testAuid";
+    String url = "testStreamedUrl";
+    String artifactId = "testStreamedArtifactId";
+
+    URI getArtifactsQuery = UriComponentsBuilder
+        .fromUri(new URI(getServiceEndpoint(ServiceDescr.SVC_REPO) + "/aus/" + auid
+            + "/artifacts"))
+        .queryParam("url", url)
+        .queryParam("version", "latest")
+        .build()
+        .toUri();
+
+    expectArtifactAndHeaders(getArtifactsQuery, artifactId, auid, url, 1, size);
+
+    // The payload pauses part way through until the client has received some of it
+    CountDownLatch clientReceived = new CountDownLatch(1);
+    GeneratedInputStream payload = new GeneratedInputStream(size, pauseAt, clientReceived);
+
+    mockRestServer
+        .expect(ExpectedCount.once(), requestTo(endpointOfGetArtifactPayload(artifactId)))
+        .andExpect(method(HttpMethod.GET))
+        .andExpect(header("Authorization", BASIC_AUTH_HASH))
+        .andRespond(request -> {
+          MockClientHttpResponse response = new MockClientHttpResponse(payload, HttpStatus.OK);
+          response.getHeaders().setContentType(MediaType.APPLICATION_OCTET_STREAM);
+          response.getHeaders().setContentLength(size);
+          return response;
+        });
+
+    // The JAX-WS client reads all the attachments before returning, so the SOAP request is made
+    // directly and the response read as it arrives.
+    HttpURLConnection conn = (HttpURLConnection)
+        new URL("http://localhost:" + port + "/ws/" + ENDPOINT_NAME).openConnection();
+    conn.setRequestMethod("POST");
+    conn.setDoOutput(true);
+    conn.setReadTimeout(60000);
+    conn.setRequestProperty("Content-Type", "text/xml; charset=UTF-8");
+    conn.setRequestProperty("SOAPAction", "\"\"");
+    conn.setRequestProperty("Authorization", BASIC_AUTH_HASH);
+
+    try (OutputStream out = conn.getOutputStream()) {
+      out.write(("<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+          + "<soap:Body><ns:fetchFile xmlns:ns=\"" + TARGET_NAMESPACE + "\">"
+          + "<url>" + url + "</url><auId>" + auid + "</auId>"
+          + "</ns:fetchFile></soap:Body></soap:Envelope>").getBytes(StandardCharsets.UTF_8));
+    }
+
+    assertEquals(200, conn.getResponseCode());
+
+    long received = 0;
+    long producedWhenReceived = -1;
+
+    try (InputStream is = conn.getInputStream()) {
+      byte[] buf = new byte[64 * 1024];
+      int count;
+
+      while ((count = is.read(buf)) != -1) {
+        received += count;
+
+        if (producedWhenReceived < 0 && received >= pauseAt / 2) {
+          producedWhenReceived = payload.getProduced();
+          clientReceived.countDown();
+        }
+      }
+    }
+
+    // The client was receiving the content while the producer was far from finished
+    log.debug("producedWhenReceived = {}, received = {}", producedWhenReceived, received);
+    assertTrue("Produced " + producedWhenReceived + " bytes before the client received any",
+        producedWhenReceived >= 0 && producedWhenReceived <= pauseAt);
+    assertTrue(received > size);
+    assertEquals(size, payload.getProduced());
+
+    mockRestServer.verify();
+    mockRestServer.reset();
+  }
+
   private URI endpointOfGetArtifactData(String artifactUuid) throws URISyntaxException {
     return new URI(getServiceEndpoint(ServiceDescr.SVC_REPO)
         + "/artifacts/" + artifactUuid + "/response");
@@ -485,123 +706,352 @@ public class TestContentService extends BaseSoapTest {
   @Test
   public void testFetchVersionedFile() throws Exception {
     {
-      String namespace = "lockss";
       String auid = "testAuid";
       String url = "testUrl";
       int version = 1;
       String artifactId = "testArtifactId";
 
       // REST getArtifacts endpoint
-      URI getArtifactsURL =
-        new URI(getServiceEndpoint(ServiceDescr.SVC_REPO) + "/aus/" + auid + "/artifacts");
-
-      URI getArtifactsQuery = UriComponentsBuilder.fromUri(getArtifactsURL)
+      URI getArtifactsQuery = UriComponentsBuilder
+          .fromUri(new URI(getServiceEndpoint(ServiceDescr.SVC_REPO) + "/aus/" + auid
+              + "/artifacts"))
           .queryParam("url", url)
           .queryParam("version", version)
           .build()
           .toUri();
 
-      // Mock return object from REST getArtifacts call
-      Artifact artifact =
-          new Artifact(artifactId, namespace, auid, url, version, true,
-              "file:///test.warc?offset=0&length=2014", 1024L, "digest");
-
-//      artifact.setNamespace(namespace);
-//      artifact.setAuid(auid);
-//      artifact.setUri(url);
-//      artifact.setVersion(version);
-//      artifact.setContentLength(1024);
-      artifact.setCollectionDate(1);
-//      artifact.setCommitted(true);
-//      artifact.setStorageUrl("file:///test.warc?offset=0&length=1024");
-
-      PageInfo pageInfo = new PageInfo();
-      pageInfo.setTotalCount(1);
-      pageInfo.setResultsPerPage(1);
-      pageInfo.setCurLink(getArtifactsQuery.toString());
+      byte[] data = "hello world".getBytes(StandardCharsets.UTF_8);
 
-      ArtifactPageInfo artifactsPage = new ArtifactPageInfo();
-      artifactsPage.setPageInfo(pageInfo);
-      artifactsPage.setArtifacts(ListUtil.list(artifact));
+      // Mock REST calls for the Artifact and its headers
+      expectArtifactAndHeaders(getArtifactsQuery, artifactId, auid, url, version, data);
 
-      // Mock REST call for Artifact
+      // Mock REST call for the payload, which is requested separately
       mockRestServer
-          .expect(ExpectedCount.once(), requestTo(getArtifactsQuery))
+          .expect(ExpectedCount.once(), requestTo(endpointOfGetArtifactPayload(artifactId)))
           .andExpect(method(HttpMethod.GET))
           .andExpect(header("Authorization", BASIC_AUTH_HASH))
           .andRespond(withStatus(HttpStatus.OK)
-              .contentType(MediaType.APPLICATION_JSON)
-              .body(mapper.writeValueAsString(artifactsPage)));
+              .contentType(MediaType.APPLICATION_OCTET_STREAM)
+              .body(data));
+
+      ContentResult contentResult = proxy.fetchVersionedFile(url, auid, version);
+
+      // Assert content result properties
+      Properties actualProps = contentResult.getProperties();
+      actualProps.remove("Content-Type");
+      assertNotNull(actualProps);
+      assertIterableEquals(ListUtil.list("test"), actualProps.keySet());
+      assertEquals("xyzzy", actualProps.getProperty("test"));
+
+      // Assert content result data
+      DataHandler dh = contentResult.getDataHandler();
+      assertNotNull(dh);
+      assertInputStreamMatchesString("hello world", dh.getInputStream());
+      assertEquals(MediaType.APPLICATION_OCTET_STREAM_VALUE, dh.getContentType());
+
+      mockRestServer.verify();
+      mockRestServer.reset();
+    }
+  }
+
+  /**
+   * Test for {@link ContentService#fetchFileRange(String, String, Long, Long)} and
+   * {@link ContentService#fetchVersionedFileRange(String, String, Integer, Long, Long)}.
+   */
+  @Test
+  public void testFetchFileRange() throws Exception {
+    {
+      String url = "testUrl";
+      String auid = "testAuid";
+      assertThrows(LockssWebServicesFault.class, () -> proxy.fetchFileRange(url, auid, -1L, 5L),
+          "Invalid negative offset: -1");
+      assertThrows(LockssWebServicesFault.class, () -> proxy.fetchFileRange(url, auid, 0L, 0L),
+          "Invalid non-positive length: 0");
+    }
 
-      // REST getArtifactData() endpoint
-      URI getArtifactDataURL = endpointOfGetArtifactData(artifactId);
+    byte[] data = "hello world".getBytes(StandardCharsets.UTF_8);
 
-      URI getArtifactDataQuery = UriComponentsBuilder.fromUri(getArtifactDataURL)
-          .queryParam("includeContent", "ALWAYS")
-          .queryParam("namespace", namespace)
+    // The repository honors the range
+    {
+      String auid = "testAuid";
+      String url = "testUrl1";
+      String artifactId = "testArtifactId1";
+
+      URI getArtifactsQuery = UriComponentsBuilder
+          .fromUri(new URI(getServiceEndpoint(ServiceDescr.SVC_REPO) + "/aus/" + auid
+              + "/artifacts"))
+          .queryParam("url", url)
+          .queryParam("version", "latest")
           .build()
           .toUri();
 
-      byte[] data = "hello world".getBytes(StandardCharsets.UTF_8);
+      expectArtifactAndHeaders(getArtifactsQuery, artifactId, auid, url, 1, data);
+
+      mockRestServer
+          .expect(ExpectedCount.once(), requestTo(endpointOfGetArtifactPayload(artifactId)))
+          .andExpect(method(HttpMethod.GET))
+          .andExpect(header("Range", "bytes=6-10"))
+          .andExpect(header("Authorization", BASIC_AUTH_HASH))
+          .andRespond(withStatus(HttpStatus.PARTIAL_CONTENT)
+              .contentType(MediaType.APPLICATION_OCTET_STREAM)
+              .body("world"));
 
-      HttpHeaders props = new HttpHeaders();
-      props.set("test", "xyzzy");
+      ContentResult contentResult = proxy.fetchFileRange(url, auid, 6L, 100L);
 
-      ArtifactData artifactData = new ArtifactData(
-          artifact.getIdentifier(),
-          props,
-          new ByteArrayInputStream(data),
-          new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), 200, "OK"),
-          new URI(artifact.getStorageUrl()));
+      Properties actualProps = contentResult.getProperties();
+      assertEquals("xyzzy", actualProps.getProperty("test"));
+      assertEquals("bytes 6-10/11", actualProps.getProperty(HttpHeaders.CONTENT_RANGE));
+      assertEquals("5", actualProps.getProperty(HttpHeaders.CONTENT_LENGTH));
 
-      artifactData.setContentLength(data.length);
-      artifactData.setContentDigest("testDigest");
+      DataHandler dh = contentResult.getDataHandler();
+      assertNotNull(dh);
+      assertInputStreamMatchesString("world", dh.getInputStream());
 
-      ResourceHttpMessageConverter converter = new ResourceHttpMessageConverter();
-      MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
-      InputStreamResource resource = new InputStreamResource(
-          ArtifactDataUtil.getHttpResponseStreamFromArtifactData(artifactData));
-      converter.write(resource, APPLICATION_HTTP_RESPONSE, outputMessage);
+      mockRestServer.verify();
+      mockRestServer.reset();
+    }
+
+    // The repository ignores the range and returns the full payload
+    {
+      String auid = "testAuid";
+      String url = "testUrl2";
+      int version = 2;
+      String artifactId = "testArtifactId2";
 
-      HttpHeaders outputHeaders = outputMessage.getHeaders();
-      outputHeaders.set(ArtifactConstants.ARTIFACT_DATA_TYPE, "response");
-      outputHeaders.set(ArtifactConstants.INCLUDES_CONTENT, "true");
+      URI getArtifactsQuery = UriComponentsBuilder
+          .fromUri(new URI(getServiceEndpoint(ServiceDescr.SVC_REPO) + "/aus/" + auid
+              + "/artifacts"))
+          .queryParam("url", url)
+          .queryParam("version", version)
+          .build()
+          .toUri();
 
-//      // Set Content-Length of REST response body
-//      outputHeaders.setContentLength(responseBody.length());
+      expectArtifactAndHeaders(getArtifactsQuery, artifactId, auid, url, version, data);
 
-      // Mock REST call for ArtifactData
       mockRestServer
-          .expect(ExpectedCount.once(), requestTo(getArtifactDataQuery))
+          .expect(ExpectedCount.once(), requestTo(endpointOfGetArtifactPayload(artifactId)))
           .andExpect(method(HttpMethod.GET))
-          .andExpect(header("Accept", APPLICATION_HTTP_RESPONSE_VALUE + ", application/json"))
+          .andExpect(header("Range", "bytes=2-4"))
           .andExpect(header("Authorization", BASIC_AUTH_HASH))
           .andRespond(withStatus(HttpStatus.OK)
-              .headers(outputMessage.getHeaders())
-              .body(outputMessage.getBody().toString()));
+              .contentType(MediaType.APPLICATION_OCTET_STREAM)
+              .body(data));
 
-      ContentResult contentResult = proxy.fetchVersionedFile(url, auid, version);
+      ContentResult contentResult = proxy.fetchVersionedFileRange(url, auid, version, 2L, 3L);
 
-      // Assert content result properties
       Properties actualProps = contentResult.getProperties();
-      actualProps.remove("Content-Type");
-      assertNotNull(actualProps);
-      assertIterableEquals(props.keySet(), actualProps.keySet());
+      assertEquals("bytes 2-4/11", actualProps.getProperty(HttpHeaders.CONTENT_RANGE));
+      assertEquals("3", actualProps.getProperty(HttpHeaders.CONTENT_LENGTH));
 
-      for (String key : props.keySet())
-        assertEquals(props.getFirst(key), actualProps.getProperty(key));
+      DataHandler dh = contentResult.getDataHandler();
+      assertNotNull(dh);
+      assertInputStreamMatchesString("llo", dh.getInputStream());
+
+      mockRestServer.verify();
+      mockRestServer.reset();
+    }
+
+    // A length that would overflow when added to the offset
+    {
+      String auid = "testAuid";
+      String url = "testUrl3";
+      String artifactId = "testArtifactId3";
+
+      URI getArtifactsQuery = UriComponentsBuilder
+          .fromUri(new URI(getServiceEndpoint(ServiceDescr.SVC_REPO) + "/aus/" + auid
+              + "/artifacts"))
+          .queryParam("url", url)
+          .queryParam("version", "latest")
+          .build()
+          .toUri();
+
+      expectArtifactAndHeaders(getArtifactsQuery, artifactId, auid, url, 1, data);
+
+      mockRestServer
+          .expect(ExpectedCount.once(), requestTo(endpointOfGetArtifactPayload(artifactId)))
+          .andExpect(method(HttpMethod.GET))
+          .andExpect(header("Range", "bytes=6-10"))
+          .andExpect(header("Authorization", BASIC_AUTH_HASH))
+          .andRespond(withStatus(HttpStatus.PARTIAL_CONTENT)
+              .contentType(MediaType.APPLICATION_OCTET_STREAM)
+              .body("world"));
+
+      ContentResult contentResult = proxy.fetchFileRange(url, auid, 6L, Long.MAX_VALUE);
+
+      Properties actualProps = contentResult.getProperties();
+      assertEquals("bytes 6-10/11", actualProps.getProperty(HttpHeaders.CONTENT_RANGE));
+      assertEquals("5", actualProps.getProperty(HttpHeaders.CONTENT_LENGTH));
 
-      // Assert content result data
       DataHandler dh = contentResult.getDataHandler();
       assertNotNull(dh);
-      assertInputStreamMatchesString("hello world", dh.getInputStream());
-      assertEquals(MediaType.APPLICATION_OCTET_STREAM_VALUE, dh.getContentType());
+      assertInputStreamMatchesString("world", dh.getInputStream());
 
       mockRestServer.verify();
       mockRestServer.reset();
     }
   }
 
+  /**
+   * Test for {@link ContentService#fetchFileProperties(String, String)} and
+   * {@link ContentService#fetchVersionedFileProperties(String, String, Integer)}.
+   */
+  @Test
+  public void testFetchFileProperties() throws Exception {
+    {
+      String url = "testUrl";
+      String auid = null;
+      assertThrows(LockssWebServicesFault.class, () -> proxy.fetchFileProperties(url, auid),
+          "Missing required Archival Unit identifier (auId)");
+    }
+
+    {
+      String url = "testUrl";
+      String auid = "testAuid";
+      assertThrows(LockssWebServicesFault.class,
+          () -> proxy.fetchVersionedFileProperties(url, auid, null),
+          "Missing required version");
+    }
+
+    byte[] data = "hello world".getBytes(StandardCharsets.UTF_8);
+
+    {
+      String auid = "testAuid";
+      String url = "testPropsUrl1";
+      String artifactId = "testPropsArtifactId1";
+
+      URI getArtifactsQuery = UriComponentsBuilder
+          .fromUri(new URI(getServiceEndpoint(ServiceDescr.SVC_REPO) + "/aus/" + auid
+              + "/artifacts"))
+          .queryParam("url", url)
+          .queryParam("version", "latest")
+          .build()
+          .toUri();
+
+      expectArtifactAndHeaders(getArtifactsQuery, artifactId, auid, url, 1, data);
+
+      ContentResult contentResult = proxy.fetchFileProperties(url, auid);
+
+      assertEquals("xyzzy", contentResult.getProperties().getProperty("test"));
+      assertNull(contentResult.getDataHandler());
+
+      mockRestServer.verify();
+      mockRestServer.reset();
+    }
+
+    {
+      String auid = "testAuid";
+      String url = "testPropsUrl2";
+      int version = 3;
+      String artifactId = "testPropsArtifactId2";
+
+      URI getArtifactsQuery = UriComponentsBuilder
+          .fromUri(new URI(getServiceEndpoint(ServiceDescr.SVC_REPO) + "/aus/" + auid
+              + "/artifacts"))
+          .queryParam("url", url)
+          .queryParam("version", version)
+          .build()
+          .toUri();
+
+      expectArtifactAndHeaders(getArtifactsQuery, artifactId, auid, url, version, data);
+
+      ContentResult contentResult = proxy.fetchVersionedFileProperties(url, auid, version);
+
+      assertEquals("xyzzy", contentResult.getProperties().getProperty("test"));
+      assertNull(contentResult.getDataHandler());
+
+      mockRestServer.verify();
+      mockRestServer.reset();
+    }
+  }
+
+  /**
+   * Mocks the REST calls that provide an {@link Artifact} and its headers, without content.
+   */
+  private void expectArtifactAndHeaders(URI getArtifactsQuery, String artifactId,
+                                             String auid, String url, int version,
+                                             byte[] data) throws Exception {
+    expectArtifactAndHeaders(getArtifactsQuery, artifactId, auid, url, version, data.length);
+  }
+
+  /**
+   * Mocks the REST calls that provide an {@link Artifact} of a given length and its headers,
+   * without content.
+   */
+  private void expectArtifactAndHeaders(URI getArtifactsQuery, String artifactId,
+                                             String auid, String url, int version,
+                                             long contentLength) throws Exception {
+    String namespace = "lockss";
+
+    Artifact artifact =
+        new Artifact(artifactId, namespace, auid, url, version, true,
+            "file:///test.warc?offset=0&length=2014", contentLength, "digest");
+    artifact.setCollectionDate(1);
+
+    PageInfo pageInfo = new PageInfo();
+    pageInfo.setTotalCount(1);
+    pageInfo.setResultsPerPage(1);
+    pageInfo.setCurLink(getArtifactsQuery.toString());
+
+    ArtifactPageInfo artifactsPage = new ArtifactPageInfo();
+    artifactsPage.setPageInfo(pageInfo);
+    artifactsPage.setArtifacts(ListUtil.list(artifact));
+
+    mockRestServer
+        .expect(ExpectedCount.once(), requestTo(getArtifactsQuery))
+        .andExpect(method(HttpMethod.GET))
+        .andExpect(header("Authorization", BASIC_AUTH_HASH))
+        .andRespond(withStatus(HttpStatus.OK)
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(mapper.writeValueAsString(artifactsPage)));
+
+    URI getArtifactDataQuery = UriComponentsBuilder
+        .fromUri(endpointOfGetArtifactData(artifactId))
+        .queryParam("includeContent", "NEVER")
+        .queryParam("namespace", namespace)
+        .build()
+        .toUri();
+
+    HttpHeaders props = new HttpHeaders();
+    props.set("test", "xyzzy");
+
+    ArtifactData artifactData = new ArtifactData(
+        artifact.getIdentifier(),
+        props,
+        new ByteArrayInputStream(new byte[0]),
+        new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), 200, "OK"),
+        new URI(artifact.getStorageUrl()));
+
+    artifactData.setContentLength(contentLength);
+    artifactData.setContentDigest("testDigest");
+
+    ResourceHttpMessageConverter converter = new ResourceHttpMessageConverter();
+    MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
+    InputStreamResource resource = new InputStreamResource(
+        ArtifactDataUtil.getHttpResponseStreamFromArtifactData(artifactData));
+    converter.write(resource, APPLICATION_HTTP_RESPONSE, outputMessage);
+
+    HttpHeaders outputHeaders = outputMessage.getHeaders();
+    outputHeaders.set(ArtifactConstants.ARTIFACT_DATA_TYPE, "response");
+    outputHeaders.set(ArtifactConstants.INCLUDES_CONTENT, "false");
+
+    mockRestServer
+        .expect(ExpectedCount.once(), requestTo(getArtifactDataQuery))
+        .andExpect(method(HttpMethod.GET))
+        .andExpect(header("Authorization", BASIC_AUTH_HASH))
+        .andRespond(withStatus(HttpStatus.OK)
+            .headers(outputMessage.getHeaders())
+            .body(outputMessage.getBody().toString()));
+  }
+
+  private URI endpointOfGetArtifactPayload(String artifactUuid) throws URISyntaxException {
+    return UriComponentsBuilder
+        .fromUri(new URI(getServiceEndpoint(ServiceDescr.SVC_REPO)
+            + "/artifacts/" + artifactUuid + "/payload"))
+        .queryParam("namespace", "lockss")
+        .build()
+        .toUri();
+  }
+
   public static byte[] getHttpStatusByteArray(StatusLine httpStatus) throws IOException {
     UnsynchronizedByteArrayOutputStream output = new UnsynchronizedByteArrayOutputStream();
     CharArrayBuffer lineBuf = new CharArrayBuffer(128);
@@ -742,4 +1192,58 @@ public class TestContentService extends BaseSoapTest {
     if (v == null) return;
     props.put(k, v);
   }
+
+  /** A stream of generated bytes, which are not held in memory. */
+  /**
+   * Content generated as it is read, so that it is never held in memory, that pauses part way
+   * through until it is told to go on.
+   */
+  private static class GeneratedInputStream extends InputStream {
+    private final long size;
+    private final long pauseAt;
+    private final CountDownLatch resume;
+    private volatile long produced = 0;
+
+    GeneratedInputStream(long size, long pauseAt, CountDownLatch resume) {
+      this.size = size;
+      this.pauseAt = pauseAt;
+      this.resume = resume;
+    }
+
+    /** Provides the number of bytes read so far. */
+    long getProduced() {
+      return produced;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (produced >= size) {
+        return -1;
+      }
+
+      long limit = size;
+
+      if (produced < pauseAt) {
+        limit = pauseAt;
+      } else {
+        try {
+          // Give up eventually, so that a response that is not streamed still completes
+          resume.await(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException();
+        }
+      }
+
+      int count = (int) Math.min(len, limit - produced);
+      Arrays.fill(b, off, off + count, (byte) 'x');
+      produced += count;
+      return count;
+    }
+  }
 }
@@ -44,6 +44,7 @@ import org.lockss.util.rest.mdx.MetadataUpdateSpec;
 import org.lockss.util.rest.poller.PollDesc;
 import org.lockss.ws.SoapApplication;
 import org.lockss.ws.entities.CheckSubstanceResult;
+import org.lockss.ws.entities.LockssWebServicesFault;
 import org.lockss.ws.entities.RequestAuControlResult;
 import org.lockss.ws.entities.RequestCrawlResult;
 import org.lockss.ws.entities.RequestDeepCrawlResult;
@@ -86,6 +87,12 @@ public class TestAuControlService extends BaseSoapTest {
                                        AuControlService.class);
   }
 
+  /** The items of the batch operations are processed concurrently. */
+  @Override
+  protected boolean isExpectOrderIgnored() {
+    return true;
+  }
+
   /**
    * Test for {@link AuControlService#checkSubstanceById(String)}.
    */
@@ -618,6 +625,64 @@ public class TestAuControlService extends BaseSoapTest {
     mockRestServer.reset();
   }
 
+  /**
+   * Test for {@link AuControlService#disableMdIndexingByIdList(List)} when some of the archival
+   * units fail.
+   */
+  @Test
+  public void testDisableMdIndexingByIdListFailure() throws Exception {
+    List<String> auids = ListUtil.list("A", "B", "C");
+    String auState = "{\"isMetadataExtractionEnabled\":false}";
+
+    // Only B fails
+    for (String auId : auids) {
+      expectPatchAuState(auId, auState, auId.equals("B")
+          ? HttpStatus.INTERNAL_SERVER_ERROR : HttpStatus.OK);
+    }
+
+    List<RequestAuControlResult> actualResults = proxy.disableMdIndexingByIdList(auids);
+
+    // The results of the AUs already processed are reported along with the failure
+    assertEquals(auids.size(), actualResults.size());
+    assertEquals(new RequestAuControlResult("A", true, null), actualResults.get(0));
+    assertEquals(new RequestAuControlResult("C", true, null), actualResults.get(2));
+
+    RequestAuControlResult failed = actualResults.get(1);
+    assertEquals("B", failed.getId());
+    assertFalse(failed.isSuccess());
+    assertNotNull(failed.getErrorMessage());
+
+    mockRestServer.verify();
+    mockRestServer.reset();
+
+    // Nothing has been done if every AU fails
+    for (String auId : auids) {
+      expectPatchAuState(auId, auState, HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    assertThrows(LockssWebServicesFault.class, () -> proxy.disableMdIndexingByIdList(auids));
+
+    mockRestServer.verify();
+    mockRestServer.reset();
+  }
+
+  private void expectPatchAuState(String auId, String auState, HttpStatus status)
+      throws Exception {
+    Map<String, String> uriVariables = new HashMap<>();
+    uriVariables.put("auid", auId);
+
+    URI auStateQuery = RestUtil.getRestUri(
+        getServiceEndpoint(ServiceDescr.SVC_CONFIG) + "/austates/{auid}", uriVariables, null);
+
+    mockRestServer
+        .expect(ExpectedCount.once(), requestTo(auStateQuery))
+        .andExpect(method(HttpMethod.PATCH))
+        .andExpect(header("Authorization", BASIC_AUTH_HASH))
+        .andExpect(content().string(auState))
+        .andRespond(withStatus(status)
+            .body(auId));
+  }
+
   /**
    * Test for {@link AuControlService#enableMdIndexingById(String)}.
    */
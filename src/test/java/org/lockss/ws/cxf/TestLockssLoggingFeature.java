@@ -0,0 +1,201 @@
+/*
+
+Copyright (c) 2000-2023, Board of Trustees of Leland Stanford Jr. University
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice,
+this list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation
+and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package org.lockss.ws.cxf;
+
+import org.apache.cxf.endpoint.Endpoint;
+import org.apache.cxf.ext.logging.LoggingInInterceptor;
+import org.apache.cxf.ext.logging.LoggingOutInterceptor;
+import org.apache.cxf.ext.logging.WireTapIn;
+import org.apache.cxf.ext.logging.event.EventType;
+import org.apache.cxf.interceptor.AbstractBasicInterceptorProvider;
+import org.apache.cxf.interceptor.Interceptor;
+import org.apache.cxf.interceptor.InterceptorProvider;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.apache.cxf.phase.Phase;
+import org.apache.cxf.phase.PhaseInterceptorChain;
+import org.apache.cxf.phase.PhaseManagerImpl;
+import org.apache.cxf.service.model.EndpointInfo;
+import org.apache.cxf.service.model.InterfaceInfo;
+import org.apache.cxf.service.model.ServiceInfo;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lockss.test.LockssTestCase4;
+
+import javax.xml.namespace.QName;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.SortedSet;
+
+/** Test class for org.lockss.ws.cxf.LockssLoggingFeature. */
+public class TestLockssLoggingFeature extends LockssTestCase4 {
+  private static final String PORT_TYPE = "TestLoggingService";
+
+  private LockssLoggingFeature feature;
+  private InterceptorProvider provider;
+
+  @Before
+  public void setUpFeature() {
+    feature = new LockssLoggingFeature();
+    provider = new AbstractBasicInterceptorProvider() {
+    };
+    feature.initializeProvider(provider, null);
+  }
+
+  @After
+  public void tearDownFeature() {
+    setTrace(false);
+  }
+
+  @Test
+  public void testNotLoggedWithoutTrace() {
+    setTrace(false);
+    Exchange exchange = newExchange();
+
+    PhaseInterceptorChain inChain = runGate(exchange, provider.getInInterceptors(),
+        new PhaseManagerImpl().getInPhases());
+    assertFalse(contains(inChain, LoggingInInterceptor.class));
+    assertFalse(contains(inChain, WireTapIn.class));
+
+    PhaseInterceptorChain outChain = runGate(exchange, provider.getOutInterceptors(),
+        new PhaseManagerImpl().getOutPhases());
+    assertFalse(contains(outChain, LoggingOutInterceptor.class));
+  }
+
+  @Test
+  public void testLoggedWithTrace() {
+    setTrace(true);
+    Exchange exchange = newExchange();
+
+    PhaseInterceptorChain inChain = runGate(exchange, provider.getInInterceptors(),
+        new PhaseManagerImpl().getInPhases());
+    assertTrue(contains(inChain, LoggingInInterceptor.class));
+    assertTrue(contains(inChain, WireTapIn.class));
+
+    PhaseInterceptorChain outChain = runGate(exchange, provider.getOutInterceptors(),
+        new PhaseManagerImpl().getOutPhases());
+    assertTrue(contains(outChain, LoggingOutInterceptor.class));
+  }
+
+  @Test
+  public void testSampling() {
+    setTrace(true);
+    feature.setSampleRate(3);
+    int logged = 0;
+
+    for (int i = 0; i < 6; i++) {
+      Exchange exchange = newExchange();
+
+      boolean requestLogged = contains(runGate(exchange, provider.getInInterceptors(),
+          new PhaseManagerImpl().getInPhases()), LoggingInInterceptor.class);
+      boolean responseLogged = contains(runGate(exchange, provider.getOutInterceptors(),
+          new PhaseManagerImpl().getOutPhases()), LoggingOutInterceptor.class);
+
+      // The request and the response of an exchange are logged together or not at all
+      assertEquals(requestLogged, responseLogged);
+      assertEquals(i % 3 == 0, requestLogged);
+
+      if (requestLogged) {
+        logged++;
+      }
+    }
+
+    assertEquals(2, logged);
+  }
+
+  private static void setTrace(boolean trace) {
+    for (EventType type : EventType.values()) {
+      Configurator.setLevel(LockssSlf4jEventSender.getCategory(PORT_TYPE, type),
+          trace ? Level.TRACE : Level.INFO);
+    }
+  }
+
+  /** Provides an exchange with an endpoint of the test port type. */
+  private static Exchange newExchange() {
+    ServiceInfo serviceInfo = new ServiceInfo();
+    new InterfaceInfo(serviceInfo, new QName("http://cxf.ws.lockss.org/", PORT_TYPE));
+    EndpointInfo endpointInfo = new EndpointInfo(serviceInfo, null);
+
+    Endpoint endpoint = (Endpoint) Proxy.newProxyInstance(
+        TestLockssLoggingFeature.class.getClassLoader(), new Class<?>[] {Endpoint.class},
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getEndpointInfo":
+              return endpointInfo;
+            case "hashCode":
+              return System.identityHashCode(proxy);
+            case "equals":
+              return proxy == args[0];
+            default:
+              return null;
+          }
+        });
+
+    Exchange exchange = new ExchangeImpl();
+    exchange.put(Endpoint.class, endpoint);
+    return exchange;
+  }
+
+  /**
+   * Runs the gate added by the feature, which is the first of the interceptors, on a message of an
+   * exchange whose chain has all the interceptors.
+   */
+  @SuppressWarnings("unchecked")
+  private static PhaseInterceptorChain runGate(Exchange exchange,
+                                               List<Interceptor<? extends Message>> interceptors,
+                                               SortedSet<Phase> phases) {
+    PhaseInterceptorChain chain = new PhaseInterceptorChain(phases);
+    chain.add(interceptors);
+
+    Message message = new MessageImpl();
+    message.setExchange(exchange);
+    message.setInterceptorChain(chain);
+
+    ((Interceptor<Message>) interceptors.get(0)).handleMessage(message);
+    return chain;
+  }
+
+  private static boolean contains(PhaseInterceptorChain chain, Class<?> type) {
+    for (Interceptor<? extends Message> interceptor : chain) {
+      if (type.isInstance(interceptor)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+}
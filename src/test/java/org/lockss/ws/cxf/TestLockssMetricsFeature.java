@@ -0,0 +1,243 @@
+/*
+
+Copyright (c) 2000-2023, Board of Trustees of Leland Stanford Jr. University
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice,
+this list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation
+and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package org.lockss.ws.cxf;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.cxf.interceptor.AbstractBasicInterceptorProvider;
+import org.apache.cxf.interceptor.Interceptor;
+import org.apache.cxf.interceptor.InterceptorProvider;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.apache.cxf.service.Service;
+import org.apache.cxf.service.model.BindingInfo;
+import org.apache.cxf.service.model.BindingOperationInfo;
+import org.apache.cxf.service.model.InterfaceInfo;
+import org.apache.cxf.service.model.ServiceInfo;
+import org.junit.Before;
+import org.junit.Test;
+import org.lockss.test.LockssTestCase4;
+
+import javax.xml.namespace.QName;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/** Test class for org.lockss.ws.cxf.LockssMetricsFeature. */
+public class TestLockssMetricsFeature extends LockssTestCase4 {
+  private static final String NS = "http://cxf.ws.lockss.org/";
+  private static final String SERVICE = "TestMetricsServiceImplService";
+
+  private MeterRegistry registry;
+  private InterceptorProvider provider;
+
+  @Before
+  public void setUpFeature() {
+    registry = new SimpleMeterRegistry();
+    provider = new AbstractBasicInterceptorProvider() {
+    };
+    new LockssMetricsFeature(registry).initializeProvider(provider, null);
+  }
+
+  @Test
+  public void testSuccess() throws Exception {
+    Exchange exchange = newExchange("isUrlCached");
+
+    receive(exchange, "request");
+    assertEquals(1.0, inFlight().value(), 0.0);
+
+    send(exchange, provider.getOutInterceptors(), "response!");
+    assertEquals(0.0, inFlight().value(), 0.0);
+
+    Timer timer = registry.find("soap.operation.duration")
+        .tag("service", SERVICE)
+        .tag("operation", "isUrlCached")
+        .tag("outcome", "success")
+        .timer();
+    assertNotNull(timer);
+    assertEquals(1, timer.count());
+
+    DistributionSummary requestSize = registry.find("soap.operation.request.size")
+        .tag("operation", "isUrlCached")
+        .summary();
+    assertEquals(7.0, requestSize.totalAmount(), 0.0);
+
+    DistributionSummary responseSize = registry.find("soap.operation.response.size")
+        .tag("operation", "isUrlCached")
+        .summary();
+    assertEquals(9.0, responseSize.totalAmount(), 0.0);
+
+    assertNull(registry.find("soap.operation.faults").counter());
+  }
+
+  @Test
+  public void testFault() throws Exception {
+    Exchange exchange = newExchange("fetchFile");
+
+    receive(exchange, "request");
+    assertEquals(1.0, inFlight().value(), 0.0);
+
+    send(exchange, provider.getOutFaultInterceptors(), "fault");
+    assertEquals(0.0, inFlight().value(), 0.0);
+
+    Counter faults = registry.find("soap.operation.faults")
+        .tag("service", SERVICE)
+        .tag("operation", "fetchFile")
+        .counter();
+    assertNotNull(faults);
+    assertEquals(1.0, faults.count(), 0.0);
+
+    Timer timer = registry.find("soap.operation.duration")
+        .tag("operation", "fetchFile")
+        .tag("outcome", "fault")
+        .timer();
+    assertNotNull(timer);
+    assertEquals(1, timer.count());
+
+    assertNull(registry.find("soap.operation.duration").tag("outcome", "success").timer());
+    assertEquals(5.0, registry.find("soap.operation.response.size")
+        .tag("operation", "fetchFile")
+        .summary()
+        .totalAmount(), 0.0);
+  }
+
+  @Test
+  public void testRecordedOnce() throws Exception {
+    Exchange exchange = newExchange("fetchFile");
+
+    // A fault raised while the response is sent reaches the end of both out chains
+    receive(exchange, "request");
+    send(exchange, provider.getOutInterceptors(), "response");
+    send(exchange, provider.getOutFaultInterceptors(), "fault");
+
+    assertEquals(0.0, inFlight().value(), 0.0);
+    assertEquals(1, registry.find("soap.operation.duration").timer().count());
+    assertNull(registry.find("soap.operation.faults").counter());
+  }
+
+  @Test
+  public void testGetNotMeasured() throws Exception {
+    Exchange exchange = newExchange("unknown");
+    Message message = newMessage(exchange);
+    message.put(Message.HTTP_REQUEST_METHOD, "GET");
+    handle(provider.getInInterceptors().get(0), message);
+
+    send(exchange, provider.getOutInterceptors(), "<wsdl:definitions/>");
+
+    assertNull(registry.find("soap.operation.in.flight").gauge());
+    assertNull(registry.find("soap.operation.duration").timer());
+  }
+
+  private Gauge inFlight() {
+    return registry.find("soap.operation.in.flight").tag("service", SERVICE).gauge();
+  }
+
+  /** Runs the interceptor of the request on a message, and reads the message. */
+  private void receive(Exchange exchange, String request) throws Exception {
+    Message message = newMessage(exchange);
+    message.put(Message.HTTP_REQUEST_METHOD, "POST");
+    message.setContent(InputStream.class,
+        new ByteArrayInputStream(request.getBytes(StandardCharsets.UTF_8)));
+    handle(provider.getInInterceptors().get(0), message);
+
+    try (InputStream in = message.getContent(InputStream.class)) {
+      in.readAllBytes();
+    }
+  }
+
+  /** Runs the interceptors of an out chain on a message, writing the response in between. */
+  private static void send(Exchange exchange, List<Interceptor<? extends Message>> interceptors,
+                           String response) throws Exception {
+    Message message = newMessage(exchange);
+    message.setContent(OutputStream.class, new ByteArrayOutputStream());
+
+    // Counts the response
+    handle(interceptors.get(0), message);
+    message.getContent(OutputStream.class)
+        .write(response.getBytes(StandardCharsets.UTF_8));
+
+    // Records the exchange
+    handle(interceptors.get(1), message);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void handle(Interceptor<? extends Message> interceptor, Message message) {
+    ((Interceptor<Message>) interceptor).handleMessage(message);
+  }
+
+  private static Message newMessage(Exchange exchange) {
+    Message message = new MessageImpl();
+    message.setExchange(exchange);
+    return message;
+  }
+
+  /** Provides an exchange of an operation of the test service. */
+  private static Exchange newExchange(String operation) {
+    QName serviceName = new QName(NS, SERVICE);
+    Service service = (Service) Proxy.newProxyInstance(
+        TestLockssMetricsFeature.class.getClassLoader(), new Class<?>[] {Service.class},
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getName":
+              return serviceName;
+            case "hashCode":
+              return System.identityHashCode(proxy);
+            case "equals":
+              return proxy == args[0];
+            default:
+              return null;
+          }
+        });
+
+    ServiceInfo serviceInfo = new ServiceInfo();
+    InterfaceInfo interfaceInfo = new InterfaceInfo(serviceInfo, new QName(NS, "TestMetrics"));
+    QName operationName = new QName(NS, operation);
+    interfaceInfo.addOperation(operationName);
+    BindingOperationInfo boi =
+        new BindingInfo(serviceInfo, "soap").buildOperation(operationName, null, null);
+
+    Exchange exchange = new ExchangeImpl();
+    exchange.put(Service.class, service);
+    exchange.put(BindingOperationInfo.class, boi);
+    return exchange;
+  }
+}
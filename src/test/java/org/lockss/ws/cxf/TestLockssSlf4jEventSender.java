@@ -0,0 +1,189 @@
+/*
+
+Copyright (c) 2000-2023, Board of Trustees of Leland Stanford Jr. University
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice,
+this list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation
+and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package org.lockss.ws.cxf;
+
+import org.apache.cxf.ext.logging.event.EventType;
+import org.apache.cxf.ext.logging.event.LogEvent;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lockss.test.LockssTestCase4;
+import org.slf4j.Logger;
+import org.slf4j.MDC;
+
+import javax.xml.namespace.QName;
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Test class for org.lockss.ws.cxf.LockssSlf4jEventSender. */
+public class TestLockssSlf4jEventSender extends LockssTestCase4 {
+  private static final String NS = "http://cxf.ws.lockss.org/";
+  private static final String PORT_TYPE = "TestSenderService";
+
+  private RecordingSender sender;
+
+  @Before
+  public void setUpSender() {
+    sender = new RecordingSender();
+    MDC.clear();
+  }
+
+  @After
+  public void tearDownSender() {
+    setTrace(false);
+    MDC.clear();
+  }
+
+  @Test
+  public void testLoggerCache() {
+    Logger request = LockssSlf4jEventSender.getLogger(PORT_TYPE, EventType.REQ_IN);
+    assertEquals(LockssSlf4jEventSender.getCategory(PORT_TYPE, EventType.REQ_IN),
+        request.getName());
+    assertSame(request, LockssSlf4jEventSender.getLogger(PORT_TYPE, EventType.REQ_IN));
+
+    // Each event type and each port type has its own logger
+    Logger response = LockssSlf4jEventSender.getLogger(PORT_TYPE, EventType.RESP_OUT);
+    assertEquals(LockssSlf4jEventSender.getCategory(PORT_TYPE, EventType.RESP_OUT),
+        response.getName());
+    assertNotSame(request, response);
+
+    Logger other = LockssSlf4jEventSender.getLogger("OtherService", EventType.REQ_IN);
+    assertEquals(LockssSlf4jEventSender.getCategory("OtherService", EventType.REQ_IN),
+        other.getName());
+    assertNotSame(request, other);
+  }
+
+  @Test
+  public void testNotSentWithoutTrace() {
+    setTrace(false);
+    MDC.put("Address", "caller");
+
+    sender.send(newEvent());
+
+    // Neither the message nor the MDC entries are built
+    assertNull(sender.mdc);
+    assertEquals(Collections.singletonMap("Address", "caller"), MDC.getCopyOfContextMap());
+  }
+
+  @Test
+  public void testSentWithTrace() {
+    setTrace(true);
+    MDC.put("Caller", "caller");
+
+    sender.send(newEvent());
+
+    // Every field of the event is in the MDC while the message is logged
+    Map<String, String> expected = new HashMap<>();
+    expected.put("Caller", "caller");
+    expected.put("Type", "REQ_IN");
+    expected.put("Address", "http://localhost/ws/TestSenderService");
+    expected.put("HttpMethod", "POST");
+    expected.put("Content-Type", "text/xml");
+    expected.put("ResponseCode", "200");
+    expected.put("ExchangeId", "exchange");
+    expected.put("MessageId", "message");
+    expected.put("ServiceName", "TestSenderServiceImplService");
+    expected.put("PortName", "TestSenderServiceImplPort");
+    expected.put("PortTypeName", PORT_TYPE);
+    expected.put("FullContentFile", new File("content.log").getAbsolutePath());
+    expected.put("Headers", "{SOAPAction=\"\"}");
+    assertEquals(expected, sender.mdc);
+
+    // Only the entries of the caller remain afterwards
+    assertEquals(Collections.singletonMap("Caller", "caller"), MDC.getCopyOfContextMap());
+  }
+
+  @Test
+  public void testMdcCleanedUpOnFailure() {
+    setTrace(true);
+    sender.failure = new IllegalStateException("Failed");
+    LogEvent event = newEvent();
+    event.setServiceName(null);
+    event.setFullContentFile(null);
+
+    try {
+      sender.send(event);
+      fail("Should have thrown IllegalStateException");
+    } catch (IllegalStateException ise) {
+      assertSame(sender.failure, ise);
+    }
+
+    assertEquals("REQ_IN", sender.mdc.get("Type"));
+    assertNull(sender.mdc.get("ServiceName"));
+    assertTrue(MDC.getCopyOfContextMap() == null || MDC.getCopyOfContextMap().isEmpty());
+  }
+
+  private static void setTrace(boolean trace) {
+    Configurator.setLevel(LockssSlf4jEventSender.getCategory(PORT_TYPE, EventType.REQ_IN),
+        trace ? Level.TRACE : Level.INFO);
+  }
+
+  /** Provides a request event of the test port type with all its fields set. */
+  private static LogEvent newEvent() {
+    LogEvent event = new LogEvent();
+    event.setType(EventType.REQ_IN);
+    event.setAddress("http://localhost/ws/TestSenderService");
+    event.setHttpMethod("POST");
+    event.setContentType("text/xml");
+    event.setResponseCode("200");
+    event.setExchangeId("exchange");
+    event.setMessageId("message");
+    event.setServiceName(new QName(NS, "TestSenderServiceImplService"));
+    event.setPortName(new QName(NS, "TestSenderServiceImplPort"));
+    event.setPortTypeName(new QName(NS, PORT_TYPE));
+    event.setFullContentFile(new File("content.log"));
+    event.setHeaders(Collections.singletonMap("SOAPAction", "\"\""));
+    event.setPayload("<soap:Envelope/>");
+    return event;
+  }
+
+  /** A sender that records the MDC entries present while the message is built. */
+  private static class RecordingSender extends LockssSlf4jEventSender {
+    private Map<String, String> mdc;
+    private RuntimeException failure;
+
+    @Override
+    protected String getLogMessage(LogEvent event) {
+      mdc = MDC.getCopyOfContextMap();
+
+      if (failure != null) {
+        throw failure;
+      }
+
+      return super.getLogMessage(event);
+    }
+  }
+}
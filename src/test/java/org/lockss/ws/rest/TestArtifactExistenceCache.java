@@ -0,0 +1,213 @@
+/*
+
+Copyright (c) 2000-2023, Board of Trustees of Leland Stanford Jr. University
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice,
+this list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation
+and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package org.lockss.ws.rest;
+
+import org.junit.After;
+import org.junit.Test;
+import org.lockss.config.ConfigManager;
+import org.lockss.config.Configuration;
+import org.lockss.test.ConfigurationUtil;
+import org.lockss.test.LockssTestCase4;
+import org.lockss.util.rest.repo.model.Artifact;
+import org.lockss.util.time.TimeBase;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Test class for org.lockss.ws.rest.ArtifactExistenceCache. */
+public class TestArtifactExistenceCache extends LockssTestCase4 {
+  private static final String NS = "lockss";
+  private static final String AUTH = "Basic dXNlcjpwYXNz";
+
+  private final AtomicInteger loads = new AtomicInteger();
+
+  @After
+  public void tearDown() throws Exception {
+    TimeBase.setReal();
+    super.tearDown();
+  }
+
+  private ArtifactExistenceCache.Loader loader(Artifact artifact) {
+    return () -> {
+      loads.incrementAndGet();
+      return artifact;
+    };
+  }
+
+  private static void configure(ArtifactExistenceCache cache, String... args) throws Exception {
+    Configuration config = ConfigurationUtil.fromArgs(args);
+    cache.setConfig(config, ConfigManager.EMPTY_CONFIGURATION,
+        config.differences(ConfigManager.EMPTY_CONFIGURATION));
+  }
+
+  @Test
+  public void testLookupsAreCached() throws Exception {
+    ArtifactExistenceCache cache = new ArtifactExistenceCache();
+    Artifact artifact = new Artifact();
+
+    assertSame(artifact, cache.get(NS, "au1", "url1", null, AUTH, loader(artifact)));
+    assertSame(artifact, cache.get(NS, "au1", "url1", null, AUTH, loader(artifact)));
+    assertEquals(1, loads.get());
+
+    // A specific version is a different lookup
+    assertNull(cache.get(NS, "au1", "url1", 2, AUTH, loader(null)));
+    assertNull(cache.get(NS, "au1", "url1", 2, AUTH, loader(null)));
+    assertEquals(2, loads.get());
+
+    assertEquals(2, cache.size());
+    assertEquals(0.5, cache.hitRatio(), 0.0);
+    assertTrue(cache.estimatedMemory() > 0);
+  }
+
+  @Test
+  public void testExpiration() throws Exception {
+    TimeBase.setSimulated(1000);
+    ArtifactExistenceCache cache = new ArtifactExistenceCache();
+    Artifact artifact = new Artifact();
+
+    cache.get(NS, "au1", "url1", null, AUTH, loader(artifact));
+    cache.get(NS, "au1", "url2", null, AUTH, loader(null));
+    assertEquals(2, loads.get());
+
+    TimeBase.step(ArtifactExistenceCache.DEFAULT_NEGATIVE_TTL - 1);
+    cache.get(NS, "au1", "url2", null, AUTH, loader(null));
+    assertEquals(2, loads.get());
+
+    TimeBase.step(1);
+    cache.get(NS, "au1", "url2", null, AUTH, loader(null));
+    cache.get(NS, "au1", "url1", null, AUTH, loader(artifact));
+    assertEquals(3, loads.get());
+
+    TimeBase.step(ArtifactExistenceCache.DEFAULT_TTL);
+    cache.get(NS, "au1", "url1", null, AUTH, loader(artifact));
+    assertEquals(4, loads.get());
+  }
+
+  @Test
+  public void testNoNegativeCaching() throws Exception {
+    ArtifactExistenceCache cache = new ArtifactExistenceCache();
+    configure(cache, ArtifactExistenceCache.PARAM_NEGATIVE_TTL, "0");
+
+    cache.get(NS, "au1", "url1", null, AUTH, loader(null));
+    cache.get(NS, "au1", "url1", null, AUTH, loader(null));
+    assertEquals(2, loads.get());
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testInvalidation() throws Exception {
+    ArtifactExistenceCache cache = new ArtifactExistenceCache();
+    Artifact artifact = new Artifact();
+
+    cache.get(NS, "au1", "url1", null, AUTH, loader(artifact));
+    cache.get(NS, "au1", "url1", 1, AUTH, loader(artifact));
+    cache.get(NS, "au2", "url1", null, AUTH, loader(artifact));
+    cache.get(NS, "au2", "url2", null, AUTH, loader(artifact));
+    assertEquals(4, cache.size());
+
+    cache.invalidateUrl(NS, "url1");
+    assertEquals(1, cache.size());
+
+    cache.invalidateAu(NS, "au2");
+    assertEquals(0, cache.size());
+
+    // Lookups made with any credentials are discarded
+    cache.get(NS, "au3", "url1", null, AUTH, loader(artifact));
+    cache.get(NS, "au3", "url1", null, "Basic b3RoZXI6cGFzcw==", loader(artifact));
+    cache.get(NS, "au3", "url2", null, null, loader(artifact));
+    assertEquals(3, cache.size());
+
+    cache.invalidateAu(NS, "au3");
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testLookupsAreKeptPerCredential() throws Exception {
+    ArtifactExistenceCache cache = new ArtifactExistenceCache();
+    Artifact artifact = new Artifact();
+
+    assertSame(artifact, cache.get(NS, "au1", "url1", null, AUTH, loader(artifact)));
+    assertSame(artifact, cache.get(NS, "au1", "url1", null, AUTH, loader(artifact)));
+    assertEquals(1, loads.get());
+
+    // Neither other credentials nor no credentials see the cached lookup
+    assertNull(cache.get(NS, "au1", "url1", null, "Basic b3RoZXI6cGFzcw==", loader(null)));
+    assertNull(cache.get(NS, "au1", "url1", null, null, loader(null)));
+    assertEquals(3, loads.get());
+  }
+
+  @Test
+  public void testEvictionKeepsAuIndex() throws Exception {
+    ArtifactExistenceCache cache = new ArtifactExistenceCache();
+    configure(cache, ArtifactExistenceCache.PARAM_MAX_SIZE, "2");
+    Artifact artifact = new Artifact();
+
+    cache.get(NS, "au1", "url1", null, AUTH, loader(artifact));
+    cache.get(NS, "au1", "url2", null, AUTH, loader(artifact));
+    cache.get(NS, "au2", "url1", null, AUTH, loader(artifact));
+    assertEquals(2, cache.size());
+
+    // The evicted lookup is loaded again and can still be invalidated with its AU
+    cache.get(NS, "au1", "url1", null, AUTH, loader(artifact));
+    assertEquals(4, loads.get());
+    cache.invalidateAu(NS, "au1");
+    assertEquals(1, cache.size());
+    cache.invalidateAu(NS, "au2");
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testInvalidationDuringLookup() throws Exception {
+    ArtifactExistenceCache cache = new ArtifactExistenceCache();
+    Artifact artifact = new Artifact();
+
+    // The AU is deleted while the lookup is in progress
+    assertSame(artifact, cache.get(NS, "au1", "url1", null, AUTH, () -> {
+      loads.incrementAndGet();
+      cache.invalidateAu(NS, "au1");
+      return artifact;
+    }));
+    assertEquals(0, cache.size());
+
+    // The URL is imported while the lookup is in progress
+    assertNull(cache.get(NS, "au1", "url1", null, AUTH, () -> {
+      loads.incrementAndGet();
+      cache.invalidateUrl(NS, "url1");
+      return null;
+    }));
+    assertEquals(0, cache.size());
+
+    // Neither answer was kept
+    assertSame(artifact, cache.get(NS, "au1", "url1", null, AUTH, loader(artifact)));
+    assertEquals(3, loads.get());
+    assertEquals(1, cache.size());
+  }
+}
@@ -0,0 +1,77 @@
+/*
+
+Copyright (c) 2000-2023, Board of Trustees of Leland Stanford Jr. University
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice,
+this list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation
+and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package org.lockss.ws.rest;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.junit.Test;
+import org.lockss.test.LockssTestCase4;
+import org.lockss.util.ListUtil;
+import org.lockss.ws.entities.AuWsResult;
+
+import java.util.List;
+
+/** Test class for org.lockss.ws.rest.JsonReaderCache. */
+public class TestJsonReaderCache extends LockssTestCase4 {
+  private static final TypeReference<List<AuWsResult>> AU_RESULTS_TYPE =
+      new TypeReference<List<AuWsResult>>() {};
+
+  @Test
+  public void testReadersAreCached() {
+    JsonReaderCache cache = new JsonReaderCache();
+
+    assertSame(cache.forType(AU_RESULTS_TYPE), cache.forType(AU_RESULTS_TYPE));
+    assertSame(cache.forType(AU_RESULTS_TYPE),
+        cache.forType(new TypeReference<List<AuWsResult>>() {}));
+    assertSame(cache.forType(AuWsResult.class), cache.forType(AuWsResult.class));
+    assertNotSame(cache.forType(AuWsResult.class), cache.forType(AU_RESULTS_TYPE));
+  }
+
+  @Test
+  public void testRead() throws Exception {
+    JsonReaderCache cache = new JsonReaderCache();
+
+    AuWsResult au1 = new AuWsResult();
+    au1.setAuId("auid1");
+    au1.setName("AU 1");
+    AuWsResult au2 = new AuWsResult();
+    au2.setAuId("auid2");
+
+    String json = cache.getMapper().writeValueAsString(ListUtil.list(au1, au2));
+    List<AuWsResult> result = cache.forType(AU_RESULTS_TYPE).readValue(json);
+
+    assertEquals(2, result.size());
+    assertEquals("auid1", result.get(0).getAuId());
+    assertEquals("AU 1", result.get(0).getName());
+    assertEquals("auid2", result.get(1).getAuId());
+    assertNull(result.get(1).getName());
+  }
+}
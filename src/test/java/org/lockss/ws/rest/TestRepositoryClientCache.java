@@ -0,0 +1,85 @@
+/*
+
+Copyright (c) 2000-2023, Board of Trustees of Leland Stanford Jr. University
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice,
+this list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation
+and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package org.lockss.ws.rest;
+
+import org.junit.After;
+import org.junit.Test;
+import org.lockss.test.LockssTestCase4;
+import org.lockss.util.rest.repo.RestLockssRepository;
+import org.lockss.util.time.TimeBase;
+import org.springframework.web.client.RestTemplate;
+
+/** Test class for org.lockss.ws.rest.RepositoryClientCache. */
+public class TestRepositoryClientCache extends LockssTestCase4 {
+  private static final String ENDPOINT1 = "http://localhost:24610";
+  private static final String ENDPOINT2 = "http://localhost:24611";
+
+  private final RestTemplate restTemplate = new RestTemplate();
+
+  @After
+  public void tearDown() throws Exception {
+    TimeBase.setReal();
+    super.tearDown();
+  }
+
+  @Test
+  public void testClientsAreCached() throws Exception {
+    RepositoryClientCache cache = new RepositoryClientCache();
+
+    RestLockssRepository repo = cache.get(ENDPOINT1, "lockss-u", "lockss-p", restTemplate);
+    assertSame(repo, cache.get(ENDPOINT1, "lockss-u", "lockss-p", restTemplate));
+    assertNotSame(repo, cache.get(ENDPOINT1, "lockss-u", "other-p", restTemplate));
+    assertNotSame(repo, cache.get(ENDPOINT1, "other-u", "lockss-p", restTemplate));
+    assertNotSame(repo, cache.get(ENDPOINT2, "lockss-u", "lockss-p", restTemplate));
+    assertEquals(4, cache.size());
+
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertNotSame(repo, cache.get(ENDPOINT1, "lockss-u", "lockss-p", restTemplate));
+  }
+
+  @Test
+  public void testExpiration() throws Exception {
+    TimeBase.setSimulated(1000);
+    RepositoryClientCache cache = new RepositoryClientCache();
+
+    RestLockssRepository repo = cache.get(ENDPOINT1, "lockss-u", "lockss-p", restTemplate);
+    TimeBase.step(RepositoryClientCache.DEFAULT_TTL - 1);
+    assertSame(repo, cache.get(ENDPOINT1, "lockss-u", "lockss-p", restTemplate));
+
+    TimeBase.step(1);
+    RestLockssRepository newRepo = cache.get(ENDPOINT1, "lockss-u", "lockss-p", restTemplate);
+    assertNotSame(repo, newRepo);
+    assertSame(newRepo, cache.get(ENDPOINT1, "lockss-u", "lockss-p", restTemplate));
+    assertEquals(1, cache.size());
+  }
+}
@@ -0,0 +1,111 @@
+/*
+
+Copyright (c) 2000-2023, Board of Trustees of Leland Stanford Jr. University
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice,
+this list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation
+and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package org.lockss.ws.rest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.lockss.app.ServiceDescr;
+import org.lockss.config.ConfigManager;
+import org.lockss.config.Configuration;
+import org.lockss.test.ConfigurationUtil;
+import org.lockss.test.LockssTestCase4;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/** Test class for org.lockss.ws.rest.RestBulkheads. */
+public class TestRestBulkheads extends LockssTestCase4 {
+  private RestBulkheads bulkheads;
+
+  @Before
+  public void setUpBulkheads() {
+    bulkheads = new RestBulkheads();
+
+    Configuration config = ConfigurationUtil.fromArgs(
+        RestBulkheads.PARAM_MAX_CONCURRENT, "2",
+        RestBulkheads.PARAM_MAX_QUEUED, "1",
+        RestBulkheads.PARAM_MAX_WAIT, "200",
+        RestBulkheads.PREFIX + "cfg" + RestBulkheads.SUFFIX_MAX_CONCURRENT, "0");
+    bulkheads.setConfig(config, ConfigManager.EMPTY_CONFIGURATION,
+        config.differences(ConfigManager.EMPTY_CONFIGURATION));
+  }
+
+  @Test
+  public void testLimit() throws Exception {
+    RestBulkheads.Permit first = bulkheads.enter(ServiceDescr.SVC_POLLER);
+    RestBulkheads.Permit second = bulkheads.enter(ServiceDescr.SVC_POLLER);
+    assertEquals(2, bulkheads.getActiveCount(ServiceDescr.SVC_POLLER));
+
+    // Other services are not affected
+    bulkheads.enter(ServiceDescr.SVC_REPO).close();
+
+    // A waiting call gets the room given back
+    CompletableFuture<RestBulkheads.Permit> waiting = CompletableFuture.supplyAsync(() -> {
+      try {
+        return bulkheads.enter(ServiceDescr.SVC_POLLER);
+      } catch (ServiceBusyException sbe) {
+        throw new IllegalStateException(sbe);
+      }
+    });
+
+    Thread.sleep(50);
+    first.close();
+    RestBulkheads.Permit third = waiting.get(5, TimeUnit.SECONDS);
+
+    // Closing again gives nothing back
+    first.close();
+    assertEquals(2, bulkheads.getActiveCount(ServiceDescr.SVC_POLLER));
+
+    // No room is given back before the wait ends
+    try {
+      bulkheads.enter(ServiceDescr.SVC_POLLER);
+      fail("Should have thrown ServiceBusyException");
+    } catch (ServiceBusyException sbe) {
+      assertEquals(ServiceDescr.SVC_POLLER, sbe.getServiceDescr());
+    }
+
+    assertEquals(1, bulkheads.getRejectedCount(ServiceDescr.SVC_POLLER));
+
+    second.close();
+    third.close();
+    assertEquals(0, bulkheads.getActiveCount(ServiceDescr.SVC_POLLER));
+  }
+
+  @Test
+  public void testUnlimited() throws Exception {
+    for (int i = 0; i < 10; i++) {
+      bulkheads.enter(ServiceDescr.SVC_CONFIG);
+    }
+
+    assertEquals(0, bulkheads.getRejectedCount(ServiceDescr.SVC_CONFIG));
+  }
+}
@@ -0,0 +1,162 @@
+/*
+
+Copyright (c) 2000-2023, Board of Trustees of Leland Stanford Jr. University
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice,
+this list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation
+and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package org.lockss.ws.rest;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lockss.test.LockssTestCase4;
+import org.lockss.ws.SoapRequestContext;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.util.StreamUtils;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+/** Test class for org.lockss.ws.rest.RestCallMetrics. */
+public class TestRestCallMetrics extends LockssTestCase4 {
+  private RestCallMetrics metrics;
+  private MeterRegistry registry;
+  private ClientHttpRequestFactory factory;
+
+  @Before
+  public void setUpMetrics() throws Exception {
+    metrics = new RestCallMetrics();
+    registry = new SimpleMeterRegistry();
+    metrics.bindTo(registry);
+
+    ClientHttpRequestFactory mockFactory = (uri, httpMethod) -> {
+      MockClientHttpRequest request = new MockClientHttpRequest(httpMethod, uri);
+      request.setResponse(
+          new MockClientHttpResponse("hello".getBytes(StandardCharsets.UTF_8), HttpStatus.OK));
+      return request;
+    };
+
+    factory = metrics.decorate(mockFactory);
+  }
+
+  @After
+  public void tearDownMetrics() throws Exception {
+    RestCallMetrics.setPathTemplate(null);
+  }
+
+  @Test
+  public void testPathTemplateFromUri() throws Exception {
+    assertEquals("/aus/{id}/artifacts", metrics.getPathTemplate(
+        new URI("http://localhost:2/aus/org%7Clockss%7Cplugin%26base_url~x/artifacts?url=u")));
+    assertEquals("/artifacts/{id}/response", metrics.getPathTemplate(
+        new URI("http://localhost:2/artifacts/0d3e7a4c-8d36-4b0a-9e1c-3a8f0c2b1e5d/response")));
+    assertEquals("/ws/tdbaus", metrics.getPathTemplate(new URI("http://localhost:3/ws/tdbaus")));
+  }
+
+  @Test
+  public void testPathTemplateFromThread() throws Exception {
+    RestCallMetrics.setPathTemplate("http://localhost:3/austatuses/{auId}?x={y}");
+    assertEquals("/austatuses/{auId}",
+        metrics.getPathTemplate(new URI("http://localhost:3/austatuses/abc")));
+  }
+
+  @Test
+  public void testCallIsRecorded() throws Exception {
+    SoapRequestContext context = new SoapRequestContext(null, null, "getAuStatus");
+
+    context.call(() -> {
+      RestCallMetrics.setPathTemplate("http://localhost:3/austatuses/{auId}");
+
+      ClientHttpRequest request =
+          factory.createRequest(new URI("http://localhost:3/austatuses/abc"), HttpMethod.POST);
+      request.getBody().write("abc".getBytes(StandardCharsets.UTF_8));
+
+      try (ClientHttpResponse response = request.execute()) {
+        assertEquals("hello",
+            StreamUtils.copyToString(response.getBody(), StandardCharsets.UTF_8));
+      }
+
+      return null;
+    });
+
+    Timer timer = registry.find("soap.rest.call.duration")
+        .tag("path", "/austatuses/{auId}")
+        .tag("method", "POST")
+        .tag("status", "200")
+        .tag("operation", "getAuStatus")
+        .timer();
+    assertNotNull(timer);
+    assertEquals(1, timer.count());
+
+    DistributionSummary requestSize = registry.find("soap.rest.call.request.size")
+        .tag("path", "/austatuses/{auId}")
+        .summary();
+    assertEquals(3.0, requestSize.totalAmount(), 0.0);
+
+    DistributionSummary responseSize = registry.find("soap.rest.call.response.size")
+        .tag("path", "/austatuses/{auId}")
+        .summary();
+    assertEquals(5.0, responseSize.totalAmount(), 0.0);
+  }
+
+  @Test
+  public void testUndecoratedCallIsRecorded() throws Exception {
+    SoapRequestContext context = new SoapRequestContext(null, null, "exportAu");
+
+    context.call(() -> {
+      RestCallMetrics.setPathTemplate("http://localhost:3/aus/{auid}/export");
+      metrics.record(new URI("http://localhost:3/aus/abc/export"), HttpMethod.GET, "200",
+          System.nanoTime());
+      return null;
+    });
+
+    Timer timer = registry.find("soap.rest.call.duration")
+        .tag("path", "/aus/{auid}/export")
+        .tag("method", "GET")
+        .tag("status", "200")
+        .tag("operation", "exportAu")
+        .timer();
+    assertNotNull(timer);
+    assertEquals(1, timer.count());
+
+    // The sizes of undecorated calls are not known
+    assertNull(registry.find("soap.rest.call.request.size")
+        .tag("path", "/aus/{auid}/export")
+        .summary());
+  }
+}
@@ -0,0 +1,147 @@
+/*
+
+Copyright (c) 2000-2023, Board of Trustees of Leland Stanford Jr. University
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice,
+this list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation
+and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package org.lockss.ws.rest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lockss.app.ServiceDescr;
+import org.lockss.config.ConfigManager;
+import org.lockss.config.Configuration;
+import org.lockss.test.ConfigurationUtil;
+import org.lockss.test.LockssTestCase4;
+import org.lockss.util.time.TimeBase;
+
+import static org.lockss.ws.rest.RestCircuitBreakers.State.*;
+
+/** Test class for org.lockss.ws.rest.RestCircuitBreakers. */
+public class TestRestCircuitBreakers extends LockssTestCase4 {
+  private static final ServiceDescr SD = ServiceDescr.SVC_REPO;
+
+  private RestCircuitBreakers breakers;
+
+  @Before
+  public void setUpBreakers() {
+    TimeBase.setSimulated(1000);
+    breakers = new RestCircuitBreakers();
+
+    Configuration config = ConfigurationUtil.fromArgs(
+        RestCircuitBreakers.PARAM_WINDOW_SIZE, "10",
+        RestCircuitBreakers.PARAM_MIN_CALLS, "4",
+        RestCircuitBreakers.PARAM_FAILURE_RATE, "50",
+        RestCircuitBreakers.PARAM_OPEN_DURATION, "10s",
+        RestCircuitBreakers.PARAM_HALF_OPEN_CALLS, "2");
+    breakers.setConfig(config, ConfigManager.EMPTY_CONFIGURATION,
+        config.differences(ConfigManager.EMPTY_CONFIGURATION));
+  }
+
+  @After
+  public void tearDownBreakers() {
+    TimeBase.setReal();
+  }
+
+  @Test
+  public void testOpenAndClose() throws Exception {
+    // Too few calls to open
+    call(false);
+    call(false);
+    call(true);
+    assertEquals(CLOSED, breakers.getState(SD));
+
+    // Half of the calls failed
+    call(false);
+    assertEquals(OPEN, breakers.getState(SD));
+    assertTrue(breakers.isOpen(SD));
+    assertRejected();
+
+    // Other services are not affected
+    assertEquals(CLOSED, breakers.getState(ServiceDescr.SVC_POLLER));
+
+    // A failed trial opens it again
+    TimeBase.step(10000);
+    assertEquals(HALF_OPEN, breakers.getState(SD));
+    call(false);
+    assertEquals(OPEN, breakers.getState(SD));
+
+    // Only the configured number of trials are let through, and their success closes it
+    TimeBase.step(10000);
+    breakers.enter(SD);
+    breakers.enter(SD);
+    assertRejected();
+    breakers.record(SD, true);
+    assertEquals(HALF_OPEN, breakers.getState(SD));
+    breakers.record(SD, true);
+    assertEquals(CLOSED, breakers.getState(SD));
+
+    // The earlier failures are forgotten
+    call(false);
+    call(true);
+    call(true);
+    call(true);
+    assertEquals(CLOSED, breakers.getState(SD));
+  }
+
+  @Test
+  public void testUnavailableStatus() {
+    assertTrue(RestCircuitBreakers.isUnavailable(503));
+    assertTrue(RestCircuitBreakers.isUnavailable(504));
+    assertFalse(RestCircuitBreakers.isUnavailable(500));
+    assertFalse(RestCircuitBreakers.isUnavailable(404));
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    Configuration config = ConfigurationUtil.fromArgs(RestCircuitBreakers.PARAM_ENABLED, "false");
+    breakers.setConfig(config, ConfigManager.EMPTY_CONFIGURATION,
+        config.differences(ConfigManager.EMPTY_CONFIGURATION));
+
+    for (int i = 0; i < 20; i++) {
+      call(false);
+    }
+
+    assertEquals(CLOSED, breakers.getState(SD));
+  }
+
+  private void call(boolean success) throws CircuitOpenException {
+    breakers.enter(SD);
+    breakers.record(SD, success);
+  }
+
+  private void assertRejected() {
+    try {
+      breakers.enter(SD);
+      fail("Should have thrown CircuitOpenException");
+    } catch (CircuitOpenException coe) {
+      assertEquals(SD, coe.getServiceDescr());
+    }
+  }
+}
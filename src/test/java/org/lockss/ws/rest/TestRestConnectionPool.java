@@ -0,0 +1,253 @@
+/*
+
+Copyright (c) 2000-2023, Board of Trustees of Leland Stanford Jr. University
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice,
+this list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation
+and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package org.lockss.ws.rest;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.hc.core5.pool.PoolStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lockss.app.ServiceDescr;
+import org.lockss.config.ConfigManager;
+import org.lockss.config.Configuration;
+import org.lockss.test.ConfigurationUtil;
+import org.lockss.test.LockssTestCase4;
+import org.lockss.util.time.Deadline;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.StreamUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test class for org.lockss.ws.rest.RestConnectionPool, making real REST calls to local servers.
+ */
+public class TestRestConnectionPool extends LockssTestCase4 {
+  private HttpServer server;
+  private ServerSocket brokenServer;
+  private Thread brokenServerThread;
+
+  // The calls received by each server.
+  private final AtomicInteger calls = new AtomicInteger();
+  private final AtomicInteger brokenCalls = new AtomicInteger();
+
+  // The REST stem of each bound service.
+  private final Map<ServiceDescr, String> restStems = new HashMap<>();
+
+  private RestConnectionPool pool;
+  private ClientHttpRequestFactory factory;
+
+  @Before
+  public void setUpServers() throws Exception {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/ok", exchange -> {
+      calls.incrementAndGet();
+      byte[] body = "hello".getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, body.length);
+
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.createContext("/unavailable", exchange -> {
+      calls.incrementAndGet();
+      exchange.sendResponseHeaders(503, -1);
+      exchange.close();
+    });
+    server.start();
+
+    // A server that closes every connection without responding
+    brokenServer = new ServerSocket(0);
+    brokenServerThread = new Thread(() -> {
+      while (!brokenServer.isClosed()) {
+        try (Socket socket = brokenServer.accept()) {
+          BufferedReader reader = new BufferedReader(
+              new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+          String line;
+
+          // Read the whole request before closing the connection
+          do {
+            line = reader.readLine();
+          } while (line != null && !line.isEmpty());
+
+          brokenCalls.incrementAndGet();
+        } catch (IOException e) {
+          // The server socket has been closed
+        }
+      }
+    });
+    brokenServerThread.start();
+
+    // Different host names are different routes of the pool
+    restStems.put(ServiceDescr.SVC_REPO, "http://localhost:" + server.getAddress().getPort());
+    restStems.put(ServiceDescr.SVC_CONFIG, "http://127.0.0.1:" + server.getAddress().getPort());
+    restStems.put(ServiceDescr.SVC_POLLER, "http://localhost:" + brokenServer.getLocalPort());
+
+    pool = new RestConnectionPool() {
+      @Override
+      String getRestStem(ServiceDescr sd) {
+        return restStems.get(sd);
+      }
+    };
+
+    factory = pool.getRequestFactory(10000, 10000, null);
+  }
+
+  @After
+  public void tearDownServers() throws Exception {
+    pool.shutdown();
+    server.stop(0);
+    brokenServer.close();
+    brokenServerThread.join(10000);
+  }
+
+  private void configure(String... args) throws Exception {
+    Configuration config = ConfigurationUtil.fromArgs(args);
+    pool.setConfig(config, ConfigManager.EMPTY_CONFIGURATION,
+        config.differences(ConfigManager.EMPTY_CONFIGURATION));
+  }
+
+  private String get(ServiceDescr sd, String path) throws Exception {
+    URI uri = new URI(restStems.get(sd) + path);
+
+    try (ClientHttpResponse response = factory.createRequest(uri, HttpMethod.GET).execute()) {
+      return response.getStatusCode().value() + " "
+          + StreamUtils.copyToString(response.getBody(), StandardCharsets.UTF_8);
+    }
+  }
+
+  @Test
+  public void testRouteLimits() throws Exception {
+    configure(RestConnectionPool.PARAM_MAX_TOTAL, "50",
+        RestConnectionPool.PARAM_MAX_PER_ROUTE, "5",
+        RestConnectionPool.PREFIX + "repo" + RestConnectionPool.SUFFIX_MAX_PER_ROUTE, "2");
+
+    Map<ServiceDescr, PoolStats> stats = pool.getRouteStats();
+    assertEquals(2, stats.get(ServiceDescr.SVC_REPO).getMax());
+    assertEquals(5, stats.get(ServiceDescr.SVC_CONFIG).getMax());
+    assertEquals(50, pool.getTotalStats().getMax());
+
+    // Services that are not bound have no route
+    assertFalse(stats.containsKey(ServiceDescr.SVC_CRAWLER));
+  }
+
+  @Test
+  public void testSetConfigResizes() throws Exception {
+    configure(RestConnectionPool.PARAM_MAX_TOTAL, "10",
+        RestConnectionPool.PARAM_MAX_PER_ROUTE, "3");
+    assertEquals(10, pool.getTotalStats().getMax());
+    assertEquals(3, pool.getRouteStats().get(ServiceDescr.SVC_REPO).getMax());
+
+    configure(RestConnectionPool.PARAM_MAX_TOTAL, "20",
+        RestConnectionPool.PARAM_MAX_PER_ROUTE, "7");
+    assertEquals(20, pool.getTotalStats().getMax());
+    assertEquals(7, pool.getRouteStats().get(ServiceDescr.SVC_REPO).getMax());
+
+    // A service that is no longer bound loses its route
+    restStems.remove(ServiceDescr.SVC_CONFIG);
+    configure(RestConnectionPool.PARAM_MAX_TOTAL, "20");
+    assertFalse(pool.getRouteStats().containsKey(ServiceDescr.SVC_CONFIG));
+  }
+
+  @Test
+  public void testConnectionsAreReused() throws Exception {
+    configure(RestConnectionPool.PARAM_MAX_TOTAL, "10");
+
+    assertEquals("200 hello", get(ServiceDescr.SVC_REPO, "/ok"));
+    assertEquals("200 hello", get(ServiceDescr.SVC_REPO, "/ok"));
+    assertEquals(2, calls.get());
+
+    // One connection, kept alive and idle between the calls
+    PoolStats stats = pool.getRouteStats().get(ServiceDescr.SVC_REPO);
+    assertEquals(0, stats.getLeased());
+    assertEquals(1, stats.getAvailable());
+    assertEquals(0, pool.getRouteStats().get(ServiceDescr.SVC_CONFIG).getAvailable());
+    assertEquals(1, pool.getTotalStats().getAvailable());
+  }
+
+  @Test
+  public void testIdleConnectionsAreEvicted() throws Exception {
+    configure(RestConnectionPool.PARAM_IDLE_TIMEOUT, "100");
+
+    assertEquals("200 hello", get(ServiceDescr.SVC_REPO, "/ok"));
+    assertEquals(1, pool.getRouteStats().get(ServiceDescr.SVC_REPO).getAvailable());
+
+    Deadline deadline = Deadline.in(10000);
+
+    while (pool.getRouteStats().get(ServiceDescr.SVC_REPO).getAvailable() > 0
+        && !deadline.expired()) {
+      Thread.sleep(50);
+    }
+
+    assertEquals(0, pool.getRouteStats().get(ServiceDescr.SVC_REPO).getAvailable());
+  }
+
+  @Test
+  public void testNoRetriesByDefault() throws Exception {
+    configure(RestConnectionPool.PARAM_MAX_TOTAL, "10");
+
+    assertThrows(IOException.class, () -> get(ServiceDescr.SVC_POLLER, "/broken"));
+    assertEquals(1, brokenCalls.get());
+    assertEquals(0, pool.getRetryCount(ServiceDescr.SVC_POLLER));
+  }
+
+  @Test
+  public void testIoErrorsAreRetried() throws Exception {
+    configure(RestConnectionPool.PARAM_MAX_RETRIES, "2");
+
+    assertThrows(IOException.class, () -> get(ServiceDescr.SVC_POLLER, "/broken"));
+    assertEquals(3, brokenCalls.get());
+    assertEquals(2, pool.getRetryCount(ServiceDescr.SVC_POLLER));
+    assertEquals(0, pool.getRetryCount(ServiceDescr.SVC_REPO));
+  }
+
+  @Test
+  public void testUnavailableResponsesAreNotRetried() throws Exception {
+    configure(RestConnectionPool.PARAM_MAX_RETRIES, "2");
+
+    assertEquals("503 ", get(ServiceDescr.SVC_REPO, "/unavailable"));
+    assertEquals(1, calls.get());
+    assertEquals(0, pool.getRetryCount(ServiceDescr.SVC_REPO));
+  }
+}
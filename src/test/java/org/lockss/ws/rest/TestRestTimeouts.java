@@ -0,0 +1,145 @@
+/*
+
+Copyright (c) 2000-2023, Board of Trustees of Leland Stanford Jr. University
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice,
+this list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation
+and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package org.lockss.ws.rest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.lockss.app.ServiceDescr;
+import org.lockss.config.ConfigManager;
+import org.lockss.config.Configuration;
+import org.lockss.test.ConfigurationUtil;
+import org.lockss.test.LockssTestCase4;
+import org.lockss.util.Constants;
+
+/** Test class for org.lockss.ws.rest.RestTimeouts. */
+public class TestRestTimeouts extends LockssTestCase4 {
+  private static final long DFLT = 120 * Constants.SECOND;
+
+  private RestTimeouts timeouts;
+
+  @Before
+  public void setUpTimeouts() {
+    timeouts = new RestTimeouts();
+  }
+
+  @Test
+  public void testConfigured() {
+    setConfig(RestTimeouts.PREFIX + "repo" + RestTimeouts.SUFFIX_READ, "30s",
+        RestTimeouts.PREFIX + "repo" + RestTimeouts.SUFFIX_CONNECT, "3s",
+        RestTimeouts.OPERATION_PREFIX + "isUrlCached" + RestTimeouts.SUFFIX_READ, "2s");
+
+    // The operation takes precedence over the service
+    assertEquals(2 * Constants.SECOND,
+        timeouts.getReadTimeout(ServiceDescr.SVC_REPO, "isUrlCached", DFLT));
+    assertEquals(3 * Constants.SECOND,
+        timeouts.getConnectTimeout(ServiceDescr.SVC_REPO, "isUrlCached", DFLT));
+    assertEquals(30 * Constants.SECOND,
+        timeouts.getReadTimeout(ServiceDescr.SVC_REPO, "fetchFile", DFLT));
+
+    // Other services and unknown calls get the default
+    assertEquals(DFLT, timeouts.getReadTimeout(ServiceDescr.SVC_POLLER, "exportAu", DFLT));
+    assertEquals(DFLT, timeouts.getReadTimeout(null, null, DFLT));
+
+    // Built-in operation timeouts, unless configured otherwise
+    assertEquals(Constants.DAY, timeouts.getReadTimeout(ServiceDescr.SVC_POLLER, "hash", DFLT));
+
+    setConfig(RestTimeouts.OPERATION_PREFIX + "hash" + RestTimeouts.SUFFIX_READ, "6h");
+    assertEquals(6 * Constants.HOUR,
+        timeouts.getReadTimeout(ServiceDescr.SVC_POLLER, "hash", DFLT));
+    assertEquals(DFLT, timeouts.getReadTimeout(ServiceDescr.SVC_REPO, "isUrlCached", DFLT));
+  }
+
+  @Test
+  public void testOperationDefaults() {
+    timeouts.setOperationDefaults("readinessProbe", 5 * Constants.SECOND, 5 * Constants.SECOND);
+    assertEquals(5 * Constants.SECOND,
+        timeouts.getConnectTimeout(ServiceDescr.SVC_REPO, "readinessProbe", DFLT));
+    assertEquals(5 * Constants.SECOND,
+        timeouts.getReadTimeout(ServiceDescr.SVC_REPO, "readinessProbe", DFLT));
+
+    // Configured timeouts take precedence
+    setConfig(RestTimeouts.OPERATION_PREFIX + "readinessProbe" + RestTimeouts.SUFFIX_READ, "2s");
+    assertEquals(2 * Constants.SECOND,
+        timeouts.getReadTimeout(ServiceDescr.SVC_REPO, "readinessProbe", DFLT));
+    assertEquals(5 * Constants.SECOND,
+        timeouts.getConnectTimeout(ServiceDescr.SVC_REPO, "readinessProbe", DFLT));
+  }
+
+  @Test
+  public void testAdaptive() {
+    setConfig(RestTimeouts.PARAM_ADAPTIVE, "true",
+        RestTimeouts.PARAM_ADAPTIVE_MIN_SAMPLES, "10",
+        RestTimeouts.PARAM_ADAPTIVE_FACTOR, "400",
+        RestTimeouts.PARAM_ADAPTIVE_MIN, "1s",
+        RestTimeouts.OPERATION_PREFIX + "exportAu" + RestTimeouts.SUFFIX_READ, "1h");
+
+    // Not enough samples yet
+    for (int i = 1; i <= 9; i++) {
+      timeouts.recordLatency(ServiceDescr.SVC_REPO, "isUrlCached", 500);
+    }
+
+    assertEquals(DFLT, timeouts.getReadTimeout(ServiceDescr.SVC_REPO, "isUrlCached", DFLT));
+
+    timeouts.recordLatency(ServiceDescr.SVC_REPO, "isUrlCached", 1000);
+    assertEquals(4 * Constants.SECOND,
+        timeouts.getReadTimeout(ServiceDescr.SVC_REPO, "isUrlCached", DFLT));
+
+    // Never shorter than the minimum
+    for (int i = 0; i < 20; i++) {
+      timeouts.recordLatency(ServiceDescr.SVC_REPO, "getAuStatus", 10);
+    }
+
+    assertEquals(Constants.SECOND,
+        timeouts.getReadTimeout(ServiceDescr.SVC_REPO, "getAuStatus", DFLT));
+
+    // Never longer than otherwise
+    for (int i = 0; i < 20; i++) {
+      timeouts.recordLatency(ServiceDescr.SVC_CONFIG, "getTdbAus", 100 * Constants.SECOND);
+    }
+
+    assertEquals(DFLT, timeouts.getReadTimeout(ServiceDescr.SVC_CONFIG, "getTdbAus", DFLT));
+
+    // Operations with their own timeout keep it
+    for (int i = 0; i < 20; i++) {
+      timeouts.recordLatency(ServiceDescr.SVC_POLLER, "exportAu", 10);
+    }
+
+    assertEquals(Constants.HOUR,
+        timeouts.getReadTimeout(ServiceDescr.SVC_POLLER, "exportAu", DFLT));
+  }
+
+  private void setConfig(String... args) {
+    Configuration config = ConfigurationUtil.fromArgs(args);
+    timeouts.setConfig(config, ConfigManager.EMPTY_CONFIGURATION,
+        config.differences(ConfigManager.EMPTY_CONFIGURATION));
+  }
+}
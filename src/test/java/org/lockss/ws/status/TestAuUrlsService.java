@@ -0,0 +1,156 @@
+/*
+
+Copyright (c) 2000-2022, Board of Trustees of Leland Stanford Jr. University
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice,
+this list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation
+and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package org.lockss.ws.status;
+
+import org.jeasy.random.EasyRandom;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.lockss.app.ServiceDescr;
+import org.lockss.config.ConfigManager;
+import org.lockss.config.Configuration;
+import org.lockss.log.L4JLogger;
+import org.lockss.util.ListUtil;
+import org.lockss.util.StringUtil;
+import org.lockss.util.rest.RestUtil;
+import org.lockss.util.rest.repo.model.Artifact;
+import org.lockss.util.rest.repo.model.ArtifactPageInfo;
+import org.lockss.util.rest.repo.model.PageInfo;
+import org.lockss.ws.BaseServiceImpl;
+import org.lockss.ws.SoapApplication;
+import org.lockss.ws.entities.DataHandlerWrapper;
+import org.lockss.ws.test.BaseSoapTest;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.client.ExpectedCount;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.*;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(
+    classes = {SoapApplication.class},
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {"security.basic.enabled=false"})
+public class TestAuUrlsService extends BaseSoapTest {
+  private static final L4JLogger log = L4JLogger.getLogger();
+
+  private static final String TARGET_NAMESPACE = "http://status.ws.lockss.org/";
+  private static final String SERVICE_NAME = "AuUrlsServiceImplService";
+  private static final String ENDPOINT_NAME = "AuUrlsService";
+
+  private AuUrlsService proxy;
+  private static EasyRandom easyRandom;
+
+  @Before
+  public void init() throws Exception {
+    proxy = setUpProxyAndCommonTestEnv(TARGET_NAMESPACE,
+                                       ENDPOINT_NAME, SERVICE_NAME,
+                                       AuUrlsService.class);
+
+    // Create EasyRandom generator
+    easyRandom = new EasyRandom();
+  }
+
+  /**
+   * Test for {@link AuUrlsService#getAuUrlsAttachment(String, String)}.
+   */
+  @Test
+  public void testGetAuUrlsAttachment() throws Exception {
+    String auId = "auId";
+    String urlPrefix = "urlPrefix";
+
+    List<Artifact> artifacts = ListUtil.list(easyRandom.nextObject(Artifact[].class));
+
+    PageInfo pageInfo = new PageInfo();
+    pageInfo.setResultsPerPage(artifacts.size());
+    pageInfo.setTotalCount(artifacts.size());
+
+    ArtifactPageInfo page = new ArtifactPageInfo();
+    page.setPageInfo(pageInfo);
+    page.setArtifacts(artifacts);
+
+    StringBuilder expectedResult = new StringBuilder();
+
+    for (Artifact artifact : artifacts) {
+      expectedResult.append(artifact.getUri()).append("\n");
+    }
+
+    // Prepare the URI path variables
+    Map<String, String> uriVariables = new HashMap<>(1);
+    uriVariables.put("auId", auId);
+
+    Configuration config = ConfigManager.getCurrentConfig();
+
+    // Prepare the query parameters
+    Map<String, String> queryParams = new HashMap<>(1);
+    queryParams.put("urlPrefix", urlPrefix);
+
+    String namespace =
+        config.get(BaseServiceImpl.PARAM_REPO_NAMESPACE, BaseServiceImpl.DEFAULT_REPO_NAMESPACE);
+
+    if (!StringUtil.isNullString(namespace)) {
+      queryParams.put("namespace", namespace);
+    }
+
+    // Prepare the endpoint URI
+    String auArtifactsEndpoint = getServiceEndpoint(ServiceDescr.SVC_REPO) + "/aus/{auId}/artifacts";
+    URI auArtifactsQuery = RestUtil.getRestUri(auArtifactsEndpoint, uriVariables, queryParams);
+
+    mockRestServer
+        .expect(ExpectedCount.once(), requestTo(auArtifactsQuery))
+        .andExpect(method(HttpMethod.GET))
+        .andExpect(header("Authorization", BASIC_AUTH_HASH))
+        .andRespond(withStatus(HttpStatus.OK)
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(mapper.writeValueAsString(page)));
+
+    // Make SOAP call
+    DataHandlerWrapper result = proxy.getAuUrlsAttachment(auId, urlPrefix);
+
+    // Assert result
+    try (InputStream is = result.getDataHandler().getInputStream()) {
+      assertEquals(expectedResult.toString(), StringUtil.fromInputStream(is));
+    }
+
+    mockRestServer.verify();
+    mockRestServer.reset();
+  }
+}
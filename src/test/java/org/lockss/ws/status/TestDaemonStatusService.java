@@ -39,6 +39,8 @@ import org.lockss.app.ServiceDescr;
 import org.lockss.config.ConfigManager;
 import org.lockss.config.Configuration;
 import org.lockss.log.L4JLogger;
+import org.lockss.test.ConfigurationUtil;
+import org.lockss.util.Constants;
 import org.lockss.util.ListUtil;
 import org.lockss.util.StringUtil;
 import org.lockss.util.rest.RestUtil;
@@ -46,10 +48,13 @@ import org.lockss.util.rest.repo.model.Artifact;
 import org.lockss.util.rest.repo.model.ArtifactPageInfo;
 import org.lockss.util.rest.repo.model.PageInfo;
 import org.lockss.util.rest.status.ApiStatus;
+import org.lockss.util.time.TimeBase;
+import org.lockss.util.time.TimerUtil;
 import org.lockss.ws.BaseServiceImpl;
 import org.lockss.ws.SoapApplication;
 import org.lockss.ws.entities.*;
 import org.lockss.ws.test.BaseSoapTest;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
@@ -91,13 +96,22 @@ public class TestDaemonStatusService extends BaseSoapTest {
 
     // Create EasyRandom generator
     easyRandom = new EasyRandom();
+
+    // Probe the services on every readiness request
+    ConfigurationUtil.addFromArgs(ServiceReadinessProbe.PARAM_REFRESH_INTERVAL, "0");
   }
 
+  @Autowired
+  private ServiceReadinessProbe readinessProbe;
+
   /**
    * Test for {@link DaemonStatusService#isDaemonReady()}.
    */
   @Test
   public void testIsDaemonReady() throws Exception {
+    // The services are probed concurrently
+    ignoreExpectOrder();
+
     int allSvcsStopped = 0b00000;
     int allSvcsReady = 0b11111;
 
@@ -109,22 +123,171 @@ public class TestDaemonStatusService extends BaseSoapTest {
       boolean isMdxReady = (svcsReady & 0b00010) != 0;
       boolean isMdqReady = (svcsReady & 0b00001) != 0;
 
-      boolean isPollerCallExpected = (svcsReady & 0b11000) == 0b11000;
-      boolean isMdxCallExpected = (svcsReady & 0b11100) == 0b11100;
-      boolean isMdqCallExpected = (svcsReady & 0b11110) == 0b11110;
-
       boolean isDaemonReady = svcsReady == allSvcsReady;
 
+      // All the services are probed at once
       mockIsServiceReady(getServiceEndpoint(ServiceDescr.SVC_REPO), isRepoReady, true);
-      mockIsServiceReady(getServiceEndpoint(ServiceDescr.SVC_CONFIG), isCfgReady, isRepoReady);
-      mockIsServiceReady(getServiceEndpoint(ServiceDescr.SVC_POLLER), isPollerReady, isPollerCallExpected);
-      mockIsServiceReady(getServiceEndpoint(ServiceDescr.SVC_MDX), isMdxReady, isMdxCallExpected);
-      mockIsServiceReady(getServiceEndpoint(ServiceDescr.SVC_MDQ), isMdqReady, isMdqCallExpected);
+      mockIsServiceReady(getServiceEndpoint(ServiceDescr.SVC_CONFIG), isCfgReady, true);
+      mockIsServiceReady(getServiceEndpoint(ServiceDescr.SVC_POLLER), isPollerReady, true);
+      mockIsServiceReady(getServiceEndpoint(ServiceDescr.SVC_MDX), isMdxReady, true);
+      mockIsServiceReady(getServiceEndpoint(ServiceDescr.SVC_MDQ), isMdqReady, true);
 
       assertEquals(isDaemonReady, proxy.isDaemonReady());
 
+      // The result may be returned before all the probes finish
+      assertTrue(readinessProbe.awaitProbes(TIMEOUT_SHOULDNT));
+      mockRestServer.verify();
+      mockRestServer.reset();
+    }
+  }
+
+  /**
+   * Test for {@link DaemonStatusService#isDaemonReady()} answered from the readiness snapshot.
+   */
+  @Test
+  public void testIsDaemonReadySnapshot() throws Exception {
+    // The services are probed concurrently
+    ignoreExpectOrder();
+
+    ConfigurationUtil.addFromArgs(ServiceReadinessProbe.PARAM_REFRESH_INTERVAL, "1h",
+        ServiceReadinessProbe.PARAM_MAX_STALENESS, "1h");
+
+    try {
+      // Not ready: the snapshot is used while recent enough
+      mockIsServiceReady(getServiceEndpoint(ServiceDescr.SVC_REPO), true, true);
+      mockIsServiceReady(getServiceEndpoint(ServiceDescr.SVC_CONFIG), false, true);
+      mockIsServiceReady(getServiceEndpoint(ServiceDescr.SVC_POLLER), true, true);
+      mockIsServiceReady(getServiceEndpoint(ServiceDescr.SVC_MDX), true, true);
+      mockIsServiceReady(getServiceEndpoint(ServiceDescr.SVC_MDQ), true, true);
+
+      assertFalse(proxy.isDaemonReady());
+      assertFalse(proxy.isDaemonReady());
+
+      assertTrue(readinessProbe.awaitProbes(TIMEOUT_SHOULDNT));
       mockRestServer.verify();
       mockRestServer.reset();
+
+      // Ready: the snapshot is used regardless of its age
+      ConfigurationUtil.addFromArgs(ServiceReadinessProbe.PARAM_MAX_STALENESS, "0");
+
+      for (ServiceDescr sd : ServiceReadinessProbe.PROBED_SERVICES) {
+        mockIsServiceReady(getServiceEndpoint(sd), true, true);
+      }
+
+      assertTrue(proxy.isDaemonReady());
+      assertTrue(proxy.isDaemonReady());
+      assertTrue(proxy.isDaemonReady());
+
+      assertTrue(readinessProbe.awaitProbes(TIMEOUT_SHOULDNT));
+      mockRestServer.verify();
+      mockRestServer.reset();
+    } finally {
+      ConfigurationUtil.addFromArgs(ServiceReadinessProbe.PARAM_REFRESH_INTERVAL, "0",
+          ServiceReadinessProbe.PARAM_MAX_STALENESS,
+          Long.toString(ServiceReadinessProbe.DEFAULT_MAX_STALENESS));
+    }
+  }
+
+  /**
+   * Test for {@link DaemonStatusService#isDaemonReady()} with a readiness snapshot that becomes
+   * stale.
+   */
+  @Test
+  public void testIsDaemonReadyStaleSnapshot() throws Exception {
+    // The services are probed concurrently
+    ignoreExpectOrder();
+
+    ConfigurationUtil.addFromArgs(ServiceReadinessProbe.PARAM_REFRESH_INTERVAL, "1h",
+        ServiceReadinessProbe.PARAM_MAX_STALENESS, "30s");
+    TimeBase.setSimulated(1000);
+
+    try {
+      for (ServiceDescr sd : ServiceReadinessProbe.PROBED_SERVICES) {
+        mockIsServiceReady(getServiceEndpoint(sd), sd != ServiceDescr.SVC_MDQ, true);
+      }
+
+      assertFalse(proxy.isDaemonReady());
+      assertTrue(readinessProbe.awaitProbes(TIMEOUT_SHOULDNT));
+
+      // Recent enough
+      TimeBase.step(30 * Constants.SECOND);
+      assertFalse(proxy.isDaemonReady());
+
+      mockRestServer.verify();
+      mockRestServer.reset();
+
+      // Stale: the services are probed again
+      for (ServiceDescr sd : ServiceReadinessProbe.PROBED_SERVICES) {
+        mockIsServiceReady(getServiceEndpoint(sd), true, true);
+      }
+
+      TimeBase.step(1);
+      assertTrue(proxy.isDaemonReady());
+
+      assertTrue(readinessProbe.awaitProbes(TIMEOUT_SHOULDNT));
+      mockRestServer.verify();
+      mockRestServer.reset();
+    } finally {
+      TimeBase.setReal();
+      ConfigurationUtil.addFromArgs(ServiceReadinessProbe.PARAM_REFRESH_INTERVAL, "0",
+          ServiceReadinessProbe.PARAM_MAX_STALENESS,
+          Long.toString(ServiceReadinessProbe.DEFAULT_MAX_STALENESS));
+    }
+  }
+
+  /**
+   * Test for {@link DaemonStatusService#isDaemonReady()} with a stalled service.
+   */
+  @Test
+  public void testIsDaemonReadyTimeout() throws Exception {
+    // The services are probed concurrently
+    ignoreExpectOrder();
+
+    ConfigurationUtil.addFromArgs(ServiceReadinessProbe.PARAM_PROBE_TIMEOUT, "200");
+
+    try {
+      ApiStatus apiStatus = easyRandom.nextObject(ApiStatus.class);
+      apiStatus.setReady(true);
+      String body = mapper.writeValueAsString(apiStatus);
+
+      for (ServiceDescr sd : ServiceReadinessProbe.PROBED_SERVICES) {
+        URI statusQuery = RestUtil.getRestUri(getServiceEndpoint(sd) + "/status", null, null);
+        boolean isStalled = sd == ServiceDescr.SVC_POLLER;
+
+        // The second check joins the probe of the stalled service still in progress
+        mockRestServer
+            .expect(isStalled ? ExpectedCount.once() : ExpectedCount.twice(),
+                requestTo(statusQuery))
+            .andExpect(method(HttpMethod.GET))
+            .andRespond(request -> {
+              if (isStalled) {
+                TimerUtil.guaranteedSleep(2 * Constants.SECOND);
+              }
+
+              return withStatus(HttpStatus.OK)
+                  .contentType(MediaType.APPLICATION_JSON)
+                  .body(body)
+                  .createResponse(request);
+            });
+      }
+
+      long start = System.currentTimeMillis();
+      assertFalse(proxy.isDaemonReady());
+      assertTrue(System.currentTimeMillis() - start < 2 * Constants.SECOND);
+
+      Map<ServiceDescr, ServiceReadinessProbe.ServiceReadiness> readiness =
+          readinessProbe.checkServices(false);
+      assertEquals(ServiceReadinessProbe.ServiceReadiness.TIMED_OUT,
+          readiness.get(ServiceDescr.SVC_POLLER));
+      assertEquals(ServiceReadinessProbe.ServiceReadiness.READY,
+          readiness.get(ServiceDescr.SVC_REPO));
+
+      assertTrue(readinessProbe.awaitProbes(TIMEOUT_SHOULDNT));
+      mockRestServer.verify();
+      mockRestServer.reset();
+    } finally {
+      ConfigurationUtil.addFromArgs(ServiceReadinessProbe.PARAM_PROBE_TIMEOUT,
+          Long.toString(ServiceReadinessProbe.DEFAULT_PROBE_TIMEOUT));
     }
   }
 
@@ -632,6 +795,10 @@ public class TestDaemonStatusService extends BaseSoapTest {
     // Assert result
     assertIterableEquals(expectedResult, result);
 
+    // The same query, differently spaced, is answered without another REST call
+    result = proxy.queryTdbAus("  tdb au  query ");
+    assertIterableEquals(expectedResult, result);
+
     mockRestServer.verify();
     mockRestServer.reset();
   }
@@ -694,4 +861,67 @@ public class TestDaemonStatusService extends BaseSoapTest {
     mockRestServer.verify();
     mockRestServer.reset();
   }
+
+  /**
+   * Test for {@link DaemonStatusService#getAuUrlsPage(String, String, Integer, String)}.
+   */
+  @Test
+  public void testGetAuUrlsPage() throws Exception {
+    String auId = "auId";
+    String urlPrefix = "urlPrefix";
+
+    List<Artifact> artifacts = ListUtil.list(easyRandom.nextObject(Artifact[].class));
+
+    PageInfo pageInfo = new PageInfo();
+    pageInfo.setResultsPerPage(artifacts.size());
+    pageInfo.setContinuationToken("next");
+
+    ArtifactPageInfo page = new ArtifactPageInfo();
+    page.setPageInfo(pageInfo);
+    page.setArtifacts(artifacts);
+
+    List<String> expectedUrls =
+        artifacts.stream().map(Artifact::getUri).collect(Collectors.toList());
+
+    // Prepare the URI path variables
+    Map<String, String> uriVariables = new HashMap<>(1);
+    uriVariables.put("auId", auId);
+
+    Configuration config = ConfigManager.getCurrentConfig();
+
+    // Prepare the query parameters
+    Map<String, String> queryParams = new HashMap<>(4);
+    queryParams.put("urlPrefix", urlPrefix);
+    queryParams.put("limit", "25");
+    queryParams.put("continuationToken", "previous");
+
+    String namespace =
+        config.get(BaseServiceImpl.PARAM_REPO_NAMESPACE, BaseServiceImpl.DEFAULT_REPO_NAMESPACE);
+
+    if (!StringUtil.isNullString(namespace)) {
+      queryParams.put("namespace", namespace);
+    }
+
+    // Prepare the endpoint URI
+    String auArtifactsEndpoint = getServiceEndpoint(ServiceDescr.SVC_REPO) + "/aus/{auId}/artifacts";
+    URI auArtifactsQuery = RestUtil.getRestUri(auArtifactsEndpoint, uriVariables, queryParams);
+
+    mockRestServer
+        .expect(ExpectedCount.once(), requestTo(auArtifactsQuery))
+        .andExpect(method(HttpMethod.GET))
+        .andExpect(header("Authorization", BASIC_AUTH_HASH))
+        .andRespond(withStatus(HttpStatus.OK)
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(mapper.writeValueAsString(page)));
+
+    // Make SOAP call
+    AuUrlsPage result = proxy.getAuUrlsPage(auId, urlPrefix, 25, "previous");
+
+    // Assert result
+    assertIterableEquals(expectedUrls, result.getUrls());
+    assertEquals("next", result.getContinuationToken());
+
+    mockRestServer.verify();
+    mockRestServer.reset();
+  }
 }
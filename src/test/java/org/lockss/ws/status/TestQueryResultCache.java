@@ -0,0 +1,227 @@
+/*
+
+Copyright (c) 2000-2023, Board of Trustees of Leland Stanford Jr. University
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice,
+this list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+this list of conditions and the following disclaimer in the documentation
+and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its contributors
+may be used to endorse or promote products derived from this software without
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package org.lockss.ws.status;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lockss.config.ConfigManager;
+import org.lockss.config.Configuration;
+import org.lockss.test.ConfigurationUtil;
+import org.lockss.test.LockssTestCase4;
+import org.lockss.util.ListUtil;
+import org.lockss.util.time.TimeBase;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Test class for org.lockss.ws.status.QueryResultCache. */
+public class TestQueryResultCache extends LockssTestCase4 {
+  private QueryResultCache cache;
+  private AtomicInteger loads;
+
+  @Before
+  public void setUpCache() {
+    cache = new QueryResultCache();
+    loads = new AtomicInteger();
+    TimeBase.setSimulated(1000);
+  }
+
+  @After
+  public void tearDownCache() {
+    TimeBase.setReal();
+  }
+
+  @Test
+  public void testNormalize() {
+    assertNull(QueryResultCache.normalize(null));
+    assertEquals("select * where name = 'a  b'",
+        QueryResultCache.normalize("  select\t*\n where  name = 'a  b' "));
+    assertEquals("name = \"x ' y\" and year = '2000'",
+        QueryResultCache.normalize("name  =  \"x ' y\"  and year = '2000'"));
+  }
+
+  @Test
+  public void testHit() throws Exception {
+    assertEquals(ListUtil.list("r1"), get("tdbAus", "select  *", "auth1"));
+    assertEquals(ListUtil.list("r1"), get("tdbAus", " select * ", "auth1"));
+    assertEquals(1, loads.get());
+    assertEquals(1, cache.size());
+    assertTrue(cache.estimatedMemory() > 0);
+
+    // Different kinds and credentials don't share results
+    assertEquals(ListUtil.list("r2"), get("tdbTitles", "select *", "auth1"));
+    assertEquals(ListUtil.list("r3"), get("tdbAus", "select *", "auth2"));
+    assertEquals(ListUtil.list("r4"), get("tdbAus", "select *", null));
+    assertEquals(ListUtil.list("r4"), get("tdbAus", "select *", null));
+    assertEquals(4, loads.get());
+  }
+
+  @Test
+  public void testFailureNotCached() throws Exception {
+    try {
+      cache.get("plugins", "select *", null, responseSize -> {
+        throw new IllegalStateException("down");
+      });
+      fail("Should have thrown");
+    } catch (IllegalStateException expected) {
+    }
+
+    assertEquals(0, cache.size());
+    assertEquals(ListUtil.list("r1"), get("plugins", "select *", null));
+  }
+
+  @Test
+  public void testErrorReleasesWaiters() throws Exception {
+    MeterRegistry registry = new SimpleMeterRegistry();
+    cache.bindTo(registry);
+    FunctionCounter sharedHits =
+        registry.get("soap.query.cache.requests").tag("result", "hit").functionCounter();
+    CountDownLatch loading = new CountDownLatch(1);
+    CountDownLatch failing = new CountDownLatch(1);
+
+    Thread loader = new Thread(() -> {
+      try {
+        cache.get("plugins", "select *", null, responseSize -> {
+          loading.countDown();
+          failing.await();
+          throw new AssertionError("broken");
+        });
+      } catch (Throwable expected) {
+      }
+    });
+    loader.start();
+    loading.await();
+
+    // A request for the same results waits for the failing query, and gets its failure
+    FutureTask<List<String>> waiter =
+        new FutureTask<>(() -> get("plugins", "select *", null));
+    new Thread(waiter).start();
+
+    while (sharedHits.count() < 1) {
+      Thread.sleep(10);
+    }
+
+    failing.countDown();
+
+    try {
+      waiter.get(TIMEOUT_SHOULDNT, TimeUnit.MILLISECONDS);
+      fail("Should have thrown");
+    } catch (ExecutionException ee) {
+      assertTrue(ee.getCause() instanceof ExecutionException);
+      assertTrue(ee.getCause().getCause() instanceof AssertionError);
+    }
+
+    loader.join(TIMEOUT_SHOULDNT);
+
+    // The failed query is no longer shared
+    assertEquals(ListUtil.list("r1"), get("plugins", "select *", null));
+  }
+
+  @Test
+  public void testUnmeasuredNotCached() throws Exception {
+    assertEquals(ListUtil.list("x"),
+        cache.get("plugins", "select *", null, responseSize -> ListUtil.list("x")));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testExpiry() throws Exception {
+    setConfig(QueryResultCache.PARAM_TTL, "1m");
+    get("tdbAus", "select *", null);
+    TimeBase.step(59 * 1000);
+    assertEquals(ListUtil.list("r1"), get("tdbAus", "select *", null));
+    TimeBase.step(1000);
+    assertEquals(ListUtil.list("r2"), get("tdbAus", "select *", null));
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testClearedOnConfigChange() throws Exception {
+    get("tdbAus", "select *", null);
+    assertEquals(1, cache.size());
+
+    setConfig("org.lockss.title.foo", "bar");
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.estimatedMemory());
+    assertEquals(ListUtil.list("r2"), get("tdbAus", "select *", null));
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    setConfig(QueryResultCache.PARAM_MAX_SIZE, "2");
+    get("tdbAus", "q1", null);
+    get("tdbAus", "q2", null);
+    get("tdbAus", "q1", null);
+    get("tdbAus", "q3", null);
+    assertEquals(2, cache.size());
+    assertEquals(3, loads.get());
+
+    // The least recently used result was evicted
+    get("tdbAus", "q1", null);
+    assertEquals(3, loads.get());
+    get("tdbAus", "q2", null);
+    assertEquals(4, loads.get());
+
+    // Results bigger than the memory bound are not cached
+    setConfig(QueryResultCache.PARAM_MAX_BYTES, "100");
+    get("tdbAus", "q1", null);
+    assertEquals(0, cache.size());
+
+    // Nothing is cached when disabled
+    setConfig(QueryResultCache.PARAM_MAX_SIZE, "0");
+    get("tdbAus", "q1", null);
+    get("tdbAus", "q1", null);
+    assertEquals(0, cache.size());
+    assertEquals(7, loads.get());
+  }
+
+  private List<String> get(String kind, String query, String authorization) throws Exception {
+    return cache.get(kind, query, authorization, responseSize -> {
+      responseSize.accept(10);
+      return ListUtil.list("r" + loads.incrementAndGet());
+    });
+  }
+
+  private void setConfig(String... args) {
+    Configuration config = ConfigurationUtil.fromArgs(args);
+    cache.setConfig(config, ConfigManager.EMPTY_CONFIGURATION,
+        config.differences(ConfigManager.EMPTY_CONFIGURATION));
+  }
+}
@@ -38,6 +38,8 @@ import org.lockss.log.L4JLogger;
 import org.lockss.spring.test.SpringLockssTestCase4;
 import org.lockss.test.ConfigurationUtil;
 import org.lockss.util.rest.multipart.MultipartMessageHttpMessageConverter;
+import org.lockss.ws.rest.ArtifactExistenceCache;
+import org.lockss.ws.status.QueryResultCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.test.context.TestConfiguration;
@@ -103,6 +105,12 @@ public abstract class BaseSoapTest extends SpringLockssTestCase4 {
   @Autowired
   ApplicationContext appCtx;
 
+  @Autowired
+  protected ArtifactExistenceCache artifactExistence;
+
+  @Autowired
+  protected QueryResultCache queryResults;
+
   protected void initBindings() throws MalformedURLException {
     ConfigurationUtil.addFromArgs(LockssApp.PARAM_SERVICE_BINDINGS, BINDINGS);
   }
@@ -136,7 +144,9 @@ public abstract class BaseSoapTest extends SpringLockssTestCase4 {
     requestContext.put(BindingProvider.PASSWORD_PROPERTY, PASSWORD);
 
     // Create MockRestServiceServer from RestTemplate
-    mockRestServer = MockRestServiceServer.createServer(restTemplate);
+    mockRestServer = MockRestServiceServer.bindTo(restTemplate)
+        .ignoreExpectOrder(isExpectOrderIgnored())
+        .build();
 
     // Start LockssDaemon, load config w/ service bindings
     List<String> cmdLineArgs = getCommandLineArguments();
@@ -146,9 +156,34 @@ public abstract class BaseSoapTest extends SpringLockssTestCase4 {
     runner.run(cmdLineArgs.toArray(new String[cmdLineArgs.size()]));
     initBindings();                     // must follow run()
 
+    // Don't let lookups cached by a previous test bypass the mocked REST calls
+    artifactExistence.clear();
+    queryResults.clear();
+
     return proxy;
   }
 
+  /**
+   * Provides an indication of whether the mocked REST calls of every test may be made in any
+   * order, as is the case when the service under test makes them concurrently.
+   *
+   * @return a boolean with the indication.
+   * @see #ignoreExpectOrder()
+   */
+  protected boolean isExpectOrderIgnored() {
+    return false;
+  }
+
+  /**
+   * Lets the mocked REST calls of the current test be made in any order, for tests of operations
+   * that make them concurrently. Must be called before any calls are expected.
+   */
+  protected void ignoreExpectOrder() {
+    mockRestServer = MockRestServiceServer.bindTo(restTemplate)
+        .ignoreExpectOrder(true)
+        .build();
+  }
+
   /** Add the multipart/form-data converter to the REST template */
   protected void setUpMultipartFormConverter() {
     List<HttpMessageConverter<?>> messageConverters =